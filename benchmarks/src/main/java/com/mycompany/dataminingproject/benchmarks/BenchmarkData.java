@@ -0,0 +1,179 @@
+package com.mycompany.dataminingproject.benchmarks;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import weka.core.Attribute;
+import weka.core.CellDictionary;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.Remove;
+import weka.filters.unsupervised.instance.GridGpsArea;
+
+/**
+ * Synthetic data sets for the benchmarks, built with the schema and the
+ * settings of the bundled runs. All of them are deterministic for a given
+ * size, so that results of different builds can be compared.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ */
+public final class BenchmarkData {
+
+    public static final double NW_LAT = 40.120;
+    public static final double NW_LNG = 116.130;
+    public static final double SE_LAT = 39.750;
+    public static final double SE_LNG = 116.650;
+    public static final double CELL_SIZE = 100;
+    public static final Date MIN_DATE = date(2008, Calendar.MAY, 1);
+    public static final Date MAX_DATE = date(2008, Calendar.DECEMBER, 1);
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Returns the midnight of a day in the default time zone.
+     */
+    private static Date date(int year, int month, int day) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month, day);
+        return calendar.getTime();
+    }
+
+    public static CellDictionary cellDictionary() {
+        return new CellDictionary(NW_LAT, NW_LNG, SE_LAT, SE_LNG, CELL_SIZE, CELL_SIZE);
+    }
+
+    /**
+     * Returns raw GPS samples with the schema of the bundled CSV files, as
+     * loaded by CSVLoader: numeric directory, latitude and longitude, nominal
+     * gpstime, gpsdate and starttime. About 5% of the samples are duplicates
+     * and 5% lie outside the area.
+     *
+     * @param size the number of samples
+     * @return the samples
+     */
+    public static Instances rawTraces(int size) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss");
+        Map<String, Integer> times = new LinkedHashMap<String, Integer>();
+        Map<String, Integer> dates = new LinkedHashMap<String, Integer>();
+        Random random = new Random(size);
+        long span = MAX_DATE.getTime() - MIN_DATE.getTime();
+        double[][] rows = new double[size][];
+        for (int i = 0; i < size; i++) {
+            if (i > 0 && random.nextInt(20) == 0) {
+                rows[i] = rows[i - 1].clone();
+                continue;
+            }
+            double margin = random.nextInt(20) == 0 ? 0.1 : 0.0;
+            Date date = new Date(MIN_DATE.getTime() + (long) (span * random.nextDouble()));
+            double[] values = new double[6];
+            values[0] = random.nextInt(200);
+            values[1] = SE_LAT - margin + (NW_LAT - SE_LAT + 2 * margin) * random.nextDouble();
+            values[2] = NW_LNG - margin + (SE_LNG - NW_LNG + 2 * margin) * random.nextDouble();
+            values[3] = index(times, timeFormat.format(date));
+            values[4] = index(dates, dateFormat.format(date));
+            values[5] = values[3];
+            rows[i] = values;
+        }
+        FastVector attributes = new FastVector();
+        attributes.addElement(new Attribute("directory"));
+        attributes.addElement(new Attribute("latitude"));
+        attributes.addElement(new Attribute("longitude"));
+        attributes.addElement(new Attribute("gpstime", values(times)));
+        attributes.addElement(new Attribute("gpsdate", values(dates)));
+        attributes.addElement(new Attribute("starttime", values(times)));
+        Instances dataSet = new Instances("traces", attributes, size);
+        for (int i = 0; i < size; i++) {
+            dataSet.add(new Instance(1.0, rows[i]));
+        }
+        return dataSet;
+    }
+
+    private static int index(Map<String, Integer> values, String value) {
+        Integer index = values.get(value);
+        if (index == null) {
+            index = values.size();
+            values.put(value, index);
+        }
+        return index;
+    }
+
+    private static FastVector values(Map<String, Integer> values) {
+        FastVector vector = new FastVector(values.size());
+        for (String value : values.keySet()) {
+            vector.addElement(value);
+        }
+        return vector;
+    }
+
+    /**
+     * Returns the samples as cleaned by App: cropped to the area, with their
+     * cellId and without directory and starttime.
+     *
+     * @param size the number of raw samples
+     * @return the cleaned samples
+     * @throws Exception if a filter fails
+     */
+    public static Instances cleanTraces(int size) throws Exception {
+        Instances dataSet = rawTraces(size);
+        GridGpsArea area = new GridGpsArea();
+        area.setArea(NW_LAT, NW_LNG, SE_LAT, SE_LNG);
+        area.setCell(CELL_SIZE, CELL_SIZE);
+        area.setInputFormat(dataSet);
+        dataSet = Filter.useFilter(dataSet, area);
+        Remove remove = new Remove();
+        remove.setAttributeIndicesArray(new int[]{0, 5});
+        remove.setInputFormat(dataSet);
+        return Filter.useFilter(dataSet, remove);
+    }
+
+    /**
+     * Returns a grid of time bins: a numeric cellId followed by the bin
+     * counts, as made by MakeBins.
+     *
+     * @param cells the number of cells
+     * @param bins the number of bins of every cell
+     * @param seed the seed of the counts; grids with consecutive seeds share
+     * three quarters of their cells
+     * @return the grid
+     */
+    public static Instances grid(int cells, int bins, long seed) {
+        FastVector attributes = new FastVector();
+        attributes.addElement(new Attribute("cellId"));
+        for (int i = 0; i < bins; i++) {
+            attributes.addElement(new Attribute("bin" + i));
+        }
+        Instances dataSet = new Instances("grid", attributes, cells);
+        CellDictionary dictionary = cellDictionary();
+        Random random = new Random(seed);
+        for (int c = 0; c < cells; c++) {
+            double[] values = new double[1 + bins];
+            values[0] = (c + seed * cells / 4) % dictionary.size();
+            for (int i = 1; i <= bins; i++) {
+                values[i] = random.nextInt(4) == 0 ? random.nextInt(10) : 0;
+            }
+            dataSet.add(new Instance(1.0, values));
+        }
+        return dataSet;
+    }
+
+    /**
+     * Returns the features of a grid alone, without the cellId, as given to
+     * the clusterers.
+     */
+    public static Instances features(int cells, int bins, long seed) throws Exception {
+        Instances dataSet = grid(cells, bins, seed);
+        Remove remove = new Remove();
+        remove.setAttributeIndicesArray(new int[]{0});
+        remove.setInputFormat(dataSet);
+        return Filter.useFilter(dataSet, remove);
+    }
+}
@@ -0,0 +1,60 @@
+package com.mycompany.dataminingproject.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.core.Instances;
+import weka.filters.Filter;
+import weka.filters.unsupervised.instance.GridGpsArea;
+import weka.filters.unsupervised.instance.RemoveDuplicates;
+
+/**
+ * The filters cleaning the raw samples: RemoveDuplicates and GridGpsArea.
+ * RemoveDuplicates compares every pair of samples, hence the sizes.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CleaningBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private Instances traces;
+
+    @Setup
+    public void setUp() {
+        traces = BenchmarkData.rawTraces(size);
+    }
+
+    @Benchmark
+    public Instances removeDuplicates() throws Exception {
+        RemoveDuplicates filter = new RemoveDuplicates();
+        filter.setInputFormat(traces);
+        return Filter.useFilter(traces, filter);
+    }
+
+    @Benchmark
+    public Instances gridGpsArea() throws Exception {
+        GridGpsArea filter = new GridGpsArea();
+        filter.setArea(BenchmarkData.NW_LAT, BenchmarkData.NW_LNG, BenchmarkData.SE_LAT, BenchmarkData.SE_LNG);
+        filter.setCell(BenchmarkData.CELL_SIZE, BenchmarkData.CELL_SIZE);
+        filter.setInputFormat(traces);
+        return Filter.useFilter(traces, filter);
+    }
+}
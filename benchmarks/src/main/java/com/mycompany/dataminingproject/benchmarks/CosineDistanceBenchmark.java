@@ -0,0 +1,63 @@
+package com.mycompany.dataminingproject.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import weka.core.CosineDistance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * CosineDistance.distance between the first row of a feature set and each
+ * of its rows, with and without splitMax. Scores are per distance.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CosineDistanceBenchmark {
+
+    private static final int ROWS = 1000;
+
+    @Param({"24", "214", "1000"})
+    public int bins;
+
+    @Param({"false", "true"})
+    public boolean splitMax;
+
+    private Instances features;
+    private CosineDistance distance;
+
+    @Setup
+    public void setUp() throws Exception {
+        features = BenchmarkData.features(ROWS, bins, 0);
+        distance = new CosineDistance();
+        distance.setSplitMax(splitMax);
+        distance.setInstances(features);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void distance(Blackhole blackhole) {
+        Instance first = features.instance(0);
+        for (int i = 0; i < ROWS; i++) {
+            blackhole.consume(distance.distance(first, features.instance(i)));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.mycompany.dataminingproject.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.core.Instances;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.GridAddLatLng;
+import weka.filters.unsupervised.attribute.GridJoin;
+
+/**
+ * GridJoin of pick-up and drop-off grids sharing three quarters of their
+ * cells, additive (FILL_ZERO) and subtractive (DROP), and GridAddLatLng on
+ * the joined grid.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GridJoinBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int cells;
+
+    @Param({"214"})
+    public int bins;
+
+    @Param({"FILL_ZERO", "DROP"})
+    public GridJoin.MissingCells missingCells;
+
+    private Instances pickUps;
+    private Instances dropOffs;
+    private Instances joined;
+
+    @Setup
+    public void setUp() throws Exception {
+        pickUps = BenchmarkData.grid(cells, bins, 0);
+        dropOffs = BenchmarkData.grid(cells, bins, 1);
+        joined = gridJoin();
+    }
+
+    @Benchmark
+    public Instances gridJoin() throws Exception {
+        GridJoin filter = new GridJoin();
+        filter.setComplementaryDataSet(dropOffs);
+        filter.setMissingCells(missingCells);
+        filter.setInputFormat(pickUps);
+        return Filter.useFilter(pickUps, filter);
+    }
+
+    @Benchmark
+    public Instances gridAddLatLng() throws Exception {
+        GridAddLatLng filter = new GridAddLatLng();
+        filter.setNWLocation(BenchmarkData.NW_LAT, BenchmarkData.NW_LNG);
+        filter.setCell(BenchmarkData.CELL_SIZE, BenchmarkData.CELL_SIZE);
+        filter.setCellDictionary(BenchmarkData.cellDictionary());
+        filter.setInputFormat(joined);
+        return Filter.useFilter(joined, filter);
+    }
+}
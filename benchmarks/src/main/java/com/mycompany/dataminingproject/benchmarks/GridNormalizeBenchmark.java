@@ -0,0 +1,56 @@
+package com.mycompany.dataminingproject.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.core.Instances;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.GridNormalize;
+
+/**
+ * GridNormalize on a grid of time bins, for every mode.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GridNormalizeBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int cells;
+
+    @Param({"214"})
+    public int bins;
+
+    @Param({"MEAN_CENTER", "L2_UNIT", "Z_SCORE"})
+    public GridNormalize.Mode mode;
+
+    private Instances grid;
+
+    @Setup
+    public void setUp() {
+        grid = BenchmarkData.grid(cells, bins, 0);
+    }
+
+    @Benchmark
+    public Instances gridNormalize() throws Exception {
+        GridNormalize filter = new GridNormalize();
+        filter.setMode(mode);
+        filter.setInputFormat(grid);
+        return Filter.useFilter(grid, filter);
+    }
+}
@@ -0,0 +1,59 @@
+package com.mycompany.dataminingproject.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.core.Instances;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.MakeBins;
+
+/**
+ * MakeBins on cleaned samples, for every period.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MakeBinsBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    @Param({"LINEAR", "BY_DAY_OF_WEEK", "BY_WORKING_DAYS", "BY_HOURS_IN_A_DAY"})
+    public MakeBins.Period period;
+
+    @Param({"4"})
+    public int binsInADay;
+
+    private Instances traces;
+
+    @Setup
+    public void setUp() throws Exception {
+        traces = BenchmarkData.cleanTraces(size);
+    }
+
+    @Benchmark
+    public Instances makeBins() throws Exception {
+        MakeBins filter = new MakeBins();
+        filter.setMinDate(BenchmarkData.MIN_DATE);
+        filter.setMaxDate(BenchmarkData.MAX_DATE);
+        filter.setBinsInADay(binsInADay);
+        filter.setPeriod(period);
+        filter.setInputFormat(traces);
+        return Filter.useFilter(traces, filter);
+    }
+}
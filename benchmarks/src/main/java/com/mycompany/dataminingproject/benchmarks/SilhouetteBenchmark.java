@@ -0,0 +1,96 @@
+package com.mycompany.dataminingproject.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.clusterers.ClusterEvaluationEx;
+import weka.clusterers.SimpleKMeans;
+import weka.core.CosineDistance;
+import weka.core.DistanceFunction;
+import weka.core.EuclideanDistance;
+import weka.core.FeatureMatrix;
+import weka.core.Instances;
+
+/**
+ * ClusterEvaluationEx on a k-means clustering, with the silhouette
+ * coefficient computed as App does: once with Manhattan distance and once
+ * with the distance of the clusterer. silhouette() computes the distances
+ * between instances, silhouetteMatrix() those between the rows of a
+ * FeatureMatrix, a tile at a time, as App does with featureMatrix = heap.
+ * The matrix is built once, as App builds it once for all the clusterings
+ * of a run.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class SilhouetteBenchmark {
+
+    public enum Distance { EUCLIDEAN, COSINE }
+
+    @Param({"250", "1000", "4000"})
+    public int size;
+
+    @Param({"214"})
+    public int bins;
+
+    @Param({"4"})
+    public int numClusters;
+
+    @Param({"EUCLIDEAN", "COSINE"})
+    public Distance distance;
+
+    private Instances features;
+    private SimpleKMeans clusterer;
+    private DistanceFunction df;
+    private FeatureMatrix matrix;
+
+    @Setup
+    public void setUp() throws Exception {
+        features = BenchmarkData.features(size, bins, 0);
+        df = distance == Distance.COSINE ? new CosineDistance() : new EuclideanDistance();
+        clusterer = new SimpleKMeans();
+        clusterer.setOptions(new String[]{"-init", "1"});
+        clusterer.setNumClusters(numClusters);
+        clusterer.setDistanceFunction(df);
+        clusterer.setPreserveInstancesOrder(true);
+        clusterer.buildClusterer(features);
+        matrix = FeatureMatrix.of(features);
+    }
+
+    @TearDown
+    public void tearDown() {
+        matrix.close();
+    }
+
+    @Benchmark
+    public double silhouette() throws Exception {
+        ClusterEvaluationEx ce = new ClusterEvaluationEx();
+        ce.setClusterer(clusterer);
+        ce.evaluateClusterer(new Instances(features), df);
+        return ce.getAvgSilhouetteCoefficient();
+    }
+
+    @Benchmark
+    public double silhouetteMatrix() throws Exception {
+        ClusterEvaluationEx ce = new ClusterEvaluationEx();
+        ce.setClusterer(clusterer);
+        ce.evaluateClusterer(new Instances(features), df, matrix);
+        return ce.getAvgSilhouetteCoefficient();
+    }
+}
@@ -4,94 +4,73 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import weka.clusterers.ClusterEvaluationEx;
 import weka.core.CosineDistance;
 import weka.clusterers.HierarchicalClusterer;
+import weka.clusterers.OnlineKMeans;
 import weka.clusterers.SimpleKMeans;
+import weka.core.CellDictionary;
+import weka.core.CellTree;
 import weka.core.Attribute;
 import weka.core.DistanceFunction;
 import weka.core.EuclideanDistance;
+import weka.core.FeatureMatrix;
 import weka.core.FastVector;
 import weka.core.Instance;
 import weka.core.Instances;
-import weka.core.converters.ArffSaver;
+import weka.core.LongIntHashMap;
 import weka.core.converters.CSVLoader;
-import weka.core.converters.CSVSaver;
+import weka.filters.DroppingFilter;
 import weka.filters.Filter;
 import weka.filters.unsupervised.attribute.GridAddLatLng;
 import weka.filters.unsupervised.attribute.GridJoin;
 import weka.filters.unsupervised.attribute.GridNormalize;
+import weka.filters.unsupervised.attribute.GridReduce;
 import weka.filters.unsupervised.attribute.MakeBins;
 import weka.filters.unsupervised.attribute.Remove;
-import weka.filters.unsupervised.attribute.StringToNominal;
 import weka.filters.unsupervised.instance.GridGpsArea;
 import weka.filters.unsupervised.instance.RemoveDuplicates;
 
+/**
+ * The pipeline: cleaning, feature extraction, joining and clustering of the
+ * pick-ups and drop-offs of every run. App holds no state of its own, the
+ * settings of each run being in its RunContext, so runs with different
+ * settings can go on at the same time.
+ */
 public class App {
-    static double nwLat;
-    static double seLat;
-    static double nwLng;
-    static double seLng;
-    static double cellXSizeInMeters;
-    static double cellYSizeInMeters;
-    static int binsInADay;
-    static Date minDate;
-    static Date maxDate;
-    static String pickupsFileName;
-    static String dropoffsFileName;
-    static String csvOutCleanPickUpFileName;
-    static String csvOutCleanDropOffFileName;
-    static String csvOutExtractFileName;
-    static String csvOutFileName;
-    static String arffOutFileName;
-    static int numClusters;
-    static MakeBins.Period period;
-    static boolean additive;
-    private ClusterEvaluationEx bestClusterer = null;
-    private int classIndex = -1;
-
-    private void loadProps(InputStream is) throws ParseException {
-        Properties config;
 
+    private static Properties readProps(InputStream is) throws IOException {
+        Properties config = new Properties();
         try {
-            config = new Properties();
             config.load(is);
+        } finally {
             is.close();
-            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
-            pickupsFileName = getClass().getResource("/resources/"+config.getProperty("pickupsFileName")).getFile();
-            dropoffsFileName = getClass().getResource("/resources/"+config.getProperty("dropoffsFileName")).getFile();
-            csvOutFileName = config.getProperty("csvOutFileName");
-            arffOutFileName = config.getProperty("arffOutFileName");
-            csvOutCleanPickUpFileName = config.getProperty("csvOutCleanPickUpFileName");
-            csvOutCleanDropOffFileName = config.getProperty("csvOutCleanDropOffFileName");
-            csvOutExtractFileName = config.getProperty("csvOutExtractFileName");
-
-            nwLat = Double.parseDouble(config.getProperty("gridGpsArea.nwLat"));
-            nwLng = Double.parseDouble(config.getProperty("gridGpsArea.nwLng"));
-            seLat = Double.parseDouble(config.getProperty("gridGpsArea.seLat"));
-            seLng = Double.parseDouble(config.getProperty("gridGpsArea.seLng"));
-            cellXSizeInMeters = Double.parseDouble(config.getProperty("gridGpsArea.cellXSizeInMeters"));
-            cellYSizeInMeters = Double.parseDouble(config.getProperty("gridGpsArea.cellYSizeInMeters"));
-            minDate = format.parse(config.getProperty("makeBins.minDate"));
-            maxDate = format.parse(config.getProperty("makeBins.maxDate"));                
-            period = MakeBins.Period.LINEAR;
-            for(MakeBins.Period p: MakeBins.Period.values()) 
-                if(p.name().equalsIgnoreCase(config.getProperty("makeBins.period")))
-                    period = p;
-            binsInADay = Integer.parseInt(config.getProperty("makeBins.binsInADay", "1"));
-            numClusters = Integer.parseInt(config.getProperty("numClusters", "3"));
-            additive = Boolean.parseBoolean(config.getProperty("gridJoin.additive", "false"));
-        } catch (ParseException ioe) {
-            System.err.println("ParseException in loadProps");
-        } catch (IOException ioe) {
-            System.err.println("IOException in loadProps");
         }
+        return config;
     }
-    
+
+    /**
+     * Runs a filter on a data set, recording the metrics of the run as the
+     * stage of the given name.
+     */
+    static Instances useFilter(RunContext ctx, String stage, Instances dataSet, Filter filter) throws Exception {
+        MetricsRegistry.Timer timer = MetricsRegistry.getInstance().start(ctx.name, stage);
+        Instances result = Filter.useFilter(dataSet, filter);
+        timer.stop(dataSet.numInstances(), result.numInstances(),
+                filter instanceof DroppingFilter ? ((DroppingFilter) filter).getNumDropped() : 0);
+        return result;
+    }
+
     public static Instances loadCsv(String fileName) throws IOException {
         File file = new File(fileName);
         CSVLoader cl = new CSVLoader();
@@ -100,189 +79,459 @@ public class App {
     }
 
     
-    public static void saveCsv(String fileName, Instances finalFeatures) throws IOException {
-        File out = new File(fileName);
-        CSVSaver saver = new CSVSaver();
-        saver.setFile(out);
-        saver.setInstances(finalFeatures);
-        saver.writeBatch();
-        System.out.println("*** CSV SAVED");
+    public static void saveCsv(RunContext ctx, CellDictionary dictionary, String fileName, Instances finalFeatures) throws IOException {
+        MetricsRegistry.Timer timer = MetricsRegistry.getInstance().start(ctx.name, "save/"+fileName);
+        fileName = new FastSaver(dictionary, ctx.gzip).saveCsv(fileName, finalFeatures);
+        timer.stop(finalFeatures.numInstances(), finalFeatures.numInstances(), 0);
+        System.out.println("*** ["+ctx+"] CSV SAVED ("+fileName+")");
     }
     
-    public static void saveArff(String fileName, Instances finalFeatures) throws IOException {
-        File out = new File(fileName);
-        ArffSaver saver = new ArffSaver();
-        saver.setFile(out);
-        saver.setInstances(finalFeatures);
-        saver.writeBatch();
-        System.out.println("*** ARFF SAVED");
+    public static void saveArff(RunContext ctx, String fileName, Instances finalFeatures) throws IOException {
+        MetricsRegistry.Timer timer = MetricsRegistry.getInstance().start(ctx.name, "save/"+fileName);
+        fileName = new FastSaver(ctx.levelDictionary, ctx.gzip).saveArff(fileName, finalFeatures);
+        timer.stop(finalFeatures.numInstances(), finalFeatures.numInstances(), 0);
+        System.out.println("*** ["+ctx+"] ARFF SAVED ("+fileName+")");
     }
     
-    public static Instances cleanData(Instances rawDataSet) throws Exception {
+    /**
+     * Saves the model of the clustering with the best silhouette, the class
+     * of the clustered data set.
+     */
+    public static void saveModel(RunContext ctx, String fileName, Instances finalFeatures) throws IOException {
+        MetricsRegistry.Timer timer = MetricsRegistry.getInstance().start(ctx.name, "save/"+fileName);
+        boolean cosine = finalFeatures.classAttribute().name().endsWith("Cosine");
+        // The distance the run uses on the features kept by the model
+        CosineDistance cosineDistance = cosineDistance(ctx);
+        ClusterModel model = ClusterModel.build(finalFeatures,
+                cosine? ClusterModel.Distance.COSINE : ClusterModel.Distance.EUCLIDEAN,
+                cosineDistance.isUnitLength(), cosineDistance.isSplitMax());
+        model.write(fileName);
+        timer.stop(finalFeatures.numInstances(), model.numClusters(), 0);
+        System.out.println("*** ["+ctx+"] MODEL SAVED ("+model.getName()+")");
+    }
+
+    /**
+     * Loads a CSV file, recording the metrics of the load.
+     */
+    static Instances loadCsv(RunContext ctx, String fileName) throws IOException {
+        MetricsRegistry.Timer timer = MetricsRegistry.getInstance().start(ctx.name, source(fileName)+"/CSVLoader");
+        Instances dataSet = loadCsv(fileName);
+        timer.stop(dataSet.numInstances(), dataSet.numInstances(), 0);
+        return dataSet;
+    }
+
+    private static String source(String fileName) {
+        return new File(fileName).getName();
+    }
+
+    public static Instances cleanData(RunContext ctx, String source, Instances rawDataSet) throws Exception {
         // Filtra campioni doppi
         RemoveDuplicates removeDuplicateFilter = new RemoveDuplicates();
         removeDuplicateFilter.setInputFormat(rawDataSet);
-        Instances dataSet = Filter.useFilter(rawDataSet, removeDuplicateFilter);
+        Instances dataSet = useFilter(ctx, source+"/RemoveDuplicates", rawDataSet, removeDuplicateFilter);
 
         // Filtra regione geografica di interesse entro certe coordinate
         // e aggiunge etichetta relativa alla regione di appartenenza.
         GridGpsArea cropGpsAreaFilter = new GridGpsArea();
-        cropGpsAreaFilter.setArea(nwLat, nwLng, seLat, seLng);
-        cropGpsAreaFilter.setCell(cellXSizeInMeters, cellYSizeInMeters);
+        cropGpsAreaFilter.setArea(ctx.nwLat, ctx.nwLng, ctx.seLat, ctx.seLng);
+        cropGpsAreaFilter.setCell(ctx.cellXSizeInMeters, ctx.cellYSizeInMeters);
         cropGpsAreaFilter.setInputFormat(dataSet);
-        dataSet = Filter.useFilter(dataSet, cropGpsAreaFilter);
+        dataSet = useFilter(ctx, source+"/GridGpsArea", dataSet, cropGpsAreaFilter);
 
         // Elimina attributi inutili
         int[] removeIndices = {0, 5};
         Remove removeFilter = new Remove();
         removeFilter.setAttributeIndicesArray(removeIndices);
         removeFilter.setInputFormat(dataSet);
-        dataSet = Filter.useFilter(dataSet, removeFilter);
+        dataSet = useFilter(ctx, source+"/Remove", dataSet, removeFilter);
         return dataSet;
     }
 
-    public static Instances extractFeatures(Instances dataSet) throws Exception {
+    /**
+     * Loads and cleans a file, or reads the result from the stage cache.
+     */
+    public static Instances cleanStage(RunContext ctx, String fileName) throws Exception {
+        if(ctx.stageCache == null)
+            return cleanData(ctx, source(fileName), loadCsv(ctx, fileName));
+        String key = ctx.stageCache.key(fileName, "clean", ctx.cleanParams());
+        Instances dataSet = ctx.stageCache.load(key);
+        if(dataSet != null) {
+            System.out.println("*** ["+ctx+"] CLEAN DATA FROM CACHE "+key);
+            return dataSet;
+        }
+        dataSet = cleanData(ctx, source(fileName), loadCsv(ctx, fileName));
+        ctx.stageCache.store(key, dataSet);
+        return dataSet;
+    }
+
+    /**
+     * Builds the adaptive cells of a run on the pick-ups cleaned by
+     * cleanStage(), splitting fixed cells while they hold more than
+     * ctx.maxCellCount of them.
+     */
+    public static CellTree buildCellTree(RunContext ctx, Instances pickUps) {
+        int cellIdIndex = pickUps.attribute("cellId").index();
+        int[] counts = new int[ctx.cellDictionary.size()];
+        for(int i = 0; i < pickUps.numInstances(); i++)
+            counts[(int) pickUps.instance(i).value(cellIdIndex)]++;
+        CellTree cellTree = CellTree.build(ctx.cellDictionary, ctx.treeLevels, ctx.maxCellCount, counts);
+        System.out.println("*** ["+ctx+"] "+cellTree+": "+cellTree.getNumLeaves()+" cells");
+        return cellTree;
+    }
+
+    /**
+     * Extracts the features of a file cleaned by cleanStage(), or reads them
+     * from the stage cache.
+     */
+    public static Instances extractStage(RunContext ctx, String fileName, Instances dataSet, CellTree cellTree) throws Exception {
+        if(ctx.stageCache == null)
+            return extractFeatures(ctx, source(fileName), dataSet, cellTree);
+        String key = ctx.stageCache.key(fileName, "extract", ctx.extractParams(cellTree));
+        Instances features = ctx.stageCache.load(key);
+        if(features != null) {
+            System.out.println("*** ["+ctx+"] FEATURES FROM CACHE "+key);
+            return features;
+        }
+        features = extractFeatures(ctx, source(fileName), dataSet, cellTree);
+        ctx.stageCache.store(key, features);
+        return features;
+    }
+
+    public static Instances extractFeatures(RunContext ctx, String source, Instances dataSet, CellTree cellTree) throws Exception {
         // Crea bin temporali
         MakeBins binMaker = new MakeBins();
-        binMaker.setMinDate(minDate);
-        binMaker.setMaxDate(maxDate);
-        binMaker.setBinsInADay(binsInADay);
-        binMaker.setPeriod(period);
+        binMaker.setMinDate(ctx.getMinDate());
+        binMaker.setMaxDate(ctx.getMaxDate());
+        binMaker.setBinsInADay(ctx.binsInADay);
+        binMaker.setPeriod(ctx.period);
+        binMaker.setWindowDays(ctx.windowDays);
+        binMaker.setCellDictionary(ctx.cellDictionary);
+        binMaker.setLevels(ctx.levels);
+        binMaker.setLevel(ctx.level);
+        binMaker.setCellTree(cellTree);
+        binMaker.setMemoryBudget(ctx.memoryBudget);
+        if (ctx.spillDir != null) {
+            binMaker.setSpillDirectory(new File(ctx.spillDir));
+        }
         binMaker.setInputFormat(dataSet);
-        dataSet = Filter.useFilter(dataSet, binMaker);
+        dataSet = useFilter(ctx, source+"/MakeBins", dataSet, binMaker);
         // Normalizza
         GridNormalize normalizer = new GridNormalize();
+        normalizer.setMode(ctx.normalizeMode);
         normalizer.setInputFormat(dataSet);
-        dataSet = Filter.useFilter(dataSet, normalizer);
+        dataSet = useFilter(ctx, source+"/GridNormalize", dataSet, normalizer);
         return dataSet;
     }
     
-    public static Instances joinFeatures(Instances pickUps, Instances dropOffs) throws Exception {
+    public static Instances joinFeatures(RunContext ctx, Instances pickUps, Instances dropOffs,
+            Map<String, Instances> featureSets, CellTree cellTree) throws Exception {
         GridJoin joinAndFillMissing = new GridJoin();
         joinAndFillMissing.setComplementaryDataSet(dropOffs);
-        joinAndFillMissing.setAdditive(additive);
+        joinAndFillMissing.setMissingCells(ctx.missingCells);
+        for(Map.Entry<String, Instances> featureSet: featureSets.entrySet())
+            joinAndFillMissing.addDataSet(featureSet.getKey(), featureSet.getValue());
         joinAndFillMissing.setInputFormat(pickUps);
+        MetricsRegistry.Timer timer = MetricsRegistry.getInstance().start(ctx.name, "join/GridJoin");
         Instances dataSet = Filter.useFilter(pickUps, joinAndFillMissing);
+        int joined = pickUps.numInstances() + dropOffs.numInstances();
+        for(Instances featureSet: featureSets.values())
+            joined += featureSet.numInstances();
+        timer.stop(joined, dataSet.numInstances(), joinAndFillMissing.getNumDropped());
+        if(ctx.normalizeMode == GridNormalize.Mode.L2_UNIT) {
+            // Joined rows are no longer unit vectors: scale them again
+            GridNormalize normalizer = new GridNormalize();
+            normalizer.setMode(ctx.normalizeMode);
+            normalizer.setInputFormat(dataSet);
+            dataSet = useFilter(ctx, "join/GridNormalize", dataSet, normalizer);
+        }
         // Aggiunge coordinate geografiche
         GridAddLatLng mapGridToGps = new GridAddLatLng();
-        mapGridToGps.setNWLocation(nwLat, nwLng);
-        mapGridToGps.setCell(cellXSizeInMeters, cellYSizeInMeters);
+        mapGridToGps.setNWLocation(ctx.nwLat, ctx.nwLng);
+        mapGridToGps.setCell(ctx.levelDictionary.getCellXSizeInMeters(), ctx.levelDictionary.getCellYSizeInMeters());
+        mapGridToGps.setCellDictionary(ctx.levelDictionary);
+        mapGridToGps.setCellTree(cellTree);
         mapGridToGps.setInputFormat(dataSet);
-        dataSet = Filter.useFilter(dataSet, mapGridToGps);        
-        // Trasforma stringhe in nominali
-        StringToNominal stringToNominal = new StringToNominal();
-        stringToNominal.setAttributeRange("first-last");
-        stringToNominal.setInputFormat(dataSet);
-        dataSet = Filter.useFilter(dataSet, stringToNominal);        
+        dataSet = useFilter(ctx, "join/GridAddLatLng", dataSet, mapGridToGps);
         return dataSet;
     }
     
-    private ClusterEvaluationEx kMeans(DistanceFunction df, Instances finalFeatures, int index) throws Exception {
+    /**
+     * Replaces the joined features with fewer ones, to cluster on them.
+     */
+    public static Instances reduceFeatures(RunContext ctx, Instances joinedFeatures) throws Exception {
+        GridReduce reducer = new GridReduce();
+        reducer.setMode(ctx.reduceMode);
+        reducer.setDimension(ctx.reduceDimension);
+        reducer.setVariance(ctx.reduceVariance);
+        reducer.setSeed(ctx.reduceSeed);
+        reducer.setInputFormat(joinedFeatures);
+        return useFilter(ctx, "reduce/GridReduce", joinedFeatures, reducer);
+    }
+
+    /**
+     * Returns the features alone, without the cell id and its coordinates
+     * and without the given attribute, if any.
+     */
+    private static Instances featuresOnly(Instances dataSet, int otherIndex) throws Exception {
+        int[] removeIndices = {
+            dataSet.attribute("cellId").index(),
+            dataSet.attribute("latitude").index(),
+            dataSet.attribute("longitude").index(),
+            otherIndex };
+        Remove remove = new Remove();
+        remove.setAttributeIndicesArray(otherIndex < 0? Arrays.copyOf(removeIndices, 3) : removeIndices);
+        remove.setInputFormat(dataSet);
+        return Filter.useFilter(dataSet, remove);
+    }
+
+    private static CosineDistance cosineDistance(RunContext ctx) {
+        return cosineDistance(ctx, false);
+    }
+
+    private static CosineDistance cosineDistance(RunContext ctx, boolean reduced) {
+        CosineDistance cosineDistance = new CosineDistance();
+        // Unit vectors make the cosine distance a plain dot product, unless reduced
+        cosineDistance.setUnitLength(ctx.normalizeMode == GridNormalize.Mode.L2_UNIT && !reduced);
+        return cosineDistance;
+    }
+
+    private static String distanceName(DistanceFunction df) {
+        return df.getClass().getSimpleName();
+    }
+
+    /**
+     * The clustering with the best silhouette among those of a run.
+     */
+    private static class Best {
+        ClusterEvaluationEx clusterer = null;
+        int classIndex = -1;
+
+        void offer(ClusterEvaluationEx ce, int index) {
+            if(clusterer == null || clusterer.getAvgSilhouetteCoefficient() < ce.getAvgSilhouetteCoefficient()) {
+                clusterer = ce;
+                classIndex = index;
+            }
+        }
+    }
+
+    private ClusterEvaluationEx kMeans(RunContext ctx, DistanceFunction df, Instances finalFeatures, FeatureMatrix matrix, Best best, int index) throws Exception {
         SimpleKMeans simpleKMeans = new SimpleKMeans();
         // There's a bug in the default random initializer, so we use 1 = kmeans++
         String options[] = {"-init", "1"};
         simpleKMeans.setOptions(options);
-        simpleKMeans.setNumClusters(numClusters);
+        simpleKMeans.setNumClusters(ctx.numClusters);
         simpleKMeans.setDistanceFunction(df);
         simpleKMeans.setPreserveInstancesOrder(true);
+        MetricsRegistry.Timer timer = MetricsRegistry.getInstance().start(ctx.name, "cluster/kMeans/"+distanceName(df));
         simpleKMeans.buildClusterer(finalFeatures);
         ClusterEvaluationEx ce = new ClusterEvaluationEx();
         ce.setClusterer(simpleKMeans);
-        ce.evaluateClusterer(new Instances(finalFeatures), df);
-        if(bestClusterer == null || bestClusterer.getAvgSilhouetteCoefficient() < ce.getAvgSilhouetteCoefficient()) {
-            bestClusterer = ce;
-            classIndex = index;
-        }
+        ce.evaluateClusterer(new Instances(finalFeatures), df, matrix);
+        timer.stop(finalFeatures.numInstances(), finalFeatures.numInstances(), 0);
+        best.offer(ce, index);
         return ce;
     }
     
-    private ClusterEvaluationEx agglomerative(DistanceFunction df, Instances finalFeatures, int index) throws Exception {
+    /**
+     * Updates the euclidean k-means of a previous run with the cells that
+     * changed since then, falling back to kMeans() if there is none.
+     */
+    private ClusterEvaluationEx onlineKMeans(RunContext ctx, Instances joinedFeatures, Instances finalFeatures, FeatureMatrix matrix, Best best, int index) throws Exception {
+        OnlineKMeans onlineKMeans = new OnlineKMeans();
+        onlineKMeans.setNumClusters(ctx.numClusters);
+        onlineKMeans.setDecay(ctx.warmStartDecay);
+        DistanceFunction df = new EuclideanDistance();
+        // Normalized over all the cells, not only the changed ones
+        df.setInstances(finalFeatures);
+        onlineKMeans.setDistanceFunction(df);
+        Instances changed = warmStart(ctx, onlineKMeans, joinedFeatures, finalFeatures);
+        if(changed == null)
+            return kMeans(ctx, new EuclideanDistance(), finalFeatures, matrix, best, index);
+        MetricsRegistry.Timer timer = MetricsRegistry.getInstance().start(ctx.name, "cluster/onlineKMeans/"+distanceName(df));
+        onlineKMeans.buildClusterer(changed);
+        ClusterEvaluationEx ce = new ClusterEvaluationEx();
+        ce.setClusterer(onlineKMeans);
+        ce.evaluateClusterer(new Instances(finalFeatures), df, matrix);
+        timer.stop(finalFeatures.numInstances(), finalFeatures.numInstances(), 0);
+        System.out.println("*** ["+ctx+"] "+changed.numInstances()+" of "+finalFeatures.numInstances()
+                +" cells changed, "+onlineKMeans);
+        best.offer(ce, index);
+        return ce;
+    }
+
+    /**
+     * Sets the starting centroids of the online k-means to the means of the
+     * clusters of the euclidean k-means saved by a previous run in its
+     * columnar file, and returns the cells that are new or whose features
+     * changed since then, to update them with.
+     *
+     * @return the changed cells, or null if the previous run can't be used
+     */
+    private static Instances warmStart(RunContext ctx, OnlineKMeans clusterer, Instances joinedFeatures, Instances features) throws Exception {
+        File file = new File(ctx.warmStartFileName);
+        String reason = null;
+        ColumnarFile previous = null;
+        int assignment = -1;
+        int[] columns = new int[features.numAttributes()];
+        if(!file.exists())
+            reason = "no "+file;
+        else {
+            previous = ColumnarFile.open(file);
+            CellDictionary dictionary = previous.getCellDictionary();
+            for(int a = 0; a < previous.numAssignments(); a++)
+                if(previous.assignmentName(a).equals("kMeansEuclidean"))
+                    assignment = a;
+            boolean sameFeatures = previous.numFeatures() == columns.length;
+            for(int j = 0; j < columns.length; j++) {
+                columns[j] = previous.featureIndex(features.attribute(j).name());
+                sameFeatures &= columns[j] >= 0;
+            }
+            if(dictionary.getNumRows() != ctx.levelDictionary.getNumRows()
+                    || dictionary.getNumCols() != ctx.levelDictionary.getNumCols())
+                reason = "the grid changed";
+            else if(!sameFeatures)
+                reason = "the features changed";
+            else if(assignment < 0)
+                reason = "no euclidean k-means";
+        }
+        double[][] sums = new double[ctx.numClusters][columns.length];
+        double[] sizes = new double[ctx.numClusters];
+        LongIntHashMap rows = new LongIntHashMap(previous != null? previous.numRows() : 0, -1);
+        for(int row = 0; reason == null && row < previous.numRows(); row++) {
+            int cluster = previous.assignment(assignment, row);
+            if(cluster < 0 || cluster >= ctx.numClusters) {
+                reason = "the number of clusters changed";
+                break;
+            }
+            for(int j = 0; j < columns.length; j++)
+                sums[cluster][j] += previous.feature(columns[j], row);
+            sizes[cluster]++;
+            rows.put(previous.code(row), row);
+        }
+        for(int j = 0; reason == null && j < sizes.length; j++)
+            if(sizes[j] == 0)
+                reason = "cluster "+j+" is empty";
+        if(reason != null) {
+            System.out.println("*** ["+ctx+"] Online KMeans: cold start, "+reason);
+            return null;
+        }
+
+        Instances centroids = new Instances(features, ctx.numClusters);
+        for(int j = 0; j < ctx.numClusters; j++) {
+            for(int a = 0; a < columns.length; a++)
+                sums[j][a] /= sizes[j];
+            centroids.add(new Instance(1.0, sums[j]));
+        }
+        clusterer.setInitialCentroids(centroids, sizes);
+
+        Instances changed = new Instances(features, 0);
+        int cellId = joinedFeatures.attribute("cellId").index();
+        for(int i = 0; i < features.numInstances(); i++) {
+            Instance instance = features.instance(i);
+            int row = rows.get((long) joinedFeatures.instance(i).value(cellId));
+            boolean same = row >= 0;
+            for(int j = 0; same && j < columns.length; j++)
+                same = previous.feature(columns[j], row) == instance.value(j);
+            if(!same)
+                changed.add(instance);
+        }
+        return changed;
+    }
+
+    private ClusterEvaluationEx agglomerative(RunContext ctx, DistanceFunction df, Instances finalFeatures, FeatureMatrix matrix, Best best, int index) throws Exception {
         HierarchicalClusterer clusterer = new HierarchicalClusterer();
-        clusterer.setNumClusters(numClusters);
+        clusterer.setNumClusters(ctx.numClusters);
         clusterer.setDistanceFunction(df);
+        MetricsRegistry.Timer timer = MetricsRegistry.getInstance().start(ctx.name, "cluster/agglomerative/"+distanceName(df));
         clusterer.buildClusterer(finalFeatures);
         ClusterEvaluationEx ce = new ClusterEvaluationEx();
         ce.setClusterer(clusterer);
-        ce.evaluateClusterer(new Instances(finalFeatures), df);
-        if(bestClusterer == null || bestClusterer.getAvgSilhouetteCoefficient() < ce.getAvgSilhouetteCoefficient()) {
-            bestClusterer = ce;
-            classIndex = index;
-        }
+        ce.evaluateClusterer(new Instances(finalFeatures), df, matrix);
+        timer.stop(finalFeatures.numInstances(), finalFeatures.numInstances(), 0);
+        best.offer(ce, index);
         return ce;
     }
     
-    private ClusterEvaluationEx kMeansEval(DistanceFunction df, Instances finalFeatures) throws Exception {
+    private ClusterEvaluationEx kMeansEval(RunContext ctx, DistanceFunction df, Instances finalFeatures) throws Exception {
         SimpleKMeans simpleKMeans = new SimpleKMeans();
         // There's a bug in the default random initializer, so we use 1 = kmeans++
         String options[] = {"-init", "1"};
         simpleKMeans.setOptions(options);
-        simpleKMeans.setNumClusters(numClusters);
+        simpleKMeans.setNumClusters(ctx.numClusters);
         simpleKMeans.setDistanceFunction(df);
         simpleKMeans.setPreserveInstancesOrder(true);
-        Remove remove = new Remove();
-        int removeArray[] = {finalFeatures.classIndex()};
-        remove.setAttributeIndicesArray(removeArray);
-        remove.setInputFormat(finalFeatures);
-        Instances data = Filter.useFilter(finalFeatures, remove);
+        MetricsRegistry.Timer timer = MetricsRegistry.getInstance().start(ctx.name, "classesToClusters/kMeans/"+distanceName(df));
+        Instances data = featuresOnly(finalFeatures, finalFeatures.classIndex());
         simpleKMeans.buildClusterer(data);
         ClusterEvaluationEx ce = new ClusterEvaluationEx();
         ce.setClusterer(simpleKMeans);
         ce.evaluateClusterer(finalFeatures);
+        timer.stop(finalFeatures.numInstances(), finalFeatures.numInstances(), 0);
         return ce;
     }
     
-    private ClusterEvaluationEx agglomerativeEval(DistanceFunction df, Instances finalFeatures) throws Exception {
+    private ClusterEvaluationEx agglomerativeEval(RunContext ctx, DistanceFunction df, Instances finalFeatures) throws Exception {
         HierarchicalClusterer clusterer = new HierarchicalClusterer();
-        clusterer.setNumClusters(numClusters);
+        clusterer.setNumClusters(ctx.numClusters);
         clusterer.setDistanceFunction(df);
-        Remove remove = new Remove();
-        int removeArray[] = {finalFeatures.classIndex()};
-        remove.setAttributeIndicesArray(removeArray);
-        remove.setInputFormat(finalFeatures);
-        Instances data = Filter.useFilter(finalFeatures, remove);
+        MetricsRegistry.Timer timer = MetricsRegistry.getInstance().start(ctx.name, "classesToClusters/agglomerative/"+distanceName(df));
+        Instances data = featuresOnly(finalFeatures, finalFeatures.classIndex());
         clusterer.buildClusterer(data);
         ClusterEvaluationEx ce = new ClusterEvaluationEx();
         ce.setClusterer(clusterer);
         ce.evaluateClusterer(finalFeatures);
+        timer.stop(finalFeatures.numInstances(), finalFeatures.numInstances(), 0);
         return ce;
     }
     
-    public void process() throws Exception {
-        // Load first set and create conditioned features
-        bestClusterer = null;
-        classIndex = -1;
-        Instances pickUps = loadCsv(pickupsFileName);
-        pickUps = cleanData(pickUps);
-        saveCsv(csvOutCleanPickUpFileName, pickUps);
-        pickUps = extractFeatures(pickUps);
-        
-        // Load second set and create conditioned features
-        
-        Instances dropOffs = loadCsv(dropoffsFileName);
-        dropOffs = cleanData(dropOffs);
-        saveCsv(csvOutCleanDropOffFileName, dropOffs);
-        dropOffs = extractFeatures(dropOffs);
-
-        // Join features into one bigger set
+    /**
+     * Clusters the joined features with every algorithm and distance, and
+     * returns a copy of them with the cluster assignments prepended. The
+     * evaluations are logged at once, so that those of runs going on at the
+     * same time don't mix.
+     */
+    public Instances cluster(RunContext ctx, Instances joinedFeatures) throws Exception {
+        return cluster(ctx, joinedFeatures, null);
+    }
 
-        Instances finalFeatures = joinFeatures(pickUps, dropOffs);
-        saveCsv(csvOutExtractFileName, finalFeatures);
+    /**
+     * As cluster(ctx, joinedFeatures), but clustering, and choosing the best
+     * clustering by, the reduced features of the cells, if any. The classes
+     * to clusters evaluations and the features returned are the joined ones.
+     */
+    public Instances cluster(RunContext ctx, Instances joinedFeatures, Instances reducedFeatures) throws Exception {
+        Best best = new Best();
+        Instances finalFeatures = new Instances(joinedFeatures);
+        Instances clusteringInput = featuresOnly(reducedFeatures != null? reducedFeatures : finalFeatures, -1);
+        boolean reduced = reducedFeatures != null;
+        // Silhouettes computed on the float rows of the features, if asked for
+        FeatureMatrix matrix = ctx.featureMatrix != null
+                ? FeatureMatrix.of(reducedFeatures != null? reducedFeatures : finalFeatures, ctx.featureMatrix,
+                        ctx.featureMatrixDir != null? new File(ctx.featureMatrixDir) : null) : null;
 
         // Clustering with different algorithms and distance functions
         
-        System.out.println("*** KMeans with euclidean distance");
-        ClusterEvaluationEx kMeansEuclidean = kMeans(new EuclideanDistance(), finalFeatures, 0);
-        System.out.println("*** Agglomerative with euclidean distance");
-        ClusterEvaluationEx agglomerativeEuclidean = agglomerative(new EuclideanDistance(), finalFeatures, 1);
-        System.out.println("*** KMeans with cosine distance");
-        ClusterEvaluationEx kMeansCosine = kMeans(new CosineDistance(), finalFeatures, 2);
-        System.out.println("*** Agglomerative with cosine distance");
-        ClusterEvaluationEx agglomerativeCosine = agglomerative(new CosineDistance(), finalFeatures, 3);
+        ClusterEvaluationEx kMeansEuclidean, agglomerativeEuclidean, kMeansCosine, agglomerativeCosine;
+        try {
+            System.out.println("*** ["+ctx+"] KMeans with euclidean distance");
+            kMeansEuclidean = ctx.warmStartFileName != null
+                    ? onlineKMeans(ctx, finalFeatures, clusteringInput, matrix, best, 0)
+                    : kMeans(ctx, new EuclideanDistance(), clusteringInput, matrix, best, 0);
+            System.out.println("*** ["+ctx+"] Agglomerative with euclidean distance");
+            agglomerativeEuclidean = agglomerative(ctx, new EuclideanDistance(), clusteringInput, matrix, best, 1);
+            System.out.println("*** ["+ctx+"] KMeans with cosine distance");
+            kMeansCosine = kMeans(ctx, cosineDistance(ctx, reduced), clusteringInput, matrix, best, 2);
+            System.out.println("*** ["+ctx+"] Agglomerative with cosine distance");
+            agglomerativeCosine = agglomerative(ctx, cosineDistance(ctx, reduced), clusteringInput, matrix, best, 3);
+        } finally {
+            if(matrix != null)
+                matrix.close();
+        }
         
         // Add clustering results to dataset
         
-        FastVector fv = new FastVector(numClusters);
-        for(int i = 0; i < numClusters; i++)
+        FastVector fv = new FastVector(ctx.numClusters);
+        for(int i = 0; i < ctx.numClusters; i++)
             fv.addElement(Integer.toString(i));
         Attribute kMeansClusterId = new Attribute("kMeansEuclidean", fv);
         finalFeatures.insertAttributeAt(kMeansClusterId, 0);
@@ -303,37 +552,230 @@ public class App {
         
         // Repeat to perform Classes To Cluster Analysis
         
-        System.out.println("Best clusterer: "+bestClusterer);
-        
-        finalFeatures.setClassIndex(classIndex);
-        System.out.println("*** KMeans with euclidean distance:"+
-            kMeansEval(new EuclideanDistance(), finalFeatures).clusterResultsToString());
-        System.out.println("*** Agglomerative with euclidean distance:"+
-            agglomerativeEval(new EuclideanDistance(), finalFeatures).clusterResultsToString());
-        System.out.println("*** KMeans with cosine distance:"+
-            kMeansEval(new CosineDistance(), finalFeatures).clusterResultsToString());
-        System.out.println("*** Agglomerative with cosine distance:"+
-            agglomerativeEval(new CosineDistance(), finalFeatures).clusterResultsToString());
+        StringBuilder report = new StringBuilder();
+        report.append("["+ctx+"] Best clusterer: "+best.clusterer+"\n");
         
+        finalFeatures.setClassIndex(best.classIndex);
+        report.append("*** ["+ctx+"] KMeans with euclidean distance:"+
+            kMeansEval(ctx, new EuclideanDistance(), finalFeatures).clusterResultsToString()+"\n");
+        report.append("*** ["+ctx+"] Agglomerative with euclidean distance:"+
+            agglomerativeEval(ctx, new EuclideanDistance(), finalFeatures).clusterResultsToString()+"\n");
+        report.append("*** ["+ctx+"] KMeans with cosine distance:"+
+            kMeansEval(ctx, cosineDistance(ctx), finalFeatures).clusterResultsToString()+"\n");
+        report.append("*** ["+ctx+"] Agglomerative with cosine distance:"+
+            agglomerativeEval(ctx, cosineDistance(ctx), finalFeatures).clusterResultsToString());
+        System.out.println(report);
+        return finalFeatures;
+    }
+
+    private static ExecutionPlan.Stage saveCsvStage(ExecutionPlan plan, final RunContext ctx,
+            final CellDictionary dictionary, final String fileName, ExecutionPlan.Stage input) {
+        ExecutionPlan.Stage stage = plan.add("saveCsv", fileName+";"+ctx.gzip, new ExecutionPlan.Task() {
+            public Object run(Object[] inputs) throws Exception {
+                saveCsv(ctx, dictionary, fileName, (Instances) inputs[0]);
+                return null;
+            }
+        }, input);
+        plan.output(FastSaver.fileName(fileName, ctx.gzip), stage);
+        return stage;
+    }
+
+    /**
+     * Loads and cleans the data of a file, adding the stages to the plan.
+     */
+    private static ExecutionPlan.Stage cleanStages(ExecutionPlan plan, final RunContext ctx,
+            final String fileName, String csvOutCleanFileName) {
+        ExecutionPlan.Stage clean = plan.add("clean", fileName+";"+ctx.cleanParams(), new ExecutionPlan.Task() {
+            public Object run(Object[] inputs) throws Exception {
+                return cleanStage(ctx, fileName);
+            }
+        });
+        if(csvOutCleanFileName != null)
+            saveCsvStage(plan, ctx, ctx.cellDictionary, csvOutCleanFileName, clean);
+        return clean;
+    }
+
+    /**
+     * Extracts the features of the data of a file cleaned by cleanStages(),
+     * on the adaptive cells built by cellTree, if any.
+     */
+    private static ExecutionPlan.Stage extractStages(ExecutionPlan plan, final RunContext ctx,
+            final String fileName, ExecutionPlan.Stage clean, ExecutionPlan.Stage cellTree) {
+        ExecutionPlan.Task task = new ExecutionPlan.Task() {
+            public Object run(Object[] inputs) throws Exception {
+                return extractStage(ctx, fileName, (Instances) inputs[0],
+                        inputs.length > 1? (CellTree) inputs[1] : null);
+            }
+        };
+        String params = fileName+";"+ctx.extractParams(null);
+        return cellTree != null? plan.add("extract", params, task, clean, cellTree)
+                : plan.add("extract", params, task, clean);
+    }
+
+    /**
+     * Adds the stages of a run to the plan. Stages with the same parameters
+     * as those of a run added before are merged with them.
+     */
+    private void addToPlan(ExecutionPlan plan, final RunContext ctx) {
+        // Load pick-ups, drop-offs and further feature sets and create conditioned features
+
+        ExecutionPlan.Stage cleanPickUps = cleanStages(plan, ctx, ctx.pickupsFileName, ctx.csvOutCleanPickUpFileName);
+        ExecutionPlan.Stage cleanDropOffs = cleanStages(plan, ctx, ctx.dropoffsFileName, ctx.csvOutCleanDropOffFileName);
+        // Adaptive cells are built on the pick-ups and shared by all the sets
+        ExecutionPlan.Stage cellTree = null;
+        if(ctx.maxCellCount > 0)
+            cellTree = plan.add("cellTree", ctx.cellTreeParams(), new ExecutionPlan.Task() {
+                public Object run(Object[] inputs) throws Exception {
+                    return buildCellTree(ctx, (Instances) inputs[0]);
+                }
+            }, cleanPickUps);
+        List<ExecutionPlan.Stage> features = new ArrayList<ExecutionPlan.Stage>();
+        features.add(extractStages(plan, ctx, ctx.pickupsFileName, cleanPickUps, cellTree));
+        features.add(extractStages(plan, ctx, ctx.dropoffsFileName, cleanDropOffs, cellTree));
+        final List<String> prefixes = new ArrayList<String>(ctx.featureSetFileNames.keySet());
+        for(String fileName: ctx.featureSetFileNames.values())
+            features.add(extractStages(plan, ctx, fileName, cleanStages(plan, ctx, fileName, null), cellTree));
+        final boolean adaptive = cellTree != null;
+        if(adaptive)
+            features.add(cellTree);
+
+        // Join features into one bigger set
+
+        ExecutionPlan.Stage join = plan.add("join", ctx.joinParams(), new ExecutionPlan.Task() {
+            public Object run(Object[] inputs) throws Exception {
+                Map<String, Instances> featureSets = new LinkedHashMap<String, Instances>();
+                for(int i = 0; i < prefixes.size(); i++)
+                    featureSets.put(prefixes.get(i), (Instances) inputs[i + 2]);
+                CellTree cellTree = adaptive? (CellTree) inputs[inputs.length - 1] : null;
+                return joinFeatures(ctx, (Instances) inputs[0], (Instances) inputs[1], featureSets, cellTree);
+            }
+        }, features.toArray(new ExecutionPlan.Stage[features.size()]));
+        saveCsvStage(plan, ctx, ctx.levelDictionary, ctx.csvOutExtractFileName, join);
+
+        // Clustering with different algorithms and distance functions
+
+        ExecutionPlan.Task clusterTask = new ExecutionPlan.Task() {
+            public Object run(Object[] inputs) throws Exception {
+                return cluster(ctx, (Instances) inputs[0], inputs.length > 1? (Instances) inputs[1] : null);
+            }
+        };
+        ExecutionPlan.Stage cluster;
+        if(ctx.reduceMode != null) {
+            ExecutionPlan.Stage reduce = plan.add("reduce", ctx.reduceParams(), new ExecutionPlan.Task() {
+                public Object run(Object[] inputs) throws Exception {
+                    return reduceFeatures(ctx, (Instances) inputs[0]);
+                }
+            }, join);
+            cluster = plan.add("cluster", ctx.clusterParams(), clusterTask, join, reduce);
+        } else
+            cluster = plan.add("cluster", ctx.clusterParams(), clusterTask, join);
+
         // Export to filesystem
 
-        saveCsv(csvOutFileName, finalFeatures);
-        saveArff(arffOutFileName, finalFeatures);
+        saveCsvStage(plan, ctx, ctx.levelDictionary, ctx.csvOutFileName, cluster);
+        ExecutionPlan.Stage saveArff = plan.add("saveArff", ctx.arffOutFileName+";"+ctx.gzip, new ExecutionPlan.Task() {
+            public Object run(Object[] inputs) throws Exception {
+                saveArff(ctx, ctx.arffOutFileName, (Instances) inputs[0]);
+                return null;
+            }
+        }, cluster);
+        plan.output(FastSaver.fileName(ctx.arffOutFileName, ctx.gzip), saveArff);
+        if(ctx.colOutFileName != null) {
+            ExecutionPlan.Stage saveColumnar = plan.add("saveColumnar", ctx.colOutFileName, new ExecutionPlan.Task() {
+                public Object run(Object[] inputs) throws Exception {
+                    Instances dataSet = (Instances) inputs[0];
+                    MetricsRegistry.Timer timer = MetricsRegistry.getInstance().start(ctx.name, "save/"+ctx.colOutFileName);
+                    ColumnarFile.write(ctx.colOutFileName, dataSet, ctx.levelDictionary);
+                    timer.stop(dataSet.numInstances(), dataSet.numInstances(), 0);
+                    return null;
+                }
+            }, cluster);
+            plan.output(ctx.colOutFileName, saveColumnar);
+        }
+        if(ctx.modelOutFileName != null) {
+            ExecutionPlan.Stage saveModel = plan.add("saveModel", ctx.modelOutFileName, new ExecutionPlan.Task() {
+                public Object run(Object[] inputs) throws Exception {
+                    saveModel(ctx, ctx.modelOutFileName, (Instances) inputs[0]);
+                    return null;
+                }
+            }, cluster);
+            plan.output(ctx.modelOutFileName, saveModel);
+        }
+        if(ctx.lookupOutFileName != null) {
+            ExecutionPlan.Task task = new ExecutionPlan.Task() {
+                public Object run(Object[] inputs) throws Exception {
+                    Instances dataSet = (Instances) inputs[0];
+                    MetricsRegistry.Timer timer = MetricsRegistry.getInstance().start(ctx.name, "save/"+ctx.lookupOutFileName);
+                    ClusterLookup.write(ctx.lookupOutFileName, dataSet, ctx.cellDictionary, ctx.level,
+                            adaptive? (CellTree) inputs[1] : null);
+                    timer.stop(dataSet.numInstances(), dataSet.numInstances(), 0);
+                    System.out.println("*** ["+ctx+"] LOOKUP SAVED ("+dataSet.classAttribute().name()+")");
+                    return null;
+                }
+            };
+            ExecutionPlan.Stage saveLookup = adaptive
+                    ? plan.add("saveLookup", ctx.lookupOutFileName, task, cluster, cellTree)
+                    : plan.add("saveLookup", ctx.lookupOutFileName, task, cluster);
+            plan.output(ctx.lookupOutFileName, saveLookup);
+        }
+    }
+
+    /**
+     * Runs the pipeline of many runs at once on a pool of threads, running
+     * only once the stages they share.
+     *
+     * @param runs the settings of the runs
+     * @param executor the pool running the stages
+     * @throws Exception if a stage fails
+     */
+    public void process(List<RunContext> runs, ExecutorService executor) throws Exception {
+        ExecutionPlan plan = new ExecutionPlan();
+        for(RunContext ctx: runs)
+            addToPlan(plan, ctx);
+        plan.execute(executor);
+        Set<String> metricsFileNames = new LinkedHashSet<String>();
+        for(RunContext ctx: runs)
+            if(ctx.metricsFileName != null)
+                metricsFileNames.add(ctx.metricsFileName);
+        for(String fileName: metricsFileNames)
+            MetricsRegistry.getInstance().dump(fileName);
     }
 
     public void run(String args[]) throws Exception {
-        
+        if(args.length > 0 && args[0].equals("-stream")) {
+            // Streaming mode: a single run, fed by the sources of its properties
+            RunContext ctx = args.length > 1
+                    ? new RunContext(new File(args[1]).getName().replaceFirst("\\.properties$", ""),
+                            readProps(new FileInputStream(args[1])))
+                    : new RunContext("firstRun", readProps(getClass().getResourceAsStream("/resources/firstRun.properties")));
+            new StreamingRunner(ctx).run();
+            return;
+        }
+        if(args.length > 0 && args[0].equals("-assign")) {
+            // Labels new feature files with a saved model
+            ClusterAssigner.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if(args.length > 0 && args[0].equals("-clusterMatrix")) {
+            // Clusters the columnar file of a run off the heap
+            MatrixClusterer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        List<RunContext> runs = new ArrayList<RunContext>();
         if(args.length == 0) {
-            InputStream is = getClass().getResourceAsStream("/resources/firstRun.properties");
-            loadProps(is);
-            process();
-            is = getClass().getResourceAsStream("/resources/secondRun.properties");
-            loadProps(is);
-            process();
+            runs.add(new RunContext("firstRun", readProps(getClass().getResourceAsStream("/resources/firstRun.properties"))));
+            runs.add(new RunContext("secondRun", readProps(getClass().getResourceAsStream("/resources/secondRun.properties"))));
         } else {
-            InputStream is = new FileInputStream(args[0]);
-            loadProps(is);
-            process();
+            for(String fileName: args)
+                runs.add(new RunContext(new File(fileName).getName().replaceFirst("\\.properties$", ""),
+                        readProps(new FileInputStream(fileName))));
+        }
+        int numThreads = Integer.getInteger("threads", Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            process(runs, executor);
+        } finally {
+            executor.shutdown();
         }
     }
 
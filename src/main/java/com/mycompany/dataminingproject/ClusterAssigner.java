@@ -0,0 +1,208 @@
+package com.mycompany.dataminingproject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PushbackInputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Labels the cells of feature files shaped as the output of GridJoin, i.e.
+ * with a cellId column and the features of a ClusterModel, writing the
+ * cellId and the cluster of every cell. Lines are read in blocks, and the
+ * lines of a block are parsed and assigned by many threads at once.
+ * <p/>
+ * Usage: ClusterAssigner model features.csv[.gz] out.csv [threads]
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ */
+public class ClusterAssigner {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int BLOCK_SIZE = 1 << 16;
+
+    private final ClusterModel model;
+    private final ExecutorService executor;
+    private final int numTasks;
+
+    /**
+     * @param model the model assigning the cells
+     * @param executor the pool parsing and assigning the lines
+     * @param numTasks the number of tasks every block is split into
+     */
+    public ClusterAssigner(ClusterModel model, ExecutorService executor, int numTasks) {
+        this.model = model;
+        this.executor = executor;
+        this.numTasks = numTasks;
+    }
+
+    private static Reader open(File file) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(new FileInputStream(file), 2);
+        byte[] magic = new byte[2];
+        int read = in.read(magic);
+        if (read > 0) {
+            in.unread(magic, 0, read);
+        }
+        // gzip is told by its magic number, whatever the name of the file
+        InputStream is = read == 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b
+                ? new GZIPInputStream(in, BUFFER_SIZE) : in;
+        return new InputStreamReader(is, "UTF-8");
+    }
+
+    /**
+     * Splits a CSV line at the commas outside quotes.
+     *
+     * @param line the line
+     * @param starts the start of every field, filled in
+     * @return the number of fields, at most starts.length; the end of a field
+     * is the start of the next one minus 1, or the end of the line
+     */
+    static int split(String line, int[] starts) {
+        int n = 0;
+        char quote = 0;
+        starts[n++] = 0;
+        for (int i = 0; i < line.length() && n < starts.length; i++) {
+            char ch = line.charAt(i);
+            if (quote != 0) {
+                if (ch == quote) {
+                    quote = 0;
+                }
+            } else if (ch == '\'' || ch == '"') {
+                quote = ch;
+            } else if (ch == ',') {
+                starts[n++] = i + 1;
+            }
+        }
+        return n;
+    }
+
+    private static String field(String line, int[] starts, int numFields, int field) {
+        int end = field + 1 < numFields ? starts[field + 1] - 1 : line.length();
+        return line.substring(starts[field], end).trim();
+    }
+
+    /**
+     * Labels the cells of a feature file.
+     *
+     * @param in the feature file, possibly gzip compressed
+     * @param out the file to write
+     * @return the number of cells labelled
+     * @throws Exception if a file can't be read or written, or the features
+     * of the model are missing
+     */
+    public long assign(File in, File out) throws Exception {
+        BufferedReader reader = new BufferedReader(open(in), BUFFER_SIZE);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(out), "UTF-8"), BUFFER_SIZE);
+        try {
+            String header = reader.readLine();
+            if (header == null) {
+                throw new IOException("Empty file: " + in);
+            }
+            int[] starts = new int[header.length() + 1];
+            final int numFields = split(header, starts);
+            List<String> names = new ArrayList<String>();
+            for (int f = 0; f < numFields; f++) {
+                names.add(field(header, starts, numFields, f));
+            }
+            final int cellId = names.indexOf("cellId");
+            final int[] columns = new int[model.numFeatures()];
+            for (int j = 0; j < columns.length; j++) {
+                columns[j] = names.indexOf(model.featureName(j));
+                if (columns[j] < 0) {
+                    throw new IOException("No feature " + model.featureName(j) + " in " + in);
+                }
+            }
+            if (cellId < 0) {
+                throw new IOException("No cellId in " + in);
+            }
+            writer.write("cellId," + model.getName() + "\n");
+
+            final String[] lines = new String[BLOCK_SIZE];
+            final int[] clusters = new int[BLOCK_SIZE];
+            long numCells = 0;
+            int numLines;
+            do {
+                numLines = 0;
+                String line;
+                while (numLines < BLOCK_SIZE && (line = reader.readLine()) != null) {
+                    if (line.length() > 0) {
+                        lines[numLines++] = line;
+                    }
+                }
+                List<Future<?>> tasks = new ArrayList<Future<?>>();
+                int step = (numLines + numTasks - 1) / numTasks;
+                for (int from = 0; from < numLines; from += step) {
+                    final int start = from;
+                    final int end = Math.min(numLines, from + step);
+                    tasks.add(executor.submit(new Callable<Object>() {
+                        public Object call() throws Exception {
+                            int[] starts = new int[numFields + 1];
+                            double[] features = new double[columns.length];
+                            for (int i = start; i < end; i++) {
+                                int n = split(lines[i], starts);
+                                if (n != numFields) {
+                                    throw new IOException("Expected " + numFields + " fields: " + lines[i]);
+                                }
+                                for (int j = 0; j < columns.length; j++) {
+                                    String value = field(lines[i], starts, n, columns[j]);
+                                    features[j] = value.equals("?") ? Double.NaN : Double.parseDouble(value);
+                                }
+                                clusters[i] = model.assign(features);
+                            }
+                            return null;
+                        }
+                    }));
+                }
+                for (Future<?> task : tasks) {
+                    task.get();
+                }
+                int[] fieldStarts = new int[cellId + 2];
+                for (int i = 0; i < numLines; i++) {
+                    int n = split(lines[i], fieldStarts);
+                    writer.write(field(lines[i], fieldStarts, n, cellId));
+                    writer.write(',');
+                    writer.write(Integer.toString(clusters[i]));
+                    writer.write('\n');
+                }
+                numCells += numLines;
+            } while (numLines == BLOCK_SIZE);
+            return numCells;
+        } finally {
+            reader.close();
+            writer.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: ClusterAssigner model features.csv[.gz] out.csv [threads]");
+            System.exit(1);
+        }
+        int numThreads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        ClusterModel model = ClusterModel.read(new File(args[0]));
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            long start = System.nanoTime();
+            long numCells = new ClusterAssigner(model, executor, numThreads).assign(new File(args[1]), new File(args[2]));
+            System.out.println("*** ASSIGNED " + numCells + " cells to " + model.numClusters() + " clusters of "
+                    + model.getName() + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
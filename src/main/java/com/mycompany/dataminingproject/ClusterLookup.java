@@ -0,0 +1,202 @@
+package com.mycompany.dataminingproject;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import weka.core.CellDictionary;
+import weka.core.CellTree;
+import weka.core.Instances;
+
+/**
+ * Dense table of the cluster of every cell of the grid, to find the cluster
+ * of a location in constant time. The location is projected on the grid
+ * cleaned by GridGpsArea with the same CellDictionary math, and its row and
+ * column, shifted to the level clustered, index the table. Lookups allocate
+ * nothing, and the table is memory-mapped from its file.
+ * <p/>
+ * Layout, big-endian:
+ * <pre>
+ * int magic, int version
+ * double nwLat, nwLng, seLat, seLng, cellXSizeInMeters, cellYSizeInMeters
+ * int level, int numRows, int numCols, int numClusters
+ * UTF name of the clustering
+ * padding to 8 bytes
+ * short[numRows * numCols] cluster of every cell, row by row, -1 for none
+ * </pre>
+ * The area and cell sizes are those of the grid cell; numRows and numCols
+ * those of the grid rolled up to the level.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ */
+public class ClusterLookup {
+
+    private static final int MAGIC = 0x47524c4b;
+    private static final int VERSION = 1;
+
+    private final CellDictionary dictionary;
+    private final int level;
+    private final int numRows;
+    private final int numCols;
+    private final int numClusters;
+    private final String name;
+    private final ShortBuffer table;
+
+    private ClusterLookup(CellDictionary dictionary, int level, int numRows, int numCols,
+            int numClusters, String name, ShortBuffer table) {
+        this.dictionary = dictionary;
+        this.level = level;
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.numClusters = numClusters;
+        this.name = name;
+        this.table = table;
+    }
+
+    /**
+     * Writes the table of the clustering assigned by the class attribute of a
+     * data set with a numeric cellId attribute, as returned by App.cluster().
+     *
+     * @param fileName the file to write
+     * @param dataSet the data set
+     * @param dictionary the grid cell
+     * @param level the level of the cells of the data set, see
+     * CellDictionary.coarser()
+     * @param cellTree the adaptive cells of the data set, coded by their
+     * leaf, or null
+     * @throws IOException if the file can't be written
+     */
+    public static void write(String fileName, Instances dataSet, CellDictionary dictionary,
+            int level, CellTree cellTree) throws IOException {
+        CellDictionary levelDictionary = dictionary.coarser(level);
+        short[] clusters = new short[levelDictionary.size()];
+        Arrays.fill(clusters, (short) -1);
+        int cellIdIndex = dataSet.attribute("cellId").index();
+        for (int i = 0; i < dataSet.numInstances(); i++) {
+            if (!dataSet.instance(i).classIsMissing()) {
+                clusters[(int) dataSet.instance(i).value(cellIdIndex)] = (short) dataSet.instance(i).classValue();
+            }
+        }
+        if (cellTree != null) {
+            // Every grid cell takes the cluster of its leaf
+            short[] leaves = clusters.clone();
+            for (int code = 0; code < clusters.length; code++) {
+                clusters[code] = leaves[cellTree.leaf(code)];
+            }
+        }
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(fileName), 1 << 20));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeDouble(dictionary.getNwLat());
+            out.writeDouble(dictionary.getNwLng());
+            out.writeDouble(dictionary.getSeLat());
+            out.writeDouble(dictionary.getSeLng());
+            out.writeDouble(dictionary.getCellXSizeInMeters());
+            out.writeDouble(dictionary.getCellYSizeInMeters());
+            out.writeInt(level);
+            out.writeInt(levelDictionary.getNumRows());
+            out.writeInt(levelDictionary.getNumCols());
+            out.writeInt(dataSet.classAttribute().numValues());
+            out.writeUTF(dataSet.classAttribute().name());
+            while (out.size() % 8 != 0) {
+                out.writeByte(0);
+            }
+            for (short cluster : clusters) {
+                out.writeShort(cluster);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Maps a file written by write().
+     *
+     * @param file the file to map
+     * @return the table
+     * @throws IOException if the file can't be read or is not a table
+     */
+    public static ClusterLookup open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.readInt() != MAGIC || raf.readInt() != VERSION) {
+                throw new IOException("Not a cluster lookup table: " + file);
+            }
+            CellDictionary dictionary = new CellDictionary(raf.readDouble(), raf.readDouble(),
+                    raf.readDouble(), raf.readDouble(), raf.readDouble(), raf.readDouble());
+            int level = raf.readInt();
+            int numRows = raf.readInt();
+            int numCols = raf.readInt();
+            int numClusters = raf.readInt();
+            String name = raf.readUTF();
+            long position = (raf.getFilePointer() + 7) & ~7L;
+            ShortBuffer table = raf.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    position, 2L * numRows * numCols).asShortBuffer();
+            return new ClusterLookup(dictionary, level, numRows, numCols, numClusters, name, table);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns the cluster of a location.
+     *
+     * @param lat the latitude
+     * @param lng the longitude
+     * @return the cluster, or -1 if the location is outside the area or its
+     * cell was not clustered
+     */
+    public int cluster(double lat, double lng) {
+        if (!dictionary.contains(lat, lng)) {
+            return -1;
+        }
+        return cluster(dictionary.row(lat) >> level, dictionary.col(lng) >> level);
+    }
+
+    /**
+     * Returns the cluster of a cell of the level.
+     *
+     * @param row the row of the cell
+     * @param col the column of the cell
+     * @return the cluster, or -1 if the cell is outside the grid or was not
+     * clustered
+     */
+    public int cluster(int row, int col) {
+        if (row < 0 || row >= numRows || col < 0 || col >= numCols) {
+            return -1;
+        }
+        return table.get(row * numCols + col);
+    }
+
+    public CellDictionary getCellDictionary() {
+        return dictionary;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumCols() {
+        return numCols;
+    }
+
+    public int getNumClusters() {
+        return numClusters;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
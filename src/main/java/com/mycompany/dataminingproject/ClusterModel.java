@@ -0,0 +1,460 @@
+package com.mycompany.dataminingproject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import weka.core.Attribute;
+import weka.core.CentroidTree;
+import weka.core.DistanceKernel;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * A clustering reduced to what is needed to label new cells: the centroid of
+ * every cluster, the distance, and the ranges the euclidean distance
+ * normalizes the features over. New cells go to the cluster with the nearest
+ * centroid, the first one on ties; the centroids are the means of the
+ * clusters, so for agglomerative clusterings this approximates the
+ * assignments they would make.
+ * <p/>
+ * Layout, big-endian:
+ * <pre>
+ * int magic, int version
+ * UTF name of the clustering
+ * UTF distance, boolean normalize, boolean unitLength, boolean splitMax
+ * int numFeatures, int numClusters
+ * UTF name of every feature
+ * double min and max of every feature
+ * double[numFeatures] centroid of every cluster
+ * </pre>
+ * Missing values of a cell are left out of its distances; cells whose
+ * cosine distance is undefined, as they are all zeros, go to cluster 0. With
+ * many clusters, the nearest centroid is searched in a CentroidTree;
+ * otherwise the distances to all the centroids are computed at once by a
+ * DistanceKernel.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ */
+public class ClusterModel {
+
+    private static final int MAGIC = 0x47524d44;
+    private static final int VERSION = 1;
+    /** least number of clusters searched with a CentroidTree */
+    static final int MIN_TREE_CLUSTERS = 16;
+
+    public enum Distance {
+        /** euclidean distance of the features scaled to [0, 1] by their ranges */
+        EUCLIDEAN,
+        /** one minus the cosine similarity, see CosineDistance */
+        COSINE
+    }
+
+    private final String name;
+    private final Distance distance;
+    private final boolean normalize;
+    private final boolean unitLength;
+    private final boolean splitMax;
+    private final String[] featureNames;
+    private final double[] min;
+    private final double[] max;
+    /** centroids row by row */
+    private final double[] centroids;
+    private final int numClusters;
+    /** 1 / width of every range, 0 for features with a single value */
+    private final double[] scale;
+    /** 0 for up features, 1 for dn features, -1 for the others */
+    private final int[] half;
+    /** lengths of the centroids, of their up and dn halves with splitMax */
+    private final double[][] lengths;
+    /** index of the centroids, null for a linear scan */
+    private final CentroidTree tree;
+    private final CentroidTree.Metric metric;
+    /** the kernel and distances of the linear scan of every thread */
+    private final ThreadLocal<Scan> scans = new ThreadLocal<Scan>() {
+        @Override
+        protected Scan initialValue() {
+            return new Scan();
+        }
+    };
+
+    /**
+     * The distances from a cell to all the centroids, as the model computes
+     * them one at a time. A kernel keeps the cell it is given, so every
+     * thread assigning cells has its own.
+     */
+    private class Scan {
+
+        final DistanceKernel kernel;
+        final double[] distances = new double[numClusters];
+
+        Scan() {
+            int d = featureNames.length;
+            if (distance == Distance.EUCLIDEAN) {
+                kernel = DistanceKernel.ofPoints(centroids, d, DistanceKernel.Type.SQUARED_EUCLIDEAN, scale, false, null);
+                return;
+            }
+            boolean[][] subsets = null;
+            if (splitMax) {
+                subsets = new boolean[2][d];
+                for (int j = 0; j < d; j++) {
+                    if (half[j] >= 0) {
+                        subsets[half[j]][j] = true;
+                    }
+                }
+            }
+            kernel = DistanceKernel.ofPoints(centroids, d, DistanceKernel.Type.COSINE, null, unitLength, subsets);
+        }
+    }
+
+    private ClusterModel(String name, Distance distance, boolean normalize, boolean unitLength,
+            boolean splitMax, String[] featureNames, double[] min, double[] max, double[] centroids) {
+        this.name = name;
+        this.distance = distance;
+        this.normalize = normalize;
+        this.unitLength = unitLength;
+        this.splitMax = splitMax;
+        this.featureNames = featureNames;
+        this.min = min;
+        this.max = max;
+        this.centroids = centroids;
+        int d = featureNames.length;
+        this.numClusters = d > 0 ? centroids.length / d : 0;
+        scale = new double[d];
+        half = new int[d];
+        for (int j = 0; j < d; j++) {
+            scale[j] = normalize && max[j] > min[j] ? 1 / (max[j] - min[j]) : normalize ? 0 : 1;
+            half[j] = featureNames[j].startsWith("up") ? 0 : featureNames[j].startsWith("dn") ? 1 : -1;
+        }
+        lengths = new double[3][numClusters];
+        for (int c = 0; c < numClusters; c++) {
+            for (int j = 0; j < d; j++) {
+                double v = centroids[c * d + j];
+                lengths[2][c] += v * v;
+                if (half[j] >= 0) {
+                    lengths[half[j]][c] += v * v;
+                }
+            }
+        }
+        metric = distance == Distance.EUCLIDEAN ? CentroidTree.Metric.SQUARED_EUCLIDEAN
+                : splitMax ? null : unitLength ? CentroidTree.Metric.ONE_MINUS_DOT
+                : CentroidTree.Metric.COSINE_OF_UNIT;
+        tree = metric != null && numClusters >= MIN_TREE_CLUSTERS ? buildTree() : null;
+    }
+
+    /**
+     * Indexes the centroids in the space the tree bounds the distance in,
+     * returning null if some can't be, as they are null vectors.
+     */
+    private CentroidTree buildTree() {
+        int d = featureNames.length;
+        double[][] points = new double[numClusters][];
+        for (int c = 0; c < numClusters; c++) {
+            points[c] = new double[d];
+            if (metric == CentroidTree.Metric.COSINE_OF_UNIT && lengths[2][c] == 0) {
+                return null;
+            }
+            for (int j = 0; j < d; j++) {
+                points[c][j] = toTreeSpace(centroids[c * d + j], j, lengths[2][c]);
+            }
+        }
+        return new CentroidTree(points);
+    }
+
+    /**
+     * Maps a value to the space of the tree: euclidean distances are
+     * computed on scaled values, cosine ones on unit vectors.
+     */
+    private double toTreeSpace(double value, int feature, double length) {
+        switch (metric) {
+            case SQUARED_EUCLIDEAN:
+                return value * scale[feature];
+            case COSINE_OF_UNIT:
+                return value / Math.sqrt(length);
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * Builds the model of the clustering assigned by the class attribute of a
+     * data set, as added by App.cluster(). The features are the numeric
+     * attributes apart from cellId, latitude and longitude.
+     *
+     * @param dataSet the data set, with the cluster of every cell as class
+     * @param distance the distance of the clustering
+     * @param unitLength true if the cells have unit length, see CosineDistance
+     * @param splitMax true for the largest cosine distance of the up and dn
+     * features, see CosineDistance
+     * @return the model
+     */
+    public static ClusterModel build(Instances dataSet, Distance distance, boolean unitLength, boolean splitMax) {
+        Attribute cluster = dataSet.classAttribute();
+        List<Integer> indices = new ArrayList<Integer>();
+        for (int j = 0; j < dataSet.numAttributes(); j++) {
+            Attribute a = dataSet.attribute(j);
+            if (j != dataSet.classIndex() && a.isNumeric() && !ColumnarFile.isDerived(a)) {
+                indices.add(j);
+            }
+        }
+        int d = indices.size();
+        int k = cluster.numValues();
+        String[] featureNames = new String[d];
+        double[] min = new double[d];
+        double[] max = new double[d];
+        double[] sums = new double[k * d];
+        int[][] counts = new int[k][d];
+        for (int j = 0; j < d; j++) {
+            featureNames[j] = dataSet.attribute(indices.get(j)).name();
+            min[j] = Double.NaN;
+            max[j] = Double.NaN;
+        }
+        for (int i = 0; i < dataSet.numInstances(); i++) {
+            Instance instance = dataSet.instance(i);
+            if (instance.classIsMissing()) {
+                continue;
+            }
+            int c = (int) instance.classValue();
+            for (int j = 0; j < d; j++) {
+                double v = instance.value(indices.get(j));
+                if (Double.isNaN(v)) {
+                    continue;
+                }
+                // NaN compares false, so the first value sets the range
+                if (!(v >= min[j])) {
+                    min[j] = v;
+                }
+                if (!(v <= max[j])) {
+                    max[j] = v;
+                }
+                sums[c * d + j] += v;
+                counts[c][j]++;
+            }
+        }
+        for (int c = 0; c < k; c++) {
+            for (int j = 0; j < d; j++) {
+                sums[c * d + j] = counts[c][j] > 0 ? sums[c * d + j] / counts[c][j] : 0;
+            }
+        }
+        return new ClusterModel(cluster.name(), distance, distance == Distance.EUCLIDEAN,
+                unitLength, splitMax, featureNames, min, max, sums);
+    }
+
+    /**
+     * Writes the model.
+     *
+     * @param fileName the file to write
+     * @throws IOException if the file can't be written
+     */
+    public void write(String fileName) throws IOException {
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(name);
+            out.writeUTF(distance.name());
+            out.writeBoolean(normalize);
+            out.writeBoolean(unitLength);
+            out.writeBoolean(splitMax);
+            out.writeInt(featureNames.length);
+            out.writeInt(numClusters);
+            for (String featureName : featureNames) {
+                out.writeUTF(featureName);
+            }
+            for (int j = 0; j < featureNames.length; j++) {
+                out.writeDouble(min[j]);
+                out.writeDouble(max[j]);
+            }
+            for (double v : centroids) {
+                out.writeDouble(v);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads a model written by write().
+     *
+     * @param file the file to read
+     * @return the model
+     * @throws IOException if the file can't be read or is not a model
+     */
+    public static ClusterModel read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a cluster model: " + file);
+            }
+            String name = in.readUTF();
+            Distance distance = Distance.valueOf(in.readUTF());
+            boolean normalize = in.readBoolean();
+            boolean unitLength = in.readBoolean();
+            boolean splitMax = in.readBoolean();
+            String[] featureNames = new String[in.readInt()];
+            double[] centroids = new double[in.readInt() * featureNames.length];
+            double[] min = new double[featureNames.length];
+            double[] max = new double[featureNames.length];
+            for (int j = 0; j < featureNames.length; j++) {
+                featureNames[j] = in.readUTF();
+            }
+            for (int j = 0; j < featureNames.length; j++) {
+                min[j] = in.readDouble();
+                max[j] = in.readDouble();
+            }
+            for (int i = 0; i < centroids.length; i++) {
+                centroids[i] = in.readDouble();
+            }
+            return new ClusterModel(name, distance, normalize, unitLength, splitMax,
+                    featureNames, min, max, centroids);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns the cluster of a cell, the one with the nearest centroid. With
+     * many clusters they are searched in a CentroidTree, with the same result
+     * as a linear scan. Models can be used by many threads at once.
+     *
+     * @param features the features of the cell, in the order of the model
+     * @return the cluster
+     */
+    public int assign(final double[] features) {
+        if (tree != null) {
+            double length = 0;
+            for (double v : features) {
+                length += v * v;
+            }
+            // Missing values and null vectors are left to the linear scan
+            if (!Double.isNaN(length) && (length > 0 || metric != CentroidTree.Metric.COSINE_OF_UNIT)) {
+                double[] point = new double[features.length];
+                for (int j = 0; j < point.length; j++) {
+                    point[j] = toTreeSpace(features[j], j, length);
+                }
+                return tree.nearest(point, metric, new CentroidTree.Distance() {
+                    public double distance(int centroid) {
+                        return ClusterModel.this.distance == Distance.EUCLIDEAN
+                                ? squaredEuclidean(features, centroid) : cosine(features, centroid);
+                    }
+                });
+            }
+        }
+        return linearAssign(features);
+    }
+
+    /**
+     * Returns the cluster with the nearest centroid, scanning all of them.
+     * The distances are computed at once by the kernel of the thread, or one
+     * centroid at a time if some features are missing, as those are left
+     * out. Allocates nothing once the thread has assigned a cell.
+     */
+    int linearAssign(double[] features) {
+        double[] distances = null;
+        if (!hasMissing(features)) {
+            Scan scan = scans.get();
+            scan.kernel.toPoints(features, scan.distances);
+            distances = scan.distances;
+        }
+        int best = 0;
+        double bestDistance = Double.MAX_VALUE;
+        for (int c = 0; c < numClusters; c++) {
+            double distance = distances != null ? distances[c]
+                    : this.distance == Distance.EUCLIDEAN ? squaredEuclidean(features, c) : cosine(features, c);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    private static boolean hasMissing(double[] features) {
+        for (double v : features) {
+            if (Double.isNaN(v)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private double squaredEuclidean(double[] features, int c) {
+        int d = featureNames.length;
+        int base = c * d;
+        double sum = 0;
+        for (int j = 0; j < d; j++) {
+            double v = features[j];
+            if (!Double.isNaN(v)) {
+                double diff = (v - centroids[base + j]) * scale[j];
+                sum += diff * diff;
+            }
+        }
+        return sum;
+    }
+
+    private double cosine(double[] features, int c) {
+        int d = featureNames.length;
+        int base = c * d;
+        if (splitMax) {
+            double upProduct = 0, upLength = 0, dnProduct = 0, dnLength = 0;
+            for (int j = 0; j < d; j++) {
+                double v = features[j];
+                if (Double.isNaN(v)) {
+                    continue;
+                }
+                if (half[j] == 0) {
+                    upProduct += v * centroids[base + j];
+                    upLength += v * v;
+                } else if (half[j] == 1) {
+                    dnProduct += v * centroids[base + j];
+                    dnLength += v * v;
+                }
+            }
+            return Math.max(1 - upProduct / Math.sqrt(upLength * lengths[0][c]),
+                    1 - dnProduct / Math.sqrt(dnLength * lengths[1][c]));
+        }
+        double product = 0, length = 0;
+        for (int j = 0; j < d; j++) {
+            double v = features[j];
+            if (Double.isNaN(v)) {
+                continue;
+            }
+            product += v * centroids[base + j];
+            length += v * v;
+        }
+        return unitLength ? 1 - product : 1 - product / Math.sqrt(length * lengths[2][c]);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Distance getDistance() {
+        return distance;
+    }
+
+    public int numFeatures() {
+        return featureNames.length;
+    }
+
+    public String featureName(int feature) {
+        return featureNames[feature];
+    }
+
+    public int numClusters() {
+        return numClusters;
+    }
+
+    public double centroid(int cluster, int feature) {
+        return centroids[cluster * featureNames.length + feature];
+    }
+}
@@ -0,0 +1,250 @@
+package com.mycompany.dataminingproject;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import weka.core.Attribute;
+import weka.core.CellDictionary;
+import weka.core.Instances;
+
+/**
+ * Binary columnar store of a feature set: the cell dictionary, the cell
+ * code of every row, the feature matrix and the cluster assignments. Columns
+ * are written one after the other, each aligned to 8 bytes, so that a file
+ * can be memory-mapped back and read without any parsing.
+ * <p/>
+ * Layout, big-endian:
+ * <pre>
+ * int magic, int version
+ * double nwLat, nwLng, seLat, seLng, cellXSizeInMeters, cellYSizeInMeters
+ * int numRows, int numFeatures, int numAssignments
+ * UTF name of every feature, then of every assignment
+ * padding to 8 bytes
+ * int[numRows] cell codes, padding to 8 bytes
+ * double[numRows] for every feature
+ * int[numRows] for every assignment, each padded to 8 bytes
+ * </pre>
+ * Numeric attributes are features, apart from cellId and the latitude and
+ * longitude derived from it; nominal attributes, like the cluster ids added by
+ * App, are assignments stored as value indices.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ */
+public class ColumnarFile {
+
+    private static final int MAGIC = 0x47524443;
+    private static final int VERSION = 1;
+
+    private final CellDictionary dictionary;
+    private final int numRows;
+    private final String[] featureNames;
+    private final String[] assignmentNames;
+    private final IntBuffer codes;
+    private final DoubleBuffer[] features;
+    private final IntBuffer[] assignments;
+
+    private ColumnarFile(CellDictionary dictionary, int numRows, String[] featureNames,
+            String[] assignmentNames, IntBuffer codes, DoubleBuffer[] features, IntBuffer[] assignments) {
+        this.dictionary = dictionary;
+        this.numRows = numRows;
+        this.featureNames = featureNames;
+        this.assignmentNames = assignmentNames;
+        this.codes = codes;
+        this.features = features;
+        this.assignments = assignments;
+    }
+
+    static boolean isDerived(Attribute a) {
+        return a.name().equals("cellId") || a.name().equals("latitude") || a.name().equals("longitude");
+    }
+
+    private static void padHeader(DataOutputStream out) throws IOException {
+        while (out.size() % 8 != 0) {
+            out.writeByte(0);
+        }
+    }
+
+    private static void padColumn(DataOutputStream out, int numRows) throws IOException {
+        if (numRows % 2 != 0) {
+            out.writeInt(0);
+        }
+    }
+
+    /**
+     * Writes a data set with a numeric cellId attribute.
+     *
+     * @param fileName the file to write
+     * @param dataSet the data set
+     * @param dictionary the dictionary of the cell codes
+     * @throws IOException if the file can't be written
+     */
+    public static void write(String fileName, Instances dataSet, CellDictionary dictionary) throws IOException {
+        int cellIdIndex = dataSet.attribute("cellId").index();
+        List<Integer> featureIndices = new ArrayList<Integer>();
+        List<Integer> assignmentIndices = new ArrayList<Integer>();
+        for (int j = 0; j < dataSet.numAttributes(); j++) {
+            Attribute a = dataSet.attribute(j);
+            if (a.isNumeric() && !isDerived(a)) {
+                featureIndices.add(j);
+            } else if (a.isNominal()) {
+                assignmentIndices.add(j);
+            }
+        }
+        int n = dataSet.numInstances();
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(fileName), 1 << 20));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeDouble(dictionary.getNwLat());
+            out.writeDouble(dictionary.getNwLng());
+            out.writeDouble(dictionary.getSeLat());
+            out.writeDouble(dictionary.getSeLng());
+            out.writeDouble(dictionary.getCellXSizeInMeters());
+            out.writeDouble(dictionary.getCellYSizeInMeters());
+            out.writeInt(n);
+            out.writeInt(featureIndices.size());
+            out.writeInt(assignmentIndices.size());
+            for (int j : featureIndices) {
+                out.writeUTF(dataSet.attribute(j).name());
+            }
+            for (int j : assignmentIndices) {
+                out.writeUTF(dataSet.attribute(j).name());
+            }
+            padHeader(out);
+            for (int i = 0; i < n; i++) {
+                out.writeInt((int) dataSet.instance(i).value(cellIdIndex));
+            }
+            padColumn(out, n);
+            for (int j : featureIndices) {
+                for (int i = 0; i < n; i++) {
+                    out.writeDouble(dataSet.instance(i).value(j));
+                }
+            }
+            for (int j : assignmentIndices) {
+                for (int i = 0; i < n; i++) {
+                    out.writeInt(dataSet.instance(i).isMissing(j) ? -1 : (int) dataSet.instance(i).value(j));
+                }
+                padColumn(out, n);
+            }
+        } finally {
+            out.close();
+        }
+        System.out.println("*** COLUMNAR SAVED");
+    }
+
+    private static long aligned(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    /**
+     * Maps a file written by write(). Every column is mapped on its own, so
+     * that a column, not the whole file, has to fit in 2GB.
+     *
+     * @param file the file to map
+     * @return the mapped file
+     * @throws IOException if the file can't be read or is not a columnar file
+     */
+    public static ColumnarFile open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (raf.readInt() != MAGIC || raf.readInt() != VERSION) {
+                throw new IOException("Not a columnar file: " + file);
+            }
+            CellDictionary dictionary = new CellDictionary(raf.readDouble(), raf.readDouble(),
+                    raf.readDouble(), raf.readDouble(), raf.readDouble(), raf.readDouble());
+            int numRows = raf.readInt();
+            String[] featureNames = new String[raf.readInt()];
+            String[] assignmentNames = new String[raf.readInt()];
+            for (int j = 0; j < featureNames.length; j++) {
+                featureNames[j] = raf.readUTF();
+            }
+            for (int j = 0; j < assignmentNames.length; j++) {
+                assignmentNames[j] = raf.readUTF();
+            }
+            long position = aligned(raf.getFilePointer());
+            IntBuffer codes = map(channel, position, 4L * numRows).asIntBuffer();
+            position = aligned(position + 4L * numRows);
+            DoubleBuffer[] features = new DoubleBuffer[featureNames.length];
+            for (int j = 0; j < features.length; j++) {
+                features[j] = map(channel, position, 8L * numRows).asDoubleBuffer();
+                position += 8L * numRows;
+            }
+            IntBuffer[] assignments = new IntBuffer[assignmentNames.length];
+            for (int j = 0; j < assignments.length; j++) {
+                assignments[j] = map(channel, position, 4L * numRows).asIntBuffer();
+                position = aligned(position + 4L * numRows);
+            }
+            return new ColumnarFile(dictionary, numRows, featureNames, assignmentNames,
+                    codes, features, assignments);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    }
+
+    public CellDictionary getCellDictionary() {
+        return dictionary;
+    }
+
+    public int numRows() {
+        return numRows;
+    }
+
+    public int numFeatures() {
+        return featureNames.length;
+    }
+
+    public int numAssignments() {
+        return assignmentNames.length;
+    }
+
+    public String featureName(int feature) {
+        return featureNames[feature];
+    }
+
+    public String assignmentName(int assignment) {
+        return assignmentNames[assignment];
+    }
+
+    /**
+     * Returns the index of the named feature, or -1.
+     */
+    public int featureIndex(String name) {
+        for (int j = 0; j < featureNames.length; j++) {
+            if (featureNames[j].equals(name)) {
+                return j;
+            }
+        }
+        return -1;
+    }
+
+    public int code(int row) {
+        return codes.get(row);
+    }
+
+    public double feature(int feature, int row) {
+        return features[feature].get(row);
+    }
+
+    /**
+     * Returns the assignment of a row as a value index, -1 if missing.
+     */
+    public int assignment(int assignment, int row) {
+        return assignments[assignment].get(row);
+    }
+}
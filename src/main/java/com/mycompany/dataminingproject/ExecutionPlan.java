@@ -0,0 +1,189 @@
+package com.mycompany.dataminingproject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A DAG of pipeline stages built from any number of run configurations.
+ * Every stage is identified by its name, its parameters and the stages it
+ * reads from; a stage added twice with the same identity, e.g. the cleaning of
+ * the same file with the same area by two configurations, is merged and runs
+ * once, and its result is fanned out to all the stages that read it. Results
+ * are released as soon as their last reader has run.
+ * <p/>
+ * Stages run on a thread pool as soon as the stages they read have finished,
+ * so the independent stages of different configurations go on at the same
+ * time. Tasks must therefore not change the results they read.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ */
+public class ExecutionPlan {
+
+    /**
+     * The work of a stage.
+     */
+    public interface Task {
+
+        /**
+         * @param inputs the results of the stages read by this one, in the
+         * order they were given to add()
+         * @return the result of the stage, null for sinks
+         * @throws Exception if the stage fails
+         */
+        Object run(Object[] inputs) throws Exception;
+    }
+
+    public static class Stage {
+
+        private final String key;
+        private final String name;
+        private final Task task;
+        private final Stage[] inputs;
+        private final AtomicInteger readers = new AtomicInteger();
+        private volatile Object result;
+
+        private Stage(String key, String name, Task task, Stage[] inputs) {
+            this.key = key;
+            this.name = name;
+            this.task = task;
+            this.inputs = inputs;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    private final Map<String, Stage> stages = new LinkedHashMap<String, Stage>();
+    private final Map<String, Stage> outputs = new HashMap<String, Stage>();
+    private int requested = 0;
+
+    /**
+     * Adds a stage to the plan, or returns the identical stage already in it.
+     *
+     * @param name the stage name
+     * @param params the parameters that, along with the inputs, determine
+     * the result of the stage
+     * @param task the work of the stage
+     * @param inputs the stages read by this one
+     * @return the stage in the plan
+     */
+    public Stage add(String name, String params, Task task, Stage... inputs) {
+        StringBuilder key = new StringBuilder(name).append('(').append(params).append(')');
+        for (Stage input : inputs) {
+            key.append("<-[").append(input.key).append(']');
+        }
+        requested++;
+        Stage stage = stages.get(key.toString());
+        if (stage == null) {
+            stage = new Stage(key.toString(), name, task, inputs);
+            stages.put(stage.key, stage);
+        }
+        return stage;
+    }
+
+    public int size() {
+        return stages.size();
+    }
+
+    /**
+     * Returns the number of stages that were merged with identical ones.
+     */
+    public int merged() {
+        return requested - stages.size();
+    }
+
+    /**
+     * Declares the file written by a stage, so that two different stages
+     * never overwrite each other's output.
+     *
+     * @param fileName the file written by the stage
+     * @param stage the stage
+     * @throws IllegalArgumentException if another stage writes the same file
+     */
+    public void output(String fileName, Stage stage) {
+        String path = new File(fileName).getAbsolutePath();
+        Stage writer = outputs.get(path);
+        if (writer != null && writer != stage) {
+            throw new IllegalArgumentException("Both " + writer.key + " and " + stage.key + " write " + fileName);
+        }
+        outputs.put(path, stage);
+    }
+
+    /**
+     * Runs every stage once. Stages are submitted in the order they were
+     * added, which always follows their dependencies, so a stage waiting for
+     * its inputs only waits for stages that were started before it: with a
+     * FIFO pool no stage can starve, whatever the number of threads.
+     *
+     * @param executor the pool running the stages
+     * @throws Exception if a stage fails
+     */
+    public void execute(ExecutorService executor) throws Exception {
+        for (Stage stage : stages.values()) {
+            for (Stage input : stage.inputs) {
+                input.readers.incrementAndGet();
+            }
+        }
+        System.out.println("*** PLAN: " + stages.size() + " stages, " + merged() + " merged");
+        Map<Stage, Future<?>> done = new HashMap<Stage, Future<?>>();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (final Stage stage : stages.values()) {
+            final List<Future<?>> inputsDone = new ArrayList<Future<?>>();
+            for (Stage input : stage.inputs) {
+                inputsDone.add(done.get(input));
+            }
+            Future<?> future = executor.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    for (Future<?> inputDone : inputsDone) {
+                        inputDone.get();
+                    }
+                    Object[] inputs = new Object[stage.inputs.length];
+                    for (int i = 0; i < inputs.length; i++) {
+                        inputs[i] = stage.inputs[i].result;
+                    }
+                    stage.result = stage.task.run(inputs);
+                    for (Stage input : stage.inputs) {
+                        if (input.readers.decrementAndGet() == 0) {
+                            input.result = null;
+                        }
+                    }
+                    return null;
+                }
+            });
+            done.put(stage, future);
+            futures.add(future);
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            Throwable cause = e.getCause();
+            while (cause instanceof ExecutionException) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+}
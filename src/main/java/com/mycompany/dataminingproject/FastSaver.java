@@ -0,0 +1,149 @@
+package com.mycompany.dataminingproject;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.GZIPOutputStream;
+import weka.core.Attribute;
+import weka.core.CellDictionary;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * Writes data sets as CSV or ARFF text through large buffers, optionally
+ * gzip compressed, in the same format of CSVSaver and ArffSaver. Compressed
+ * files get the .gz extension, see fileName(). Numeric cell codes are written in their textual form (row;col) straight from the cell
+ * dictionary, without copying the data set.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ */
+public class FastSaver {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final CellDictionary dictionary;
+    private final boolean gzip;
+
+    /**
+     * @param dictionary the dictionary decoding numeric cellId attributes, or
+     * null to write them as numbers
+     * @param gzip true to compress the output; files whose name ends with
+     * .gz are always compressed
+     */
+    public FastSaver(CellDictionary dictionary, boolean gzip) {
+        this.dictionary = dictionary;
+        this.gzip = gzip;
+    }
+
+    /**
+     * Returns the name of the file actually written for a given one: the
+     * name itself, or the name with .gz appended if compressed and not
+     * already ending with .gz.
+     *
+     * @param fileName the name of the file
+     * @param gzip true if the output is compressed
+     * @return the name of the written file
+     */
+    public static String fileName(String fileName, boolean gzip) {
+        return gzip && !fileName.endsWith(".gz") ? fileName + ".gz" : fileName;
+    }
+
+    private Writer open(String fileName) throws IOException {
+        OutputStream os = new FileOutputStream(fileName);
+        if (fileName.endsWith(".gz")) {
+            os = new GZIPOutputStream(os, BUFFER_SIZE);
+        }
+        return new BufferedWriter(new OutputStreamWriter(os, "UTF-8"), BUFFER_SIZE);
+    }
+
+    private int cellIdIndex(Instances dataSet) {
+        Attribute cellId = dataSet.attribute("cellId");
+        return cellId != null && cellId.isNumeric() && dictionary != null ? cellId.index() : -1;
+    }
+
+    private void writeValue(Writer out, Instance instance, int index, int cellIdIndex) throws IOException {
+        if (instance.isMissing(index)) {
+            out.write('?');
+        } else if (index == cellIdIndex) {
+            out.write(Utils.quote(dictionary.name((int) instance.value(index))));
+        } else if (instance.attribute(index).isNumeric()) {
+            out.write(Utils.doubleToString(instance.value(index), 6));
+        } else {
+            out.write(Utils.quote(instance.stringValue(index)));
+        }
+    }
+
+    private void writeRows(Writer out, Instances dataSet) throws IOException {
+        int cellIdIndex = cellIdIndex(dataSet);
+        for (int i = 0; i < dataSet.numInstances(); i++) {
+            Instance instance = dataSet.instance(i);
+            for (int j = 0; j < dataSet.numAttributes(); j++) {
+                if (j > 0) {
+                    out.write(',');
+                }
+                writeValue(out, instance, j, cellIdIndex);
+            }
+            out.write('\n');
+        }
+    }
+
+    /**
+     * Writes a data set as CSV.
+     *
+     * @param fileName the name of the file, see fileName()
+     * @param dataSet the data set
+     * @return the name of the written file
+     * @throws IOException if the file can't be written
+     */
+    public String saveCsv(String fileName, Instances dataSet) throws IOException {
+        fileName = fileName(fileName, gzip);
+        Writer out = open(fileName);
+        try {
+            for (int j = 0; j < dataSet.numAttributes(); j++) {
+                if (j > 0) {
+                    out.write(',');
+                }
+                out.write(dataSet.attribute(j).name());
+            }
+            out.write('\n');
+            writeRows(out, dataSet);
+        } finally {
+            out.close();
+        }
+        return fileName;
+    }
+
+    /**
+     * Writes a data set as ARFF.
+     *
+     * @param fileName the name of the file, see fileName()
+     * @param dataSet the data set
+     * @return the name of the written file
+     * @throws IOException if the file can't be written
+     */
+    public String saveArff(String fileName, Instances dataSet) throws IOException {
+        fileName = fileName(fileName, gzip);
+        Writer out = open(fileName);
+        try {
+            int cellIdIndex = cellIdIndex(dataSet);
+            out.write(Instances.ARFF_RELATION + " " + Utils.quote(dataSet.relationName()) + "\n\n");
+            for (int j = 0; j < dataSet.numAttributes(); j++) {
+                if (j == cellIdIndex) {
+                    out.write(Attribute.ARFF_ATTRIBUTE + " cellId " + Attribute.ARFF_ATTRIBUTE_STRING + "\n");
+                } else {
+                    out.write(dataSet.attribute(j) + "\n");
+                }
+            }
+            out.write("\n" + Instances.ARFF_DATA + "\n");
+            writeRows(out, dataSet);
+        } finally {
+            out.close();
+        }
+        return fileName;
+    }
+}
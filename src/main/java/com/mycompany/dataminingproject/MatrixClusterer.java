@@ -0,0 +1,156 @@
+package com.mycompany.dataminingproject;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Properties;
+import weka.clusterers.ClusterEvaluationEx;
+import weka.clusterers.MatrixKMeans;
+import weka.core.CellDictionary;
+import weka.core.DistanceKernel;
+import weka.core.FeatureMatrix;
+import weka.core.Utils;
+
+/**
+ * Clusters the cells of a columnar file, as written by a run with
+ * colOutFileName, with MatrixKMeans, without loading them as Instances: the
+ * features are copied a row at a time into a FeatureMatrix, memory-mapped
+ * by default, so that feature sets larger than the heap can be clustered.
+ * The heap only holds the centroids and the cluster of every cell. Writes
+ * the cellId and the cluster of every cell, as ClusterAssigner does, and
+ * logs the silhouette of the clustering, computed on the matrix a tile at
+ * a time with the euclidean distance the cells were clustered with.
+ * <p/>
+ * Usage: MatrixClusterer features.col out.csv [run.properties]
+ * <p/>
+ * The properties of a run give numClusters, featureMatrix (HEAP, DIRECT or
+ * MAPPED, default MAPPED) and featureMatrix.dir.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ */
+public class MatrixClusterer {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final int numClusters;
+    private final FeatureMatrix.Storage storage;
+    private final File dir;
+    private double silhouette = Double.NaN;
+
+    /**
+     * @param numClusters the number of clusters
+     * @param storage where the matrix is kept
+     * @param dir the directory of the file of a MAPPED matrix, null for the
+     * default temporary directory
+     */
+    public MatrixClusterer(int numClusters, FeatureMatrix.Storage storage, File dir) {
+        this.numClusters = numClusters;
+        this.storage = storage;
+        this.dir = dir;
+    }
+
+    /**
+     * Copies the features of a columnar file into a matrix, a row at a time.
+     */
+    static FeatureMatrix matrix(ColumnarFile columnar, FeatureMatrix.Storage storage, File dir) throws IOException {
+        String[] columnNames = new String[columnar.numFeatures()];
+        for (int j = 0; j < columnNames.length; j++) {
+            columnNames[j] = columnar.featureName(j);
+        }
+        FeatureMatrix.Builder builder = FeatureMatrix.builder(columnNames, columnar.numRows(), storage, dir);
+        double[] values = new double[columnNames.length];
+        for (int i = 0; i < columnar.numRows(); i++) {
+            for (int j = 0; j < values.length; j++) {
+                values[j] = columnar.feature(j, i);
+            }
+            builder.add(columnar.code(i), values);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Clusters the cells of a columnar file.
+     *
+     * @param in the columnar file
+     * @param out the file to write
+     * @return the number of cells clustered
+     * @throws IOException if a file can't be read or written
+     * @throws IllegalArgumentException if features are missing or there are
+     * fewer cells than clusters
+     */
+    public int cluster(File in, File out) throws IOException {
+        ColumnarFile columnar = ColumnarFile.open(in);
+        FeatureMatrix matrix = matrix(columnar, storage, dir);
+        try {
+            MatrixKMeans kMeans = new MatrixKMeans();
+            kMeans.setNumClusters(numClusters);
+            kMeans.buildClusterer(matrix);
+            int[] clusters = kMeans.getClusters();
+            silhouette = ClusterEvaluationEx.silhouetteCoefficient(matrix.numRows(),
+                    DistanceKernel.of(matrix, DistanceKernel.Type.EUCLIDEAN, kMeans.getScales()),
+                    clusters, numClusters);
+            write(out, columnar.getCellDictionary(), matrix, clusters);
+            return matrix.numRows();
+        } finally {
+            matrix.close();
+        }
+    }
+
+    private static void write(File out, CellDictionary dictionary, FeatureMatrix matrix, int[] clusters)
+            throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(out), "UTF-8"), BUFFER_SIZE);
+        try {
+            writer.write("cellId,kMeansEuclidean\n");
+            for (int i = 0; i < clusters.length; i++) {
+                writer.write(Utils.quote(dictionary.name((int) matrix.cellId(i))));
+                writer.write(',');
+                writer.write(Integer.toString(clusters[i]));
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Returns the mean silhouette of the last clustering, NaN if none.
+     */
+    public double getSilhouette() {
+        return silhouette;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: MatrixClusterer features.col out.csv [run.properties]");
+            System.exit(1);
+        }
+        Properties config = new Properties();
+        if (args.length > 2) {
+            InputStream in = new FileInputStream(args[2]);
+            try {
+                config.load(in);
+            } finally {
+                in.close();
+            }
+        }
+        FeatureMatrix.Storage storage = FeatureMatrix.Storage.MAPPED;
+        for (FeatureMatrix.Storage s : FeatureMatrix.Storage.values()) {
+            if (s.name().equalsIgnoreCase(config.getProperty("featureMatrix"))) {
+                storage = s;
+            }
+        }
+        String dir = config.getProperty("featureMatrix.dir");
+        MatrixClusterer clusterer = new MatrixClusterer(Integer.parseInt(config.getProperty("numClusters", "3")),
+                storage, dir != null ? new File(dir) : null);
+        long start = System.nanoTime();
+        int numCells = clusterer.cluster(new File(args[0]), new File(args[1]));
+        System.out.println("*** CLUSTERED " + numCells + " cells in " + storage + " storage in "
+                + (System.nanoTime() - start) / 1000000 + " ms, silhouette " + clusterer.getSilhouette());
+    }
+}
@@ -0,0 +1,183 @@
+package com.mycompany.dataminingproject;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registry of the metrics of the pipeline stages: wall time, instances in
+ * and out, dropped instances, allocated bytes and throughput, per run and
+ * stage. Every stage is published on the platform MBean server as soon as it
+ * is first timed, and the whole registry can be dumped as JSON.
+ * <p/>
+ * Allocation is measured on the thread running the stage, so it is exact as
+ * long as a stage runs on a single thread, as all of them do.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ */
+public class MetricsRegistry {
+
+    private static final MetricsRegistry instance = new MetricsRegistry();
+
+    private final Map<String, StageMetrics> stages = new LinkedHashMap<String, StageMetrics>();
+    private final com.sun.management.ThreadMXBean threads;
+
+    private MetricsRegistry() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean threads = null;
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            threads = (com.sun.management.ThreadMXBean) bean;
+            if (!threads.isThreadAllocatedMemorySupported()) {
+                threads = null;
+            } else if (!threads.isThreadAllocatedMemoryEnabled()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+            }
+        }
+        this.threads = threads;
+    }
+
+    public static MetricsRegistry getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the metrics of a stage, creating and publishing them if needed.
+     *
+     * @param run the name of the run
+     * @param stage the name of the stage
+     * @return the metrics
+     */
+    public StageMetrics get(String run, String stage) {
+        String key = run + "/" + stage;
+        synchronized (stages) {
+            StageMetrics metrics = stages.get(key);
+            if (metrics == null) {
+                metrics = new StageMetrics(run, stage);
+                stages.put(key, metrics);
+                register(metrics);
+            }
+            return metrics;
+        }
+    }
+
+    private static void register(StageMetrics metrics) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName("com.mycompany.dataminingproject:type=StageMetrics,run="
+                    + ObjectName.quote(metrics.getRun()) + ",stage=" + ObjectName.quote(metrics.getStage()));
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(metrics, name);
+        } catch (JMException e) {
+            System.err.println("*** WARNING: can't publish the metrics of " + metrics.getStage() + ": " + e);
+        }
+    }
+
+    private long allocatedBytes() {
+        return threads != null ? threads.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+    }
+
+    /**
+     * Starts timing a stage on the current thread.
+     *
+     * @param run the name of the run
+     * @param stage the name of the stage
+     * @return the timer, to be stopped on the same thread
+     */
+    public Timer start(String run, String stage) {
+        return new Timer(get(run, stage));
+    }
+
+    /**
+     * The timing of a single execution of a stage.
+     */
+    public class Timer {
+
+        private final StageMetrics metrics;
+        private final long startNanos;
+        private final long startBytes;
+
+        private Timer(StageMetrics metrics) {
+            this.metrics = metrics;
+            this.startBytes = allocatedBytes();
+            this.startNanos = System.nanoTime();
+        }
+
+        /**
+         * Records the execution.
+         *
+         * @param instancesIn the instances read by the stage
+         * @param instancesOut the instances written by the stage
+         * @param dropped the input instances dropped by the stage
+         */
+        public void stop(long instancesIn, long instancesOut, long dropped) {
+            long wallTimeNanos = System.nanoTime() - startNanos;
+            long bytes = startBytes < 0 ? -1 : allocatedBytes() - startBytes;
+            metrics.add(wallTimeNanos, instancesIn, instancesOut, dropped, bytes);
+        }
+    }
+
+    public List<StageMetrics> getStages() {
+        synchronized (stages) {
+            return new ArrayList<StageMetrics>(stages.values());
+        }
+    }
+
+    static void quote(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Returns all the metrics as a JSON array, one object per stage in the
+     * order they were first timed.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("[\n");
+        List<StageMetrics> all = getStages();
+        for (int i = 0; i < all.size(); i++) {
+            json.append("  ");
+            all.get(i).toJson(json);
+            json.append(i + 1 < all.size() ? ",\n" : "\n");
+        }
+        return json.append("]\n").toString();
+    }
+
+    /**
+     * Writes all the metrics to a JSON file.
+     *
+     * @param fileName the file
+     * @throws IOException if the file can't be written
+     */
+    public void dump(String fileName) throws IOException {
+        Writer out = new OutputStreamWriter(new FileOutputStream(fileName), "UTF-8");
+        try {
+            out.write(toJson());
+        } finally {
+            out.close();
+        }
+        System.out.println("*** METRICS SAVED");
+    }
+}
@@ -0,0 +1,252 @@
+package com.mycompany.dataminingproject;
+
+import java.io.File;
+import java.net.URL;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import weka.core.CellDictionary;
+import weka.core.CellTree;
+import weka.core.FeatureMatrix;
+import weka.filters.unsupervised.attribute.GridJoin;
+import weka.filters.unsupervised.attribute.GridNormalize;
+import weka.filters.unsupervised.attribute.GridReduce;
+import weka.filters.unsupervised.attribute.MakeBins;
+
+/**
+ * The settings of one run of the pipeline, read from a properties file. A
+ * context never changes once loaded, so any number of runs can share the
+ * objects of the pipeline and go on at the same time.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ */
+public final class RunContext {
+
+    private static final Map<String, StageCache> stageCaches = new HashMap<String, StageCache>();
+
+    final String name;
+    final double nwLat;
+    final double seLat;
+    final double nwLng;
+    final double seLng;
+    final double cellXSizeInMeters;
+    final double cellYSizeInMeters;
+    final int binsInADay;
+    private final long minDate;
+    private final long maxDate;
+    final String pickupsFileName;
+    final String dropoffsFileName;
+    final String csvOutCleanPickUpFileName;
+    final String csvOutCleanDropOffFileName;
+    final String csvOutExtractFileName;
+    final String csvOutFileName;
+    final String arffOutFileName;
+    final String colOutFileName;
+    /** model of the clustering with the best silhouette, see ClusterModel */
+    final String modelOutFileName;
+    /** table of the cluster of every cell of the best clustering, see ClusterLookup */
+    final String lookupOutFileName;
+    final String metricsFileName;
+    /** sources of the streaming mode, as tail:fileName or tcp:port */
+    final String streamPickUps;
+    final String streamDropOffs;
+    final String streamOutFileName;
+    final long publishMillis;
+    final int numClusters;
+    /** columnar file of a previous run to update the euclidean k-means of, and decay of its sizes */
+    final String warmStartFileName;
+    final double warmStartDecay;
+    /** reduction of the joined features before clustering, null for none, see GridReduce */
+    final GridReduce.Mode reduceMode;
+    /** storage of the features the silhouettes are computed on, null for the instances, see FeatureMatrix */
+    final FeatureMatrix.Storage featureMatrix;
+    /** directory of the file of a MAPPED feature matrix, null for the temporary directory */
+    final String featureMatrixDir;
+    final int reduceDimension;
+    final double reduceVariance;
+    final int reduceSeed;
+    final MakeBins.Period period;
+    final int windowDays;
+    /** budget of the binning state, in bytes, 0 for no budget */
+    final long memoryBudget;
+    final String spillDir;
+    final GridNormalize.Mode normalizeMode;
+    final GridJoin.MissingCells missingCells;
+    final boolean gzip;
+    /** grid of the cleaned data */
+    final CellDictionary cellDictionary;
+    /** number of levels of the pyramid built by MakeBins, and level clustered */
+    final int levels;
+    final int level;
+    /** largest count of an adaptive cell, 0 for fixed cells, and levels of the tree */
+    final int maxCellCount;
+    final int treeLevels;
+    /** grid of the features, cellDictionary rolled up to the clustered level */
+    final CellDictionary levelDictionary;
+    final StageCache stageCache;
+    /** feature sets joined to pick-ups and drop-offs, by prefix */
+    final Map<String, String> featureSetFileNames;
+
+    /**
+     * Reads a run configuration.
+     *
+     * @param name the name of the run, used in the log
+     * @param config the properties of the run
+     * @throws ParseException if a date can't be parsed
+     */
+    public RunContext(String name, Properties config) throws ParseException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+        this.name = name;
+        pickupsFileName = resolve(config.getProperty("pickupsFileName"));
+        dropoffsFileName = resolve(config.getProperty("dropoffsFileName"));
+        csvOutFileName = config.getProperty("csvOutFileName");
+        arffOutFileName = config.getProperty("arffOutFileName");
+        csvOutCleanPickUpFileName = config.getProperty("csvOutCleanPickUpFileName");
+        csvOutCleanDropOffFileName = config.getProperty("csvOutCleanDropOffFileName");
+        csvOutExtractFileName = config.getProperty("csvOutExtractFileName");
+        colOutFileName = config.getProperty("colOutFileName");
+        modelOutFileName = config.getProperty("modelOutFileName");
+        lookupOutFileName = config.getProperty("lookupOutFileName");
+        metricsFileName = config.getProperty("metrics.file");
+        streamPickUps = config.getProperty("stream.pickups");
+        streamDropOffs = config.getProperty("stream.dropoffs");
+        streamOutFileName = config.getProperty("stream.outFileName");
+        publishMillis = Long.parseLong(config.getProperty("stream.publishMillis", "500"));
+        gzip = Boolean.parseBoolean(config.getProperty("export.gzip", "false"));
+        String cacheDir = config.getProperty("cache.dir");
+        stageCache = cacheDir != null? stageCache(cacheDir) : null;
+
+        nwLat = Double.parseDouble(config.getProperty("gridGpsArea.nwLat"));
+        nwLng = Double.parseDouble(config.getProperty("gridGpsArea.nwLng"));
+        seLat = Double.parseDouble(config.getProperty("gridGpsArea.seLat"));
+        seLng = Double.parseDouble(config.getProperty("gridGpsArea.seLng"));
+        cellXSizeInMeters = Double.parseDouble(config.getProperty("gridGpsArea.cellXSizeInMeters"));
+        cellYSizeInMeters = Double.parseDouble(config.getProperty("gridGpsArea.cellYSizeInMeters"));
+        minDate = format.parse(config.getProperty("makeBins.minDate")).getTime();
+        maxDate = format.parse(config.getProperty("makeBins.maxDate")).getTime();
+        MakeBins.Period period = MakeBins.Period.LINEAR;
+        for(MakeBins.Period p: MakeBins.Period.values())
+            if(p.name().equalsIgnoreCase(config.getProperty("makeBins.period")))
+                period = p;
+        this.period = period;
+        windowDays = Integer.parseInt(config.getProperty("makeBins.windowDays", "7"));
+        GridNormalize.Mode normalizeMode = GridNormalize.Mode.MEAN_CENTER;
+        for(GridNormalize.Mode m: GridNormalize.Mode.values())
+            if(m.name().equalsIgnoreCase(config.getProperty("gridNormalize.mode")))
+                normalizeMode = m;
+        this.normalizeMode = normalizeMode;
+        binsInADay = Integer.parseInt(config.getProperty("makeBins.binsInADay", "1"));
+        memoryBudget = (long) (Double.parseDouble(config.getProperty("makeBins.memoryBudgetMB", "0")) * 1024 * 1024);
+        spillDir = config.getProperty("makeBins.spillDir");
+        level = Integer.parseInt(config.getProperty("makeBins.level", "0"));
+        levels = Math.max(level + 1, Integer.parseInt(config.getProperty("makeBins.levels", "1")));
+        maxCellCount = Integer.parseInt(config.getProperty("gridGpsArea.maxCellCount", "0"));
+        treeLevels = Integer.parseInt(config.getProperty("gridGpsArea.treeLevels", "0"));
+        if(maxCellCount > 0 && levels > 1)
+            throw new IllegalArgumentException("Adaptive cells can't be rolled up to makeBins.level "+level);
+        numClusters = Integer.parseInt(config.getProperty("numClusters", "3"));
+        warmStartFileName = config.getProperty("onlineKMeans.warmStart");
+        warmStartDecay = Double.parseDouble(config.getProperty("onlineKMeans.decay", "0.5"));
+        GridReduce.Mode reduceMode = null;
+        for(GridReduce.Mode m: GridReduce.Mode.values())
+            if(m.name().equalsIgnoreCase(config.getProperty("gridReduce.mode")))
+                reduceMode = m;
+        this.reduceMode = reduceMode;
+        FeatureMatrix.Storage featureMatrix = null;
+        for(FeatureMatrix.Storage s: FeatureMatrix.Storage.values())
+            if(s.name().equalsIgnoreCase(config.getProperty("featureMatrix")))
+                featureMatrix = s;
+        this.featureMatrix = featureMatrix;
+        featureMatrixDir = config.getProperty("featureMatrix.dir");
+        reduceDimension = Integer.parseInt(config.getProperty("gridReduce.dimension", "50"));
+        reduceVariance = Double.parseDouble(config.getProperty("gridReduce.variance", "0"));
+        reduceSeed = Integer.parseInt(config.getProperty("gridReduce.seed", "1"));
+        boolean additive = Boolean.parseBoolean(config.getProperty("gridJoin.additive", "false"));
+        GridJoin.MissingCells missingCells = additive ? GridJoin.MissingCells.FILL_ZERO : GridJoin.MissingCells.DROP;
+        for(GridJoin.MissingCells m: GridJoin.MissingCells.values())
+            if(m.name().equalsIgnoreCase(config.getProperty("gridJoin.missingCells")))
+                missingCells = m;
+        this.missingCells = missingCells;
+        // Feature sets joined to pick-ups and drop-offs, as prefix:fileName pairs
+        Map<String, String> featureSetFileNames = new LinkedHashMap<String, String>();
+        for(String featureSet: config.getProperty("gridJoin.featureSets", "").split(",")) {
+            String[] pair = featureSet.trim().split(":", 2);
+            if(pair.length == 2)
+                featureSetFileNames.put(pair[0].trim(), resolve(pair[1].trim()));
+        }
+        this.featureSetFileNames = Collections.unmodifiableMap(featureSetFileNames);
+        cellDictionary = new CellDictionary(nwLat, nwLng, seLat, seLng, cellXSizeInMeters, cellYSizeInMeters);
+        levelDictionary = cellDictionary.coarser(level);
+    }
+
+    /**
+     * Returns the cache of a directory, shared by all the runs using it so
+     * that input file digests are computed once.
+     */
+    private static StageCache stageCache(String dir) {
+        synchronized(stageCaches) {
+            StageCache cache = stageCaches.get(dir);
+            if(cache == null) {
+                cache = new StageCache(new File(dir));
+                stageCaches.put(dir, cache);
+            }
+            return cache;
+        }
+    }
+
+    private String resolve(String fileName) {
+        URL resource = getClass().getResource("/resources/"+fileName);
+        return resource != null? resource.getFile() : fileName;
+    }
+
+    public Date getMinDate() {
+        return new Date(minDate);
+    }
+
+    public Date getMaxDate() {
+        return new Date(maxDate);
+    }
+
+    String cleanParams() {
+        return "RemoveDuplicates;GridGpsArea("+nwLat+","+nwLng+","+seLat+","+seLng+","
+                +cellXSizeInMeters+","+cellYSizeInMeters+");Remove(0,5)";
+    }
+
+    String extractParams(CellTree cellTree) {
+        return cleanParams()+";MakeBins("+minDate+","+maxDate+","
+                +binsInADay+","+period+(period == MakeBins.Period.SLIDING_WINDOW? ","+windowDays : "")
+                +(level > 0? ","+level : "")+(cellTree != null? ","+cellTree : "")
+                +");GridNormalize("+normalizeMode+")";
+    }
+
+    String cellTreeParams() {
+        return cleanParams()+";CellTree("+treeLevels+","+maxCellCount+")";
+    }
+
+    String clusterParams() {
+        return numClusters+";"+normalizeMode
+                +(warmStartFileName != null? ";OnlineKMeans("+warmStartFileName+","+warmStartDecay+")" : "")
+                +(reduceMode != null? ";"+reduceParams() : "")
+                +(featureMatrix != null? ";FeatureMatrix("+featureMatrix+")" : "");
+    }
+
+    String reduceParams() {
+        return "GridReduce("+reduceMode+","+reduceDimension+","+reduceVariance+","+reduceSeed+")";
+    }
+
+    String joinParams() {
+        return "GridJoin("+missingCells+","+featureSetFileNames.keySet()+","+normalizeMode+");GridAddLatLng("
+                +nwLat+","+nwLng+","+levelDictionary.getCellXSizeInMeters()+","+levelDictionary.getCellYSizeInMeters()+")";
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
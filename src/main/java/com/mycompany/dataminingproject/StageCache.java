@@ -0,0 +1,240 @@
+package com.mycompany.dataminingproject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * On-disk cache of pipeline stage results. Entries are addressed by a hash
+ * of the content of the input file, of the stage name and of the stage
+ * parameters, so that a result is reused by any later run that reads the same
+ * data with the same settings, whatever the file name.
+ * <p/>
+ * Entries are stored column by column in a compact binary form: numeric
+ * and date attributes as doubles, nominal ones as value indices and string
+ * ones as UTF strings.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ */
+public class StageCache {
+
+    /** bump to invalidate the entries written by older stage implementations */
+    private static final int VERSION = 1;
+    private static final int MAGIC = 0x47535443;
+    private static final byte NUMERIC = 0;
+    private static final byte NOMINAL = 1;
+    private static final byte STRING = 2;
+    private static final byte DATE = 3;
+
+    private final File dir;
+    private final Map<String, String> fileDigests = new HashMap<String, String>();
+
+    public StageCache(File dir) {
+        this.dir = dir;
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private synchronized String fileDigest(String fileName) throws IOException {
+        String digest = fileDigests.get(fileName);
+        if (digest == null) {
+            MessageDigest md = sha256();
+            InputStream is = new FileInputStream(fileName);
+            try {
+                byte[] buffer = new byte[1 << 20];
+                int n;
+                while ((n = is.read(buffer)) > 0) {
+                    md.update(buffer, 0, n);
+                }
+            } finally {
+                is.close();
+            }
+            digest = hex(md.digest());
+            fileDigests.put(fileName, digest);
+        }
+        return digest;
+    }
+
+    /**
+     * Returns the key of a stage applied to the content of a file.
+     *
+     * @param fileName the input file of the pipeline
+     * @param stage the stage name
+     * @param params the stage parameters, including those of the stages
+     * before it
+     * @return the cache key
+     * @throws IOException if the input file can't be read
+     */
+    public String key(String fileName, String stage, String params) throws IOException {
+        MessageDigest md = sha256();
+        String text = VERSION + "\n" + fileDigest(fileName) + "\n" + stage + "\n" + params;
+        return stage + "-" + hex(md.digest(text.getBytes("UTF-8")));
+    }
+
+    private File file(String key) {
+        return new File(dir, key + ".bin");
+    }
+
+    /**
+     * Loads a cached stage result.
+     *
+     * @param key the cache key
+     * @return the cached data set, or null if there is none
+     * @throws IOException if the entry can't be read
+     */
+    public Instances load(String key) throws IOException {
+        File file = file(key);
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 20));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a cache entry: " + file);
+            }
+            String relationName = in.readUTF();
+            int numAttributes = in.readInt();
+            byte[] types = new byte[numAttributes];
+            FastVector attributes = new FastVector(numAttributes);
+            for (int j = 0; j < numAttributes; j++) {
+                types[j] = in.readByte();
+                String name = in.readUTF();
+                if (types[j] == NOMINAL) {
+                    FastVector values = new FastVector();
+                    int numValues = in.readInt();
+                    for (int v = 0; v < numValues; v++) {
+                        values.addElement(in.readUTF());
+                    }
+                    attributes.addElement(new Attribute(name, values));
+                } else if (types[j] == STRING) {
+                    attributes.addElement(new Attribute(name, (FastVector) null));
+                } else if (types[j] == DATE) {
+                    attributes.addElement(new Attribute(name, in.readUTF()));
+                } else {
+                    attributes.addElement(new Attribute(name));
+                }
+            }
+            int numInstances = in.readInt();
+            Instances dataSet = new Instances(relationName, attributes, numInstances);
+            double[][] rows = new double[numInstances][numAttributes];
+            for (int j = 0; j < numAttributes; j++) {
+                for (int i = 0; i < numInstances; i++) {
+                    if (types[j] == NUMERIC || types[j] == DATE) {
+                        rows[i][j] = in.readDouble();
+                    } else if (types[j] == NOMINAL) {
+                        int index = in.readInt();
+                        rows[i][j] = index < 0 ? Instance.missingValue() : index;
+                    } else {
+                        rows[i][j] = in.readBoolean()
+                                ? dataSet.attribute(j).addStringValue(in.readUTF()) : Instance.missingValue();
+                    }
+                }
+            }
+            for (int i = 0; i < numInstances; i++) {
+                dataSet.add(new Instance(1.0, rows[i]));
+                rows[i] = null;
+            }
+            return dataSet;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Stores a stage result. The entry is written aside and renamed once
+     * complete, so that a failed run never leaves a truncated entry.
+     *
+     * @param key the cache key
+     * @param dataSet the data set to store
+     * @throws IOException if the entry can't be written
+     */
+    public void store(String key, Instances dataSet) throws IOException {
+        dir.mkdirs();
+        File tmp = File.createTempFile(key, ".tmp", dir);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 20));
+        try {
+            out.writeInt(MAGIC);
+            out.writeUTF(dataSet.relationName());
+            out.writeInt(dataSet.numAttributes());
+            for (int j = 0; j < dataSet.numAttributes(); j++) {
+                Attribute a = dataSet.attribute(j);
+                if (a.isNominal()) {
+                    out.writeByte(NOMINAL);
+                    out.writeUTF(a.name());
+                    out.writeInt(a.numValues());
+                    for (int v = 0; v < a.numValues(); v++) {
+                        out.writeUTF(a.value(v));
+                    }
+                } else if (a.isString()) {
+                    out.writeByte(STRING);
+                    out.writeUTF(a.name());
+                } else if (a.isDate()) {
+                    out.writeByte(DATE);
+                    out.writeUTF(a.name());
+                    out.writeUTF(a.getDateFormat());
+                } else if (a.isNumeric()) {
+                    out.writeByte(NUMERIC);
+                    out.writeUTF(a.name());
+                } else {
+                    throw new IOException("Unsupported attribute type: " + a);
+                }
+            }
+            out.writeInt(dataSet.numInstances());
+            for (int j = 0; j < dataSet.numAttributes(); j++) {
+                Attribute a = dataSet.attribute(j);
+                for (int i = 0; i < dataSet.numInstances(); i++) {
+                    Instance instance = dataSet.instance(i);
+                    if (a.isNumeric()) {
+                        out.writeDouble(instance.value(j));
+                    } else if (a.isNominal()) {
+                        out.writeInt(instance.isMissing(j) ? -1 : (int) instance.value(j));
+                    } else {
+                        out.writeBoolean(!instance.isMissing(j));
+                        if (!instance.isMissing(j)) {
+                            out.writeUTF(instance.stringValue(j));
+                        }
+                    }
+                }
+            }
+        } finally {
+            out.close();
+        }
+        File file = file(key);
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                throw new IOException("Can't store cache entry " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.mycompany.dataminingproject;
+
+/**
+ * The cumulated metrics of a pipeline stage. Updates are atomic, so stages
+ * of runs going on at the same time can share an entry.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ */
+public class StageMetrics implements StageMetricsMXBean {
+
+    private final String run;
+    private final String stage;
+    private long calls;
+    private long wallTimeNanos;
+    private long instancesIn;
+    private long instancesOut;
+    private long dropped;
+    private long allocatedBytes;
+
+    StageMetrics(String run, String stage) {
+        this.run = run;
+        this.stage = stage;
+    }
+
+    synchronized void add(long wallTimeNanos, long instancesIn, long instancesOut, long dropped, long allocatedBytes) {
+        calls++;
+        this.wallTimeNanos += wallTimeNanos;
+        this.instancesIn += instancesIn;
+        this.instancesOut += instancesOut;
+        this.dropped += dropped;
+        if (allocatedBytes < 0 || this.allocatedBytes < 0) {
+            this.allocatedBytes = -1;
+        } else {
+            this.allocatedBytes += allocatedBytes;
+        }
+    }
+
+    public String getRun() {
+        return run;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public synchronized long getCalls() {
+        return calls;
+    }
+
+    public synchronized long getWallTimeMillis() {
+        return wallTimeNanos / 1000000;
+    }
+
+    public synchronized long getInstancesIn() {
+        return instancesIn;
+    }
+
+    public synchronized long getInstancesOut() {
+        return instancesOut;
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public synchronized double getThroughput() {
+        return wallTimeNanos > 0 ? instancesIn * 1e9 / wallTimeNanos : 0.0;
+    }
+
+    /**
+     * Appends the metrics as a JSON object.
+     */
+    synchronized void toJson(StringBuilder json) {
+        json.append("{\"run\": ");
+        MetricsRegistry.quote(json, run);
+        json.append(", \"stage\": ");
+        MetricsRegistry.quote(json, stage);
+        json.append(", \"calls\": ").append(calls)
+            .append(", \"wallTimeMillis\": ").append(wallTimeNanos / 1000000)
+            .append(", \"instancesIn\": ").append(instancesIn)
+            .append(", \"instancesOut\": ").append(instancesOut)
+            .append(", \"dropped\": ").append(dropped)
+            .append(", \"allocatedBytes\": ").append(allocatedBytes)
+            .append(", \"throughput\": ").append(Math.round(getThroughput() * 10) / 10.0)
+            .append('}');
+    }
+}
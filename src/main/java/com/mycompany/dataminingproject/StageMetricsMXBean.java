@@ -0,0 +1,33 @@
+package com.mycompany.dataminingproject;
+
+/**
+ * Management interface of the metrics of a pipeline stage, registered on the
+ * platform MBean server as
+ * com.mycompany.dataminingproject:type=StageMetrics,run=...,stage=...
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ */
+public interface StageMetricsMXBean {
+
+    String getRun();
+
+    String getStage();
+
+    /** the number of times the stage has run */
+    long getCalls();
+
+    long getWallTimeMillis();
+
+    long getInstancesIn();
+
+    long getInstancesOut();
+
+    long getDropped();
+
+    /** the bytes allocated by the threads running the stage, -1 if unknown */
+    long getAllocatedBytes();
+
+    /** input instances per second of wall time */
+    double getThroughput();
+}
@@ -0,0 +1,435 @@
+package com.mycompany.dataminingproject;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.LongIntHashMap;
+import weka.core.SlidingBins;
+import weka.filters.unsupervised.attribute.GridNormalize;
+import weka.filters.unsupervised.attribute.MakeBins;
+
+/**
+ * The streaming mode of the pipeline: pick-up and drop-off events, as lines
+ * of the raw CSV files, are read from a tailed file or a local TCP socket as
+ * they come, assigned to their cell and time bin one at a time, and the
+ * joined features of the cells are published every stream.publishMillis, as
+ * long as new events came in. The published file is replaced atomically, so
+ * readers never see it half written.
+ * <p/>
+ * Events go through the same cell assignment as GridGpsArea and binning as
+ * MakeBins; with the SLIDING_WINDOW period the published features are those
+ * of the last makeBins.windowDays days up to the latest event. Duplicates
+ * are not removed and adaptive cells are not supported, as both need the
+ * whole data set.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ */
+public class StreamingRunner {
+
+    /** columns of the raw CSV files */
+    private static final int LATITUDE = 1;
+    private static final int LONGITUDE = 2;
+    private static final int GPSTIME = 3;
+    private static final int GPSDATE = 4;
+
+    private final RunContext ctx;
+    private final MakeBins binMaker;
+    private final int numBins;
+    private final CellCounts pickUps;
+    private final CellCounts dropOffs;
+    private final List<Closeable> sources = Collections.synchronizedList(new ArrayList<Closeable>());
+    private ScheduledExecutorService scheduler;
+    private volatile boolean running;
+    /** the hook stopping run() when the JVM shuts down */
+    private volatile Thread shutdownHook;
+    /** events since the last publication, and when the first of them came */
+    private int pending;
+    private long pendingSince;
+    private int dropped;
+
+    /**
+     * The counts of the cells of one kind of events, by time bin, or the
+     * counts of their current window in SLIDING_WINDOW mode.
+     */
+    private static class CellCounts {
+
+        private final LongIntHashMap slots = new LongIntHashMap(1024, -1);
+        private final List<int[]> counts = new ArrayList<int[]>();
+        private int[] codes = new int[1024];
+        private final SlidingBins window;
+
+        CellCounts(SlidingBins window) {
+            this.window = window;
+        }
+
+        boolean isEmpty() {
+            return window != null ? window.size() == 0 : counts.isEmpty();
+        }
+
+        boolean add(int code, int bin, int numBins) {
+            if (window != null) {
+                return window.add(code, bin);
+            }
+            int slot = slots.get(code);
+            if (slot < 0) {
+                slot = counts.size();
+                slots.put(code, slot);
+                counts.add(new int[numBins]);
+                if (slot == codes.length) {
+                    codes = Arrays.copyOf(codes, 2 * slot);
+                }
+                codes[slot] = code;
+            }
+            counts.get(slot)[bin]++;
+            return true;
+        }
+
+        /**
+         * Returns the counts as MakeBins does: a numeric cell id followed by
+         * a numeric attribute per bin, cells in the order they were first
+         * seen.
+         */
+        Instances snapshot(int numBins) {
+            FastVector attributes = new FastVector();
+            attributes.addElement(new Attribute("cellId"));
+            for (int i = 0; i < numBins; i++) {
+                attributes.addElement(new Attribute("bin" + i));
+            }
+            Instances dataSet = new Instances("grid", attributes, counts.size());
+            if (window != null) {
+                for (int slot = 0; slot < window.size(); slot++) {
+                    if (window.getTotal(slot) > 0) {
+                        double[] values = new double[1 + numBins];
+                        values[0] = window.getKey(slot);
+                        window.getCounts(slot, values, 1);
+                        dataSet.add(new Instance(1.0, values));
+                    }
+                }
+                return dataSet;
+            }
+            for (int slot = 0; slot < counts.size(); slot++) {
+                int[] features = counts.get(slot);
+                double[] values = new double[1 + numBins];
+                values[0] = codes[slot];
+                for (int i = 0; i < numBins; i++) {
+                    values[i + 1] = features[i];
+                }
+                dataSet.add(new Instance(1.0, values));
+            }
+            return dataSet;
+        }
+    }
+
+    public StreamingRunner(RunContext ctx) {
+        if (ctx.maxCellCount > 0) {
+            throw new IllegalArgumentException("Adaptive cells are not supported in streaming mode");
+        }
+        this.ctx = ctx;
+        binMaker = new MakeBins();
+        binMaker.setMinDate(ctx.getMinDate());
+        binMaker.setMaxDate(ctx.getMaxDate());
+        binMaker.setBinsInADay(ctx.binsInADay);
+        binMaker.setPeriod(ctx.period);
+        binMaker.setWindowDays(ctx.windowDays);
+        numBins = binMaker.getNumBins();
+        boolean sliding = ctx.period == MakeBins.Period.SLIDING_WINDOW;
+        pickUps = new CellCounts(sliding ? new SlidingBins(numBins) : null);
+        dropOffs = new CellCounts(sliding ? new SlidingBins(numBins) : null);
+    }
+
+    /**
+     * Assigns an event to its cell and time bin.
+     *
+     * @param pickUp true for a pick-up, false for a drop-off
+     * @param line the event, as a line of the raw CSV files
+     * @return false if the event was dropped, being malformed, out of the
+     * area or out of the date range
+     */
+    public synchronized boolean offer(boolean pickUp, String line) {
+        String[] fields = line.split(",");
+        int code = -1;
+        int bin = -1;
+        if (fields.length > GPSDATE) {
+            try {
+                code = ctx.cellDictionary.code(Double.parseDouble(fields[LATITUDE]),
+                        Double.parseDouble(fields[LONGITUDE]));
+            } catch (NumberFormatException e) {
+                // a header or a malformed line
+            }
+            if (code >= 0) {
+                bin = binMaker.getBinIndex(fields[GPSDATE], fields[GPSTIME]);
+            }
+        }
+        if (bin < 0) {
+            dropped++;
+            return false;
+        }
+        if (ctx.level > 0) {
+            code = ctx.cellDictionary.coarserCode(code, ctx.level);
+        }
+        if (!(pickUp ? pickUps : dropOffs).add(code, bin, numBins)) {
+            // older than the window
+            dropped++;
+            return false;
+        }
+        if (pending++ == 0) {
+            pendingSince = System.nanoTime();
+        }
+        return true;
+    }
+
+    /**
+     * Publishes the features of all the cells, if events came in since the
+     * last publication and there are both pick-ups and drop-offs.
+     *
+     * @return true if the features were published
+     * @throws Exception if the features can't be computed or saved
+     */
+    public boolean publish() throws Exception {
+        Instances up;
+        Instances down;
+        int events;
+        int eventsDropped;
+        long since;
+        synchronized (this) {
+            if (pending == 0 || pickUps.isEmpty() || dropOffs.isEmpty()) {
+                return false;
+            }
+            up = pickUps.snapshot(numBins);
+            down = dropOffs.snapshot(numBins);
+            events = pending;
+            eventsDropped = dropped;
+            since = pendingSince;
+            pending = 0;
+            dropped = 0;
+        }
+        MetricsRegistry.Timer timer = MetricsRegistry.getInstance().start(ctx.name, "stream/publish");
+        Instances joined = App.joinFeatures(ctx, normalize(up), normalize(down),
+                Collections.<String, Instances>emptyMap(), null);
+        File file = new File(FastSaver.fileName(ctx.streamOutFileName, ctx.gzip));
+        File tmp = new File(new FastSaver(ctx.levelDictionary, ctx.gzip)
+                .saveCsv(ctx.streamOutFileName + ".tmp", joined));
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                throw new IOException("Can't publish " + file);
+            }
+        }
+        timer.stop(events + eventsDropped, joined.numInstances(), eventsDropped);
+        System.out.println("*** [" + ctx + "] STREAM PUBLISHED " + joined.numInstances() + " cells, "
+                + events + " new events, latency " + (System.nanoTime() - since) / 1000000 + " ms");
+        return true;
+    }
+
+    private Instances normalize(Instances dataSet) throws Exception {
+        GridNormalize normalizer = new GridNormalize();
+        normalizer.setMode(ctx.normalizeMode);
+        normalizer.setInputFormat(dataSet);
+        return App.useFilter(ctx, "stream/GridNormalize", dataSet, normalizer);
+    }
+
+    /**
+     * Starts reading the sources and publishing the features.
+     *
+     * @throws IOException if a source can't be opened
+     */
+    public void start() throws IOException {
+        running = true;
+        open(true, ctx.streamPickUps);
+        open(false, ctx.streamDropOffs);
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    publish();
+                } catch (Exception e) {
+                    System.err.println("*** [" + ctx + "] ERROR: can't publish the stream: " + e);
+                }
+            }
+        }, ctx.publishMillis, ctx.publishMillis, TimeUnit.MILLISECONDS);
+        System.out.println("*** [" + ctx + "] STREAMING " + ctx.streamPickUps + ", " + ctx.streamDropOffs
+                + " TO " + FastSaver.fileName(ctx.streamOutFileName, ctx.gzip));
+    }
+
+    /**
+     * Stops reading the sources and publishes the last events.
+     */
+    public void stop() {
+        running = false;
+        scheduler.shutdown();
+        synchronized (sources) {
+            for (Closeable source : sources) {
+                try {
+                    source.close();
+                } catch (IOException e) {
+                    // closing anyway
+                }
+            }
+        }
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+            publish();
+        } catch (Exception e) {
+            System.err.println("*** [" + ctx + "] ERROR: can't publish the stream: " + e);
+        }
+    }
+
+    /**
+     * Starts streaming and runs until the JVM is shut down, then stops
+     * reading the sources and publishes the last events.
+     *
+     * @throws Exception if a source can't be opened
+     */
+    public void run() throws Exception {
+        final CountDownLatch stopped = new CountDownLatch(1);
+        start();
+        // A Runnable, as stop() in a Thread subclass would be Thread.stop()
+        shutdownHook = new Thread(new Runnable() {
+            public void run() {
+                StreamingRunner.this.stop();
+                stopped.countDown();
+            }
+        }, "stream shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        stopped.await();
+    }
+
+    /**
+     * Returns the shutdown hook registered by run().
+     *
+     * @return the hook, null until run() registered it
+     */
+    Thread getShutdownHook() {
+        return shutdownHook;
+    }
+
+    private void open(boolean pickUp, String source) throws IOException {
+        if (source == null) {
+            throw new IllegalArgumentException("No " + (pickUp ? "stream.pickups" : "stream.dropoffs") + " source");
+        }
+        String[] spec = source.split(":", 2);
+        if (spec.length == 2 && spec[0].equals("tail")) {
+            tail(pickUp, new File(spec[1]));
+        } else if (spec.length == 2 && spec[0].equals("tcp")) {
+            listen(pickUp, Integer.parseInt(spec[1]));
+        } else {
+            throw new IllegalArgumentException("Unknown stream source " + source + ", use tail:fileName or tcp:port");
+        }
+    }
+
+    private void daemon(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Reads the lines of a file as they are appended, from its beginning,
+     * starting over if it is truncated.
+     */
+    private void tail(final boolean pickUp, final File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        sources.add(raf);
+        daemon("tail " + file, new Runnable() {
+            public void run() {
+                byte[] buffer = new byte[1 << 16];
+                StringBuilder line = new StringBuilder();
+                long position = 0;
+                try {
+                    while (running) {
+                        long length = raf.length();
+                        if (length < position) {
+                            position = 0;
+                            line.setLength(0);
+                            raf.seek(0);
+                        }
+                        if (length == position) {
+                            Thread.sleep(20);
+                            continue;
+                        }
+                        int n = raf.read(buffer, 0, (int) Math.min(buffer.length, length - position));
+                        position += n;
+                        for (int i = 0; i < n; i++) {
+                            char c = (char) (buffer[i] & 0xff);
+                            if (c == '\n') {
+                                offer(pickUp, line.toString().trim());
+                                line.setLength(0);
+                            } else {
+                                line.append(c);
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    if (running) {
+                        System.err.println("*** [" + ctx + "] ERROR: can't read " + file + ": " + e);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads the lines sent by any number of clients to a local port.
+     */
+    private void listen(final boolean pickUp, int port) throws IOException {
+        final ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        sources.add(server);
+        daemon("listen " + port, new Runnable() {
+            public void run() {
+                while (running) {
+                    try {
+                        final Socket socket = server.accept();
+                        sources.add(socket);
+                        daemon("read " + socket.getRemoteSocketAddress(), new Runnable() {
+                            public void run() {
+                                try {
+                                    BufferedReader in = new BufferedReader(
+                                            new InputStreamReader(socket.getInputStream(), "UTF-8"));
+                                    String line;
+                                    while ((line = in.readLine()) != null) {
+                                        offer(pickUp, line.trim());
+                                    }
+                                } catch (IOException e) {
+                                    // the client went away
+                                } finally {
+                                    sources.remove(socket);
+                                    try {
+                                        socket.close();
+                                    } catch (IOException e) {
+                                        // closing anyway
+                                    }
+                                }
+                            }
+                        });
+                    } catch (IOException e) {
+                        if (running) {
+                            System.err.println("*** [" + ctx + "] ERROR: can't accept on " + server + ": " + e);
+                        }
+                    }
+                }
+            }
+        });
+    }
+}
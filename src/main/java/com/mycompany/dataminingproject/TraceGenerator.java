@@ -0,0 +1,422 @@
+package com.mycompany.dataminingproject;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import weka.core.Utils;
+
+/**
+ * Generates synthetic GPS traces in the schema of the bundled Beijing data
+ * sets (directory, latitude, longitude, gpstime, gpsdate, starttime or
+ * endtime), for load testing the pipeline at any scale. Rows are written as
+ * they are generated, so the size of the output is not bound by memory.
+ * <p/>
+ * Samples are drawn from Gaussian hotspots inside the area, with decreasing
+ * weights, plus a uniform background. Dates follow a weekday profile, and
+ * hours a diurnal profile with morning and evening peaks, flatter on
+ * weekends. A share of the samples repeats one of the last ones, to exercise
+ * RemoveDuplicates, and another share lies far outside the area, like the
+ * out-of-town trips of the real data. The output is determined by the
+ * seed and the settings alone.
+ * <p/>
+ * Valid options are:
+ * <pre>
+ * -o &lt;file&gt;        the output file, gzipped if it ends with .gz (required)
+ * -n &lt;rows&gt;        the number of rows (default 1000000)
+ * -seed &lt;seed&gt;     the random seed (default 1)
+ * -column &lt;name&gt;   the name of the last column, starttime or endtime (default starttime)
+ * -area &lt;nwLat,nwLng,seLat,seLng&gt;  the area (default that of the bundled runs)
+ * -minDate &lt;yyyy-MM-dd&gt;  the first day (default 2007-04-13)
+ * -maxDate &lt;yyyy-MM-dd&gt;  the last day (default 2009-09-23)
+ * -hotspots &lt;n&gt;    the number of hotspots (default 50)
+ * -background &lt;share&gt;  the share of uniform samples in the area (default 0.2)
+ * -duplicates &lt;share&gt;  the share of duplicated samples (default 0.02)
+ * -outside &lt;share&gt; the share of samples outside the area (default 0.05)
+ * -users &lt;n&gt;       the number of directories (default 182)
+ * </pre>
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ */
+public class TraceGenerator {
+
+    private static final double METERS_PER_DEGREE = 111320.0;
+    /** relative number of samples in every hour of a working day */
+    private static final double[] WORKING_DAY_HOURS = {
+        2, 1.2, 0.8, 0.6, 0.6, 1, 2.5, 5, 7, 6, 5, 5,
+        5.5, 5, 4.5, 4.5, 5, 6.5, 7, 6, 5, 4.5, 4, 3 };
+    /** relative number of samples in every hour of a weekend day */
+    private static final double[] WEEKEND_HOURS = {
+        3, 2.2, 1.5, 1, 0.8, 0.8, 1, 1.8, 3, 4, 5, 5.5,
+        5.5, 5.5, 5.5, 5.5, 5.5, 5.5, 5.5, 5.5, 5, 5, 4.5, 4 };
+    /** relative number of samples of every day of the week, from Sunday */
+    private static final double[] WEEK_DAYS = { 0.7, 1, 1, 1, 1, 1.1, 0.85 };
+    private static final int RECENT = 64;
+
+    private long numRows = 1000000;
+    private long seed = 1;
+    private String lastColumn = "starttime";
+    private double nwLat = 40.120;
+    private double nwLng = 116.130;
+    private double seLat = 39.750;
+    private double seLng = 116.650;
+    private Date minDate;
+    private Date maxDate;
+    private int numHotspots = 50;
+    private double background = 0.2;
+    private double duplicates = 0.02;
+    private double outside = 0.05;
+    private int numUsers = 182;
+
+    // State of a generation
+    private Random random;
+    private double[] hotspotLat;
+    private double[] hotspotLng;
+    private double[] hotspotSigma;
+    private double[] hotspotCumulative;
+    private String[] days;
+    private boolean[] weekends;
+    private double[] dayCumulative;
+    private double[] workingDayCumulative;
+    private double[] weekendCumulative;
+
+    public TraceGenerator() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+        try {
+            minDate = format.parse("2007-04-13");
+            maxDate = format.parse("2009-09-23");
+        } catch (ParseException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static double[] cumulative(double[] weights) {
+        double[] cumulative = new double[weights.length];
+        double sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i];
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < weights.length; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+
+    /**
+     * Draws an index with the probabilities given by cumulative weights.
+     */
+    private int draw(double[] cumulative) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        index = index < 0 ? -index - 1 : index + 1;
+        return Math.min(index, cumulative.length - 1);
+    }
+
+    /**
+     * Places the hotspots and lays out the calendar.
+     */
+    private void setUp() {
+        random = new Random(seed);
+        hotspotLat = new double[numHotspots];
+        hotspotLng = new double[numHotspots];
+        hotspotSigma = new double[numHotspots];
+        double[] weights = new double[numHotspots];
+        for (int h = 0; h < numHotspots; h++) {
+            // Hotspots in the inner part of the area, from 300m to 2km wide,
+            // with Zipf-like weights
+            hotspotLat[h] = seLat + (nwLat - seLat) * (0.1 + 0.8 * random.nextDouble());
+            hotspotLng[h] = nwLng + (seLng - nwLng) * (0.1 + 0.8 * random.nextDouble());
+            hotspotSigma[h] = 300 + 1700 * random.nextDouble();
+            weights[h] = 1.0 / (h + 1);
+        }
+        hotspotCumulative = numHotspots > 0 ? cumulative(weights) : null;
+
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(minDate);
+        int numDays = 0;
+        for (Calendar day = (Calendar) calendar.clone(); !day.getTime().after(maxDate); day.add(Calendar.DATE, 1)) {
+            numDays++;
+        }
+        days = new String[numDays];
+        weekends = new boolean[numDays];
+        double[] dayWeights = new double[numDays];
+        for (int d = 0; d < numDays; d++, calendar.add(Calendar.DATE, 1)) {
+            int weekDay = calendar.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY;
+            days[d] = format.format(calendar.getTime());
+            weekends[d] = weekDay == 0 || weekDay == 6;
+            dayWeights[d] = WEEK_DAYS[weekDay];
+        }
+        dayCumulative = cumulative(dayWeights);
+        workingDayCumulative = cumulative(WORKING_DAY_HOURS);
+        weekendCumulative = cumulative(WEEKEND_HOURS);
+    }
+
+    private static void twoDigits(StringBuilder line, int value) {
+        line.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    /**
+     * Appends the location of a sample, as "latitude,longitude".
+     */
+    private void location(StringBuilder line) {
+        double lat, lng;
+        double p = random.nextDouble();
+        if (p < outside) {
+            // Somewhere else in the country
+            lat = 30 + 15 * random.nextDouble();
+            lng = 110 + 17 * random.nextDouble();
+        } else if (hotspotCumulative == null || p < outside + background) {
+            lat = seLat + (nwLat - seLat) * random.nextDouble();
+            lng = nwLng + (seLng - nwLng) * random.nextDouble();
+        } else {
+            int h = draw(hotspotCumulative);
+            double sigmaLat = hotspotSigma[h] / METERS_PER_DEGREE;
+            // StrictMath keeps the output the same on every JVM
+            double sigmaLng = sigmaLat / StrictMath.cos(StrictMath.toRadians(hotspotLat[h]));
+            do {
+                lat = hotspotLat[h] + sigmaLat * random.nextGaussian();
+                lng = hotspotLng[h] + sigmaLng * random.nextGaussian();
+            } while (lat > nwLat || lat < seLat || lng < nwLng || lng > seLng);
+        }
+        line.append(lat).append(',').append(lng);
+    }
+
+    /**
+     * Writes the traces.
+     *
+     * @param out the writer, not closed
+     * @throws IOException if the traces can't be written
+     */
+    public void generate(Writer out) throws IOException {
+        setUp();
+        String[] recent = new String[RECENT];
+        StringBuilder line = new StringBuilder(64);
+        out.write("directory,latitude,longitude,gpstime,gpsdate," + lastColumn + "\n");
+        for (long i = 0; i < numRows; i++) {
+            int r = (int) (i % RECENT);
+            if (i > 0 && random.nextDouble() < duplicates) {
+                // Repeat one of the last rows, as a device sending a fix twice
+                recent[r] = recent[random.nextInt((int) Math.min(i, RECENT))];
+                out.write(recent[r]);
+                continue;
+            }
+            line.setLength(0);
+            int user = 1 + random.nextInt(numUsers);
+            line.append((char) ('0' + user / 100 % 10));
+            twoDigits(line, user % 100);
+            line.append(',');
+            location(line);
+            int day = draw(dayCumulative);
+            int hour = draw(weekends[day] ? weekendCumulative : workingDayCumulative);
+            int seconds = random.nextInt(3600);
+            line.append(',');
+            int time = line.length();
+            twoDigits(line, hour);
+            line.append(':');
+            twoDigits(line, seconds / 60);
+            line.append(':');
+            twoDigits(line, seconds % 60);
+            String gpsTime = line.substring(time);
+            line.append(',').append(days[day]).append(',').append(gpsTime).append('\n');
+            recent[r] = line.toString();
+            out.write(recent[r]);
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the traces to a file, gzipped if its name ends with .gz.
+     *
+     * @param fileName the file
+     * @throws IOException if the file can't be written
+     */
+    public void generate(String fileName) throws IOException {
+        OutputStream os = new FileOutputStream(fileName);
+        if (fileName.endsWith(".gz")) {
+            os = new GZIPOutputStream(os, 1 << 16);
+        }
+        Writer out = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"), 1 << 20);
+        try {
+            generate(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Parses the options listed in the class description.
+     *
+     * @param options the options
+     * @throws Exception if an option is not valid
+     */
+    public void setOptions(String[] options) throws Exception {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+        String value = Utils.getOption('n', options);
+        if (value.length() != 0) {
+            setNumRows(Long.parseLong(value));
+        }
+        value = Utils.getOption("seed", options);
+        if (value.length() != 0) {
+            setSeed(Long.parseLong(value));
+        }
+        value = Utils.getOption("column", options);
+        if (value.length() != 0) {
+            setLastColumn(value);
+        }
+        value = Utils.getOption("area", options);
+        if (value.length() != 0) {
+            String[] area = value.split(",");
+            if (area.length != 4) {
+                throw new IllegalArgumentException("-area needs nwLat,nwLng,seLat,seLng: " + value);
+            }
+            setArea(Double.parseDouble(area[0]), Double.parseDouble(area[1]),
+                    Double.parseDouble(area[2]), Double.parseDouble(area[3]));
+        }
+        value = Utils.getOption("minDate", options);
+        if (value.length() != 0) {
+            setMinDate(format.parse(value));
+        }
+        value = Utils.getOption("maxDate", options);
+        if (value.length() != 0) {
+            setMaxDate(format.parse(value));
+        }
+        value = Utils.getOption("hotspots", options);
+        if (value.length() != 0) {
+            setNumHotspots(Integer.parseInt(value));
+        }
+        value = Utils.getOption("background", options);
+        if (value.length() != 0) {
+            setBackground(Double.parseDouble(value));
+        }
+        value = Utils.getOption("duplicates", options);
+        if (value.length() != 0) {
+            setDuplicates(Double.parseDouble(value));
+        }
+        value = Utils.getOption("outside", options);
+        if (value.length() != 0) {
+            setOutside(Double.parseDouble(value));
+        }
+        value = Utils.getOption("users", options);
+        if (value.length() != 0) {
+            setNumUsers(Integer.parseInt(value));
+        }
+    }
+
+    public long getNumRows() {
+        return numRows;
+    }
+
+    public void setNumRows(long numRows) {
+        this.numRows = numRows;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public String getLastColumn() {
+        return lastColumn;
+    }
+
+    public void setLastColumn(String lastColumn) {
+        this.lastColumn = lastColumn;
+    }
+
+    public void setArea(double nwLat, double nwLng, double seLat, double seLng) {
+        this.nwLat = nwLat;
+        this.nwLng = nwLng;
+        this.seLat = seLat;
+        this.seLng = seLng;
+    }
+
+    public Date getMinDate() {
+        return minDate;
+    }
+
+    public void setMinDate(Date minDate) {
+        this.minDate = minDate;
+    }
+
+    public Date getMaxDate() {
+        return maxDate;
+    }
+
+    public void setMaxDate(Date maxDate) {
+        this.maxDate = maxDate;
+    }
+
+    public int getNumHotspots() {
+        return numHotspots;
+    }
+
+    public void setNumHotspots(int numHotspots) {
+        this.numHotspots = numHotspots;
+    }
+
+    public double getBackground() {
+        return background;
+    }
+
+    public void setBackground(double background) {
+        this.background = background;
+    }
+
+    public double getDuplicates() {
+        return duplicates;
+    }
+
+    public void setDuplicates(double duplicates) {
+        this.duplicates = duplicates;
+    }
+
+    public double getOutside() {
+        return outside;
+    }
+
+    public void setOutside(double outside) {
+        this.outside = outside;
+    }
+
+    public int getNumUsers() {
+        return numUsers;
+    }
+
+    public void setNumUsers(int numUsers) {
+        if (numUsers < 1 || numUsers > 999) {
+            throw new IllegalArgumentException("Directories are 3 digits: " + numUsers);
+        }
+        this.numUsers = numUsers;
+    }
+
+    public static void main(String[] args) throws Exception {
+        TraceGenerator generator = new TraceGenerator();
+        String fileName = Utils.getOption('o', args);
+        if (fileName.length() == 0) {
+            System.err.println("Usage: TraceGenerator -o <file> [-n <rows>] [-seed <seed>] [-column starttime|endtime]"
+                    + " [-area <nwLat,nwLng,seLat,seLng>] [-minDate <yyyy-MM-dd>] [-maxDate <yyyy-MM-dd>]"
+                    + " [-hotspots <n>] [-background <share>] [-duplicates <share>] [-outside <share>] [-users <n>]");
+            System.exit(1);
+        }
+        generator.setOptions(args);
+        Utils.checkForRemainingOptions(args);
+        long start = System.currentTimeMillis();
+        generator.generate(fileName);
+        System.out.println("TraceGenerator(): wrote " + generator.getNumRows() + " rows to " + fileName
+                + " in " + (System.currentTimeMillis() - start) + " ms");
+    }
+}
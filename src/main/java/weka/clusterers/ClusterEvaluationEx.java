@@ -7,6 +7,8 @@ package weka.clusterers;
 
 import java.util.Arrays;
 import weka.core.DistanceFunction;
+import weka.core.DistanceKernel;
+import weka.core.FeatureMatrix;
 import weka.core.Instances;
 import weka.core.ManhattanDistance;
 
@@ -16,51 +18,142 @@ import weka.core.ManhattanDistance;
  */
 public class ClusterEvaluationEx extends ClusterEvaluation {
     
+    /** rows of a tile of distances computed at once by the silhouette */
+    private static final int SILHOUETTE_BLOCK = 128;
     double avgSilhouetteCoefficient = Double.MIN_VALUE;
 
     public double getAvgSilhouetteCoefficient() {
         return avgSilhouetteCoefficient;
     }
     
-    private double silhouetteCoefficient(Instances instances, DistanceFunction df) {
+    private double silhouetteCoefficient(final Instances instances, final DistanceFunction df) {
+        return silhouetteCoefficient(instances.numInstances(), new FeatureMatrix.RowDistance() {
+            public double distance(int first, int second) {
+                return df.distance(instances.instance(first), instances.instance(second));
+            }
+        });
+    }
+
+    private double silhouetteCoefficient(int numInstances, FeatureMatrix.RowDistance df) {
         double clusterAssignments[] = getClusterAssignments();	
-        int [] clusterSizes = new int[getNumClusters()];
-	for (int i = 0; i < instances.numInstances(); i++) {
-            int cluster = (int)clusterAssignments[i];
-            clusterSizes[cluster]++;
+        int[] clusters = new int[numInstances];
+        for (int i = 0; i < numInstances; i++) {
+            clusters[i] = (int) clusterAssignments[i];
+        }
+        return silhouetteCoefficient(numInstances, df, clusters, getNumClusters());
+    }
+
+    /**
+     * Returns the mean silhouette of a clustering, streaming over the rows
+     * once per row, or once per block of rows with a DistanceKernel.
+     *
+     * @param numInstances the number of rows
+     * @param df the distance between two rows
+     * @param clusters the cluster of every row
+     * @param numClusters the number of clusters
+     * @return the mean silhouette
+     */
+    public static double silhouetteCoefficient(int numInstances, FeatureMatrix.RowDistance df,
+            int[] clusters, int numClusters) {
+        int [] clusterSizes = new int[numClusters];
+	for (int i = 0; i < numInstances; i++) {
+            clusterSizes[clusters[i]]++;
+        }
+        if (df instanceof DistanceKernel) {
+            return silhouetteCoefficient(numInstances, (DistanceKernel) df, clusters, clusterSizes);
         }
         // Calculate Silhouette Coefficient
-        double[] SilCoeff = new double[instances.numInstances()];
         double AvgSilCoeff = 0;
-        for (int z = 0; z < instances.numInstances(); z++) {
-            double[] distance = new double[getNumClusters()];
+        double[] distance = new double[numClusters];
+        for (int z = 0; z < numInstances; z++) {
             Arrays.fill(distance, 0.0);
             //Sum
-            for (int y = 0; y < instances.numInstances(); y++) {
-                double delta = df.distance(instances.instance(z), instances.instance(y));
-                distance[(int)clusterAssignments[y]] += delta;
+            for (int y = 0; y < numInstances; y++) {
+                double delta = df.distance(z, y);
+                distance[clusters[y]] += delta;
             }
-            //Average
-            for (int x = 0; x < getNumClusters(); x++) {
-                distance[x] = distance[x] / clusterSizes[x];
+            AvgSilCoeff += silhouette(distance, clusters[z], clusterSizes);
+        }
+        AvgSilCoeff = AvgSilCoeff / numInstances;
+        return AvgSilCoeff;
+    }
+
+    /**
+     * As silhouetteCoefficient(), with the distances computed a tile of
+     * SILHOUETTE_BLOCK x SILHOUETTE_BLOCK rows at a time. The distances of
+     * every row are still summed in the order of the rows, so the result is
+     * the same.
+     */
+    private static double silhouetteCoefficient(int numInstances, DistanceKernel kernel,
+            int[] clusters, int[] clusterSizes) {
+        double[] tile = new double[SILHOUETTE_BLOCK * SILHOUETTE_BLOCK];
+        double[][] distances = new double[SILHOUETTE_BLOCK][clusterSizes.length];
+        double AvgSilCoeff = 0;
+        for (int z0 = 0; z0 < numInstances; z0 += SILHOUETTE_BLOCK) {
+            int z1 = Math.min(numInstances, z0 + SILHOUETTE_BLOCK);
+            for (double[] distance : distances) {
+                Arrays.fill(distance, 0.0);
+            }
+            for (int y0 = 0; y0 < numInstances; y0 += SILHOUETTE_BLOCK) {
+                int y1 = Math.min(numInstances, y0 + SILHOUETTE_BLOCK);
+                kernel.tile(z0, z1, y0, y1, tile);
+                for (int z = z0, at = 0; z < z1; z++) {
+                    double[] distance = distances[z - z0];
+                    for (int y = y0; y < y1; y++) {
+                        distance[clusters[y]] += tile[at++];
+                    }
+                }
+            }
+            for (int z = z0; z < z1; z++) {
+                AvgSilCoeff += silhouette(distances[z - z0], clusters[z], clusterSizes);
             }
-            double a = distance[(int)clusterAssignments[z]];
-            distance[(int)clusterAssignments[z]] = Double.MAX_VALUE;
-            Arrays.sort(distance);
-            double b = distance[0];
-            SilCoeff[z] = (b - a) / Math.max(a, b);
-            AvgSilCoeff += SilCoeff[z];
         }
-        AvgSilCoeff = AvgSilCoeff / instances.numInstances();
+        AvgSilCoeff = AvgSilCoeff / numInstances;
         return AvgSilCoeff;
     }
+
+    /**
+     * Returns the silhouette of a row, given the sums of its distances from
+     * the rows of every cluster, which are overwritten.
+     */
+    private static double silhouette(double[] distance, int cluster, int[] clusterSizes) {
+        //Average
+        for (int x = 0; x < distance.length; x++) {
+            distance[x] = distance[x] / clusterSizes[x];
+        }
+        double a = distance[cluster];
+        distance[cluster] = Double.MAX_VALUE;
+        Arrays.sort(distance);
+        double b = distance[0];
+        return (b - a) / Math.max(a, b);
+    }
     
     public void evaluateClusterer(Instances test, DistanceFunction df) throws Exception {
+        evaluateClusterer(test, df, null);
+    }
+
+    /**
+     * Evaluates the clusterer, computing the silhouettes on the rows of a
+     * FeatureMatrix of the test data where it supports the distance function.
+     *
+     * @param test the test data
+     * @param df the distance function of the silhouette
+     * @param matrix the features of the test data, or null
+     * @throws Exception if the clusterer can't be evaluated
+     */
+    public void evaluateClusterer(Instances test, DistanceFunction df, FeatureMatrix matrix) throws Exception {
         evaluateClusterer(test);
         DistanceFunction distanceFunction = new ManhattanDistance();
         distanceFunction.setInstances(test);
-        System.out.println("*** Silhouette Coefficient (Manhattan):\t" + silhouetteCoefficient(test, distanceFunction));
-        avgSilhouetteCoefficient = silhouetteCoefficient(test, df);
+        System.out.println("*** Silhouette Coefficient (Manhattan):\t" + silhouetteCoefficient(test, distanceFunction, matrix));
+        avgSilhouetteCoefficient = silhouetteCoefficient(test, df, matrix);
         System.out.println("*** Silhouette Coefficient (custom):\t" + avgSilhouetteCoefficient);
     }
+
+    private double silhouetteCoefficient(Instances test, DistanceFunction df, FeatureMatrix matrix) {
+        FeatureMatrix.RowDistance rowDistance = matrix != null && matrix.numRows() == test.numInstances()
+                ? matrix.distance(df) : null;
+        return rowDistance != null ? silhouetteCoefficient(matrix.numRows(), rowDistance)
+                : silhouetteCoefficient(test, df);
+    }
 }
@@ -0,0 +1,244 @@
+/*
+ */
+package weka.clusterers;
+
+import java.util.Arrays;
+import java.util.Random;
+import weka.core.DistanceKernel;
+import weka.core.FeatureMatrix;
+import weka.core.RevisionUtils;
+
+/**
+ * K-means on the rows of a FeatureMatrix, with the euclidean distance of
+ * EuclideanDistance: every feature is scaled by the range of its values.
+ * The rows are only streamed through, in order, once per iteration, so
+ * that a matrix off the heap is clustered without loading it; the heap
+ * holds the centroids and one cluster per row.
+ * <p/>
+ * The starting centroids are chosen as in k-means++, each in a single pass
+ * by weighted reservoir sampling; then Lloyd's iterations run until no row
+ * changes cluster. Ties go to the first cluster, and a cluster left empty
+ * keeps its centroid. The distances from a row to all the centroids are
+ * computed at once by a DistanceKernel.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ * @version $Revision: $
+ */
+public class MatrixKMeans {
+
+    private int numClusters = 2;
+    private int maxIterations = 500;
+    private int seed = 10;
+    /** the inverse of the range of every column, 0 if none */
+    private double[] scales;
+    /** the centroids, numCols values each */
+    private double[] centroids;
+    private int[] sizes;
+    private int[] clusters;
+    private int numIterations;
+    private double squaredError;
+
+    /**
+     * Clusters the rows of a matrix.
+     *
+     * @param matrix the matrix, without missing values
+     * @throws IllegalArgumentException if values are missing or there are
+     * fewer rows than clusters
+     */
+    public void buildClusterer(FeatureMatrix matrix) {
+        if (matrix.hasMissing()) {
+            throw new IllegalArgumentException("Missing values in the matrix");
+        }
+        int n = matrix.numRows();
+        int d = matrix.numCols();
+        if (n < numClusters) {
+            throw new IllegalArgumentException(n + " rows for " + numClusters + " clusters");
+        }
+        double[] values = new double[d];
+        ranges(matrix, values);
+        DistanceKernel kernel = DistanceKernel.of(matrix, DistanceKernel.Type.SQUARED_EUCLIDEAN, scales);
+        double[] distances = new double[numClusters];
+        Random random = new Random(seed);
+        centroids = new double[numClusters * d];
+        matrix.row(random.nextInt(n), values);
+        System.arraycopy(values, 0, centroids, 0, d);
+        // Squared distance of every row from its nearest centroid so far
+        float[] nearest = new float[n];
+        Arrays.fill(nearest, Float.MAX_VALUE);
+        for (int c = 1; c < numClusters; c++) {
+            double total = 0;
+            int chosen = -1;
+            double[] latest = Arrays.copyOfRange(centroids, (c - 1) * d, c * d);
+            for (int i = 0; i < n; i++) {
+                kernel.toPoints(i, latest, 1, distances);
+                if (distances[0] < nearest[i]) {
+                    nearest[i] = (float) distances[0];
+                }
+                total += nearest[i];
+                if (nearest[i] > 0 && random.nextDouble() * total < nearest[i]) {
+                    chosen = i;
+                }
+            }
+            // All the rows on the centroids: any one will do
+            matrix.row(chosen >= 0 ? chosen : random.nextInt(n), values);
+            System.arraycopy(values, 0, centroids, c * d, d);
+        }
+        nearest = null;
+
+        clusters = new int[n];
+        sizes = new int[numClusters];
+        double[][] sums = new double[numClusters][d];
+        numIterations = 0;
+        boolean changed = true;
+        while (changed && numIterations < maxIterations) {
+            changed = false;
+            squaredError = 0;
+            Arrays.fill(sizes, 0);
+            for (double[] sum : sums) {
+                Arrays.fill(sum, 0);
+            }
+            for (int i = 0; i < n; i++) {
+                kernel.toPoints(i, centroids, numClusters, distances);
+                int best = 0;
+                double bestDistance = Double.MAX_VALUE;
+                for (int c = 0; c < numClusters; c++) {
+                    if (distances[c] < bestDistance) {
+                        bestDistance = distances[c];
+                        best = c;
+                    }
+                }
+                if (numIterations == 0 || clusters[i] != best) {
+                    changed = true;
+                }
+                clusters[i] = best;
+                sizes[best]++;
+                squaredError += bestDistance;
+                matrix.row(i, values);
+                double[] sum = sums[best];
+                for (int j = 0; j < d; j++) {
+                    sum[j] += values[j];
+                }
+            }
+            numIterations++;
+            if (!changed) {
+                break;
+            }
+            for (int c = 0; c < numClusters; c++) {
+                if (sizes[c] > 0) {
+                    for (int j = 0; j < d; j++) {
+                        centroids[c * d + j] = sums[c][j] / sizes[c];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the range of every column, streaming over the rows.
+     */
+    private void ranges(FeatureMatrix matrix, double[] values) {
+        int d = matrix.numCols();
+        double[] mins = new double[d];
+        double[] maxs = new double[d];
+        Arrays.fill(mins, Double.POSITIVE_INFINITY);
+        Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+        for (int i = 0; i < matrix.numRows(); i++) {
+            matrix.row(i, values);
+            for (int j = 0; j < d; j++) {
+                mins[j] = Math.min(mins[j], values[j]);
+                maxs[j] = Math.max(maxs[j], values[j]);
+            }
+        }
+        scales = new double[d];
+        for (int j = 0; j < d; j++) {
+            scales[j] = maxs[j] > mins[j] ? 1 / (maxs[j] - mins[j]) : 0;
+        }
+    }
+
+    /**
+     * Returns the cluster of a row of the matrix clustered.
+     */
+    public int clusterRow(int row) {
+        return clusters[row];
+    }
+
+    /**
+     * Returns the cluster of every row of the matrix clustered.
+     */
+    public int[] getClusters() {
+        return clusters;
+    }
+
+    public int numberOfClusters() {
+        return numClusters;
+    }
+
+    public void setNumClusters(int numClusters) {
+        if (numClusters <= 0) {
+            throw new IllegalArgumentException("Number of clusters must be > 0");
+        }
+        this.numClusters = numClusters;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+    }
+
+    public int getSeed() {
+        return seed;
+    }
+
+    public void setSeed(int seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Returns the centroids, in the units of the features.
+     */
+    public double[][] getClusterCentroids() {
+        int d = scales.length;
+        double[][] result = new double[numClusters][];
+        for (int c = 0; c < numClusters; c++) {
+            result[c] = Arrays.copyOfRange(centroids, c * d, (c + 1) * d);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the factor of every feature in the distance: the inverse of its
+     * range, 0 if it has a single value.
+     */
+    public double[] getScales() {
+        return scales;
+    }
+
+    public int[] getClusterSizes() {
+        return sizes;
+    }
+
+    public int getNumIterations() {
+        return numIterations;
+    }
+
+    /**
+     * Returns the sum of the squared distances of the rows from their
+     * centroids, in the scaled space.
+     */
+    public double getSquaredError() {
+        return squaredError;
+    }
+
+    /**
+     * Returns the revision string.
+     *
+     * @return the revision
+     */
+    public String getRevision() {
+        return RevisionUtils.extract("$Revision: $");
+    }
+}
@@ -0,0 +1,393 @@
+/*
+ */
+package weka.clusterers;
+
+import weka.core.CentroidTree;
+import weka.core.DistanceFunction;
+import weka.core.EuclideanDistance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.RevisionUtils;
+
+/**
+ * <!-- globalinfo-start -->
+ * K-means updated one instance at a time, as in MacQueen's algorithm, that
+ * can start from the centroids of a previous clustering instead of k-means++.
+ * Each instance moves its nearest centroid towards it by 1/n, n being the
+ * size of the cluster so far, so the learning rate of a cluster decays as it
+ * grows. The sizes of a previous clustering are scaled by a decay factor
+ * first, so that the new instances weigh more than the old ones.
+ * <p/>
+ * <!-- globalinfo-end -->
+ *
+ * Training with the instances that changed since the previous clustering
+ * costs time proportional to their number, not to that of all the
+ * instances. The drift of every centroid from its starting point is kept.
+ * Without starting centroids the clusterer falls back to SimpleKMeans. Once
+ * built, many centroids are searched in a CentroidTree.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ * @version $Revision: $
+ */
+public class OnlineKMeans extends AbstractClusterer
+        implements NumberOfClustersRequestable, UpdateableClusterer {
+
+    /**
+     * for serialization.
+     */
+    static final long serialVersionUID = 3902516841178270146L;
+    /** least number of clusters searched with a CentroidTree */
+    static final int MIN_TREE_CLUSTERS = 16;
+    private int numClusters = 2;
+    private double decay = 0.5;
+    private DistanceFunction distanceFunction = new EuclideanDistance();
+    private Instances initialCentroids;
+    private double[] initialSizes;
+    /** header of the centroids, with the attributes of the training data */
+    private Instances header;
+    /** values of the centroids, updated in place */
+    private double[][] centroids;
+    private double[] sizes;
+    private double[] drift;
+    private int numUpdates;
+    /** index of the centroids while they don't change, null for a linear scan */
+    private CentroidTree tree;
+    private double[][] ranges;
+
+    /**
+     * Returns a string describing this clusterer.
+     *
+     * @return a description of the clusterer suitable for displaying in the
+     * explorer/experimenter gui
+     */
+    public String globalInfo() {
+        return "K-means updated one instance at a time, as in MacQueen's algorithm, "
+                + "that can start from the centroids of a previous clustering instead "
+                + "of k-means++. Each instance moves its nearest centroid towards it by "
+                + "1/n, n being the size of the cluster so far, so the learning rate of "
+                + "a cluster decays as it grows. The sizes of a previous clustering are "
+                + "scaled by a decay factor first, so that the new instances weigh more "
+                + "than the old ones.";
+    }
+
+    /**
+     * Sets the clustering to start from.
+     *
+     * @param centroids one centroid per cluster, with the attributes of the
+     * training data
+     * @param sizes the number of instances of every cluster
+     */
+    public void setInitialCentroids(Instances centroids, double[] sizes) {
+        if (centroids.numInstances() != sizes.length) {
+            throw new IllegalArgumentException(centroids.numInstances() + " centroids and "
+                    + sizes.length + " sizes");
+        }
+        this.initialCentroids = centroids;
+        this.initialSizes = sizes.clone();
+    }
+
+    /**
+     * Builds the clusterer. With starting centroids, the training data are
+     * only the instances to update them with; otherwise the clusters are
+     * built from scratch with SimpleKMeans and k-means++.
+     * <p/>
+     * The distance function is set up on the training data unless it has
+     * already been, e.g. on all the instances to normalize over.
+     *
+     * @param data the training data
+     * @throws Exception if the clusterer can't be built
+     */
+    public void buildClusterer(Instances data) throws Exception {
+        numUpdates = 0;
+        drift = null;
+        if (initialCentroids == null) {
+            SimpleKMeans simpleKMeans = new SimpleKMeans();
+            // There's a bug in the default random initializer, so we use 1 = kmeans++
+            simpleKMeans.setOptions(new String[]{"-init", "1"});
+            simpleKMeans.setNumClusters(numClusters);
+            simpleKMeans.setDistanceFunction(distanceFunction);
+            simpleKMeans.buildClusterer(data);
+            int[] clusterSizes = simpleKMeans.getClusterSizes();
+            sizes = new double[clusterSizes.length];
+            for (int j = 0; j < sizes.length; j++) {
+                sizes[j] = clusterSizes[j];
+            }
+            setCentroids(simpleKMeans.getClusterCentroids());
+            buildTree();
+            return;
+        }
+        if (initialCentroids.numInstances() != numClusters) {
+            throw new IllegalArgumentException(initialCentroids.numInstances()
+                    + " starting centroids for " + numClusters + " clusters");
+        }
+        if (initialCentroids.numAttributes() != data.numAttributes()) {
+            throw new IllegalArgumentException("Starting centroids with "
+                    + initialCentroids.numAttributes() + " attributes, data with "
+                    + data.numAttributes());
+        }
+        if (distanceFunction.getInstances() == null) {
+            distanceFunction.setInstances(data);
+        }
+        setCentroids(initialCentroids);
+        sizes = new double[numClusters];
+        for (int j = 0; j < numClusters; j++) {
+            sizes[j] = initialSizes[j] * decay;
+        }
+        for (int i = 0; i < data.numInstances(); i++) {
+            updateClusterer(data.instance(i));
+        }
+        updateFinished();
+    }
+
+    /**
+     * Copies the values of the centroids to start from.
+     */
+    private void setCentroids(Instances start) {
+        header = new Instances(start, 0);
+        centroids = new double[start.numInstances()][];
+        for (int j = 0; j < centroids.length; j++) {
+            centroids[j] = start.instance(j).toDoubleArray();
+        }
+    }
+
+    /**
+     * Returns a centroid as an instance for the distance function.
+     */
+    private Instance centroid(int cluster) {
+        Instance centroid = new Instance(1.0, centroids[cluster]);
+        centroid.setDataset(header);
+        return centroid;
+    }
+
+    /**
+     * Moves the centroid nearest to an instance towards it, by the inverse of
+     * the size of its cluster. Missing values leave the centroid unchanged.
+     *
+     * @param instance the instance
+     * @throws Exception if the clusterer has not been built
+     */
+    public void updateClusterer(Instance instance) throws Exception {
+        tree = null;
+        int cluster = clusterInstance(instance);
+        sizes[cluster]++;
+        double rate = 1.0 / sizes[cluster];
+        double[] values = centroids[cluster];
+        for (int a = 0; a < values.length; a++) {
+            if (!instance.isMissing(a)) {
+                values[a] += rate * (instance.value(a) - values[a]);
+            }
+        }
+        numUpdates++;
+    }
+
+    /**
+     * Computes the drift of the centroids from their starting point.
+     */
+    public void updateFinished() {
+        buildTree();
+        if (initialCentroids == null) {
+            return;
+        }
+        drift = new double[numClusters];
+        for (int j = 0; j < numClusters; j++) {
+            drift[j] = distanceFunction.distance(initialCentroids.instance(j), centroid(j));
+        }
+    }
+
+    /**
+     * Indexes the centroids in a CentroidTree, if there are many of them and
+     * the distance is a plain euclidean one on numeric attributes.
+     */
+    private void buildTree() {
+        tree = null;
+        if (centroids.length < MIN_TREE_CLUSTERS
+                || distanceFunction.getClass() != EuclideanDistance.class) {
+            return;
+        }
+        EuclideanDistance euclidean = (EuclideanDistance) distanceFunction;
+        if (!euclidean.getAttributeIndices().equals("first-last") || euclidean.getInvertSelection()
+                || header.classIndex() >= 0 || !euclidean.rangesSet()) {
+            return;
+        }
+        for (int a = 0; a < header.numAttributes(); a++) {
+            if (!header.attribute(a).isNumeric()) {
+                return;
+            }
+        }
+        try {
+            ranges = euclidean.getDontNormalize() ? null : euclidean.getRanges();
+        } catch (Exception e) {
+            return;
+        }
+        double[][] points = new double[centroids.length][];
+        for (int j = 0; j < points.length; j++) {
+            points[j] = toTreeSpace(centroid(j));
+            if (points[j] == null) {
+                return;
+            }
+        }
+        tree = new CentroidTree(points);
+    }
+
+    /**
+     * Returns the values of an instance as normalized by the distance
+     * function, or null if some are missing.
+     */
+    private double[] toTreeSpace(Instance instance) {
+        double[] point = new double[instance.numAttributes()];
+        for (int a = 0; a < point.length; a++) {
+            double value = instance.value(a);
+            if (Double.isNaN(value)) {
+                return null;
+            }
+            if (ranges == null) {
+                point[a] = value;
+            } else if (Double.isNaN(ranges[a][0]) || ranges[a][1] == ranges[a][0]) {
+                point[a] = 0;
+            } else {
+                point[a] = (value - ranges[a][0]) / ranges[a][2];
+            }
+        }
+        return point;
+    }
+
+    /**
+     * Returns the cluster with the nearest centroid, the first one on ties.
+     * With many clusters, once built, they are searched in a CentroidTree,
+     * with the same result.
+     *
+     * @param instance the instance to cluster
+     * @return the cluster
+     * @throws Exception if the clusterer has not been built
+     */
+    public int clusterInstance(final Instance instance) throws Exception {
+        if (centroids == null) {
+            throw new IllegalStateException("Clusterer not built");
+        }
+        double[] point = tree != null && instance.numAttributes() == header.numAttributes()
+                && instance.classIndex() < 0 ? toTreeSpace(instance) : null;
+        if (point != null) {
+            return tree.nearest(point, CentroidTree.Metric.EUCLIDEAN, new CentroidTree.Distance() {
+                public double distance(int centroid) {
+                    return distanceFunction.distance(instance, centroid(centroid));
+                }
+            });
+        }
+        int best = 0;
+        double bestDistance = Double.MAX_VALUE;
+        for (int j = 0; j < centroids.length; j++) {
+            double distance = distanceFunction.distance(instance, centroid(j));
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = j;
+            }
+        }
+        return best;
+    }
+
+    public int numberOfClusters() throws Exception {
+        return centroids != null ? centroids.length : numClusters;
+    }
+
+    public void setNumClusters(int numClusters) throws Exception {
+        if (numClusters <= 0) {
+            throw new IllegalArgumentException("Number of clusters must be > 0");
+        }
+        this.numClusters = numClusters;
+    }
+
+    public int getNumClusters() {
+        return numClusters;
+    }
+
+    public double getDecay() {
+        return decay;
+    }
+
+    /**
+     * Sets the factor the sizes of the starting clusters are scaled by,
+     * between 0 (the first update of a cluster moves its centroid onto the
+     * instance) and 1 (the starting clusters weigh as much as their sizes).
+     *
+     * @param decay the factor
+     */
+    public void setDecay(double decay) {
+        if (decay < 0 || decay > 1) {
+            throw new IllegalArgumentException("Decay must be in [0, 1]: " + decay);
+        }
+        this.decay = decay;
+    }
+
+    public DistanceFunction getDistanceFunction() {
+        return distanceFunction;
+    }
+
+    public void setDistanceFunction(DistanceFunction distanceFunction) {
+        this.distanceFunction = distanceFunction;
+    }
+
+    /**
+     * Returns a copy of the centroids, or null if the clusterer has not been
+     * built.
+     */
+    public Instances getClusterCentroids() {
+        if (centroids == null) {
+            return null;
+        }
+        Instances copy = new Instances(header, centroids.length);
+        for (int j = 0; j < centroids.length; j++) {
+            copy.add(new Instance(1.0, centroids[j].clone()));
+        }
+        return copy;
+    }
+
+    /**
+     * Returns the number of instances of every cluster, the starting sizes
+     * being scaled by the decay.
+     */
+    public double[] getClusterSizes() {
+        return sizes;
+    }
+
+    /**
+     * Returns the distance of every centroid from its starting point, or null
+     * without starting centroids.
+     */
+    public double[] getDrift() {
+        return drift;
+    }
+
+    /**
+     * Returns the number of instances the centroids were updated with.
+     */
+    public int getNumUpdates() {
+        return numUpdates;
+    }
+
+    @Override
+    public String toString() {
+        if (centroids == null) {
+            return "OnlineKMeans: no model built yet.";
+        }
+        StringBuilder text = new StringBuilder("OnlineKMeans: ");
+        text.append(initialCentroids != null ? numUpdates + " updates" : "built with k-means++");
+        for (int j = 0; j < centroids.length; j++) {
+            text.append("\nCluster ").append(j).append(": size ")
+                    .append(Math.round(sizes[j]));
+            if (drift != null) {
+                text.append(", drift ").append(drift[j]);
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Returns the revision string.
+     *
+     * @return the revision
+     */
+    public String getRevision() {
+        return RevisionUtils.extract("$Revision: $");
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ */
+package weka.core;
+
+import java.io.Serializable;
+
+/**
+ * The grid laid by GridGpsArea over an area described by its (nwLat, nwLng)
+ * and (seLat, seLng) corners. Every cell is identified by a compact int code,
+ * row * numCols + col, which is what the grid filters store in the numeric
+ * cellId attribute. The textual form (row;col) is derived from the code only
+ * when needed, e.g. at export time, so no per-cell strings are kept in the
+ * instance headers.
+ * <p/>
+ * The grids with cells 2, 4, 8... times larger over the same area make a
+ * quadtree pyramid: every cell of a level is the union of up to four cells of
+ * the finer one, so coarser codes are derived from finer ones (see
+ * coarser()) without projecting locations again.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ * @version $Revision: $
+ */
+public class CellDictionary implements Serializable {
+
+    /**
+     * for serialization.
+     */
+    private static final long serialVersionUID = 6083528135094512735L;
+    private final double nwLat;
+    private final double nwLng;
+    private final double seLat;
+    private final double seLng;
+    private final double cellXSizeInMeters;
+    private final double cellYSizeInMeters;
+    private final int numRows;
+    private final int numCols;
+
+    public CellDictionary(double nwLat, double nwLng, double seLat, double seLng,
+            double cellXSizeInMeters, double cellYSizeInMeters) {
+        this.nwLat = nwLat;
+        this.nwLng = nwLng;
+        this.seLat = seLat;
+        this.seLng = seLng;
+        this.cellXSizeInMeters = cellXSizeInMeters;
+        this.cellYSizeInMeters = cellYSizeInMeters;
+        this.numRows = row(seLat) + 1;
+        this.numCols = col(seLng) + 1;
+    }
+
+    /**
+     * Builds the grid with cells twice as large as those of a finer one.
+     */
+    private CellDictionary(CellDictionary finer) {
+        this.nwLat = finer.nwLat;
+        this.nwLng = finer.nwLng;
+        this.seLat = finer.seLat;
+        this.seLng = finer.seLng;
+        this.cellXSizeInMeters = 2 * finer.cellXSizeInMeters;
+        this.cellYSizeInMeters = 2 * finer.cellYSizeInMeters;
+        this.numRows = (finer.numRows + 1) / 2;
+        this.numCols = (finer.numCols + 1) / 2;
+    }
+
+    /**
+     * Returns the grid a number of levels up the pyramid, with cells 2^levels
+     * times larger in both directions. Its rows and columns are those of this
+     * grid shifted right by levels, so that every cell of this grid falls in
+     * exactly one of it.
+     *
+     * @param levels the number of levels up, 0 for this grid
+     * @return the coarser grid
+     */
+    public CellDictionary coarser(int levels) {
+        CellDictionary dictionary = this;
+        for (int i = 0; i < levels; i++) {
+            dictionary = new CellDictionary(dictionary);
+        }
+        return dictionary;
+    }
+
+    /**
+     * Returns the code of the cell containing a given one in the grid a
+     * number of levels up the pyramid, see coarser().
+     *
+     * @param code the code of the cell in this grid
+     * @param levels the number of levels up
+     * @return the code of the cell in the coarser grid
+     */
+    public int coarserCode(int code, int levels) {
+        int coarserCols = ((numCols - 1) >> levels) + 1;
+        return (row(code) >> levels) * coarserCols + (col(code) >> levels);
+    }
+
+    public static double distanceInMeters(double lat1, double lng1, double lat2, double lng2) {
+        final double factor = 7.91959594934121e-06;
+        double dlng = Math.abs(lng2-lng1) >= Math.PI? Math.abs(lng2-lng1) - Math.PI : lng2-lng1;
+        return Math.sqrt(Math.pow(lat2 - lat1, 2) + Math.pow(dlng, 2)) / factor;
+    }
+
+    /**
+     * Tells whether a location falls inside the area.
+     */
+    public boolean contains(double lat, double lng) {
+        // FIXME considerare il caso in cui l'area è attraversata dal meridiano 180!
+        return lat <= nwLat && lat >= seLat && lng >= nwLng && lng <= seLng;
+    }
+
+    /**
+     * Returns the row of the cell containing the given latitude.
+     */
+    public int row(double lat) {
+        return (int) Math.floor(distanceInMeters(nwLat, 0, lat, 0) / cellYSizeInMeters);
+    }
+
+    /**
+     * Returns the column of the cell containing the given longitude.
+     */
+    public int col(double lng) {
+        return (int) Math.floor(distanceInMeters(0, nwLng, 0, lng) / cellXSizeInMeters);
+    }
+
+    /**
+     * Returns the code of the cell containing a location.
+     *
+     * @param lat the latitude
+     * @param lng the longitude
+     * @return the cell code, or -1 if the location is outside the area
+     */
+    public int code(double lat, double lng) {
+        if (!contains(lat, lng)) {
+            return -1;
+        }
+        return code(row(lat), col(lng));
+    }
+
+    public int code(int row, int col) {
+        return row * numCols + col;
+    }
+
+    /**
+     * Returns the code of a cell given in the textual form (row;col).
+     */
+    public int code(String name) {
+        long key = CellId.parse(name);
+        return code(CellId.row(key), CellId.col(key));
+    }
+
+    public int row(int code) {
+        return code / numCols;
+    }
+
+    public int col(int code) {
+        return code % numCols;
+    }
+
+    /**
+     * Returns the textual form (row;col) of a cell code.
+     */
+    public String name(int code) {
+        return CellId.toString(row(code), col(code));
+    }
+
+    /**
+     * Returns the number of codes of the grid.
+     */
+    public int size() {
+        return numRows * numCols;
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumCols() {
+        return numCols;
+    }
+
+    public double getNwLat() {
+        return nwLat;
+    }
+
+    public double getNwLng() {
+        return nwLng;
+    }
+
+    public double getSeLat() {
+        return seLat;
+    }
+
+    public double getSeLng() {
+        return seLng;
+    }
+
+    public double getCellXSizeInMeters() {
+        return cellXSizeInMeters;
+    }
+
+    public double getCellYSizeInMeters() {
+        return cellYSizeInMeters;
+    }
+}
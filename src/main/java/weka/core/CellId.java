@@ -0,0 +1,106 @@
+/*
+ */
+package weka.core;
+
+/**
+ * Helpers for the grid cell identifiers produced by GridGpsArea. A cell id
+ * has the textual form (row;col); internally it is packed into a long key so
+ * that cells can be compared, hashed and sorted without touching strings.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ * @version $Revision: $
+ */
+public final class CellId {
+
+    private CellId() {
+    }
+
+    /**
+     * Packs a cell row and column into a single key.
+     *
+     * @param row the cell row (meridian direction)
+     * @param col the cell column (parallel direction)
+     * @return the packed key
+     */
+    public static long key(int row, int col) {
+        return ((long) row << 32) | (col & 0xffffffffL);
+    }
+
+    public static int row(long key) {
+        return (int) (key >> 32);
+    }
+
+    public static int col(long key) {
+        return (int) key;
+    }
+
+    /**
+     * Formats a cell as (row;col).
+     *
+     * @param row the cell row
+     * @param col the cell column
+     * @return the textual cell id
+     */
+    public static String toString(int row, int col) {
+        return "(" + row + ";" + col + ")";
+    }
+
+    public static String toString(long key) {
+        return toString(row(key), col(key));
+    }
+
+    /**
+     * Parses a textual cell id of the form (row;col) without going through
+     * regular expressions.
+     *
+     * @param cellId the textual cell id
+     * @return the packed key
+     * @throws IllegalArgumentException if the cell id is malformed
+     */
+    public static long parse(String cellId) {
+        int n = cellId.length();
+        if (n < 5 || cellId.charAt(0) != '(' || cellId.charAt(n - 1) != ')') {
+            throw new IllegalArgumentException("Malformed cell id: " + cellId);
+        }
+        int i = 1;
+        int row = 0;
+        boolean negative = cellId.charAt(i) == '-';
+        if (negative) {
+            i++;
+        }
+        int start = i;
+        char c;
+        while ((c = cellId.charAt(i)) != ';') {
+            if (c < '0' || c > '9' || i == n - 1) {
+                throw new IllegalArgumentException("Malformed cell id: " + cellId);
+            }
+            row = row * 10 + (c - '0');
+            i++;
+        }
+        if (i == start) {
+            throw new IllegalArgumentException("Malformed cell id: " + cellId);
+        }
+        if (negative) {
+            row = -row;
+        }
+        i++;
+        int col = 0;
+        negative = cellId.charAt(i) == '-';
+        if (negative) {
+            i++;
+        }
+        start = i;
+        for (; i < n - 1; i++) {
+            c = cellId.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Malformed cell id: " + cellId);
+            }
+            col = col * 10 + (c - '0');
+        }
+        if (i == start) {
+            throw new IllegalArgumentException("Malformed cell id: " + cellId);
+        }
+        return key(row, negative ? -col : col);
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ */
+package weka.core;
+
+import java.io.Serializable;
+
+/**
+ * An adaptive grid: a quadtree over the pyramid of a CellDictionary (see
+ * CellDictionary.coarser()) whose cells are split, from the coarsest level
+ * down, as long as they hold more than a given number of instances. Dense
+ * areas end up with small cells and sparse ones with large cells, so the
+ * number of cells grows with the data rather than with the area.
+ * <p/>
+ * A leaf of the tree is identified by the code, in the finest grid, of its
+ * north-western cell. Leaves never overlap, so such codes are unique and can
+ * be stored, joined and printed as plain cell codes; the level of a leaf,
+ * hence its size, is found again with level().
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ * @version $Revision: $
+ */
+public class CellTree implements Serializable {
+
+    /**
+     * for serialization.
+     */
+    private static final long serialVersionUID = -2318874500143927052L;
+    private final CellDictionary dictionary;
+    private final CellDictionary[] levels;
+    private final int maxCount;
+    /** the split cells, by key(level, code) */
+    private final LongIntHashMap splits;
+    private final int numLeaves;
+    private final long checksum;
+
+    private CellTree(CellDictionary dictionary, CellDictionary[] levels, int maxCount,
+            LongIntHashMap splits, int numLeaves, long checksum) {
+        this.dictionary = dictionary;
+        this.levels = levels;
+        this.maxCount = maxCount;
+        this.splits = splits;
+        this.numLeaves = numLeaves;
+        this.checksum = checksum;
+    }
+
+    private static long key(int level, int code) {
+        return ((long) level << 32) | code;
+    }
+
+    /**
+     * Returns the number of levels needed for a single cell of the coarsest
+     * one to cover the whole grid.
+     *
+     * @param dictionary the finest grid
+     * @return the number of levels
+     */
+    public static int levelsToCover(CellDictionary dictionary) {
+        int levels = 1;
+        while ((Math.max(dictionary.getNumRows(), dictionary.getNumCols()) - 1) >> (levels - 1) > 0) {
+            levels++;
+        }
+        return levels;
+    }
+
+    /**
+     * Builds the tree from the number of instances of every cell of the
+     * finest grid. A cell is split while it holds more than maxCount
+     * instances and is larger than a cell of the finest grid.
+     *
+     * @param dictionary the finest grid
+     * @param numLevels the number of levels of the tree, 0 to cover the
+     * grid with one cell
+     * @param maxCount the largest number of instances of an unsplit cell
+     * @param counts the number of instances of every code of the finest grid
+     * @return the tree
+     */
+    public static CellTree build(CellDictionary dictionary, int numLevels, int maxCount, int[] counts) {
+        if (numLevels <= 0) {
+            numLevels = levelsToCover(dictionary);
+        }
+        CellDictionary[] levels = new CellDictionary[numLevels];
+        int[][] levelCounts = new int[numLevels][];
+        levels[0] = dictionary;
+        levelCounts[0] = counts;
+        for (int l = 1; l < numLevels; l++) {
+            levels[l] = levels[l - 1].coarser(1);
+            levelCounts[l] = new int[levels[l].size()];
+            for (int code = 0; code < levelCounts[l - 1].length; code++) {
+                levelCounts[l][levels[l - 1].coarserCode(code, 1)] += levelCounts[l - 1][code];
+            }
+        }
+        LongIntHashMap splits = new LongIntHashMap(1024, -1);
+        long checksum = numLevels * 31L + maxCount;
+        int numLeaves = 0;
+        for (int l = numLevels - 1; l >= 0; l--) {
+            for (int code = 0; code < levelCounts[l].length; code++) {
+                if (levelCounts[l][code] == 0) {
+                    continue;
+                }
+                boolean reached = l == numLevels - 1
+                        || splits.containsKey(key(l + 1, levels[l].coarserCode(code, 1)));
+                if (!reached) {
+                    continue;
+                }
+                if (l > 0 && levelCounts[l][code] > maxCount) {
+                    splits.put(key(l, code), 1);
+                    checksum = checksum * 31 + key(l, code);
+                } else {
+                    numLeaves++;
+                }
+            }
+        }
+        return new CellTree(dictionary, levels, maxCount, splits, numLeaves, checksum);
+    }
+
+    /**
+     * Returns the leaf containing a cell of the finest grid.
+     *
+     * @param code the code of the cell in the finest grid
+     * @return the code in the finest grid of the north-western cell of the
+     * leaf
+     */
+    public int leaf(int code) {
+        int level = level(code);
+        if (level == 0) {
+            return code;
+        }
+        int leafCode = dictionary.coarserCode(code, level);
+        CellDictionary grid = levels[level];
+        return dictionary.code(grid.row(leafCode) << level, grid.col(leafCode) << level);
+    }
+
+    /**
+     * Returns the level of the leaf containing a cell of the finest grid,
+     * hence also of a leaf given by its code: the leaf is 2^level cells of
+     * the finest grid wide and high.
+     *
+     * @param code the code of the cell in the finest grid
+     * @return the level of its leaf
+     */
+    public int level(int code) {
+        for (int l = levels.length - 1; l > 0; l--) {
+            if (!splits.containsKey(key(l, dictionary.coarserCode(code, l)))) {
+                return l;
+            }
+        }
+        return 0;
+    }
+
+    public CellDictionary getCellDictionary() {
+        return dictionary;
+    }
+
+    public int getNumLevels() {
+        return levels.length;
+    }
+
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    /**
+     * Returns the number of leaves holding at least one of the instances the
+     * tree was built from.
+     *
+     * @return the number of non-empty leaves
+     */
+    public int getNumLeaves() {
+        return numLeaves;
+    }
+
+    /**
+     * Describes the tree in a short form that changes with its splits, so
+     * that stages depending on the tree can be told apart.
+     */
+    @Override
+    public String toString() {
+        return "CellTree(" + levels.length + "," + maxCount + "," + numLeaves + ","
+                + Long.toHexString(checksum) + ")";
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ */
+package weka.core;
+
+import java.io.Serializable;
+
+/**
+ * Ball tree over the centroids of a clustering, to find the nearest one to a
+ * point in time sublinear in their number. Every node keeps the mean of its
+ * centroids and the radius of the ball around it, which bound the distance
+ * from the point to all of them, so that whole nodes are skipped once a
+ * centroid nearer than the bound is found.
+ * <p/>
+ * The tree only prunes: the distances of the centroids that are not pruned
+ * are computed by the caller, with the same code as its linear scan, and
+ * nodes are pruned only if their bound exceeds the best distance by more
+ * than any rounding error. Hence the search returns exactly what the linear
+ * scan would, including the first centroid on ties.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ * @version $Revision: $
+ */
+public class CentroidTree implements Serializable {
+
+    /**
+     * for serialization.
+     */
+    private static final long serialVersionUID = -2390148211753806513L;
+    private static final int LEAF_SIZE = 8;
+    /** relative slack of the bounds, far above the rounding errors */
+    private static final double SLACK = 1e-9;
+
+    /**
+     * How the distance of the caller is bounded by the points of the tree,
+     * given as a point to search for.
+     */
+    public enum Metric {
+        /** the euclidean distance of the points */
+        EUCLIDEAN,
+        /** the squared euclidean distance of the points */
+        SQUARED_EUCLIDEAN,
+        /** the cosine distance of unit points, half their squared distance */
+        COSINE_OF_UNIT,
+        /** one minus the dot product of the points */
+        ONE_MINUS_DOT
+    }
+
+    /**
+     * The exact distance from the point searched for to a centroid.
+     */
+    public interface Distance {
+
+        double distance(int centroid);
+    }
+
+    private final double[][] points;
+    private final int[] order;
+    /** per node: first and last + 1 position in order, children, -1 for leaves */
+    private final int[] from;
+    private final int[] to;
+    private final int[] left;
+    private final int[] right;
+    private final double[][] centers;
+    private final double[] radii;
+    /** squared length of the center plus squared radius, scaling the slack */
+    private final double[] magnitudes;
+    private int numNodes = 0;
+
+    /**
+     * Builds the tree.
+     *
+     * @param points the centroids, all of the same length, in the space the
+     * metric bounds the distance in
+     */
+    public CentroidTree(double[][] points) {
+        this.points = points;
+        int n = points.length;
+        int maxNodes = 2 * n + 1;
+        order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        from = new int[maxNodes];
+        to = new int[maxNodes];
+        left = new int[maxNodes];
+        right = new int[maxNodes];
+        centers = new double[maxNodes][];
+        radii = new double[maxNodes];
+        magnitudes = new double[maxNodes];
+        build(0, n);
+    }
+
+    private int build(int start, int end) {
+        int node = numNodes++;
+        int d = points.length > 0 ? points[0].length : 0;
+        from[node] = start;
+        to[node] = end;
+        double[] center = new double[d];
+        for (int i = start; i < end; i++) {
+            for (int j = 0; j < d; j++) {
+                center[j] += points[order[i]][j];
+            }
+        }
+        for (int j = 0; j < d; j++) {
+            center[j] /= Math.max(1, end - start);
+        }
+        double radius = 0;
+        double length = 0;
+        for (int i = start; i < end; i++) {
+            radius = Math.max(radius, Math.sqrt(squaredDistance(points[order[i]], center)));
+        }
+        for (int j = 0; j < d; j++) {
+            length += center[j] * center[j];
+        }
+        centers[node] = center;
+        radii[node] = radius;
+        magnitudes[node] = length + radius * radius;
+        left[node] = -1;
+        right[node] = -1;
+        if (end - start <= LEAF_SIZE) {
+            return node;
+        }
+        // Split at the median of the dimension of largest spread
+        int split = 0;
+        double spread = -1;
+        for (int j = 0; j < d; j++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = start; i < end; i++) {
+                min = Math.min(min, points[order[i]][j]);
+                max = Math.max(max, points[order[i]][j]);
+            }
+            if (max - min > spread) {
+                spread = max - min;
+                split = j;
+            }
+        }
+        int middle = (start + end) >>> 1;
+        select(start, end - 1, middle, split);
+        left[node] = build(start, middle);
+        right[node] = build(middle, end);
+        return node;
+    }
+
+    /**
+     * Partially sorts order[start..end] by a coordinate, so that the k-th
+     * position holds the point it would hold if sorted.
+     */
+    private void select(int start, int end, int k, int coordinate) {
+        while (start < end) {
+            double pivot = points[order[(start + end) >>> 1]][coordinate];
+            int i = start;
+            int j = end;
+            while (i <= j) {
+                while (points[order[i]][coordinate] < pivot) {
+                    i++;
+                }
+                while (points[order[j]][coordinate] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = order[i];
+                    order[i++] = order[j];
+                    order[j--] = swap;
+                }
+            }
+            if (k <= j) {
+                end = j;
+            } else if (k >= i) {
+                start = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static double squaredDistance(double[] a, double[] b) {
+        double sum = 0;
+        for (int j = 0; j < a.length; j++) {
+            double diff = a[j] - b[j];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    private double bound(double[] point, double length, int node, Metric metric) {
+        double[] center = centers[node];
+        if (metric == Metric.ONE_MINUS_DOT) {
+            double dot = 0;
+            for (int j = 0; j < point.length; j++) {
+                dot += point[j] * center[j];
+            }
+            return 1 - dot - Math.sqrt(length) * radii[node];
+        }
+        double gap = Math.max(0, Math.sqrt(squaredDistance(point, center)) - radii[node]);
+        return metric == Metric.EUCLIDEAN ? gap : metric == Metric.COSINE_OF_UNIT ? gap * gap / 2 : gap * gap;
+    }
+
+    /**
+     * Returns the nearest centroid to a point.
+     *
+     * @param point the point, in the space of the centroids of the tree
+     * @param metric how the distance is bounded by the points
+     * @param distance the exact distance to a centroid
+     * @return the centroid at the least distance, the first one on ties,
+     * or 0 if no distance is less than Double.MAX_VALUE
+     */
+    public int nearest(double[] point, Metric metric, Distance distance) {
+        if (points.length == 0) {
+            return -1;
+        }
+        double length = 0;
+        for (int j = 0; j < point.length; j++) {
+            length += point[j] * point[j];
+        }
+        double[] best = {Double.MAX_VALUE, -1};
+        search(0, point, length, metric, distance, best);
+        // As a linear scan starting from the first centroid, if none is nearer
+        return best[1] < 0 ? 0 : (int) best[1];
+    }
+
+    private void search(int node, double[] point, double length, Metric metric,
+            Distance distance, double[] best) {
+        double slack = SLACK * (1 + length + magnitudes[node]);
+        if (best[1] >= 0 && bound(point, length, node, metric) > best[0] + slack) {
+            return;
+        }
+        if (left[node] < 0) {
+            for (int i = from[node]; i < to[node]; i++) {
+                int centroid = order[i];
+                double d = distance.distance(centroid);
+                if (d < best[0] || (d == best[0] && centroid < best[1])) {
+                    best[0] = d;
+                    best[1] = centroid;
+                }
+            }
+            return;
+        }
+        // The nearer child first, so that more of the other one is pruned
+        int first = left[node];
+        int second = right[node];
+        if (bound(point, length, second, metric) < bound(point, length, first, metric)) {
+            first = right[node];
+            second = left[node];
+        }
+        search(first, point, length, metric, distance, best);
+        search(second, point, length, metric, distance, best);
+    }
+
+    /**
+     * Returns the number of centroids of the tree.
+     */
+    public int size() {
+        return points.length;
+    }
+}
@@ -32,6 +32,7 @@ public class CosineDistance extends EuclideanDistance implements DistanceFunctio
      */
     private static final long serialVersionUID = -123123123123123L;
     private boolean splitMax = false;
+    private boolean unitLength = false;
     
     /**
      * Returns a string describing this object.
@@ -111,6 +112,21 @@ public class CosineDistance extends EuclideanDistance implements DistanceFunctio
         return similarity;
     }
     
+    /**
+     * Returns one minus the dot product of two vectors already scaled to unit
+     * length, which is their cosine distance.
+     */
+    private double dot(Instance first, Instance second) {
+        int classidx = first.classIndex();
+        double product = 0.0;
+        for (int v = 0; v < first.numAttributes(); v++) {
+            if (v != classidx && first.attribute(v).isNumeric()) {
+                product += first.value(v) * second.value(v);
+            }
+        }
+        return 1 - product;
+    }
+
     /**
      * Calculates the distance between two instances.
      *     
@@ -131,6 +147,8 @@ public class CosineDistance extends EuclideanDistance implements DistanceFunctio
             double cosineDistanceOff = 1-cos(first, second, "dn");
             return Math.max(cosineDistanceOn, cosineDistanceOff);
         }
+        if(unitLength)
+            return dot(first, second);
         return 1-cos(first, second, null);
     }
 
@@ -141,6 +159,22 @@ public class CosineDistance extends EuclideanDistance implements DistanceFunctio
     public void setSplitMax(boolean splitMax) {
         this.splitMax = splitMax;
     }
+
+    public boolean isUnitLength() {
+        return unitLength;
+    }
+
+    /**
+     * Tells that the vectors are already scaled to unit length (see
+     * GridNormalize L2_UNIT), so that the distance is computed as a plain dot
+     * product. Ignored when splitMax is set, as the up and dn halves of a unit
+     * vector are not unit vectors themselves.
+     *
+     * @param unitLength true if the vectors have unit length
+     */
+    public void setUnitLength(boolean unitLength) {
+        this.unitLength = unitLength;
+    }
     
     /**
      * Calculates the distance between two instances.
@@ -0,0 +1,565 @@
+/*
+ */
+package weka.core;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Distances from one row of a FeatureMatrix to many rows or points at once.
+ * DistanceFunction.distance(Instance, Instance) pays for a virtual call, a
+ * check of the headers and a lookup of the attributes for every pair; here
+ * the query row is loaded once, and the rows it is compared to are read as
+ * plain float arrays, a block at a time, by loops over the columns alone.
+ * Rows on the heap are read in place, others are copied a block at a time
+ * into an array of the kernel.
+ * <p/>
+ * The distance of every pair is computed with the same operations in the
+ * same order whichever method computes it, so that one-to-many distances
+ * and tiles equal those of distance(first, second). A kernel keeps the
+ * query row and its blocks in fields: use one per thread.
+ * <p/>
+ * A kernel of points alone, see ofPoints(), compares queries that are not
+ * rows of a matrix, e.g. new cells, to fixed points, e.g. centroids; what
+ * depends on the points alone, as their lengths, is computed once.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ * @version $Revision: $
+ */
+public abstract class DistanceKernel implements FeatureMatrix.RowDistance {
+
+    /** most rows read at once, those of a tile being compared to each row */
+    static final int BLOCK_ROWS = 128;
+
+    public enum Type {
+        /** the euclidean distance, each column scaled */
+        EUCLIDEAN,
+        /** the squared euclidean distance, each column scaled */
+        SQUARED_EUCLIDEAN,
+        /** the manhattan distance, each column scaled */
+        MANHATTAN,
+        /** the cosine distance, NaN for null rows */
+        COSINE
+    }
+
+    protected final FeatureMatrix matrix;
+    protected final int numCols;
+    /** the query row, as doubles */
+    protected final double[] query;
+    private int queryRow = -1;
+    /** the points of a kernel of points alone, numCols per point */
+    protected double[] points;
+    protected int numPoints;
+    private float[] scratch;
+    /** set by block(): the array holding the block and its first row */
+    private float[] blockValues;
+    private int blockBase;
+
+    /**
+     * @param matrix the matrix, null for a kernel of points alone
+     * @param numCols the values of a row or point
+     */
+    protected DistanceKernel(FeatureMatrix matrix, int numCols) {
+        this.matrix = matrix;
+        this.numCols = numCols;
+        this.query = new double[numCols];
+    }
+
+    /**
+     * Returns the kernel of a DistanceFunction, if supported: see
+     * FeatureMatrix.distance().
+     *
+     * @param matrix the matrix
+     * @param df the distance function, set up on the features of the matrix
+     * @return the kernel, or null if the function is not supported
+     */
+    public static DistanceKernel of(FeatureMatrix matrix, DistanceFunction df) {
+        Instances header = df.getInstances();
+        if (matrix.hasMissing() || header == null || !matrix.sameColumns(header)) {
+            return null;
+        }
+        if (df.getClass() == CosineDistance.class) {
+            CosineDistance cosine = (CosineDistance) df;
+            if (cosine.isSplitMax()) {
+                boolean[][] subsets = new boolean[2][matrix.numCols()];
+                for (int j = 0; j < matrix.numCols(); j++) {
+                    subsets[0][j] = matrix.columnName(j).startsWith("up");
+                    subsets[1][j] = matrix.columnName(j).startsWith("dn");
+                }
+                return new Cosine(matrix, matrix.numCols(), false, subsets);
+            }
+            return new Cosine(matrix, matrix.numCols(), cosine.isUnitLength(), null);
+        }
+        if (df.getClass() != EuclideanDistance.class && df.getClass() != ManhattanDistance.class) {
+            return null;
+        }
+        NormalizableDistance normalizable = (NormalizableDistance) df;
+        if (!normalizable.getAttributeIndices().equals("first-last") || normalizable.getInvertSelection()) {
+            return null;
+        }
+        double[] scales = new double[matrix.numCols()];
+        try {
+            double[][] ranges = normalizable.getDontNormalize() ? null : normalizable.getRanges();
+            for (int j = 0, a = 0; j < scales.length; j++, a++) {
+                a += a == header.classIndex() ? 1 : 0;
+                if (ranges == null) {
+                    scales[j] = 1;
+                } else if (!Double.isNaN(ranges[a][0]) && ranges[a][1] != ranges[a][0]) {
+                    scales[j] = 1 / ranges[a][2];
+                }
+            }
+        } catch (Exception e) {
+            return null;
+        }
+        return of(matrix, df.getClass() == ManhattanDistance.class ? Type.MANHATTAN : Type.EUCLIDEAN, scales);
+    }
+
+    /**
+     * Returns a kernel.
+     *
+     * @param matrix the matrix
+     * @param type the distance
+     * @param scales the factor of every column, null for 1; ignored by the
+     * cosine distance
+     * @return the kernel
+     */
+    public static DistanceKernel of(FeatureMatrix matrix, Type type, double[] scales) {
+        if (type == Type.COSINE) {
+            return new Cosine(matrix, matrix.numCols(), false, null);
+        }
+        if (scales == null) {
+            scales = new double[matrix.numCols()];
+            Arrays.fill(scales, 1);
+        }
+        if (scales.length != matrix.numCols()) {
+            throw new IllegalArgumentException(scales.length + " scales for " + matrix.numCols() + " columns");
+        }
+        return type == Type.MANHATTAN ? new Manhattan(matrix, matrix.numCols(), scales)
+                : new Euclidean(matrix, matrix.numCols(), scales, type == Type.SQUARED_EUCLIDEAN);
+    }
+
+    /**
+     * Returns a kernel of points alone, for toPoints(double[], double[])
+     * only.
+     *
+     * @param points the values of the points, numCols per point; not copied
+     * @param numCols the values of a point
+     * @param type the distance
+     * @param scales the factor of every value, null for 1; ignored by the
+     * cosine distance
+     * @param unitLength true if the points have unit length, so that the
+     * cosine distance is one minus their dot product, see CosineDistance
+     * @param subsets the subsets of the values the cosine distance is the
+     * largest of, null for all the values, see CosineDistance.setSplitMax()
+     * @return the kernel
+     */
+    public static DistanceKernel ofPoints(double[] points, int numCols, Type type, double[] scales,
+            boolean unitLength, boolean[][] subsets) {
+        DistanceKernel kernel;
+        if (type == Type.COSINE) {
+            kernel = new Cosine(null, numCols, unitLength && subsets == null, subsets);
+        } else {
+            if (scales == null) {
+                scales = new double[numCols];
+                Arrays.fill(scales, 1);
+            }
+            if (scales.length != numCols) {
+                throw new IllegalArgumentException(scales.length + " scales for " + numCols + " values");
+            }
+            kernel = type == Type.MANHATTAN ? new Manhattan(null, numCols, scales)
+                    : new Euclidean(null, numCols, scales, type == Type.SQUARED_EUCLIDEAN);
+        }
+        kernel.points = points;
+        kernel.numPoints = numCols > 0 ? points.length / numCols : 0;
+        kernel.pointsSet();
+        return kernel;
+    }
+
+    /**
+     * Returns the distance between a loaded query row and a row or point.
+     *
+     * @param values the array holding the row or point
+     * @param offset the position of its first value
+     */
+    protected abstract double kernel(float[] values, int offset);
+
+    protected abstract double kernel(double[] values, int offset);
+
+    /**
+     * Loads a query row, unless it is loaded already.
+     */
+    protected void load(int row) {
+        if (row == queryRow) {
+            return;
+        }
+        FloatBuffer chunk = matrix.chunk(row);
+        int offset = matrix.offset(row);
+        for (int j = 0; j < numCols; j++) {
+            query[j] = chunk.get(offset + j);
+        }
+        queryRow = row;
+        loaded();
+    }
+
+    /**
+     * Called once a query row is loaded, to compute what depends on it alone.
+     */
+    protected void loaded() {
+    }
+
+    /**
+     * Called once the points of a kernel of points alone are set, to compute
+     * what depends on them alone.
+     */
+    protected void pointsSet() {
+    }
+
+    /**
+     * Returns the distance between a loaded query and a point of a kernel of
+     * points alone.
+     */
+    protected double pointKernel(int point) {
+        return kernel(points, point * numCols);
+    }
+
+    /**
+     * Makes rows [from, to) of a chunk readable from blockValues, starting at
+     * blockBase, one row every stride floats.
+     */
+    private void block(int from, int to) {
+        FloatBuffer chunk = matrix.chunk(from);
+        int offset = matrix.offset(from);
+        if (chunk.hasArray()) {
+            blockValues = chunk.array();
+            blockBase = chunk.arrayOffset() + offset;
+            return;
+        }
+        int length = (to - from) * matrix.stride();
+        if (scratch == null || scratch.length < length) {
+            scratch = new float[BLOCK_ROWS * matrix.stride()];
+        }
+        FloatBuffer view = chunk.duplicate();
+        view.position(offset);
+        view.get(scratch, 0, length);
+        blockValues = scratch;
+        blockBase = 0;
+    }
+
+    public double distance(int first, int second) {
+        load(first);
+        return kernel(matrix.chunk(second), matrix.offset(second));
+    }
+
+    private double kernel(FloatBuffer chunk, int offset) {
+        if (chunk.hasArray()) {
+            return kernel(chunk.array(), chunk.arrayOffset() + offset);
+        }
+        if (scratch == null) {
+            scratch = new float[BLOCK_ROWS * matrix.stride()];
+        }
+        FloatBuffer view = chunk.duplicate();
+        view.position(offset);
+        view.get(scratch, 0, numCols);
+        return kernel(scratch, 0);
+    }
+
+    /**
+     * Computes the distances from a row to a range of rows.
+     *
+     * @param row the query row
+     * @param from the first row
+     * @param to the last row + 1
+     * @param distances filled with the distance to row from + i at i
+     */
+    public void oneToMany(int row, int from, int to, double[] distances) {
+        load(row);
+        int stride = matrix.stride();
+        for (int start = from; start < to; ) {
+            int end = Math.min(Math.min(to, matrix.chunkEnd(start)), start + BLOCK_ROWS);
+            block(start, end);
+            for (int r = start, offset = blockBase; r < end; r++, offset += stride) {
+                distances[r - from] = kernel(blockValues, offset);
+            }
+            start = end;
+        }
+    }
+
+    /**
+     * Computes the distances between two ranges of rows.
+     *
+     * @param rowFrom the first row of the first range
+     * @param rowTo its last row + 1
+     * @param colFrom the first row of the second range
+     * @param colTo its last row + 1
+     * @param distances filled with the distance between rowFrom + i and
+     * colFrom + j at i * (colTo - colFrom) + j
+     */
+    public void tile(int rowFrom, int rowTo, int colFrom, int colTo, double[] distances) {
+        int width = colTo - colFrom;
+        int stride = matrix.stride();
+        for (int start = colFrom; start < colTo; ) {
+            int end = Math.min(Math.min(colTo, matrix.chunkEnd(start)), start + BLOCK_ROWS);
+            // The block of columns is read once for all the rows
+            block(start, end);
+            float[] values = blockValues;
+            int base = blockBase;
+            for (int r = rowFrom; r < rowTo; r++) {
+                load(r);
+                int at = (r - rowFrom) * width + start - colFrom;
+                for (int c = start, offset = base; c < end; c++, offset += stride) {
+                    distances[at++] = kernel(values, offset);
+                }
+            }
+            start = end;
+        }
+    }
+
+    /**
+     * Computes the distances from a row to points, e.g. centroids.
+     *
+     * @param row the query row
+     * @param points the values of the points, numCols per point
+     * @param numPoints the number of points
+     * @param distances filled with the distance to every point
+     */
+    public void toPoints(int row, double[] points, int numPoints, double[] distances) {
+        load(row);
+        for (int p = 0; p < numPoints; p++) {
+            distances[p] = kernel(points, p * numCols);
+        }
+    }
+
+    /**
+     * Computes the distances from a query to the points of a kernel of
+     * points alone, e.g. from a new cell to centroids.
+     *
+     * @param values the values of the query, numCols of them
+     * @param distances filled with the distance to every point
+     */
+    public void toPoints(double[] values, double[] distances) {
+        System.arraycopy(values, 0, query, 0, numCols);
+        queryRow = -1;
+        loaded();
+        for (int p = 0; p < numPoints; p++) {
+            distances[p] = pointKernel(p);
+        }
+    }
+
+    private static class Euclidean extends DistanceKernel {
+
+        private final double[] scales;
+        private final boolean squared;
+
+        Euclidean(FeatureMatrix matrix, int numCols, double[] scales, boolean squared) {
+            super(matrix, numCols);
+            this.scales = scales;
+            this.squared = squared;
+        }
+
+        protected double kernel(float[] values, int offset) {
+            double sum = 0;
+            for (int j = 0; j < numCols; j++) {
+                double diff = (query[j] - values[offset + j]) * scales[j];
+                sum += diff * diff;
+            }
+            return squared ? sum : Math.sqrt(sum);
+        }
+
+        protected double kernel(double[] values, int offset) {
+            double sum = 0;
+            for (int j = 0; j < numCols; j++) {
+                double diff = (query[j] - values[offset + j]) * scales[j];
+                sum += diff * diff;
+            }
+            return squared ? sum : Math.sqrt(sum);
+        }
+    }
+
+    private static class Manhattan extends DistanceKernel {
+
+        private final double[] scales;
+
+        Manhattan(FeatureMatrix matrix, int numCols, double[] scales) {
+            super(matrix, numCols);
+            this.scales = scales;
+        }
+
+        protected double kernel(float[] values, int offset) {
+            double sum = 0;
+            for (int j = 0; j < numCols; j++) {
+                sum += Math.abs((query[j] - values[offset + j]) * scales[j]);
+            }
+            return sum;
+        }
+
+        protected double kernel(double[] values, int offset) {
+            double sum = 0;
+            for (int j = 0; j < numCols; j++) {
+                sum += Math.abs((query[j] - values[offset + j]) * scales[j]);
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * The cosine distance as CosineDistance computes it: one minus the dot
+     * product of unit rows, one minus their cosine, or the largest of the
+     * cosine distances over subsets of the columns.
+     */
+    private static class Cosine extends DistanceKernel {
+
+        private final boolean unitLength;
+        private final boolean[][] subsets;
+        /** the squared length of the query row over every subset */
+        private final double[] queryLengths;
+        /** the squared length of every point over every subset */
+        private double[][] pointLengths;
+
+        Cosine(FeatureMatrix matrix, int numCols, boolean unitLength, boolean[][] subsets) {
+            super(matrix, numCols);
+            this.unitLength = unitLength;
+            this.subsets = subsets;
+            this.queryLengths = new double[subsets != null ? subsets.length : 1];
+        }
+
+        @Override
+        protected void loaded() {
+            for (int s = 0; s < queryLengths.length; s++) {
+                double length = 0;
+                for (int j = 0; j < numCols; j++) {
+                    if (subsets == null || subsets[s][j]) {
+                        length += query[j] * query[j];
+                    }
+                }
+                queryLengths[s] = length;
+            }
+        }
+
+        @Override
+        protected void pointsSet() {
+            pointLengths = new double[queryLengths.length][numPoints];
+            for (int s = 0; s < queryLengths.length; s++) {
+                for (int p = 0; p < numPoints; p++) {
+                    double length = 0;
+                    for (int j = 0; j < numCols; j++) {
+                        if (subsets == null || subsets[s][j]) {
+                            double value = points[p * numCols + j];
+                            length += value * value;
+                        }
+                    }
+                    pointLengths[s][p] = length;
+                }
+            }
+        }
+
+        /**
+         * As kernel(points, point * numCols), with the lengths of the point
+         * computed once.
+         */
+        @Override
+        protected double pointKernel(int point) {
+            int offset = point * numCols;
+            if (unitLength) {
+                return kernel(points, offset);
+            }
+            double distance = Double.NEGATIVE_INFINITY;
+            for (int s = 0; s < queryLengths.length; s++) {
+                double product = 0;
+                for (int j = 0; j < numCols; j++) {
+                    if (subsets == null || subsets[s][j]) {
+                        product += query[j] * points[offset + j];
+                    }
+                }
+                double d = 1 - cos(product, queryLengths[s], pointLengths[s][point]);
+                if (subsets == null) {
+                    return d;
+                }
+                distance = Math.max(distance, d);
+            }
+            return distance;
+        }
+
+        protected double kernel(float[] values, int offset) {
+            if (unitLength) {
+                double product = 0;
+                for (int j = 0; j < numCols; j++) {
+                    product += query[j] * values[offset + j];
+                }
+                return 1 - product;
+            }
+            if (subsets == null) {
+                double product = 0, length = 0;
+                for (int j = 0; j < numCols; j++) {
+                    double value = values[offset + j];
+                    product += query[j] * value;
+                    length += value * value;
+                }
+                return 1 - cos(product, queryLengths[0], length);
+            }
+            double distance = Double.NEGATIVE_INFINITY;
+            for (int s = 0; s < subsets.length; s++) {
+                boolean[] subset = subsets[s];
+                double product = 0, length = 0;
+                for (int j = 0; j < numCols; j++) {
+                    if (subset[j]) {
+                        double value = values[offset + j];
+                        product += query[j] * value;
+                        length += value * value;
+                    }
+                }
+                distance = Math.max(distance, 1 - cos(product, queryLengths[s], length));
+            }
+            return distance;
+        }
+
+        protected double kernel(double[] values, int offset) {
+            if (unitLength) {
+                double product = 0;
+                for (int j = 0; j < numCols; j++) {
+                    product += query[j] * values[offset + j];
+                }
+                return 1 - product;
+            }
+            if (subsets == null) {
+                double product = 0, length = 0;
+                for (int j = 0; j < numCols; j++) {
+                    double value = values[offset + j];
+                    product += query[j] * value;
+                    length += value * value;
+                }
+                return 1 - cos(product, queryLengths[0], length);
+            }
+            double distance = Double.NEGATIVE_INFINITY;
+            for (int s = 0; s < subsets.length; s++) {
+                boolean[] subset = subsets[s];
+                double product = 0, length = 0;
+                for (int j = 0; j < numCols; j++) {
+                    if (subset[j]) {
+                        double value = values[offset + j];
+                        product += query[j] * value;
+                        length += value * value;
+                    }
+                }
+                distance = Math.max(distance, 1 - cos(product, queryLengths[s], length));
+            }
+            return distance;
+        }
+
+        private static double cos(double product, double lengthA, double lengthB) {
+            if (lengthA == 0 || lengthB == 0) {
+                return Double.NaN;
+            }
+            return product / Math.sqrt(lengthA * lengthB);
+        }
+    }
+
+    /**
+     * Returns the revision string.
+     *
+     * @return the revision
+     */
+    public String getRevision() {
+        return RevisionUtils.extract("$Revision: $");
+    }
+}
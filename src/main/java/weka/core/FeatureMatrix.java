@@ -0,0 +1,378 @@
+/*
+ */
+package weka.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The features of a data set as row-major floats, with the cellId of every
+ * row aside. An Instance keeps its values as doubles in an array of its own,
+ * reached through the instance and its header; here the values of all the
+ * rows are contiguous and take half the memory, so that loops over many
+ * rows, as those of the silhouette, stream through memory.
+ * <p/>
+ * The values are kept on the heap, in direct buffers or in a memory-mapped
+ * temporary file, see Storage, so that feature sets larger than the heap
+ * can be clustered without garbage collection pressure. Rows are padded to
+ * 64 bytes, so that none straddles a cache line more than it must, and are
+ * split in chunks of at most CHUNK_BYTES that start on a page boundary of
+ * the file; a row never spans two chunks.
+ * <p/>
+ * The columns are the numeric attributes of the data set apart from the
+ * class, cellId, latitude and longitude, i.e. those clustered by App. The
+ * distances between rows are computed by the adapter returned by
+ * distance(), which mirrors a DistanceFunction set up on those features.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ * @version $Revision: $
+ */
+public class FeatureMatrix implements Closeable {
+
+    /** largest chunk of rows, a multiple of the page size */
+    static final int CHUNK_BYTES = 1 << 30;
+    private static final int PAGE_BYTES = 4096;
+    /** floats in the padding unit of a row, a cache line */
+    private static final int LINE_FLOATS = 16;
+
+    public enum Storage {
+        /** float arrays on the heap */
+        HEAP,
+        /** direct buffers, outside the heap */
+        DIRECT,
+        /** a temporary file mapped in memory, paged in and out by the OS */
+        MAPPED
+    }
+
+    /**
+     * The distance between two rows of the matrix.
+     */
+    public interface RowDistance {
+
+        double distance(int first, int second);
+    }
+
+    /**
+     * Fills a matrix one row at a time, so that it can be built from a
+     * source larger than the heap.
+     */
+    public static class Builder {
+
+        private final FeatureMatrix matrix;
+        private int numRows = 0;
+
+        private Builder(FeatureMatrix matrix) {
+            this.matrix = matrix;
+        }
+
+        /**
+         * Appends a row.
+         *
+         * @param cellId the cellId of the row
+         * @param values its values, NaN if missing
+         */
+        public void add(long cellId, double[] values) {
+            if (numRows == matrix.numRows) {
+                throw new IllegalStateException("Matrix full: " + numRows + " rows");
+            }
+            if (values.length != matrix.numCols) {
+                throw new IllegalArgumentException(values.length + " values for " + matrix.numCols + " columns");
+            }
+            FloatBuffer chunk = matrix.chunk(numRows);
+            int offset = matrix.offset(numRows);
+            for (int j = 0; j < values.length; j++) {
+                chunk.put(offset + j, (float) values[j]);
+                matrix.missing |= Double.isNaN(values[j]);
+            }
+            matrix.cellIds[numRows / matrix.rowsPerChunk].put(numRows % matrix.rowsPerChunk, cellId);
+            numRows++;
+        }
+
+        /**
+         * Returns the matrix, once all its rows are added.
+         */
+        public FeatureMatrix build() {
+            if (numRows != matrix.numRows) {
+                throw new IllegalStateException(numRows + " of " + matrix.numRows + " rows added");
+            }
+            return matrix;
+        }
+    }
+
+    private final int numRows;
+    private final int numCols;
+    private final String[] columnNames;
+    /** floats between the starts of two rows */
+    private final int stride;
+    private final int rowsPerChunk;
+    private final FloatBuffer[] chunks;
+    private final LongBuffer[] cellIds;
+    private final File file;
+    private boolean missing = false;
+
+    private FeatureMatrix(int numRows, String[] columnNames, Storage storage, File dir, int chunkBytes)
+            throws IOException {
+        this.numRows = numRows;
+        this.numCols = columnNames.length;
+        this.columnNames = columnNames;
+        stride = Math.max(1, (numCols + LINE_FLOATS - 1) / LINE_FLOATS) * LINE_FLOATS;
+        // A whole number of pages per chunk: 64 rows of 64 bytes fill a page
+        int pageRows = PAGE_BYTES / (LINE_FLOATS * 4);
+        rowsPerChunk = Math.max(pageRows, chunkBytes / (stride * 4) / pageRows * pageRows);
+        int numChunks = Math.max(1, (numRows + rowsPerChunk - 1) / rowsPerChunk);
+        chunks = new FloatBuffer[numChunks];
+        cellIds = new LongBuffer[numChunks];
+        file = storage == Storage.MAPPED ? File.createTempFile("features", ".mat", dir) : null;
+        RandomAccessFile raf = null;
+        try {
+            long position = 0;
+            if (file != null) {
+                file.deleteOnExit();
+                raf = new RandomAccessFile(file, "rw");
+            }
+            for (int c = 0; c < numChunks; c++) {
+                int rows = Math.min(rowsPerChunk, numRows - c * rowsPerChunk);
+                long valueBytes = (long) rows * stride * 4;
+                long cellIdBytes = (long) rows * 8;
+                if (storage == Storage.HEAP) {
+                    chunks[c] = FloatBuffer.wrap(new float[rows * stride]);
+                    cellIds[c] = LongBuffer.wrap(new long[rows]);
+                } else if (storage == Storage.DIRECT) {
+                    chunks[c] = ByteBuffer.allocateDirect((int) valueBytes).order(ByteOrder.nativeOrder()).asFloatBuffer();
+                    cellIds[c] = ByteBuffer.allocateDirect((int) cellIdBytes).order(ByteOrder.nativeOrder()).asLongBuffer();
+                } else {
+                    FileChannel channel = raf.getChannel();
+                    chunks[c] = channel.map(FileChannel.MapMode.READ_WRITE, position, valueBytes)
+                            .order(ByteOrder.nativeOrder()).asFloatBuffer();
+                    position += valueBytes;
+                    cellIds[c] = channel.map(FileChannel.MapMode.READ_WRITE, position, cellIdBytes)
+                            .order(ByteOrder.nativeOrder()).asLongBuffer();
+                    position = (position + cellIdBytes + PAGE_BYTES - 1) / PAGE_BYTES * PAGE_BYTES;
+                }
+            }
+        } catch (IOException e) {
+            if (file != null) {
+                file.delete();
+            }
+            throw e;
+        } finally {
+            if (raf != null) {
+                // The mappings stay valid once the file is closed
+                raf.close();
+            }
+        }
+    }
+
+    private static boolean isFeature(Instances data, int index) {
+        Attribute a = data.attribute(index);
+        return a.isNumeric() && index != data.classIndex() && !a.name().equals("cellId")
+                && !a.name().equals("latitude") && !a.name().equals("longitude");
+    }
+
+    /**
+     * Returns a builder of a matrix.
+     *
+     * @param columnNames the names of the columns
+     * @param numRows the number of rows
+     * @param storage where the values are kept
+     * @param dir the directory of the file of a MAPPED matrix, null for the
+     * default temporary directory
+     * @return the builder
+     * @throws IOException if the file can't be mapped
+     */
+    public static Builder builder(String[] columnNames, int numRows, Storage storage, File dir) throws IOException {
+        return builder(columnNames, numRows, storage, dir, CHUNK_BYTES);
+    }
+
+    /**
+     * As builder(columnNames, numRows, storage, dir), with chunks of at most
+     * the given size rounded to whole pages.
+     */
+    static Builder builder(String[] columnNames, int numRows, Storage storage, File dir, int chunkBytes)
+            throws IOException {
+        return new Builder(new FeatureMatrix(numRows, columnNames.clone(), storage, dir, chunkBytes));
+    }
+
+    /**
+     * Copies the features of a data set on the heap.
+     *
+     * @param data the data set
+     * @return the matrix, missing values being NaN
+     */
+    public static FeatureMatrix of(Instances data) {
+        try {
+            return of(data, Storage.HEAP, null);
+        } catch (IOException e) {
+            // No file for the heap
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Copies the features of a data set.
+     *
+     * @param data the data set
+     * @param storage where the values are kept
+     * @param dir the directory of the file of a MAPPED matrix, null for the
+     * default temporary directory
+     * @return the matrix, missing values being NaN; the cellId of a row is
+     * the row itself if the data set has no numeric cellId
+     * @throws IOException if the file can't be mapped
+     */
+    public static FeatureMatrix of(Instances data, Storage storage, File dir) throws IOException {
+        int numCols = 0;
+        int[] columns = new int[data.numAttributes()];
+        for (int a = 0; a < data.numAttributes(); a++) {
+            if (isFeature(data, a)) {
+                columns[numCols++] = a;
+            }
+        }
+        String[] columnNames = new String[numCols];
+        for (int j = 0; j < numCols; j++) {
+            columnNames[j] = data.attribute(columns[j]).name();
+        }
+        Attribute cellId = data.attribute("cellId");
+        boolean hasCellId = cellId != null && cellId.isNumeric();
+        Builder builder = builder(columnNames, data.numInstances(), storage, dir);
+        double[] values = new double[numCols];
+        for (int i = 0; i < data.numInstances(); i++) {
+            Instance instance = data.instance(i);
+            for (int j = 0; j < numCols; j++) {
+                values[j] = instance.value(columns[j]);
+            }
+            builder.add(hasCellId ? (long) instance.value(cellId) : i, values);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the chunk of a row.
+     */
+    FloatBuffer chunk(int row) {
+        return chunks[row / rowsPerChunk];
+    }
+
+    /**
+     * Returns the position of a row in its chunk.
+     */
+    int offset(int row) {
+        return (row % rowsPerChunk) * stride;
+    }
+
+    public int numRows() {
+        return numRows;
+    }
+
+    public int numCols() {
+        return numCols;
+    }
+
+    public String columnName(int col) {
+        return columnNames[col];
+    }
+
+    public float get(int row, int col) {
+        return chunk(row).get(offset(row) + col);
+    }
+
+    /**
+     * Copies a row.
+     *
+     * @param row the row
+     * @param values the array to fill, of numCols() values
+     */
+    public void row(int row, double[] values) {
+        FloatBuffer chunk = chunk(row);
+        int offset = offset(row);
+        for (int j = 0; j < numCols; j++) {
+            values[j] = chunk.get(offset + j);
+        }
+    }
+
+    public long cellId(int row) {
+        return cellIds[row / rowsPerChunk].get(row % rowsPerChunk);
+    }
+
+    /**
+     * Returns true if some value is missing.
+     */
+    public boolean hasMissing() {
+        return missing;
+    }
+
+    /**
+     * Returns an adapter computing the distance of a DistanceFunction between
+     * rows of the matrix, if the function is supported: EuclideanDistance and
+     * ManhattanDistance on all the attributes (as those clustered by App, with
+     * their ranges), and CosineDistance. The function must have been set up on
+     * the features of the matrix, and none may be missing.
+     *
+     * @param df the distance function
+     * @return the adapter, a DistanceKernel, or null if the function is not
+     * supported
+     */
+    public RowDistance distance(DistanceFunction df) {
+        return DistanceKernel.of(this, df);
+    }
+
+    /**
+     * Returns true if the non-class attributes of a header are the columns of
+     * the matrix.
+     */
+    boolean sameColumns(Instances header) {
+        int j = 0;
+        for (int a = 0; a < header.numAttributes(); a++) {
+            if (a == header.classIndex()) {
+                continue;
+            }
+            if (j == numCols || !header.attribute(a).isNumeric()
+                    || !header.attribute(a).name().equals(columnNames[j])) {
+                return false;
+            }
+            j++;
+        }
+        return j == numCols;
+    }
+
+    /**
+     * Returns the floats between the starts of two rows.
+     */
+    int stride() {
+        return stride;
+    }
+
+    /**
+     * Returns the end of the chunk of a row: the rows from it to the end
+     * are contiguous.
+     */
+    int chunkEnd(int row) {
+        return Math.min(numRows, (row / rowsPerChunk + 1) * rowsPerChunk);
+    }
+
+    /**
+     * Deletes the file of a MAPPED matrix. Its pages are released once the
+     * buffers are collected.
+     */
+    public void close() {
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Returns the revision string.
+     *
+     * @return the revision
+     */
+    public String getRevision() {
+        return RevisionUtils.extract("$Revision: $");
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ */
+package weka.core;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive long keys to primitive int values,
+ * with linear probing. It avoids the boxing and per-entry objects of a
+ * HashMap when joining or aggregating grid cells.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ * @version $Revision: $
+ */
+public class LongIntHashMap implements Serializable {
+
+    /**
+     * for serialization.
+     */
+    private static final long serialVersionUID = -4127611402985163091L;
+    private static final int FREE = -1;
+    private long[] keys;
+    private int[] values;
+    private int size = 0;
+    private int mask;
+    private final int missingValue;
+
+    /**
+     * Creates a map sized for the expected number of entries.
+     *
+     * @param expectedSize the expected number of entries
+     * @param missingValue the value returned by get() for absent keys, must
+     * not be stored in the map
+     */
+    public LongIntHashMap(int expectedSize, int missingValue) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+        this.missingValue = missingValue;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, FREE);
+        mask = capacity - 1;
+    }
+
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    private int slot(long key) {
+        int i = hash(key) & mask;
+        while (values[i] != FREE && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the value mapped to the given key.
+     *
+     * @param key the key
+     * @return the mapped value, or the missing value given at construction
+     */
+    public int get(long key) {
+        int i = slot(key);
+        return values[i] == FREE ? missingValue : values[i];
+    }
+
+    public boolean containsKey(long key) {
+        return values[slot(key)] != FREE;
+    }
+
+    /**
+     * Maps the key to the given non-negative value.
+     *
+     * @param key the key
+     * @param value the value, must be non-negative
+     * @return the previous value, or the missing value if the key was absent
+     */
+    public int put(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative values are not supported: " + value);
+        }
+        int i = slot(key);
+        if (values[i] != FREE) {
+            int previous = values[i];
+            values[i] = value;
+            return previous;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 2 > keys.length) {
+            rehash();
+        }
+        return missingValue;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(keys.length * 2);
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] != FREE) {
+                int i = slot(oldKeys[j]);
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+}
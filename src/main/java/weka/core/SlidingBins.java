@@ -0,0 +1,163 @@
+/*
+ */
+package weka.core;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The counts of the last numBins time bins of every cell, kept in a ring
+ * buffer per cell that slides forward as later bins come in. Bins are given
+ * as absolute indexes, e.g. since a start date; the window ends at the
+ * latest bin seen so far.
+ * <p/>
+ * Bins falling out of the window are expired lazily, when a cell is next
+ * touched, each in constant time, and every cell keeps the running total of
+ * its window. All the rings live in a single int array, so no object is
+ * allocated per cell or per event.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ * @version $Revision: $
+ */
+public class SlidingBins implements Serializable {
+
+    /**
+     * for serialization.
+     */
+    private static final long serialVersionUID = 5284620923381550417L;
+    private final int numBins;
+    private final LongIntHashMap slots = new LongIntHashMap(1024, -1);
+    private long[] keys = new long[1024];
+    /** the latest bin each cell was brought up to */
+    private long[] heads = new long[1024];
+    private int[] totals = new int[1024];
+    private int[] counts;
+    private int size = 0;
+    private long head = Long.MIN_VALUE;
+    private long numExpired = 0;
+
+    /**
+     * @param numBins the number of bins of the window
+     */
+    public SlidingBins(int numBins) {
+        this.numBins = numBins;
+        this.counts = new int[keys.length * numBins];
+    }
+
+    /**
+     * Counts an event in a bin of a cell, moving the window forward if the
+     * bin is later than the window.
+     *
+     * @param key the cell
+     * @param bin the absolute bin of the event
+     * @return false if the bin is already out of the window, in which case
+     * the event is not counted
+     */
+    public boolean add(long key, long bin) {
+        if (head == Long.MIN_VALUE || bin > head) {
+            head = bin;
+        } else if (bin <= head - numBins) {
+            return false;
+        }
+        int slot = slots.get(key);
+        if (slot < 0) {
+            slot = size++;
+            slots.put(key, slot);
+            if (slot == keys.length) {
+                keys = Arrays.copyOf(keys, 2 * slot);
+                heads = Arrays.copyOf(heads, 2 * slot);
+                totals = Arrays.copyOf(totals, 2 * slot);
+                counts = Arrays.copyOf(counts, 2 * slot * numBins);
+            }
+            keys[slot] = key;
+            heads[slot] = head;
+        } else {
+            advance(slot);
+        }
+        counts[slot * numBins + (int) Math.floorMod(bin, (long) numBins)]++;
+        totals[slot]++;
+        return true;
+    }
+
+    /**
+     * Brings the ring of a cell up to the head of the window, expiring the
+     * bins that fell out of it.
+     */
+    private void advance(int slot) {
+        long from = heads[slot];
+        int base = slot * numBins;
+        if (head - from >= numBins) {
+            numExpired += totals[slot];
+            Arrays.fill(counts, base, base + numBins, 0);
+            totals[slot] = 0;
+        } else {
+            for (long bin = from + 1; bin <= head; bin++) {
+                int i = base + (int) Math.floorMod(bin, (long) numBins);
+                numExpired += counts[i];
+                totals[slot] -= counts[i];
+                counts[i] = 0;
+            }
+        }
+        heads[slot] = head;
+    }
+
+    /**
+     * Returns the number of cells ever counted, including those whose window
+     * is now empty.
+     */
+    public int size() {
+        return size;
+    }
+
+    public long getKey(int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * Returns the number of events of a cell in the current window.
+     *
+     * @param slot the cell, in the order it was first counted
+     * @return the running total of the cell
+     */
+    public int getTotal(int slot) {
+        advance(slot);
+        return totals[slot];
+    }
+
+    /**
+     * Copies the counts of a cell in the current window, from the oldest bin
+     * to the latest one.
+     *
+     * @param slot the cell, in the order it was first counted
+     * @param values the destination
+     * @param offset the index in values of the oldest bin
+     */
+    public void getCounts(int slot, double[] values, int offset) {
+        advance(slot);
+        int base = slot * numBins;
+        for (int i = 0; i < numBins; i++) {
+            values[offset + i] = counts[base + (int) Math.floorMod(head - numBins + 1 + i, (long) numBins)];
+        }
+    }
+
+    /**
+     * Returns the latest bin seen, the last one of the window.
+     */
+    public long getHead() {
+        return head;
+    }
+
+    public int getNumBins() {
+        return numBins;
+    }
+
+    /**
+     * Returns the number of events counted and then expired so far; those
+     * of cells not touched since their bins fell out of the window are
+     * counted once the cells are read.
+     */
+    public long getNumExpired() {
+        return numExpired;
+    }
+}
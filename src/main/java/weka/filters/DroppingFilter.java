@@ -0,0 +1,21 @@
+/*
+ */
+package weka.filters;
+
+/**
+ * Interface of filters that drop some of their input instances, because
+ * they are duplicated, out of range or can't be joined, and count them.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ * @version $Revision: $
+ */
+public interface DroppingFilter {
+
+    /**
+     * Returns the number of input instances dropped by the filter.
+     *
+     * @return the number of dropped instances
+     */
+    int getNumDropped();
+}
@@ -16,15 +16,16 @@ import weka.filters.UnsupervisedFilter;
 
 import java.util.Enumeration;
 import java.util.Vector;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import weka.core.Attribute;
-import weka.core.FastVector;
+import weka.core.CellDictionary;
+import weka.core.CellId;
+import weka.core.CellTree;
 
 /**
  * <!-- globalinfo-start -->
- * Converts a cellId in the format (lat;lng) in latitude and longitude
- * attributes. These values are creates as strings types.
+ * Converts a cellId in the format (row;col), or a numeric cell code of a
+ * CellDictionary, in the latitude and longitude of the cell centre. These
+ * values are created as numeric types.
  * <p/>
  * <!-- globalinfo-end -->
  *
@@ -65,8 +66,8 @@ public class GridAddLatLng
     private double nwLng = 0.0;
     private double cellXSizeInMeters = 100;
     private double cellYSizeInMeters = 100;
-
-    private final Pattern pattern = Pattern.compile("\\((\\d+);(\\d+)\\)");
+    private CellDictionary dictionary;
+    private CellTree cellTree;
 
     /**
      * Returns a string describing this filter.
@@ -75,9 +76,9 @@ public class GridAddLatLng
      * explorer/experimenter gui
      */
     public String globalInfo() {
-        return "Converts a cellId in the format (lat;lng) in latitude and "
-                + "longitude attributes. "
-                + "These values are creates as strings types.";
+        return "Converts a cellId in the format (row;col) in the latitude and "
+                + "longitude of the cell centre. "
+                + "These values are created as numeric types.";
     }
 
     /**
@@ -167,9 +168,9 @@ public class GridAddLatLng
         cellIdIndex = instanceInfo.attribute("cellId").index();
         super.setInputFormat(instanceInfo);
         Instances output = new Instances(instanceInfo, instanceInfo.numInstances());
-        Attribute longitude = new Attribute("longitude", (FastVector) null);
+        Attribute longitude = new Attribute("longitude");
         output.insertAttributeAt(longitude, cellIdIndex + 1);
-        Attribute latitude = new Attribute("latitude", (FastVector) null);
+        Attribute latitude = new Attribute("latitude");
         output.insertAttributeAt(latitude, cellIdIndex + 1);
         setOutputFormat(output);
         return true;
@@ -199,23 +200,40 @@ public class GridAddLatLng
         if (getInputFormat() == null) {
             throw new IllegalStateException("No input instance format defined");
         }
-        String key = instance.stringValue(cellIdIndex);
-        Matcher m = pattern.matcher(key);
-        m.matches();
-        int yCell = Integer.parseInt(m.group(1));
-        int xCell = Integer.parseInt(m.group(2));
+        long key;
+        // centre of the cell, in cells from its north-western corner
+        double centre = 0.5;
+        if (instance.attribute(cellIdIndex).isNumeric()) {
+            if (dictionary == null) {
+                throw new IllegalStateException("No cell dictionary to decode numeric cell ids");
+            }
+            int code = (int) instance.value(cellIdIndex);
+            key = CellId.key(dictionary.row(code), dictionary.col(code));
+            if (cellTree != null) {
+                centre = (1 << cellTree.level(code)) / 2.0;
+            }
+        } else {
+            key = CellId.parse(instance.stringValue(cellIdIndex));
+        }
         // FIXME vorrei centrarle sulla cella, per questo aggiungo 0.5 ma non e' generale.
         // Inoltre non considero il caso di crossing del meridiano 180.
         double radPerXCell = xMetersToRad(cellXSizeInMeters);
-        double longitude = nwLng + (xCell + 0.5) * radPerXCell;
+        double longitude = nwLng + (CellId.col(key) + centre) * radPerXCell;
         double radPerYCell = yMetersToRad(cellYSizeInMeters) * Math.signum(-nwLat);
-        double latitude = nwLat + (yCell + 0.5) * radPerYCell;
-        Instance outInstance = new Instance(instance);
-        outInstance.insertAttributeAt(cellIdIndex);
-        outInstance.insertAttributeAt(cellIdIndex);
-        outInstance.setValue(getOutputFormat().attribute("cellId"), key);
-        outInstance.setValue(getOutputFormat().attribute("latitude"), Double.toString(latitude));
-        outInstance.setValue(getOutputFormat().attribute("longitude"), Double.toString(longitude));
+        double latitude = nwLat + (CellId.row(key) + centre) * radPerYCell;
+        Instances outputFormat = outputFormatPeek();
+        double[] values = new double[instance.numAttributes() + 2];
+        for (int i = 0; i < instance.numAttributes(); i++) {
+            int o = i <= cellIdIndex ? i : i + 2;
+            if (instance.attribute(i).isString() && !instance.isMissing(i)) {
+                values[o] = outputFormat.attribute(o).addStringValue(instance.stringValue(i));
+            } else {
+                values[o] = instance.value(i);
+            }
+        }
+        values[cellIdIndex + 1] = latitude;
+        values[cellIdIndex + 2] = longitude;
+        Instance outInstance = new Instance(instance.weight(), values);
         push(outInstance);
         pushed++;
         return true;
@@ -272,6 +290,35 @@ public class GridAddLatLng
         this.cellYSizeInMeters = cellYSizeInMeters;
     }
 
+    public CellDictionary getCellDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Sets the dictionary used to decode numeric cell ids, as produced by
+     * GridGpsArea.
+     *
+     * @param dictionary the cell dictionary
+     */
+    public void setCellDictionary(CellDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    public CellTree getCellTree() {
+        return cellTree;
+    }
+
+    /**
+     * Sets the adaptive cells the numeric cell ids are leaves of, so that
+     * the coordinates are those of the centre of each leaf rather than of
+     * its north-western grid cell.
+     *
+     * @param cellTree the tree, null for cells of the grid
+     */
+    public void setCellTree(CellTree cellTree) {
+        this.cellTree = cellTree;
+    }
+
     public void setNWLocation(double minLat, double minLng) {
         setNwLat(minLat);
         setNwLng(minLng);
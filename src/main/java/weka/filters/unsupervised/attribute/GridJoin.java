@@ -12,22 +12,26 @@ import weka.core.Option;
 import weka.core.OptionHandler;
 import weka.core.RevisionUtils;
 import weka.core.Capabilities.Capability;
+import weka.filters.DroppingFilter;
 import weka.filters.UnsupervisedFilter;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 import java.util.Vector;
 import weka.core.Attribute;
+import weka.core.CellId;
 import weka.core.FastVector;
+import weka.core.LongIntHashMap;
 
 /**
  * <!-- globalinfo-start -->
- * Normalizes all numeric values in the given dataset (apart from the class
- * attribute, if set). The resulting values are by default in [0,1] for the data
- * used to compute the normalization intervals. But with the scale and
- * translation parameters one can change that, e.g., with scale = 2.0 and
- * translation = -1.0 you get values in the range [-1,+1].
+ * Joins the input grid with any number of other grids built with the same
+ * settings, keyed on the cellId attribute. Each numeric attribute of the input
+ * gives one column per joined set, named after the set prefix ("up" for the
+ * input and "dn" for the complementary set by default). Cells missing from
+ * some of the sets are filled with zeros, marked as missing or dropped.
  * <p/>
  * <!-- globalinfo-end -->
  *
@@ -56,15 +60,32 @@ import weka.core.FastVector;
  */
 public class GridJoin
         extends PotentialClassIgnorer
-        implements UnsupervisedFilter, OptionHandler {
+        implements UnsupervisedFilter, OptionHandler, DroppingFilter {
 
     /**
      * for serialization.
      */
     static final long serialVersionUID = -8158531150984362900L;
     private Instances complementaryDataSet;
-    
-    private boolean additive = false;
+
+    /**
+     * How cells that are missing from some of the joined sets are treated.
+     */
+    public enum MissingCells {
+        /** keep the cell and fill the missing columns with zeros */
+        FILL_ZERO,
+        /** keep the cell and mark the missing columns as missing values */
+        FILL_MISSING,
+        /** drop the cell unless it is present in every set */
+        DROP
+    };
+
+    private MissingCells missingCells = MissingCells.DROP;
+    private String inputPrefix = "up";
+    private String complementaryPrefix = "dn";
+    private final List<String> prefixes = new ArrayList<String>();
+    private final List<Instances> dataSets = new ArrayList<Instances>();
+    private int dropped = 0;
     
     /**
      * Returns a string describing this filter.
@@ -73,12 +94,11 @@ public class GridJoin
      * explorer/experimenter gui
      */
     public String globalInfo() {
-        return "Normalizes all numeric values in the given dataset (apart from the "
-                + "class attribute, if set). The resulting values are normalized by default "
-                + "in [0,1] for the data used to compute the normalization intervals. "
-                + "But with the scale and translation parameters one can change that, "
-                + "e.g., with scale = 2.0 and translation = -1.0 you get values in the "
-                + "range [-1,+1].";
+        return "Joins the input grid with any number of other grids built with "
+                + "the same settings, keyed on the cellId attribute. Each numeric "
+                + "attribute gives one column per joined set, named after the set "
+                + "prefix. Cells missing from some of the sets are filled with zeros, "
+                + "marked as missing or dropped.";
     }
 
     /**
@@ -208,119 +228,140 @@ public class GridJoin
         return false;
     }
 
-    private Map<String, Instance> convertToMap(Instances dataSet) {
-        Map<String, Instance> result = new HashMap<String, Instance>();
-        Attribute cellId = dataSet.attribute("cellId");
-        for (int i = 0; i < dataSet.numInstances(); i++) {
-            Instance instance = dataSet.instance(i);
-            String key = instance.stringValue(cellId.index());
-            result.put(key, instance);
+    /**
+     * Returns the primitive key of the cell of an instance: textual cell ids
+     * are parsed into a packed (row;col) key, numeric ones are used as is.
+     */
+    private static long cellKey(Instance instance, Attribute cellId) {
+        if (cellId.isString() || cellId.isNominal()) {
+            return CellId.parse(instance.stringValue(cellId));
         }
-        return result;
+        return (long) instance.value(cellId);
     }
-       
-    private Instances joinAdditive(Instances firstSet, Instances secondSet) {
-        int missingInSecondSet = 0;
-        int missingInFirstSet = 0;
-        Map<String, Instance> secondMap = convertToMap(secondSet);
+
+    /**
+     * Builds the output header: the cell id followed, for each numeric
+     * attribute of the first set, by one column per joined set named after
+     * the set prefix.
+     */
+    private Instances joinedFormat(Instances firstSet, Attribute cellId, String[] setPrefixes) {
         FastVector attributes = new FastVector();
-        attributes.addElement(new Attribute("cellId", (FastVector) null));
-        int n = 0;
+        attributes.addElement(cellId.isNumeric()
+                ? new Attribute("cellId") : new Attribute("cellId", (FastVector) null));
         for (int i = 0; i < firstSet.numAttributes(); i++) {
-            if(firstSet.attribute(i).isNumeric()) {
-                attributes.addElement(new Attribute("up" + i));
-                attributes.addElement(new Attribute("dn" + i));
-                n++;
-            }
-        }
-        Instances dataset = new Instances("grid", attributes, firstSet.numInstances());
-        Attribute cellId = firstSet.attribute("cellId");
-
-        for (int j = 0; j < firstSet.numInstances(); j++) {
-            Instance mainInstance = firstSet.instance(j);
-            String key = mainInstance.stringValue(cellId);
-            Instance secondaryInstance = secondMap.get(key);
-            Instance instance = new Instance(1 + 2*n);
-            instance.setDataset(dataset);
-            instance.setValue(0, key);
-            int m = 1;
-            for (int i = 0; i < firstSet.numAttributes(); i++) {
-                if(firstSet.attribute(i).isNumeric()) {
-                   double secondValue = secondaryInstance != null?
-                       secondaryInstance.value(i) : 0.0;
-                   instance.setValue(m++, mainInstance.value(i));
-                   instance.setValue(m++, secondValue);
+            if (firstSet.attribute(i).isNumeric() && i != cellId.index()) {
+                for (String prefix : setPrefixes) {
+                    attributes.addElement(new Attribute(prefix + i));
                 }
             }
-            if(secondaryInstance != null)
-                secondMap.remove(key);
-            else 
-                missingInSecondSet++;
-            dataset.add(instance);
         }
-        for (String key : secondMap.keySet()) {
-            Instance secondaryInstance = secondMap.get(key);
-            Instance instance = new Instance(1 + 2*n);
-            instance.setDataset(dataset);
-            instance.setValue(0, key);
-            int m = 1;
-            for (int i = 0; i < firstSet.numAttributes(); i++) {
-                if(firstSet.attribute(i).isNumeric()) {
-                   instance.setValue(m++, 0.0);
-                   instance.setValue(m++, secondaryInstance.value(i));
-                }
+        return new Instances("grid", attributes, 0);
+    }
+
+    /**
+     * Joins any number of sets on the cell id in a single pass over each of
+     * them. Every cell gets an output slot from an open-addressing map of cell
+     * keys, slots are numbered in order of first appearance, and a table keeps
+     * which row of each set falls in each slot. Rows are then pushed straight
+     * to the output according to the missing cells policy.
+     */
+    private void join(Instances[] sets, String[] setPrefixes) {
+        Instances firstSet = sets[0];
+        Attribute[] cellIds = new Attribute[sets.length];
+        for (int s = 0; s < sets.length; s++) {
+            cellIds[s] = sets[s].attribute("cellId");
+            if (cellIds[s] == null) {
+                throw new IllegalArgumentException("No cellId attribute in set " + setPrefixes[s]);
             }
-            dataset.add(instance);
-            missingInFirstSet++;
         }
-        System.out.println("GridJoin.joinAdditive(): final samples: "+dataset.numInstances()+"; missing in first set: "+missingInFirstSet+", missing in second set: "+ missingInSecondSet);
-        return dataset;
-    }
-    
-    private Instances joinSubtractive(Instances firstSet, Instances secondSet) {
-        int missingInSecondSet = 0;
-        int missingInFirstSet = 0;
-        Map<String, Instance> secondMap = convertToMap(secondSet);
-        FastVector attributes = new FastVector();
-        attributes.addElement(new Attribute("cellId", (FastVector) null));
+        int[] numericIndices = new int[firstSet.numAttributes()];
         int n = 0;
         for (int i = 0; i < firstSet.numAttributes(); i++) {
-            if(firstSet.attribute(i).isNumeric()) {
-                attributes.addElement(new Attribute("up" + i));
-                attributes.addElement(new Attribute("dn" + i));
-                n++;
+            if (firstSet.attribute(i).isNumeric() && i != cellIds[0].index()) {
+                numericIndices[n++] = i;
+            }
+        }
+        int[][] setIndices = new int[sets.length][n];
+        for (int s = 0; s < sets.length; s++) {
+            for (int i = 0; i < n; i++) {
+                Attribute a = sets[s].attribute(firstSet.attribute(numericIndices[i]).name());
+                if (a == null || !a.isNumeric()) {
+                    throw new IllegalArgumentException("Set " + setPrefixes[s] + " has no numeric attribute "
+                            + firstSet.attribute(numericIndices[i]).name());
+                }
+                setIndices[s][i] = a.index();
             }
         }
-        Instances dataset = new Instances("grid", attributes, firstSet.numInstances());
-        Attribute cellId = firstSet.attribute("cellId");
-
-        for (int j = 0; j < firstSet.numInstances(); j++) {
-            Instance mainInstance = firstSet.instance(j);
-            String key = mainInstance.stringValue(cellId);
-            Instance secondaryInstance = secondMap.get(key);
-            if(secondaryInstance != null) {
-                secondMap.remove(key);
-                Instance instance = new Instance(1 + 2*n);
-                instance.setDataset(dataset);
-                instance.setValue(0, key);
-                int m = 1;
-                for (int i = 0; i < firstSet.numAttributes(); i++) {
-                    if(firstSet.attribute(i).isNumeric()) {
-                        double secondValue = secondaryInstance.value(i);
-                        instance.setValue(m++, mainInstance.value(i));
-                        instance.setValue(m++, secondValue);
+        setOutputFormat(joinedFormat(firstSet, cellIds[0], setPrefixes));
+        Attribute outCellId = outputFormatPeek().attribute(0);
+
+        int expected = 0;
+        for (Instances set : sets) {
+            expected = Math.max(expected, set.numInstances());
+        }
+        LongIntHashMap slots = new LongIntHashMap(expected, -1);
+        int[][] rows = new int[sets.length][expected];
+        int numSlots = 0;
+        for (int s = 0; s < sets.length; s++) {
+            for (int j = 0; j < sets[s].numInstances(); j++) {
+                long key = cellKey(sets[s].instance(j), cellIds[s]);
+                int slot = slots.get(key);
+                if (slot < 0) {
+                    slot = numSlots++;
+                    slots.put(key, slot);
+                    if (slot == rows[0].length) {
+                        for (int t = 0; t < sets.length; t++) {
+                            rows[t] = Arrays.copyOf(rows[t], Math.max(16, 2 * slot));
+                        }
+                    }
+                    for (int t = 0; t < sets.length; t++) {
+                        rows[t][slot] = -1;
                     }
                 }
-                dataset.add(instance);
-            } else missingInSecondSet++;
+                rows[s][slot] = j;
+            }
         }
-        missingInFirstSet = secondMap.size();
-        System.out.println("GridJoin.joinSubtractive(): final samples: "+dataset.numInstances()+"; missing in first set: "+missingInFirstSet+", missing in second set: "+ missingInSecondSet);
-        return dataset;
+
+        int[] missing = new int[sets.length];
+        int pushed = 0;
+        double fill = missingCells == MissingCells.FILL_MISSING ? Instance.missingValue() : 0.0;
+        for (int slot = 0; slot < numSlots; slot++) {
+            int present = -1;
+            boolean complete = true;
+            for (int s = sets.length - 1; s >= 0; s--) {
+                if (rows[s][slot] < 0) {
+                    missing[s]++;
+                    complete = false;
+                } else {
+                    present = s;
+                }
+            }
+            if (!complete && missingCells == MissingCells.DROP) {
+                continue;
+            }
+            double[] values = new double[1 + sets.length * n];
+            Instance cell = sets[present].instance(rows[present][slot]);
+            values[0] = outCellId.isString()
+                    ? outCellId.addStringValue(cell.stringValue(cellIds[present]))
+                    : cell.value(cellIds[present]);
+            for (int s = 0; s < sets.length; s++) {
+                Instance row = rows[s][slot] < 0 ? null : sets[s].instance(rows[s][slot]);
+                for (int i = 0, m = 1 + s; i < n; i++, m += sets.length) {
+                    values[m] = row == null ? fill : row.value(setIndices[s][i]);
+                }
+            }
+            push(new Instance(1.0, values));
+            pushed++;
+        }
+        dropped = numSlots - pushed;
+        StringBuilder report = new StringBuilder();
+        for (int s = 0; s < sets.length; s++) {
+            report.append(s == 0 ? "" : ", ").append("missing in ").append(setPrefixes[s])
+                    .append(": ").append(missing[s]);
+        }
+        System.out.println("GridJoin.join(" + missingCells + "): final samples: " + pushed + "; " + report);
     }
 
-    
-    
     /**
      * Signify that this batch of input to the filter is finished. If the filter
      * requires all instances prior to filtering, output() may now be called to
@@ -336,15 +377,20 @@ public class GridJoin
             throw new IllegalStateException("No input instance format defined");
         }
         
-        Instances instances = additive?
-                joinAdditive(getInputFormat(), complementaryDataSet) :
-                joinSubtractive(getInputFormat(), complementaryDataSet);
-        setOutputFormat(instances);
-        for(int i = 0; i < instances.numInstances(); i++)
-            push(instances.instance(i));
+        List<Instances> sets = new ArrayList<Instances>();
+        List<String> setPrefixes = new ArrayList<String>();
+        sets.add(getInputFormat());
+        setPrefixes.add(inputPrefix);
+        if (complementaryDataSet != null) {
+            sets.add(complementaryDataSet);
+            setPrefixes.add(complementaryPrefix);
+        }
+        sets.addAll(dataSets);
+        setPrefixes.addAll(prefixes);
+        join(sets.toArray(new Instances[sets.size()]), setPrefixes.toArray(new String[setPrefixes.size()]));
         m_NewBatch = true;
         flushInput();
-        return false;
+        return (numPendingOutput() != 0);
     }
 
     public Instances getComplementaryDataSet() {
@@ -355,12 +401,63 @@ public class GridJoin
         this.complementaryDataSet = complementaryDataSet;
     }
 
+    /**
+     * Adds a further feature set to the join. Its columns are named after
+     * the given prefix followed by the index of the joined attribute.
+     *
+     * @param prefix the column prefix of the set
+     * @param dataSet the feature set, with the same attributes of the input
+     */
+    public void addDataSet(String prefix, Instances dataSet) {
+        prefixes.add(prefix);
+        dataSets.add(dataSet);
+    }
+
+    public void clearDataSets() {
+        prefixes.clear();
+        dataSets.clear();
+    }
+
+    public String getInputPrefix() {
+        return inputPrefix;
+    }
+
+    public void setInputPrefix(String inputPrefix) {
+        this.inputPrefix = inputPrefix;
+    }
+
+    public String getComplementaryPrefix() {
+        return complementaryPrefix;
+    }
+
+    public void setComplementaryPrefix(String complementaryPrefix) {
+        this.complementaryPrefix = complementaryPrefix;
+    }
+
+    public MissingCells getMissingCells() {
+        return missingCells;
+    }
+
+    public void setMissingCells(MissingCells missingCells) {
+        this.missingCells = missingCells;
+    }
+
+    /**
+     * Returns the number of cells dropped by the last batch, being missing
+     * from some of the sets with the DROP policy.
+     *
+     * @return the number of dropped instances
+     */
+    public int getNumDropped() {
+        return dropped;
+    }
+
     public boolean isAdditive() {
-        return additive;
+        return missingCells != MissingCells.DROP;
     }
 
     public void setAdditive(boolean additive) {
-        this.additive = additive;
+        this.missingCells = additive ? MissingCells.FILL_ZERO : MissingCells.DROP;
     }
     
     /**
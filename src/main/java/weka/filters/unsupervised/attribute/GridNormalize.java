@@ -14,17 +14,20 @@ import weka.core.RevisionUtils;
 import weka.core.Capabilities.Capability;
 import weka.filters.UnsupervisedFilter;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Vector;
 import weka.core.Attribute;
+import weka.core.Utils;
 
 /**
  * <!-- globalinfo-start -->
- * Normalizes all numeric values in the given dataset (apart from the class
- * attribute, if set). The resulting values are by default in [0,1] for the data
- * used to compute the normalization intervals. But with the scale and
- * translation parameters one can change that, e.g., with scale = 2.0 and
- * translation = -1.0 you get values in the range [-1,+1].
+ * Normalizes the numeric attributes of a grid (apart from the class and the
+ * cellId attributes). Rows can be centered on their mean, scaled to unit
+ * length, or every column can be turned into its z-score. The input instances
+ * are left untouched: every row is normalized on a copy of its values.
  * <p/>
  * <!-- globalinfo-end -->
  *
@@ -37,13 +40,9 @@ import weka.core.Attribute;
  *  applied to the data.
  *  (default: no)</pre>
  *
- * <pre> -S <num>
- *  The scaling factor for the output range.
- *  (default: 1.0)</pre>
- *
- * <pre> -T <num>
- *  The translation of the output range.
- *  (default: 0.0)</pre>
+ * <pre> -N &lt;MEAN_CENTER|L2_UNIT|Z_SCORE&gt;
+ *  The normalization mode.
+ *  (default: MEAN_CENTER)</pre>
  *
  * <!-- options-end -->
  *
@@ -60,6 +59,22 @@ public class GridNormalize
      */
     static final long serialVersionUID = -8158531150984362899L;
     int pushed = 0;
+
+    public enum Mode {
+        /** subtracts the row mean from every value */
+        MEAN_CENTER,
+        /** scales every row to unit euclidean length */
+        L2_UNIT,
+        /** turns every column into its z-score over the whole batch */
+        Z_SCORE
+    };
+
+    private Mode mode = Mode.MEAN_CENTER;
+    private int[] columns;
+    private List<Instance> buffer;
+    private List<double[]> bufferValues;
+    private double[] columnMean;
+    private double[] columnM2;
     /**
      * Returns a string describing this filter.
      *
@@ -67,12 +82,10 @@ public class GridNormalize
      * explorer/experimenter gui
      */
     public String globalInfo() {
-        return "Normalizes all numeric values in the given dataset (apart from the "
-                + "class attribute, if set). The resulting values are normalized by default "
-                + "in [0,1] for the data used to compute the normalization intervals. "
-                + "But with the scale and translation parameters one can change that, "
-                + "e.g., with scale = 2.0 and translation = -1.0 you get values in the "
-                + "range [-1,+1].";
+        return "Normalizes the numeric attributes of a grid (apart from the class "
+                + "and the cellId attributes). Rows can be centered on their mean, "
+                + "scaled to unit length, or every column can be turned into its "
+                + "z-score.";
     }
 
     /**
@@ -89,14 +102,9 @@ public class GridNormalize
         }
 
         result.addElement(new Option(
-                "\tThe scaling factor for the output range.\n"
-                + "\t(default: 1.0)",
-                "S", 1, "-S <num>"));
-
-        result.addElement(new Option(
-                "\tThe translation of the output range.\n"
-                + "\t(default: 0.0)",
-                "T", 1, "-T <num>"));
+                "\tThe normalization mode.\n"
+                + "\t(default: MEAN_CENTER)",
+                "N", 1, "-N <MEAN_CENTER|L2_UNIT|Z_SCORE>"));
 
         return result.elements();
     }
@@ -114,13 +122,9 @@ public class GridNormalize
      *  applied to the data.
      *  (default: no)</pre>
      *
-     * <pre> -S <num>
-     *  The scaling factor for the output range.
-     *  (default: 1.0)</pre>
-     *
-     * <pre> -T <num>
-     *  The translation of the output range.
-     *  (default: 0.0)</pre>
+     * <pre> -N &lt;MEAN_CENTER|L2_UNIT|Z_SCORE&gt;
+     *  The normalization mode.
+     *  (default: MEAN_CENTER)</pre>
      *
      * <!-- options-end -->
      *
@@ -128,6 +132,8 @@ public class GridNormalize
      * @throws Exception if an option is not supported
      */
     public void setOptions(String[] options) throws Exception {
+        String tmpStr = Utils.getOption('N', options);
+        setMode(tmpStr.length() == 0 ? Mode.MEAN_CENTER : Mode.valueOf(tmpStr.toUpperCase()));
         if (getInputFormat() != null) {
             setInputFormat(getInputFormat());
         }
@@ -141,6 +147,8 @@ public class GridNormalize
     @Override
     public String[] getOptions() {
         Vector<String> result = new Vector<String>();
+        result.add("-N");
+        result.add(mode.name());
         return result.toArray(new String[result.size()]);
     }
 
@@ -182,7 +190,16 @@ public class GridNormalize
 
         super.setInputFormat(instanceInfo);
         setOutputFormat(instanceInfo);
-        return true;
+        int n = 0;
+        columns = new int[instanceInfo.numAttributes()];
+        for (int i = 0; i < instanceInfo.numAttributes(); i++) {
+            Attribute a = instanceInfo.attribute(i);
+            if (a.isNumeric() && i != instanceInfo.classIndex() && !a.name().equals("cellId")) {
+                columns[n++] = i;
+            }
+        }
+        columns = Arrays.copyOf(columns, n);
+        return mode != Mode.Z_SCORE;
     }
 
     /**
@@ -203,32 +220,91 @@ public class GridNormalize
             resetQueue();
             m_NewBatch = false;
         }
-        double sum = 0;
-        int n = 0;
-        for(int i = 0; i < instance.numAttributes(); i++) {
-            Attribute a = instance.attribute(i);
-            if(a.isNumeric() && i != instance.classIndex()) {
-                sum += instance.value(a);
-                n++;
-            }
-        }
-        double average = sum/n;
-        Instance normalizedInstance = new Instance(instance.numAttributes());
-        normalizedInstance.setDataset(getOutputFormat());
-        for(int i = 0; i < instance.numAttributes(); i++) {
-            Attribute a = instance.attribute(i);
-            if(a.isNumeric() && i != instance.classIndex()) {
-                normalizedInstance.setValue(a, instance.value(a) - average);
-            } else if(a.isString()) 
-                normalizedInstance.setValue(i, instance.stringValue(i));
-            else
-                normalizedInstance.setValue(i, instance.value(i));
+        // The copy keeps the array it is built with, so the row is
+        // normalized through values without changing the input
+        double[] values = instance.toDoubleArray();
+        Instance copy = new Instance(instance.weight(), values);
+        copy.setDataset(instance.dataset());
+        if (mode == Mode.Z_SCORE) {
+            accumulate(copy, values);
+            return false;
         }
-        push(normalizedInstance);
+        normalizeRow(values);
+        push(copy);
         pushed++;
         return true;
     }
 
+    /**
+     * Centers or scales the values of a row.
+     */
+    private void normalizeRow(double[] values) {
+        double shift = 0.0;
+        double scale = 1.0;
+        if (mode == Mode.MEAN_CENTER) {
+            double sum = 0;
+            for (int i : columns) {
+                sum += values[i];
+            }
+            shift = sum / columns.length;
+        } else {
+            double sum = 0;
+            for (int i : columns) {
+                sum += values[i] * values[i];
+            }
+            scale = sum > 0 ? 1.0 / Math.sqrt(sum) : 1.0;
+        }
+        for (int i : columns) {
+            values[i] = (values[i] - shift) * scale;
+        }
+    }
+
+    /**
+     * First pass of the column z-score: keeps the copy of the row with its
+     * values and updates the running mean and variance of every column
+     * (Welford).
+     */
+    private void accumulate(Instance copy, double[] values) {
+        if (buffer == null) {
+            buffer = new ArrayList<Instance>();
+            bufferValues = new ArrayList<double[]>();
+            columnMean = new double[columns.length];
+            columnM2 = new double[columns.length];
+        }
+        buffer.add(copy);
+        bufferValues.add(values);
+        int count = buffer.size();
+        for (int c = 0; c < columns.length; c++) {
+            double value = values[columns[c]];
+            double delta = value - columnMean[c];
+            columnMean[c] += delta / count;
+            columnM2[c] += delta * (value - columnMean[c]);
+        }
+    }
+
+    /**
+     * Second pass of the column z-score: rewrites the values of every
+     * buffered copy and pushes it.
+     */
+    private void applyZScore() {
+        int count = buffer.size();
+        double[] scale = new double[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            double std = Math.sqrt(columnM2[c] / count);
+            scale[c] = std > 0 ? 1.0 / std : 1.0;
+        }
+        for (int i = 0; i < count; i++) {
+            double[] values = bufferValues.get(i);
+            for (int c = 0; c < columns.length; c++) {
+                values[columns[c]] = (values[columns[c]] - columnMean[c]) * scale[c];
+            }
+            push(buffer.get(i));
+            pushed++;
+        }
+        buffer = null;
+        bufferValues = null;
+    }
+
     /**
      * Signify that this batch of input to the filter is finished. If the filter
      * requires all instances prior to filtering, output() may now be called to
@@ -243,10 +319,21 @@ public class GridNormalize
         if (getInputFormat() == null) {
             throw new IllegalStateException("No input instance format defined");
         }
+        if (buffer != null) {
+            applyZScore();
+        }
         m_NewBatch = true;
         System.out.println("NormalizeGrid(): normalized "+pushed
-                +" instances with "+ getOutputFormat().numAttributes()+" attrs");
-        return false;
+                +" instances with "+ getOutputFormat().numAttributes()+" attrs ("+mode+")");
+        return (numPendingOutput() != 0);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
     }
 
     /**
@@ -0,0 +1,792 @@
+/*
+ */
+package weka.filters.unsupervised.attribute;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+import weka.core.Attribute;
+import weka.core.Capabilities;
+import weka.core.Capabilities.Capability;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.OptionHandler;
+import weka.core.RevisionUtils;
+import weka.core.Utils;
+import weka.filters.Filter;
+import weka.filters.UnsupervisedFilter;
+
+/**
+ * <!-- globalinfo-start -->
+ * Replaces the numeric features of a grid (apart from the class, cellId,
+ * latitude and longitude) with fewer ones, so that distances cost less. A
+ * sparse random projection keeps the distances between cells in
+ * expectation; a randomized PCA keeps the directions of largest variance,
+ * either a given number of them or as many as needed to explain a given
+ * fraction of the variance.
+ * <p/>
+ * <!-- globalinfo-end -->
+ *
+ * <!-- options-start -->
+ * Valid options are:
+ * <p/>
+ *
+ * <pre> -M &lt;RANDOM_PROJECTION|PCA&gt;
+ *  The reduction.
+ *  (default: RANDOM_PROJECTION)</pre>
+ *
+ * <pre> -D &lt;num&gt;
+ *  The number of features kept, the largest one with -V.
+ *  (default: 50)</pre>
+ *
+ * <pre> -V &lt;num&gt;
+ *  The fraction of the variance explained by the PCA, 0 for -D features.
+ *  (default: 0)</pre>
+ *
+ * <pre> -S &lt;num&gt;
+ *  The random seed.
+ *  (default: 1)</pre>
+ *
+ * <!-- options-end -->
+ *
+ * The reduction is fitted on the first batch, whose approximation error is
+ * reported: the mean relative error of the distances of a sample of pairs
+ * of cells for the projection, the fraction of the variance lost for the
+ * PCA. Later batches are reduced the same way. Missing values count as 0
+ * for the projection and as the mean of the feature for the PCA.
+ *
+ * @author Enrico Carniani (enrico.carniani@iit.cnr.it)
+ * @author Filippo Ricci
+ * @version $Revision: $
+ */
+public class GridReduce extends Filter implements UnsupervisedFilter, OptionHandler {
+
+    /**
+     * for serialization.
+     */
+    static final long serialVersionUID = 4177312952780046193L;
+    /** columns sampled by the PCA beyond those kept */
+    private static final int OVERSAMPLING = 10;
+    private static final int POWER_ITERATIONS = 2;
+    private static final int ERROR_PAIRS = 1000;
+
+    public enum Mode {
+        /** sparse random projection, see Li, Hastie and Church, 2006 */
+        RANDOM_PROJECTION,
+        /** randomized PCA, see Halko, Martinsson and Tropp, 2011 */
+        PCA
+    };
+
+    private Mode mode = Mode.RANDOM_PROJECTION;
+    private int dimension = 50;
+    private double variance = 0;
+    private int seed = 1;
+    /** the features reduced, and the attributes copied as they are */
+    private int[] features;
+    private int[] others;
+    private List<Instance> buffer;
+    /** the projection: row j holds the weights of feature j */
+    private double[][] projection;
+    private double[] mean;
+    private double error;
+    private int pushed = 0;
+
+    /**
+     * Returns a string describing this filter.
+     *
+     * @return a description of the filter suitable for displaying in the
+     * explorer/experimenter gui
+     */
+    public String globalInfo() {
+        return "Replaces the numeric features of a grid (apart from the class, cellId, "
+                + "latitude and longitude) with fewer ones, so that distances cost less. "
+                + "A sparse random projection keeps the distances between cells in "
+                + "expectation; a randomized PCA keeps the directions of largest variance, "
+                + "either a given number of them or as many as needed to explain a given "
+                + "fraction of the variance.";
+    }
+
+    /**
+     * Returns an enumeration describing the available options.
+     *
+     * @return an enumeration of all the available options.
+     */
+    public Enumeration listOptions() {
+        Vector result = new Vector();
+
+        result.addElement(new Option(
+                "\tThe reduction.\n"
+                + "\t(default: RANDOM_PROJECTION)",
+                "M", 1, "-M <RANDOM_PROJECTION|PCA>"));
+        result.addElement(new Option(
+                "\tThe number of features kept, the largest one with -V.\n"
+                + "\t(default: 50)",
+                "D", 1, "-D <num>"));
+        result.addElement(new Option(
+                "\tThe fraction of the variance explained by the PCA, 0 for -D features.\n"
+                + "\t(default: 0)",
+                "V", 1, "-V <num>"));
+        result.addElement(new Option(
+                "\tThe random seed.\n"
+                + "\t(default: 1)",
+                "S", 1, "-S <num>"));
+
+        return result.elements();
+    }
+
+    /**
+     * Parses a given list of options.
+     * <p/>
+     *
+     * <!-- options-start -->
+     * Valid options are:
+     * <p/>
+     *
+     * <pre> -M &lt;RANDOM_PROJECTION|PCA&gt;
+     *  The reduction.
+     *  (default: RANDOM_PROJECTION)</pre>
+     *
+     * <pre> -D &lt;num&gt;
+     *  The number of features kept, the largest one with -V.
+     *  (default: 50)</pre>
+     *
+     * <pre> -V &lt;num&gt;
+     *  The fraction of the variance explained by the PCA, 0 for -D features.
+     *  (default: 0)</pre>
+     *
+     * <pre> -S &lt;num&gt;
+     *  The random seed.
+     *  (default: 1)</pre>
+     *
+     * <!-- options-end -->
+     *
+     * @param options the list of options as an array of strings
+     * @throws Exception if an option is not supported
+     */
+    public void setOptions(String[] options) throws Exception {
+        String tmpStr = Utils.getOption('M', options);
+        setMode(tmpStr.length() == 0 ? Mode.RANDOM_PROJECTION : Mode.valueOf(tmpStr.toUpperCase()));
+        tmpStr = Utils.getOption('D', options);
+        setDimension(tmpStr.length() == 0 ? 50 : Integer.parseInt(tmpStr));
+        tmpStr = Utils.getOption('V', options);
+        setVariance(tmpStr.length() == 0 ? 0 : Double.parseDouble(tmpStr));
+        tmpStr = Utils.getOption('S', options);
+        setSeed(tmpStr.length() == 0 ? 1 : Integer.parseInt(tmpStr));
+        if (getInputFormat() != null) {
+            setInputFormat(getInputFormat());
+        }
+    }
+
+    /**
+     * Gets the current settings of the filter.
+     *
+     * @return an array of strings suitable for passing to setOptions
+     */
+    public String[] getOptions() {
+        Vector<String> result = new Vector<String>();
+        result.add("-M");
+        result.add(mode.name());
+        result.add("-D");
+        result.add(Integer.toString(dimension));
+        result.add("-V");
+        result.add(Double.toString(variance));
+        result.add("-S");
+        result.add(Integer.toString(seed));
+        return result.toArray(new String[result.size()]);
+    }
+
+    /**
+     * Returns the Capabilities of this filter.
+     *
+     * @return the capabilities of this object
+     * @see Capabilities
+     */
+    @Override
+    public Capabilities getCapabilities() {
+        Capabilities result = super.getCapabilities();
+        result.disableAll();
+
+        // attributes
+        result.enableAllAttributes();
+        result.enable(Capability.MISSING_VALUES);
+
+        // class
+        result.enableAllClasses();
+        result.enable(Capability.MISSING_CLASS_VALUES);
+        result.enable(Capability.NO_CLASS);
+
+        return result;
+    }
+
+    private static boolean isFeature(Instances format, int index) {
+        Attribute a = format.attribute(index);
+        return a.isNumeric() && index != format.classIndex() && !a.name().equals("cellId")
+                && !a.name().equals("latitude") && !a.name().equals("longitude");
+    }
+
+    /**
+     * Sets the format of the input instances. The output format is known
+     * once the reduction is fitted, at the end of the first batch.
+     *
+     * @param instanceInfo an Instances object containing the input instance
+     * structure (any instances contained in the object are ignored - only the
+     * structure is required).
+     * @return false, as the output format is not known yet
+     * @throws Exception if the input format can't be set successfully
+     */
+    @Override
+    public boolean setInputFormat(Instances instanceInfo) throws Exception {
+        super.setInputFormat(instanceInfo);
+        int numFeatures = 0;
+        int numOthers = 0;
+        features = new int[instanceInfo.numAttributes()];
+        others = new int[instanceInfo.numAttributes()];
+        for (int i = 0; i < instanceInfo.numAttributes(); i++) {
+            if (isFeature(instanceInfo, i)) {
+                features[numFeatures++] = i;
+            } else {
+                others[numOthers++] = i;
+            }
+        }
+        features = Arrays.copyOf(features, numFeatures);
+        others = Arrays.copyOf(others, numOthers);
+        projection = null;
+        buffer = null;
+        pushed = 0;
+        return false;
+    }
+
+    /**
+     * Input an instance for filtering. The first batch is held until it is
+     * finished, the later ones are reduced at once.
+     *
+     * @param instance the input instance
+     * @return true if the filtered instance may now be collected with output().
+     * @throws Exception if an error occurs
+     * @throws IllegalStateException if no input format has been set.
+     */
+    public boolean input(Instance instance) throws Exception {
+        if (getInputFormat() == null) {
+            throw new IllegalStateException("No input instance format defined");
+        }
+        if (m_NewBatch) {
+            resetQueue();
+            m_NewBatch = false;
+        }
+        if (projection == null) {
+            if (buffer == null) {
+                buffer = new ArrayList<Instance>();
+            }
+            buffer.add(instance);
+            return false;
+        }
+        push(reduce(instance, new double[features.length]));
+        pushed++;
+        return true;
+    }
+
+    /**
+     * Signify that this batch of input to the filter is finished. At the end
+     * of the first batch the reduction is fitted and the batch is reduced.
+     *
+     * @return true if there are instances pending output
+     * @throws Exception if an error occurs
+     * @throws IllegalStateException if no input structure has been defined
+     */
+    @Override
+    public boolean batchFinished() throws Exception {
+        if (getInputFormat() == null) {
+            throw new IllegalStateException("No input instance format defined");
+        }
+        if (projection == null) {
+            List<Instance> rows = buffer != null ? buffer : new ArrayList<Instance>();
+            buffer = null;
+            double[][] data = new double[rows.size()][];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = features(rows.get(i));
+            }
+            if (mode == Mode.PCA) {
+                fitPca(data);
+            } else {
+                fitRandomProjection();
+            }
+            setOutputFormat(outputFormat());
+            double[][] reduced = new double[data.length][];
+            for (int i = 0; i < data.length; i++) {
+                Instance instance = reduce(rows.get(i), data[i]);
+                reduced[i] = Arrays.copyOfRange(instance.toDoubleArray(), others.length,
+                        others.length + projection[0].length);
+                push(instance);
+                pushed++;
+            }
+            error = mode == Mode.PCA ? lostVariance(data, reduced) : distanceError(data, reduced);
+            System.out.println("GridReduce(): reduced " + data.length + " instances from "
+                    + features.length + " to " + projection[0].length + " features (" + mode
+                    + "), error " + error);
+        }
+        flushInput();
+        m_NewBatch = true;
+        return (numPendingOutput() != 0);
+    }
+
+    /**
+     * Returns the features of an instance, missing values included.
+     */
+    private double[] features(Instance instance) {
+        double[] values = new double[features.length];
+        for (int j = 0; j < features.length; j++) {
+            values[j] = instance.value(features[j]);
+        }
+        return values;
+    }
+
+    private Instances outputFormat() {
+        Instances input = getInputFormat();
+        FastVector attributes = new FastVector();
+        int classIndex = -1;
+        for (int i : others) {
+            if (i == input.classIndex()) {
+                classIndex = attributes.size();
+            }
+            attributes.addElement(input.attribute(i).copy());
+        }
+        String prefix = mode == Mode.PCA ? "pc" : "rp";
+        for (int k = 0; k < projection[0].length; k++) {
+            attributes.addElement(new Attribute(prefix + (k + 1)));
+        }
+        Instances format = new Instances(input.relationName(), attributes, 0);
+        format.setClassIndex(classIndex);
+        return format;
+    }
+
+    /**
+     * Returns the reduced instance, the attributes other than the features
+     * first.
+     *
+     * @param instance the instance
+     * @param values its features, with missing values replaced, or an array
+     * to fill with them
+     */
+    private Instance reduce(Instance instance, double[] values) {
+        Instances format = outputFormatPeek();
+        int k = projection[0].length;
+        double[] reduced = new double[others.length + k];
+        for (int o = 0; o < others.length; o++) {
+            Attribute a = instance.attribute(others[o]);
+            double value = instance.value(others[o]);
+            if ((a.isString() || a.isRelationValued()) && !Double.isNaN(value)) {
+                value = a.isString() ? format.attribute(o).addStringValue(instance.stringValue(others[o]))
+                        : format.attribute(o).addRelation(instance.relationalValue(others[o]));
+            }
+            reduced[o] = value;
+        }
+        for (int j = 0; j < features.length; j++) {
+            double value = instance.value(features[j]);
+            values[j] = Double.isNaN(value) ? (mean != null ? mean[j] : 0) : value;
+            double centered = mean != null ? values[j] - mean[j] : values[j];
+            if (centered != 0) {
+                double[] weights = projection[j];
+                for (int c = 0; c < k; c++) {
+                    reduced[others.length + c] += centered * weights[c];
+                }
+            }
+        }
+        return new Instance(instance.weight(), reduced);
+    }
+
+    /**
+     * Draws a sparse random matrix: with s = sqrt(d), every entry is
+     * +-sqrt(s / k) with probability 1 / 2s each, 0 otherwise.
+     */
+    private void fitRandomProjection() {
+        int d = features.length;
+        int k = Math.max(1, dimension);
+        double s = Math.max(1, Math.sqrt(d));
+        double weight = Math.sqrt(s / k);
+        Random random = new Random(seed);
+        projection = new double[d][k];
+        mean = null;
+        for (int j = 0; j < d; j++) {
+            for (int c = 0; c < k; c++) {
+                double u = random.nextDouble() * s;
+                projection[j][c] = u < 0.5 ? weight : u < 1 ? -weight : 0;
+            }
+        }
+    }
+
+    /**
+     * Fits the randomized PCA: the range of the centered data is sketched by
+     * its product with a gaussian matrix, refined by power iterations, and
+     * the principal directions are found by the eigenvectors of the small
+     * projected matrix.
+     */
+    private void fitPca(double[][] data) {
+        int n = data.length;
+        int d = features.length;
+        mean = new double[d];
+        int[] counts = new int[d];
+        for (double[] row : data) {
+            for (int j = 0; j < d; j++) {
+                if (!Double.isNaN(row[j])) {
+                    mean[j] += row[j];
+                    counts[j]++;
+                }
+            }
+        }
+        for (int j = 0; j < d; j++) {
+            mean[j] = counts[j] > 0 ? mean[j] / counts[j] : 0;
+        }
+        double[][] a = new double[n][d];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < d; j++) {
+                if (Double.isNaN(data[i][j])) {
+                    data[i][j] = mean[j];
+                }
+                a[i][j] = data[i][j] - mean[j];
+            }
+        }
+        int l = Math.max(1, Math.min(Math.min(dimension, d) + OVERSAMPLING, Math.min(n, d)));
+        Random random = new Random(seed);
+        double[][] omega = new double[d][l];
+        for (double[] row : omega) {
+            for (int c = 0; c < l; c++) {
+                row[c] = random.nextGaussian();
+            }
+        }
+        double[][] q = orthonormalize(multiply(a, omega));
+        for (int iteration = 0; iteration < POWER_ITERATIONS; iteration++) {
+            double[][] z = orthonormalize(multiplyTransposed(a, q));
+            q = orthonormalize(multiply(a, z));
+        }
+        // b = q' a, l x d, and its gram matrix b b', l x l
+        double[][] b = multiplyTransposed(q, a);
+        double[][] gram = new double[l][l];
+        for (int r = 0; r < l; r++) {
+            for (int c = r; c < l; c++) {
+                double sum = 0;
+                for (int j = 0; j < d; j++) {
+                    sum += b[r][j] * b[c][j];
+                }
+                gram[r][c] = sum;
+                gram[c][r] = sum;
+            }
+        }
+        double[][] eigenvectors = new double[l][l];
+        double[] eigenvalues = jacobi(gram, eigenvectors);
+        Integer[] order = new Integer[l];
+        for (int c = 0; c < l; c++) {
+            order[c] = c;
+        }
+        final double[] values = eigenvalues;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer x, Integer y) {
+                return Double.compare(values[y], values[x]);
+            }
+        });
+
+        double total = 0;
+        for (double[] row : a) {
+            for (double v : row) {
+                total += v * v;
+            }
+        }
+        int k = Math.min(dimension, l);
+        if (variance > 0) {
+            double explained = 0;
+            k = 0;
+            while (k < l && (k == 0 || explained < variance * total)) {
+                explained += Math.max(0, eigenvalues[order[k++]]);
+            }
+            k = Math.min(k, dimension);
+        }
+        // principal directions v = b' u / sigma
+        projection = new double[d][Math.max(1, k)];
+        for (int c = 0; c < k; c++) {
+            int e = order[c];
+            double sigma = Math.sqrt(Math.max(0, eigenvalues[e]));
+            if (sigma == 0) {
+                continue;
+            }
+            for (int j = 0; j < d; j++) {
+                double sum = 0;
+                for (int r = 0; r < l; r++) {
+                    sum += b[r][j] * eigenvectors[r][e];
+                }
+                projection[j][c] = sum / sigma;
+            }
+        }
+    }
+
+    private static double[][] multiply(double[][] x, double[][] y) {
+        int m = y[0].length;
+        double[][] result = new double[x.length][m];
+        for (int i = 0; i < x.length; i++) {
+            double[] row = result[i];
+            for (int j = 0; j < y.length; j++) {
+                double v = x[i][j];
+                if (v != 0) {
+                    double[] other = y[j];
+                    for (int c = 0; c < m; c++) {
+                        row[c] += v * other[c];
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns x' y.
+     */
+    private static double[][] multiplyTransposed(double[][] x, double[][] y) {
+        int m = y[0].length;
+        double[][] result = new double[x[0].length][m];
+        for (int i = 0; i < x.length; i++) {
+            double[] other = y[i];
+            for (int j = 0; j < x[i].length; j++) {
+                double v = x[i][j];
+                if (v != 0) {
+                    double[] row = result[j];
+                    for (int c = 0; c < m; c++) {
+                        row[c] += v * other[c];
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Orthonormalizes the columns of a matrix in place (modified
+     * Gram-Schmidt), zeroing those dependent on the previous ones.
+     */
+    private static double[][] orthonormalize(double[][] x) {
+        int m = x.length > 0 ? x[0].length : 0;
+        for (int c = 0; c < m; c++) {
+            for (int p = 0; p < c; p++) {
+                double dot = 0;
+                for (double[] row : x) {
+                    dot += row[c] * row[p];
+                }
+                for (double[] row : x) {
+                    row[c] -= dot * row[p];
+                }
+            }
+            double norm = 0;
+            for (double[] row : x) {
+                norm += row[c] * row[c];
+            }
+            norm = Math.sqrt(norm);
+            for (double[] row : x) {
+                row[c] = norm > 1e-12 ? row[c] / norm : 0;
+            }
+        }
+        return x;
+    }
+
+    /**
+     * Diagonalizes a symmetric matrix with cyclic Jacobi rotations.
+     *
+     * @param s the matrix, destroyed
+     * @param vectors filled with the eigenvectors, by column
+     * @return the eigenvalues
+     */
+    private static double[] jacobi(double[][] s, double[][] vectors) {
+        int n = s.length;
+        for (int i = 0; i < n; i++) {
+            Arrays.fill(vectors[i], 0);
+            vectors[i][i] = 1;
+        }
+        for (int sweep = 0; sweep < 100; sweep++) {
+            double off = 0;
+            double diagonal = 0;
+            for (int i = 0; i < n; i++) {
+                diagonal += s[i][i] * s[i][i];
+                for (int j = i + 1; j < n; j++) {
+                    off += s[i][j] * s[i][j];
+                }
+            }
+            if (off <= 1e-24 * diagonal || off == 0) {
+                break;
+            }
+            for (int p = 0; p < n; p++) {
+                for (int r = p + 1; r < n; r++) {
+                    if (s[p][r] == 0) {
+                        continue;
+                    }
+                    double theta = (s[r][r] - s[p][p]) / (2 * s[p][r]);
+                    double t = Math.signum(theta) / (Math.abs(theta) + Math.sqrt(theta * theta + 1));
+                    if (theta == 0) {
+                        t = 1;
+                    }
+                    double c = 1 / Math.sqrt(t * t + 1);
+                    double sn = t * c;
+                    for (int i = 0; i < n; i++) {
+                        double sip = s[i][p];
+                        double sir = s[i][r];
+                        s[i][p] = c * sip - sn * sir;
+                        s[i][r] = sn * sip + c * sir;
+                    }
+                    for (int i = 0; i < n; i++) {
+                        double spi = s[p][i];
+                        double sri = s[r][i];
+                        s[p][i] = c * spi - sn * sri;
+                        s[r][i] = sn * spi + c * sri;
+                    }
+                    for (int i = 0; i < n; i++) {
+                        double vip = vectors[i][p];
+                        double vir = vectors[i][r];
+                        vectors[i][p] = c * vip - sn * vir;
+                        vectors[i][r] = sn * vip + c * vir;
+                    }
+                }
+            }
+        }
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = s[i][i];
+        }
+        return values;
+    }
+
+    /**
+     * Returns the fraction of the variance of the centered data lost by the
+     * projection on the principal directions.
+     */
+    private double lostVariance(double[][] data, double[][] reduced) {
+        double total = 0;
+        double kept = 0;
+        for (int i = 0; i < data.length; i++) {
+            for (int j = 0; j < data[i].length; j++) {
+                double v = data[i][j] - mean[j];
+                total += v * v;
+            }
+            for (double v : reduced[i]) {
+                kept += v * v;
+            }
+        }
+        return total > 0 ? Math.max(0, 1 - kept / total) : 0;
+    }
+
+    /**
+     * Returns the mean relative error of the distances between random pairs
+     * of cells.
+     */
+    private double distanceError(double[][] data, double[][] reduced) {
+        if (data.length < 2) {
+            return 0;
+        }
+        Random random = new Random(seed);
+        double sum = 0;
+        int count = 0;
+        for (int p = 0; p < ERROR_PAIRS; p++) {
+            int x = random.nextInt(data.length);
+            int y = random.nextInt(data.length);
+            double original = distance(data[x], data[y]);
+            if (original > 0) {
+                sum += Math.abs(distance(reduced[x], reduced[y]) / original - 1);
+                count++;
+            }
+        }
+        return count > 0 ? sum / count : 0;
+    }
+
+    private static double distance(double[] x, double[] y) {
+        double sum = 0;
+        for (int j = 0; j < x.length; j++) {
+            sum += (x[j] - y[j]) * (x[j] - y[j]);
+        }
+        return Math.sqrt(sum);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Sets the number of features kept, the largest one if a fraction of
+     * the variance is set.
+     *
+     * @param dimension the number of features
+     */
+    public void setDimension(int dimension) {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("Dimension must be > 0: " + dimension);
+        }
+        this.dimension = dimension;
+    }
+
+    public double getVariance() {
+        return variance;
+    }
+
+    /**
+     * Sets the fraction of the variance the PCA explains, 0 to keep as many
+     * features as the dimension.
+     *
+     * @param variance the fraction, in [0, 1]
+     */
+    public void setVariance(double variance) {
+        if (variance < 0 || variance > 1) {
+            throw new IllegalArgumentException("Variance must be in [0, 1]: " + variance);
+        }
+        this.variance = variance;
+    }
+
+    public int getSeed() {
+        return seed;
+    }
+
+    public void setSeed(int seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Returns the approximation error of the first batch: the mean relative
+     * error of the distances for the projection, the fraction of the variance
+     * lost for the PCA.
+     */
+    public double getError() {
+        return error;
+    }
+
+    /**
+     * Returns the number of features of the output, once the first batch is
+     * finished.
+     */
+    public int getNumReduced() {
+        return projection != null ? projection[0].length : 0;
+    }
+
+    /**
+     * Returns the revision string.
+     *
+     * @return the revision
+     */
+    public String getRevision() {
+        return RevisionUtils.extract("$Revision: $");
+    }
+
+    /**
+     * Main method for running this filter.
+     *
+     * @param args should contain arguments to the filter, use -h for help
+     */
+    public static void main(String[] args) {
+        runFilter(new GridReduce(), args);
+    }
+}
@@ -1,5 +1,14 @@
 package weka.filters.unsupervised.attribute;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -10,14 +19,22 @@ import weka.core.Option;
 import weka.core.OptionHandler;
 import weka.core.RevisionUtils;
 import weka.core.Capabilities.Capability;
+import weka.filters.DroppingFilter;
 import weka.filters.UnsupervisedFilter;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Vector;
 import weka.core.Attribute;
+import weka.core.CellDictionary;
+import weka.core.CellId;
+import weka.core.CellTree;
 import weka.core.FastVector;
+import weka.core.LongIntHashMap;
+import weka.core.SlidingBins;
 
 /**
  * <!-- globalinfo-start -->
@@ -33,7 +50,7 @@ import weka.core.FastVector;
  */
 public class MakeBins
         extends PotentialClassIgnorer
-        implements UnsupervisedFilter, OptionHandler {
+        implements UnsupervisedFilter, OptionHandler, DroppingFilter {
 
     /**
      * for serialization.
@@ -60,12 +77,40 @@ public class MakeBins
     private int binsInADay = 1;
 
     public enum Period {
-        LINEAR, BY_HOURS_IN_A_DAY, BY_WORKING_DAYS, BY_DAY_OF_WEEK
+        LINEAR, BY_HOURS_IN_A_DAY, BY_WORKING_DAYS, BY_DAY_OF_WEEK,
+        /** the last windowDays days up to the latest instance, from minDate on */
+        SLIDING_WINDOW
     };
 
     private Period period = Period.LINEAR;
+    private int windowDays = 7;
+    /** the ring buffers of the cells in SLIDING_WINDOW mode */
+    private SlidingBins window;
     private final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd hh:mm:ss");
-    private Map<String, int[]> aggregate;
+    private int cellIdIndex;
+    private int dateIndex;
+    private int timeIndex;
+    private int numBins;
+    private LongIntHashMap slots;
+    private List<int[]> aggregate;
+    private long[] keys;
+    /** the order in which the cell of each slot was first seen in the batch */
+    private long[] firstSeen;
+    private long numSeen;
+    private int dropped;
+    /** the budget of the aggregation state, in bytes, 0 for no budget */
+    private long memoryBudget;
+    private File spillDirectory;
+    private List<File> runs;
+    /** the grid of numeric cell ids, needed to roll them up */
+    private CellDictionary cellDictionary;
+    /** the number of levels of the pyramid */
+    private int levels = 1;
+    /** the level of the pyramid pushed as output */
+    private int level;
+    private List<Instances> pyramid;
+    /** the adaptive cells numeric cell ids are mapped to, if any */
+    private CellTree cellTree;
 
     /**
      * Returns an enumeration describing the available options.
@@ -128,10 +173,18 @@ public class MakeBins
     public boolean setInputFormat(Instances instanceInfo)
             throws Exception {
         super.setInputFormat(instanceInfo);
+        cellIdIndex = instanceInfo.attribute("cellId").index();
+        dateIndex = instanceInfo.attribute("gpsdate").index();
+        timeIndex = instanceInfo.attribute("gpstime").index();
         return false;
     }
 
-    private int getNumBins() {
+    /**
+     * Returns the number of bins of the output, given the period and dates.
+     *
+     * @return the number of bins
+     */
+    public int getNumBins() {
         final long oneDay = 86400 * 1000;
         final long millisInAHour = 1000*60*60;
         switch(period) {
@@ -143,6 +196,8 @@ public class MakeBins
                 return 2 * binsInADay;
             case BY_HOURS_IN_A_DAY:
                 return binsInADay;
+            case SLIDING_WINDOW:
+                return windowDays * binsInADay;
         }
         return 1;
     }
@@ -164,13 +219,55 @@ public class MakeBins
 
         if (m_NewBatch) {
             resetQueue();
-            aggregate = new HashMap<String, int[]>();
+            startBatch();
             m_NewBatch = false;
         }
         make(instance);
         return false;
     }
 
+    private void startBatch() {
+        numBins = getNumBins();
+        slots = new LongIntHashMap(1024, -1);
+        aggregate = new ArrayList<int[]>();
+        keys = new long[1024];
+        firstSeen = new long[1024];
+        numSeen = 0;
+        dropped = 0;
+        runs = new ArrayList<File>();
+        window = period == Period.SLIDING_WINDOW ? new SlidingBins(numBins) : null;
+    }
+
+    /**
+     * Returns the estimated size in bytes of the state of a cell: its counts,
+     * the list reference, the key and first-seen order and its share of the
+     * hash map.
+     */
+    private long cellBytes() {
+        return 16 + 4L * numBins + 8 + 8 + 8 + 24;
+    }
+
+    /**
+     * Returns the bin of a date and time as found in the gpsdate and gpstime
+     * attributes, to bin instances one at a time outside of a batch. Like
+     * the filter, it is not thread safe.
+     *
+     * For SLIDING_WINDOW the bin is absolute, counted from minDate, to be
+     * added to a SlidingBins of getNumBins() bins.
+     *
+     * @param date the date, as yyyy-MM-dd
+     * @param time the time, as hh:mm:ss
+     * @return the bin, or -1 if the date can't be parsed or is out of range
+     */
+    public int getBinIndex(String date, String time) {
+        try {
+            int bin = getBinIndex(format.parse(date + " " + time));
+            return bin >= 0 && (bin < getNumBins() || period == Period.SLIDING_WINDOW) ? bin : -1;
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
     private int getBinIndex(Date gpsDate) {
         int bin = 0;
         switch (period) {
@@ -189,54 +286,329 @@ public class MakeBins
                 bin = gpsDate.getHours() * binsInADay / 24;
                 bin += gpsDate.getDay() == 0 || gpsDate.getDay() == 6? binsInADay : 0;
                 break;
+            case SLIDING_WINDOW:
+                long millis = gpsDate.getTime() - minDate.getTime();
+                bin = millis < 0 ? -1 : (int) (millis / (86400 * 1000 / binsInADay));
+                break;
         }
         return bin;
     }
 
-    private Map<String, int[]> make(Instance instance) {
-        Attribute cellId = getInputFormat().attribute("cellId");
-        int dateIndex = getInputFormat().attribute("gpsdate").index();
-        int timeIndex = getInputFormat().attribute("gpstime").index();
-        String key = instance.stringValue(cellId.index());
+    /**
+     * Returns the primitive key of the cell of an instance: the code itself
+     * for numeric cell ids, the packed (row;col) key for textual ones.
+     */
+    private long cellKey(Instance instance) {
+        if (getInputFormat().attribute(cellIdIndex).isNumeric()) {
+            int code = (int) instance.value(cellIdIndex);
+            return cellTree != null ? cellTree.leaf(code) : code;
+        }
+        return CellId.parse(instance.stringValue(cellIdIndex));
+    }
+
+    private void make(Instance instance) throws IOException {
         String dateStr = instance.stringValue(dateIndex)+" "+instance.stringValue(timeIndex);
         try {
             Date gpsDate = format.parse(dateStr);
             int bin = getBinIndex(gpsDate);
-            if (bin >= 0 && bin < getNumBins()) {
-                int[] resultCell = aggregate.get(key);
-                if (resultCell == null) {
-                    resultCell = new int[getNumBins()];
-                    aggregate.put(key, resultCell);
+            if (window != null && bin >= 0) {
+                if (!window.add(cellKey(instance), bin)) {
+                    dropped++;
+                }
+            } else if (bin >= 0 && bin < numBins) {
+                long key = cellKey(instance);
+                int slot = slots.get(key);
+                if (slot < 0) {
+                    slot = aggregate.size();
+                    slots.put(key, slot);
+                    aggregate.add(new int[numBins]);
+                    if (slot == keys.length) {
+                        keys = Arrays.copyOf(keys, 2 * slot);
+                        firstSeen = Arrays.copyOf(firstSeen, 2 * slot);
+                    }
+                    keys[slot] = key;
+                    firstSeen[slot] = numSeen++;
+                }
+                aggregate.get(slot)[bin]++;
+                if (memoryBudget > 0 && aggregate.size() * cellBytes() > memoryBudget) {
+                    spill();
                 }
-                resultCell[bin]++;
             } else {
+                dropped++;
                 System.err.println("*** WARNING: date " + dateStr + " not in range " + minDate + " : " + maxDate + ", ignoring (bin " + bin + ")");
             }
         } catch (ParseException p) {
+            dropped++;
             System.err.println("*** WARNING: error parsing date " + dateStr);
         }
-        return aggregate;
     }
 
-    private Instances convertToInstances(Map<String, int[]> aggregate) {
+    /**
+     * Writes the partial aggregates to a run file sorted by cell key, then
+     * starts over with an empty state. Each cell is written as its key, the
+     * order it was first seen, the number of non-empty bins and the (bin,
+     * count) pairs of those.
+     */
+    private void spill() throws IOException {
+        int size = aggregate.size();
+        long[] sorted = Arrays.copyOf(keys, size);
+        Arrays.sort(sorted);
+        File run = File.createTempFile("makebins", ".run", spillDirectory);
+        run.deleteOnExit();
+        runs.add(run);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)));
+        try {
+            for (int i = 0; i < size; i++) {
+                int slot = slots.get(sorted[i]);
+                int[] counts = aggregate.get(slot);
+                int nonZero = 0;
+                for (int bin = 0; bin < numBins; bin++) {
+                    if (counts[bin] != 0) {
+                        nonZero++;
+                    }
+                }
+                out.writeLong(sorted[i]);
+                out.writeLong(firstSeen[slot]);
+                out.writeInt(nonZero);
+                for (int bin = 0; bin < numBins; bin++) {
+                    if (counts[bin] != 0) {
+                        out.writeInt(bin);
+                        out.writeInt(counts[bin]);
+                    }
+                }
+            }
+        } finally {
+            out.close();
+        }
+        System.out.println("MakeBins(): spilled " + size + " cells to " + run);
+        slots = new LongIntHashMap(1024, -1);
+        aggregate = new ArrayList<int[]>();
+    }
+
+    /**
+     * A spilled run being merged, positioned on its current cell.
+     */
+    private static class RunReader implements Comparable<RunReader> {
+
+        private final DataInputStream in;
+        private long key;
+        private long firstSeen;
+
+        RunReader(File run) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(run)));
+        }
+
+        /**
+         * Moves to the next cell of the run.
+         *
+         * @return false, closing the run, if there are no more cells
+         */
+        boolean next() throws IOException {
+            try {
+                key = in.readLong();
+            } catch (EOFException e) {
+                in.close();
+                return false;
+            }
+            firstSeen = in.readLong();
+            return true;
+        }
+
+        /** Adds the counts of the current cell to the values of an instance. */
+        void addCounts(double[] values) throws IOException {
+            int nonZero = in.readInt();
+            for (int i = 0; i < nonZero; i++) {
+                int bin = in.readInt();
+                values[bin + 1] += in.readInt();
+            }
+        }
+
+        public int compareTo(RunReader other) {
+            return key < other.key ? -1 : key > other.key ? 1 : 0;
+        }
+    }
+
+    /**
+     * The cells of a level of the pyramid with their counts, in the order
+     * they were first seen. The counts of a cell are kept in the values of
+     * its output instance, from index 1.
+     */
+    private static class Cells {
+
+        long[] keys = new long[1024];
+        List<double[]> values = new ArrayList<double[]>();
+
+        void add(long key, double[] counts) {
+            int index = values.size();
+            if (index == keys.length) {
+                keys = Arrays.copyOf(keys, 2 * index);
+            }
+            keys[index] = key;
+            values.add(counts);
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+
+    /**
+     * Returns the cells aggregated in memory.
+     */
+    private Cells aggregatedCells() {
+        Cells cells = new Cells();
+        for (int slot = 0; slot < aggregate.size(); slot++) {
+            int[] features = aggregate.get(slot);
+            double[] values = new double[1 + numBins];
+            for (int i = 0; i < numBins; i++) {
+                values[i + 1] = features[i];
+            }
+            cells.add(keys[slot], values);
+        }
+        return cells;
+    }
+
+    /**
+     * Returns the cells with instances in the current window, counting the
+     * expired instances as dropped.
+     */
+    private Cells windowCells() {
+        Cells cells = new Cells();
+        for (int slot = 0; slot < window.size(); slot++) {
+            if (window.getTotal(slot) > 0) {
+                double[] values = new double[1 + numBins];
+                window.getCounts(slot, values, 1);
+                cells.add(window.getKey(slot), values);
+            }
+        }
+        dropped += (int) window.getNumExpired();
+        window = null;
+        return cells;
+    }
+
+    /**
+     * Merges the spilled runs, summing the counts of each cell, and returns
+     * the cells in the order they were first seen, as the in-memory path
+     * does.
+     */
+    private Cells mergeRuns() throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>();
+        Cells merged = new Cells();
+        long[] mergedFirstSeen = new long[1024];
+        try {
+            for (File run : runs) {
+                RunReader reader = new RunReader(run);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            while (!queue.isEmpty()) {
+                long key = queue.peek().key;
+                long first = Long.MAX_VALUE;
+                double[] values = new double[1 + numBins];
+                while (!queue.isEmpty() && queue.peek().key == key) {
+                    RunReader reader = queue.poll();
+                    first = Math.min(first, reader.firstSeen);
+                    reader.addCounts(values);
+                    if (reader.next()) {
+                        queue.add(reader);
+                    }
+                }
+                int index = merged.size();
+                if (index == mergedFirstSeen.length) {
+                    mergedFirstSeen = Arrays.copyOf(mergedFirstSeen, 2 * index);
+                }
+                mergedFirstSeen[index] = first;
+                merged.add(key, values);
+            }
+        } finally {
+            for (RunReader reader : queue) {
+                reader.in.close();
+            }
+            for (File run : runs) {
+                run.delete();
+            }
+            runs.clear();
+        }
+        // first-seen orders are distinct, so they identify the cells
+        LongIntHashMap byFirstSeen = new LongIntHashMap(merged.size(), -1);
+        for (int i = 0; i < merged.size(); i++) {
+            byFirstSeen.put(mergedFirstSeen[i], i);
+        }
+        long[] order = Arrays.copyOf(mergedFirstSeen, merged.size());
+        Arrays.sort(order);
+        Cells cells = new Cells();
+        for (long first : order) {
+            int i = byFirstSeen.get(first);
+            cells.add(merged.keys[i], merged.values.get(i));
+        }
+        return cells;
+    }
+
+    /**
+     * Rolls the cells of a level of the pyramid up to the next one, summing
+     * the counts of the up to four cells making each coarser cell. Coarser
+     * cells keep the order their first finer cell was seen.
+     *
+     * @param cells the cells of the finer level
+     * @param level the finer level
+     * @return the cells of the coarser level
+     */
+    private Cells rollUp(Cells cells, int level) {
+        boolean numeric = getInputFormat().attribute(cellIdIndex).isNumeric();
+        CellDictionary finer = numeric ? cellDictionary.coarser(level) : null;
+        LongIntHashMap parents = new LongIntHashMap(cells.size() / 2 + 1, -1);
+        Cells coarser = new Cells();
+        for (int i = 0; i < cells.size(); i++) {
+            long key = cells.keys[i];
+            long parentKey = numeric ? finer.coarserCode((int) key, 1)
+                    : CellId.key(CellId.row(key) >> 1, CellId.col(key) >> 1);
+            int parent = parents.get(parentKey);
+            if (parent < 0) {
+                parent = coarser.size();
+                parents.put(parentKey, parent);
+                coarser.add(parentKey, new double[1 + numBins]);
+            }
+            double[] counts = cells.values.get(i);
+            double[] sums = coarser.values.get(parent);
+            for (int bin = 1; bin <= numBins; bin++) {
+                sums[bin] += counts[bin];
+            }
+        }
+        return coarser;
+    }
+
+    /**
+     * Returns the cells as a data set with the given header, setting their
+     * cell ids.
+     */
+    private static Instances toInstances(Instances header, Cells cells, boolean copy) {
+        Instances dataSet = new Instances(header, cells.size());
+        Attribute cellId = dataSet.attribute(0);
+        for (int i = 0; i < cells.size(); i++) {
+            double[] values = cells.values.get(i);
+            if (copy) {
+                values = values.clone();
+            }
+            values[0] = cellId.isNumeric() ? cells.keys[i] : cellId.addStringValue(CellId.toString(cells.keys[i]));
+            dataSet.add(new Instance(1.0, values));
+        }
+        return dataSet;
+    }
+
+    /**
+     * Builds the output header: the cell id, of the same type of the input
+     * one, followed by a numeric attribute per bin.
+     */
+    private Instances outputFormat() {
         FastVector attributes = new FastVector();
-        Attribute cellId = new Attribute("cellId", (FastVector) null);
+        Attribute cellId = getInputFormat().attribute(cellIdIndex).isNumeric()
+                ? new Attribute("cellId") : new Attribute("cellId", (FastVector) null);
         attributes.addElement(cellId);
-        for (int i = 0; i < getNumBins(); i++) {
+        for (int i = 0; i < numBins; i++) {
             attributes.addElement(new Attribute("bin" + i));
         }
-        Instances dataset = new Instances("grid", attributes, aggregate.size());
-        for (String key : aggregate.keySet()) {
-            int[] features = aggregate.get(key);
-            Instance instance = new Instance(1 + getNumBins());
-            instance.setDataset(dataset);
-            instance.setValue(0, key);
-            for (int i = 0; i < getNumBins(); i++) {
-                instance.setValue(i + 1, features[i]);
-            }
-            dataset.add(instance);
-        }
-        return dataset;
+        return new Instances("grid", attributes, 0);
     }
 
     /**
@@ -253,13 +625,51 @@ public class MakeBins
         if (getInputFormat() == null) {
             throw new IllegalStateException("No input instance format defined");
         }
-        Instances instances = convertToInstances(aggregate);
-        setOutputFormat(instances);
-        for(int i = 0; i < instances.numInstances(); i++)
-            push(instances.instance(i));
+        if (m_NewBatch) {
+            resetQueue();
+            startBatch();
+        }
+        if (levels > 1 && getInputFormat().attribute(cellIdIndex).isNumeric() && cellDictionary == null) {
+            throw new IllegalStateException("No cell dictionary to roll up numeric cell ids");
+        }
+        if (levels > 1 && cellTree != null) {
+            throw new IllegalStateException("Adaptive cells can't be rolled up");
+        }
+        setOutputFormat(outputFormat());
+        Attribute cellId = outputFormatPeek().attribute(0);
+        Cells cells;
+        if (window != null) {
+            cells = windowCells();
+        } else if (!runs.isEmpty()) {
+            spill();
+            cells = mergeRuns();
+        } else {
+            cells = aggregatedCells();
+        }
+        aggregate = null;
+        slots = null;
+        pyramid = new ArrayList<Instances>();
+        int pushed = 0;
+        for (int l = 0; l < Math.max(levels, level + 1); l++) {
+            if (l > 0) {
+                cells = rollUp(cells, l - 1);
+            }
+            if (levels > 1) {
+                pyramid.add(toInstances(outputFormat(), cells, l == level));
+            }
+            if (l == level) {
+                for (int i = 0; i < cells.size(); i++) {
+                    double[] values = cells.values.get(i);
+                    values[0] = cellId.isNumeric() ? cells.keys[i] : cellId.addStringValue(CellId.toString(cells.keys[i]));
+                    push(new Instance(1.0, values));
+                }
+                pushed = cells.size();
+            }
+        }
         m_NewBatch = true;
-        System.out.println("MakeBins(): created "+getNumBins()+" time bins, pushed "+instances.numInstances()+ " instances");
-        return false;
+        System.out.println("MakeBins(): created "+numBins+" time bins, pushed "+pushed+ " instances"
+                + (levels > 1 || level > 0 ? " of level "+level : ""));
+        return (numPendingOutput() != 0);
     }
 
     public Date getMinDate() {
@@ -286,6 +696,137 @@ public class MakeBins
         this.binsInADay = binsInADay;
     }
 
+    /**
+     * Returns the number of input instances dropped by the last batch, out
+     * of the date range or with a bad date.
+     *
+     * @return the number of dropped instances
+     */
+    public int getNumDropped() {
+        return dropped;
+    }
+
+    /**
+     * Returns the budget of the aggregation state.
+     *
+     * @return the budget in bytes, 0 if there is none
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Sets the budget of the aggregation state. Once the cells of a batch
+     * would take more than this, their partial counts are spilled to disk as
+     * runs sorted by cell, which are merged at the end of the batch. The
+     * output is the same as without a budget.
+     *
+     * @param memoryBudget the budget in bytes, 0 for no budget
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * Sets the directory of the spilled runs.
+     *
+     * @param spillDirectory the directory, null for the default temporary one
+     */
+    public void setSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    public CellDictionary getCellDictionary() {
+        return cellDictionary;
+    }
+
+    /**
+     * Sets the grid of the numeric cell ids, as produced by GridGpsArea. It
+     * is needed to roll numeric cell ids up the pyramid.
+     *
+     * @param cellDictionary the cell dictionary
+     */
+    public void setCellDictionary(CellDictionary cellDictionary) {
+        this.cellDictionary = cellDictionary;
+    }
+
+    public CellTree getCellTree() {
+        return cellTree;
+    }
+
+    /**
+     * Sets the adaptive cells of the output: the numeric cell ids of the
+     * input, codes of the grid of the tree, are mapped to the leaves holding
+     * them, so that data gridded on fixed cells can be binned on adaptive
+     * ones.
+     *
+     * @param cellTree the tree, null to keep the cells of the input
+     */
+    public void setCellTree(CellTree cellTree) {
+        this.cellTree = cellTree;
+    }
+
+    public int getLevels() {
+        return levels;
+    }
+
+    /**
+     * Sets the number of levels of the pyramid built by each batch. Level 0
+     * has the cells of the input; every further level has cells twice as
+     * large in both directions, and its counts are the sums of those of the
+     * level below, rather than binning the instances again.
+     *
+     * @param levels the number of levels, at least 1
+     */
+    public void setLevels(int levels) {
+        this.levels = levels;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Sets the level of the pyramid pushed as the output of the filter. The
+     * numeric cell ids of level l are codes of
+     * getCellDictionary().coarser(l).
+     *
+     * @param level the level, 0 for the cells of the input
+     */
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    /**
+     * Returns all the levels of the pyramid built by the last batch, from the
+     * finest one, if it has more than one level.
+     *
+     * @return the levels, empty if the pyramid has only one level
+     */
+    public List<Instances> getPyramid() {
+        return pyramid;
+    }
+
+    public int getWindowDays() {
+        return windowDays;
+    }
+
+    /**
+     * Sets the length of the window of the SLIDING_WINDOW period: the output
+     * has binsInADay bins for each of the last windowDays days, from the
+     * oldest one, up to the bin of the latest instance of the batch. Older
+     * instances are dropped.
+     *
+     * @param windowDays the number of days of the window
+     */
+    public void setWindowDays(int windowDays) {
+        this.windowDays = windowDays;
+    }
+
     public Period getPeriod() {
         return period;
     }
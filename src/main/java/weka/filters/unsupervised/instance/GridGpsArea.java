@@ -3,19 +3,20 @@
 package weka.filters.unsupervised.instance;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Vector;
 import weka.core.Attribute;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
-import weka.core.FastVector;
+import weka.core.CellDictionary;
+import weka.core.CellTree;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.OptionHandler;
 import weka.core.RevisionUtils;
+import weka.filters.DroppingFilter;
 import weka.filters.Filter;
 import weka.filters.UnsupervisedFilter;
 
@@ -23,7 +24,13 @@ import weka.filters.UnsupervisedFilter;
  * <!-- globalinfo-start -->
  Crops an area described by (nwLat, nwLng, seLat, seLng) coordinates
  by removing all instances whose latitude and longitude values are outside
- the boundaries.
+ the boundaries, and adds the numeric cellId of the grid cell of each
+ instance (see CellDictionary).
+ <p/>
+ In adaptive mode the cells are the leaves of a CellTree, split while they
+ hold more than a given number of instances: the tree is either given, e.g.
+ built on another data set, or built on the first batch, which is then
+ held until batchFinished().
  * <p/>
  * <!-- globalinfo-end -->
  *
@@ -63,7 +70,7 @@ import weka.filters.UnsupervisedFilter;
  */
 public class GridGpsArea
         extends Filter
-        implements UnsupervisedFilter, OptionHandler {
+        implements UnsupervisedFilter, OptionHandler, DroppingFilter {
 
     /**
      * for serialization
@@ -77,10 +84,17 @@ public class GridGpsArea
     private double seLng = 0.0;
     private double cellXSizeInMeters = 100;
     private double cellYSizeInMeters = 100;
-    private Map<String, List<Instance>> cell = new HashMap<String, List<Instance>>();
     private String latitudeName = "latitude";
     private String longitudeName = "longitude";
     private Attribute cellId;
+    private CellDictionary dictionary;
+    /** the largest count of an adaptive cell, 0 for the fixed grid */
+    private int maxCellCount = 0;
+    /** the levels of the adaptive cells, 0 to cover the area with one cell */
+    private int treeLevels = 0;
+    private CellTree cellTree;
+    private List<Instance> held;
+    private int[] heldCodes;
     private int pushed = 0;
     private int removed = 0;
 
@@ -152,13 +166,6 @@ public class GridGpsArea
         return result;
     }
     
-    private static double distanceInMeters(double lat1, double lng1, double lat2, double lng2) {
-        final double factor = 7.91959594934121e-06;
-        //System.out.println("*** distance in meters: ("+lat1+","+lng1+") - ("+lat2+","+lng2+") = " + Math.sqrt(Math.pow(lat2-lat1, 2)+Math.pow(lng2-lng1, 2))/factor);
-        double dlng = Math.abs(lng2-lng1) >= Math.PI? Math.abs(lng2-lng1) - Math.PI : lng2-lng1;
-        return Math.sqrt(Math.pow(lat2 - lat1, 2) + Math.pow(dlng, 2)) / factor;
-    }
-    
     /**
      * Input an instance for filtering.
      *
@@ -173,23 +180,46 @@ public class GridGpsArea
         double lat = instance.value(latIndex);
         double lng = instance.value(lngIndex);
 
-        // FIXME considerare il caso in cui l'area è attraversata dal meridiano 180!
-        
-        if (lat <= nwLat && lat >= seLat && lng >= nwLng && lng <= seLng) {
-            int x = (int) Math.floor(distanceInMeters(0, nwLng, 0, lng) / cellXSizeInMeters);
-            int y = (int) Math.floor(distanceInMeters(nwLat, 0, lat, 0) / cellYSizeInMeters);
-            String key = "(" + y + ";" + x + ")";
-            Instance outInstance = new Instance(instance);
-            outInstance.insertAttributeAt(instance.numAttributes());
-            push(outInstance);
-            outInstance.setValue(instance.numAttributes(), key);
-            pushed++;
-        } else removed++;
+        int code = dictionary.code(lat, lng);
+        if (code < 0) {
+            removed++;
+        } else if (maxCellCount > 0 && cellTree == null) {
+            // the tree needs the whole batch
+            if (held.size() == heldCodes.length) {
+                heldCodes = Arrays.copyOf(heldCodes, 2 * heldCodes.length);
+            }
+            heldCodes[held.size()] = code;
+            held.add(instance);
+            return false;
+        } else {
+            push(instance, cellTree != null ? cellTree.leaf(code) : code);
+        }
         return true;
     }
 
+    private void push(Instance instance, int code) {
+        Instance outInstance = new Instance(instance);
+        outInstance.insertAttributeAt(instance.numAttributes());
+        outInstance.setValue(instance.numAttributes(), code);
+        push(outInstance);
+        pushed++;
+    }
+
     @Override
     public boolean batchFinished() throws Exception {
+        if (maxCellCount > 0 && cellTree == null) {
+            int[] counts = new int[dictionary.size()];
+            for (int i = 0; i < held.size(); i++) {
+                counts[heldCodes[i]]++;
+            }
+            cellTree = CellTree.build(dictionary, treeLevels, maxCellCount, counts);
+            System.out.println("GridGpsArea(): built "+cellTree);
+            for (int i = 0; i < held.size(); i++) {
+                push(held.get(i), cellTree.leaf(heldCodes[i]));
+            }
+            held = null;
+            heldCodes = null;
+        }
         System.out.println("GridGpsArea(): kept "+pushed+" instances, "+removed+" removed");
         return super.batchFinished();
     }
@@ -220,12 +250,84 @@ public class GridGpsArea
         lngIndex = instanceInfo.attribute(longitudeName).index();
         super.setInputFormat(instanceInfo);
         Instances output = new Instances(instanceInfo,instanceInfo.numInstances());
-        cellId = new Attribute("cellId", (FastVector)null);
+        dictionary = new CellDictionary(nwLat, nwLng, seLat, seLng, cellXSizeInMeters, cellYSizeInMeters);
+        held = new ArrayList<Instance>();
+        heldCodes = new int[1024];
+        cellId = new Attribute("cellId");
         output.insertAttributeAt(cellId, output.numAttributes());
         setOutputFormat(output);
         return true;
     }
 
+    /**
+     * Returns the grid built on the last input format, which maps the codes
+     * stored in the cellId attribute to cells.
+     *
+     * @return the cell dictionary
+     */
+    public CellDictionary getCellDictionary() {
+        return dictionary;
+    }
+
+    public int getMaxCellCount() {
+        return maxCellCount;
+    }
+
+    /**
+     * Sets the adaptive mode: cells are split while they hold more than the
+     * given number of instances.
+     *
+     * @param maxCellCount the largest count of a cell, 0 for the fixed grid
+     */
+    public void setMaxCellCount(int maxCellCount) {
+        this.maxCellCount = maxCellCount;
+    }
+
+    public int getTreeLevels() {
+        return treeLevels;
+    }
+
+    /**
+     * Sets the number of levels of the adaptive cells: the largest cells are
+     * 2^(levels-1) grid cells wide.
+     *
+     * @param treeLevels the number of levels, 0 to cover the area with one cell
+     */
+    public void setTreeLevels(int treeLevels) {
+        this.treeLevels = treeLevels;
+    }
+
+    /**
+     * Returns the tree of the adaptive cells, as given or as built on the
+     * first batch.
+     *
+     * @return the tree, null if none
+     */
+    public CellTree getCellTree() {
+        return cellTree;
+    }
+
+    /**
+     * Sets the tree of the adaptive cells, e.g. one built on another data
+     * set so that the cells of the two match. It must be built on the grid
+     * of this filter.
+     *
+     * @param cellTree the tree, null to build one on the first batch
+     */
+    public void setCellTree(CellTree cellTree) {
+        this.cellTree = cellTree;
+    }
+
+    /**
+     * Returns the number of input instances dropped so far, being out of
+     * the area.
+     *
+     * @return the number of dropped instances
+     */
+    public int getNumDropped() {
+        return removed;
+    }
+
     public int getLatIndex() {
         return latIndex;
     }
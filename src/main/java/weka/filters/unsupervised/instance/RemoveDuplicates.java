@@ -8,6 +8,7 @@ import weka.core.Instances;
 import weka.core.OptionHandler;
 import weka.core.RevisionUtils;
 import weka.core.Capabilities.Capability;
+import weka.filters.DroppingFilter;
 import weka.filters.Filter;
 import weka.filters.UnsupervisedFilter;
 
@@ -32,7 +33,7 @@ import weka.core.InstanceComparator;
  */
 public class RemoveDuplicates
         extends Filter
-        implements UnsupervisedFilter, OptionHandler {
+        implements UnsupervisedFilter, OptionHandler, DroppingFilter {
 
     /**
      * for serialization
@@ -145,6 +146,15 @@ public class RemoveDuplicates
         return super.batchFinished();
     }
 
+    /**
+     * Returns the number of input instances dropped as duplicates so far.
+     *
+     * @return the number of dropped instances
+     */
+    public int getNumDropped() {
+        return removed;
+    }
+
     /**
      * Signify that this batch of input to the filter is finished. If the filter
      * requires all instances prior to filtering, output() may now be called to
@@ -0,0 +1,123 @@
+package com.mycompany.dataminingproject;
+
+import java.io.File;
+import java.util.Random;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Attribute;
+import weka.core.CellDictionary;
+import weka.core.CellTree;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Unit test for ClusterLookup.
+ */
+public class ClusterLookupTest
+    extends TestCase
+{
+    public ClusterLookupTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ClusterLookupTest.class );
+    }
+
+    private static CellDictionary dictionary()
+    {
+        return new CellDictionary( 40.120, 116.130, 39.750, 116.650, 100, 100 );
+    }
+
+    /**
+     * Clusters every other cell of a grid at random.
+     */
+    private static Instances clusters( CellDictionary dictionary, Random random, int[] expected )
+    {
+        FastVector values = new FastVector();
+        for ( int c = 0; c < 5; c++ )
+            values.addElement( Integer.toString( c ) );
+        FastVector attributes = new FastVector();
+        attributes.addElement( new Attribute( "kMeansCosine", values ) );
+        attributes.addElement( new Attribute( "cellId" ) );
+        Instances dataSet = new Instances( "cells", attributes, 0 );
+        dataSet.setClassIndex( 0 );
+        for ( int code = 0; code < dictionary.size(); code++ )
+        {
+            expected[code] = -1;
+            if ( random.nextBoolean() )
+            {
+                expected[code] = random.nextInt( 5 );
+                dataSet.add( new Instance( 1.0, new double[] { expected[code], code } ) );
+            }
+        }
+        return dataSet;
+    }
+
+    private static File file() throws Exception
+    {
+        File file = File.createTempFile( "clusters", ".lookup" );
+        file.deleteOnExit();
+        return file;
+    }
+
+    public void testLevels() throws Exception
+    {
+        CellDictionary dictionary = dictionary();
+        Random random = new Random( 13 );
+        for ( int level = 0; level < 3; level++ )
+        {
+            CellDictionary levelDictionary = dictionary.coarser( level );
+            int[] expected = new int[levelDictionary.size()];
+            Instances dataSet = clusters( levelDictionary, random, expected );
+            File file = file();
+            ClusterLookup.write( file.getPath(), dataSet, dictionary, level, null );
+            ClusterLookup lookup = ClusterLookup.open( file );
+            assertEquals( "kMeansCosine", lookup.getName() );
+            assertEquals( 5, lookup.getNumClusters() );
+            assertEquals( levelDictionary.getNumRows(), lookup.getNumRows() );
+            for ( int i = 0; i < 10000; i++ )
+            {
+                double lat = 39.750 + random.nextDouble() * 0.37;
+                double lng = 116.130 + random.nextDouble() * 0.52;
+                int code = dictionary.coarserCode( dictionary.code( lat, lng ), level );
+                assertEquals( expected[code], lookup.cluster( lat, lng ) );
+            }
+            assertEquals( -1, lookup.cluster( 40.2, 116.3 ) );
+            assertEquals( -1, lookup.cluster( 39.9, 116.7 ) );
+            assertEquals( -1, lookup.cluster( -1, 0 ) );
+        }
+    }
+
+    public void testCellTree() throws Exception
+    {
+        CellDictionary dictionary = dictionary();
+        Random random = new Random( 17 );
+        int[] counts = new int[dictionary.size()];
+        for ( int i = 0; i < 20000; i++ )
+            counts[random.nextInt( counts.length / 4 )]++;
+        CellTree tree = CellTree.build( dictionary, 0, 100, counts );
+        int[] expected = new int[dictionary.size()];
+        Instances dataSet = clusters( dictionary, random, expected );
+        // only the leaves are clustered
+        for ( int i = dataSet.numInstances() - 1; i >= 0; i-- )
+        {
+            int code = (int) dataSet.instance( i ).value( 1 );
+            if ( tree.leaf( code ) != code )
+                dataSet.delete( i );
+        }
+        File file = file();
+        ClusterLookup.write( file.getPath(), dataSet, dictionary, 0, tree );
+        ClusterLookup lookup = ClusterLookup.open( file );
+        for ( int i = 0; i < 10000; i++ )
+        {
+            double lat = 39.750 + random.nextDouble() * 0.37;
+            double lng = 116.130 + random.nextDouble() * 0.52;
+            assertEquals( expected[tree.leaf( dictionary.code( lat, lng ) )], lookup.cluster( lat, lng ) );
+        }
+    }
+}
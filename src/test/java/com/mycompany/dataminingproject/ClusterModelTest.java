@@ -0,0 +1,237 @@
+package com.mycompany.dataminingproject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Attribute;
+import weka.core.CosineDistance;
+import weka.core.DistanceFunction;
+import weka.core.EuclideanDistance;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Unit test for ClusterModel and ClusterAssigner.
+ */
+public class ClusterModelTest
+    extends TestCase
+{
+    public ClusterModelTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ClusterModelTest.class );
+    }
+
+    /**
+     * Cells with a cellId, four features and a cluster drawn at random.
+     */
+    private static Instances cells( Random random, int numCells )
+    {
+        FastVector clusters = new FastVector();
+        for ( int c = 0; c < 3; c++ )
+            clusters.addElement( Integer.toString( c ) );
+        FastVector attributes = new FastVector();
+        attributes.addElement( new Attribute( "kMeansEuclidean", clusters ) );
+        attributes.addElement( new Attribute( "cellId" ) );
+        for ( String name : new String[] { "up1", "dn1", "up2", "dn2" } )
+            attributes.addElement( new Attribute( name ) );
+        Instances cells = new Instances( "cells", attributes, numCells );
+        cells.setClassIndex( 0 );
+        for ( int i = 0; i < numCells; i++ )
+        {
+            double[] values = new double[6];
+            values[0] = random.nextInt( 3 );
+            values[1] = i;
+            for ( int j = 2; j < 6; j++ )
+                values[j] = random.nextDouble() * ( j + values[0] ) - 1;
+            cells.add( new Instance( 1.0, values ) );
+        }
+        return cells;
+    }
+
+    private static int nearest( DistanceFunction df, Instances centroids, Instance instance )
+    {
+        int best = 0;
+        for ( int c = 1; c < centroids.numInstances(); c++ )
+            if ( df.distance( instance, centroids.instance( c ) ) < df.distance( instance, centroids.instance( best ) ) )
+                best = c;
+        return best;
+    }
+
+    private static void assertMatchesWeka( ClusterModel model, DistanceFunction df, Instances cells, Random random )
+    {
+        Instances features = new Instances( cells );
+        features.setClassIndex( -1 );
+        features.deleteAttributeAt( 1 );
+        features.deleteAttributeAt( 0 );
+        df.setInstances( features );
+        Instances centroids = new Instances( features, model.numClusters() );
+        for ( int c = 0; c < model.numClusters(); c++ )
+        {
+            double[] values = new double[model.numFeatures()];
+            for ( int j = 0; j < values.length; j++ )
+                values[j] = model.centroid( c, j );
+            centroids.add( new Instance( 1.0, values ) );
+        }
+        for ( int i = 0; i < 200; i++ )
+        {
+            double[] values = new double[model.numFeatures()];
+            for ( int j = 0; j < values.length; j++ )
+                values[j] = random.nextDouble() * 6 - 1;
+            Instance instance = new Instance( 1.0, values );
+            instance.setDataset( features );
+            assertEquals( nearest( df, centroids, instance ), model.assign( values ) );
+        }
+    }
+
+    public void testCentroidsAndDistances() throws Exception
+    {
+        Random random = new Random( 7 );
+        Instances cells = cells( random, 300 );
+        ClusterModel model = ClusterModel.build( cells, ClusterModel.Distance.EUCLIDEAN, false, false );
+        assertEquals( "kMeansEuclidean", model.getName() );
+        assertEquals( 3, model.numClusters() );
+        assertEquals( 4, model.numFeatures() );
+        double sum = 0;
+        int count = 0;
+        for ( int i = 0; i < cells.numInstances(); i++ )
+            if ( cells.instance( i ).classValue() == 2 )
+            {
+                sum += cells.instance( i ).value( 3 );
+                count++;
+            }
+        assertEquals( sum / count, model.centroid( 2, 1 ), 1e-12 );
+        assertMatchesWeka( model, new EuclideanDistance(), cells, random );
+
+        File file = File.createTempFile( "model", ".bin" );
+        file.deleteOnExit();
+        ClusterModel.build( cells, ClusterModel.Distance.COSINE, false, false ).write( file.getPath() );
+        ClusterModel cosine = ClusterModel.read( file );
+        assertEquals( ClusterModel.Distance.COSINE, cosine.getDistance() );
+        assertMatchesWeka( cosine, new CosineDistance(), cells, random );
+        CosineDistance splitMax = new CosineDistance();
+        splitMax.setSplitMax( true );
+        assertMatchesWeka( ClusterModel.build( cells, ClusterModel.Distance.COSINE, false, true ), splitMax, cells, random );
+    }
+
+    public void testSavedFromRun() throws Exception
+    {
+        Properties config = new Properties();
+        config.setProperty( "gridGpsArea.nwLat", "40.120" );
+        config.setProperty( "gridGpsArea.seLat", "39.750" );
+        config.setProperty( "gridGpsArea.nwLng", "116.130" );
+        config.setProperty( "gridGpsArea.seLng", "116.650" );
+        config.setProperty( "gridGpsArea.cellXSizeInMeters", "100" );
+        config.setProperty( "gridGpsArea.cellYSizeInMeters", "100" );
+        config.setProperty( "makeBins.minDate", "2008-05-01" );
+        config.setProperty( "makeBins.maxDate", "2008-12-01" );
+        config.setProperty( "gridNormalize.mode", "L2_UNIT" );
+        Random random = new Random( 13 );
+        Instances cells = cells( random, 300 );
+        cells.renameAttribute( 0, "kMeansCosine" );
+        File file = File.createTempFile( "model", ".bin" );
+        file.deleteOnExit();
+        App.saveModel( new RunContext( "test", config ), file.getPath(), cells );
+
+        // labels cells with the distance of the run, a dot product of unit vectors
+        ClusterModel model = ClusterModel.read( file );
+        assertEquals( ClusterModel.Distance.COSINE, model.getDistance() );
+        CosineDistance unitLength = new CosineDistance();
+        unitLength.setUnitLength( true );
+        assertMatchesWeka( model, unitLength, cells, random );
+    }
+
+    public void testTreeMatchesLinearScan() throws Exception
+    {
+        Random random = new Random( 23 );
+        FastVector clusters = new FastVector();
+        for ( int c = 0; c < 60; c++ )
+            clusters.addElement( Integer.toString( c ) );
+        FastVector attributes = new FastVector();
+        attributes.addElement( new Attribute( "kMeansCosine", clusters ) );
+        for ( String name : new String[] { "up1", "dn1", "up2", "dn2", "up3", "dn3" } )
+            attributes.addElement( new Attribute( name ) );
+        Instances cells = new Instances( "cells", attributes, 0 );
+        cells.setClassIndex( 0 );
+        for ( int i = 0; i < 600; i++ )
+        {
+            double[] values = new double[7];
+            values[0] = i % 60;
+            for ( int j = 1; j < 7; j++ )
+                values[j] = random.nextInt( 5 ) - 2;
+            cells.add( new Instance( 1.0, values ) );
+        }
+        ClusterModel[] models = {
+            ClusterModel.build( cells, ClusterModel.Distance.EUCLIDEAN, false, false ),
+            ClusterModel.build( cells, ClusterModel.Distance.COSINE, false, false ),
+            ClusterModel.build( cells, ClusterModel.Distance.COSINE, true, false ) };
+        for ( ClusterModel model : models )
+        {
+            for ( int i = 0; i < 2000; i++ )
+            {
+                double[] values = new double[6];
+                for ( int j = 0; j < 6; j++ )
+                    values[j] = random.nextInt( 9 ) / 2.0 - 2;
+                assertEquals( model.linearAssign( values ), model.assign( values ) );
+            }
+        }
+    }
+
+    public void testAssigner() throws Exception
+    {
+        Random random = new Random( 11 );
+        ClusterModel model = ClusterModel.build( cells( random, 100 ), ClusterModel.Distance.EUCLIDEAN, false, false );
+        File in = File.createTempFile( "features", ".csv" );
+        File out = File.createTempFile( "clusters", ".csv" );
+        in.deleteOnExit();
+        out.deleteOnExit();
+        double[][] rows = new double[1000][4];
+        Writer writer = new FileWriter( in );
+        // columns in another order, and a further one
+        writer.write( "cellId,latitude,dn2,up2,dn1,up1,other\n" );
+        for ( int i = 0; i < rows.length; i++ )
+        {
+            for ( int j = 0; j < 4; j++ )
+                rows[i][j] = Math.round( ( random.nextDouble() * 6 - 1 ) * 1e6 ) / 1e6;
+            writer.write( "'(" + i + ";1)',39.9," + rows[i][3] + "," + rows[i][2] + ","
+                + rows[i][1] + "," + rows[i][0] + ",0\n" );
+        }
+        writer.close();
+
+        ExecutorService executor = Executors.newFixedThreadPool( 4 );
+        try
+        {
+            assertEquals( rows.length, new ClusterAssigner( model, executor, 4 ).assign( in, out ) );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+        BufferedReader reader = new BufferedReader( new FileReader( out ) );
+        try
+        {
+            assertEquals( "cellId,kMeansEuclidean", reader.readLine() );
+            for ( int i = 0; i < rows.length; i++ )
+                assertEquals( "'(" + i + ";1)'," + model.assign( rows[i] ), reader.readLine() );
+            assertNull( reader.readLine() );
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+}
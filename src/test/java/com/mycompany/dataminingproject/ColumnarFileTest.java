@@ -0,0 +1,64 @@
+package com.mycompany.dataminingproject;
+
+import java.io.File;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Attribute;
+import weka.core.CellDictionary;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Unit test for ColumnarFile.
+ */
+public class ColumnarFileTest
+    extends TestCase
+{
+    public ColumnarFileTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ColumnarFileTest.class );
+    }
+
+    public void testRoundTrip() throws Exception
+    {
+        CellDictionary dictionary = new CellDictionary( 40.12, 116.13, 39.75, 116.65, 100, 100 );
+        FastVector clusters = new FastVector();
+        clusters.addElement( "0" );
+        clusters.addElement( "1" );
+        FastVector attributes = new FastVector();
+        attributes.addElement( new Attribute( "kMeans", clusters ) );
+        attributes.addElement( new Attribute( "cellId" ) );
+        attributes.addElement( new Attribute( "latitude" ) );
+        attributes.addElement( new Attribute( "longitude" ) );
+        attributes.addElement( new Attribute( "up1" ) );
+        attributes.addElement( new Attribute( "dn1" ) );
+        Instances dataSet = new Instances( "grid", attributes, 3 );
+        for ( int i = 0; i < 3; i++ )
+        {
+            double[] values = { i % 2, dictionary.code( i, 2 * i ), 40.0, 116.0, i + 0.5, -i };
+            dataSet.add( new Instance( 1.0, values ) );
+        }
+        File file = File.createTempFile( "grid", ".col" );
+        file.deleteOnExit();
+        ColumnarFile.write( file.getPath(), dataSet, dictionary );
+
+        ColumnarFile columnar = ColumnarFile.open( file );
+        assertEquals( 3, columnar.numRows() );
+        assertEquals( 2, columnar.numFeatures() );
+        assertEquals( "dn1", columnar.featureName( 1 ) );
+        assertEquals( 1, columnar.numAssignments() );
+        assertEquals( "kMeans", columnar.assignmentName( 0 ) );
+        assertEquals( dictionary.getNumCols(), columnar.getCellDictionary().getNumCols() );
+        assertEquals( "(2;4)", columnar.getCellDictionary().name( columnar.code( 2 ) ) );
+        assertEquals( 1.5, columnar.feature( 0, 1 ), 0.0 );
+        assertEquals( -2.0, columnar.feature( 1, 2 ), 0.0 );
+        assertEquals( 1, columnar.assignment( 0, 1 ) );
+    }
+}
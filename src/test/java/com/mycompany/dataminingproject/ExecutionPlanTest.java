@@ -0,0 +1,103 @@
+package com.mycompany.dataminingproject;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for ExecutionPlan.
+ */
+public class ExecutionPlanTest
+    extends TestCase
+{
+    public ExecutionPlanTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExecutionPlanTest.class );
+    }
+
+    private static ExecutionPlan.Task constant( final AtomicInteger runs, final int value )
+    {
+        return new ExecutionPlan.Task()
+        {
+            public Object run( Object[] inputs )
+            {
+                runs.incrementAndGet();
+                return value;
+            }
+        };
+    }
+
+    private static ExecutionPlan.Task sum( final AtomicInteger runs, final int[] result )
+    {
+        return new ExecutionPlan.Task()
+        {
+            public Object run( Object[] inputs )
+            {
+                runs.incrementAndGet();
+                int sum = 0;
+                for ( Object input : inputs )
+                {
+                    sum += (Integer) input;
+                }
+                result[0] = sum;
+                return sum;
+            }
+        };
+    }
+
+    public void testSharedPrefix() throws Exception
+    {
+        AtomicInteger runs = new AtomicInteger();
+        int[] first = new int[1];
+        int[] second = new int[1];
+        ExecutionPlan plan = new ExecutionPlan();
+        ExecutionPlan.Stage a = plan.add( "load", "a", constant( runs, 1 ) );
+        ExecutionPlan.Stage b = plan.add( "load", "b", constant( runs, 2 ) );
+        plan.add( "sum", "first", sum( runs, first ), a, b );
+        ExecutionPlan.Stage a2 = plan.add( "load", "a", constant( runs, 1 ) );
+        ExecutionPlan.Stage c = plan.add( "load", "c", constant( runs, 4 ) );
+        plan.add( "sum", "second", sum( runs, second ), a2, c );
+        assertSame( a, a2 );
+        assertEquals( 5, plan.size() );
+        assertEquals( 1, plan.merged() );
+
+        ExecutorService executor = Executors.newFixedThreadPool( 2 );
+        try
+        {
+            plan.execute( executor );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+        assertEquals( 5, runs.get() );
+        assertEquals( 3, first[0] );
+        assertEquals( 5, second[0] );
+    }
+
+    public void testConflictingOutputs()
+    {
+        AtomicInteger runs = new AtomicInteger();
+        ExecutionPlan plan = new ExecutionPlan();
+        ExecutionPlan.Stage a = plan.add( "save", "a", constant( runs, 1 ) );
+        ExecutionPlan.Stage b = plan.add( "save", "b", constant( runs, 2 ) );
+        plan.output( "out.csv", a );
+        plan.output( "out.csv", a );
+        try
+        {
+            plan.output( "out.csv", b );
+            fail( "two stages writing the same file" );
+        }
+        catch ( IllegalArgumentException e )
+        {
+        }
+    }
+}
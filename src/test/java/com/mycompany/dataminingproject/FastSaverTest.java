@@ -0,0 +1,140 @@
+package com.mycompany.dataminingproject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Attribute;
+import weka.core.CellDictionary;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.converters.AbstractFileLoader;
+import weka.core.converters.ArffLoader;
+import weka.core.converters.CSVLoader;
+
+/**
+ * Unit test for FastSaver.
+ */
+public class FastSaverTest
+    extends TestCase
+{
+    private final CellDictionary dictionary = new CellDictionary( 40.12, 116.13, 39.75, 116.65, 100, 100 );
+
+    public FastSaverTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( FastSaverTest.class );
+    }
+
+    private Instances grid()
+    {
+        FastVector clusters = new FastVector();
+        clusters.addElement( "cluster0" );
+        clusters.addElement( "cluster1" );
+        FastVector attributes = new FastVector();
+        attributes.addElement( new Attribute( "kMeans", clusters ) );
+        attributes.addElement( new Attribute( "cellId" ) );
+        attributes.addElement( new Attribute( "up1" ) );
+        Instances dataSet = new Instances( "grid", attributes, 3 );
+        for ( int i = 0; i < 3; i++ )
+        {
+            double[] values = { i % 2, dictionary.code( i, 2 * i ), i + 0.25 };
+            dataSet.add( new Instance( 1.0, values ) );
+        }
+        dataSet.instance( 2 ).setMissing( 2 );
+        return dataSet;
+    }
+
+    private static File tempFile( String suffix ) throws Exception
+    {
+        File file = File.createTempFile( "grid", suffix );
+        file.delete();
+        return file;
+    }
+
+    /**
+     * Loads a saved file, telling gzip by its magic number.
+     */
+    private static Instances load( String fileName, AbstractFileLoader loader ) throws Exception
+    {
+        InputStream in = new FileInputStream( fileName );
+        boolean gzip = in.read() == 0x1f && in.read() == 0x8b;
+        in.close();
+        in = new FileInputStream( fileName );
+        loader.setSource( gzip ? new GZIPInputStream( in ) : in );
+        try
+        {
+            return loader.getDataSet();
+        }
+        finally
+        {
+            in.close();
+            new File( fileName ).delete();
+        }
+    }
+
+    private static void assertGrid( Instances loaded )
+    {
+        assertEquals( 3, loaded.numInstances() );
+        assertEquals( "up1", loaded.attribute( 2 ).name() );
+        assertEquals( "cluster1", loaded.instance( 1 ).stringValue( 0 ) );
+        assertEquals( "(2;4)", loaded.instance( 2 ).stringValue( 1 ) );
+        assertEquals( 1.25, loaded.instance( 1 ).value( 2 ), 0.0 );
+        assertTrue( loaded.instance( 2 ).isMissing( 2 ) );
+    }
+
+    public void testFileName()
+    {
+        assertEquals( "out.csv", FastSaver.fileName( "out.csv", false ) );
+        assertEquals( "out.csv.gz", FastSaver.fileName( "out.csv", true ) );
+        assertEquals( "out.csv.gz", FastSaver.fileName( "out.csv.gz", true ) );
+        assertEquals( "out.csv.gz", FastSaver.fileName( "out.csv.gz", false ) );
+    }
+
+    public void testPlain() throws Exception
+    {
+        FastSaver saver = new FastSaver( dictionary, false );
+        String csv = tempFile( ".csv" ).getPath();
+        assertEquals( csv, saver.saveCsv( csv, grid() ) );
+        assertGrid( load( csv, new CSVLoader() ) );
+        String arff = tempFile( ".arff" ).getPath();
+        assertEquals( arff, saver.saveArff( arff, grid() ) );
+        Instances loaded = load( arff, new ArffLoader() );
+        assertGrid( loaded );
+        assertTrue( loaded.attribute( "cellId" ).isString() );
+    }
+
+    public void testGzip() throws Exception
+    {
+        FastSaver saver = new FastSaver( dictionary, true );
+        File csv = tempFile( ".csv" );
+        String written = saver.saveCsv( csv.getPath(), grid() );
+        assertEquals( csv.getPath() + ".gz", written );
+        assertFalse( csv.exists() );
+        assertGrid( load( written, new CSVLoader() ) );
+        File arff = tempFile( ".arff" );
+        written = saver.saveArff( arff.getPath(), grid() );
+        assertEquals( arff.getPath() + ".gz", written );
+        assertFalse( arff.exists() );
+        assertGrid( load( written, new ArffLoader() ) );
+    }
+
+    public void testGzipExtension() throws Exception
+    {
+        // Compressed whenever the name ends with .gz
+        String csv = tempFile( ".csv.gz" ).getPath();
+        assertEquals( csv, new FastSaver( dictionary, false ).saveCsv( csv, grid() ) );
+        InputStream in = new FileInputStream( csv );
+        assertEquals( 0x1f, in.read() );
+        in.close();
+        assertGrid( load( csv, new CSVLoader() ) );
+    }
+}
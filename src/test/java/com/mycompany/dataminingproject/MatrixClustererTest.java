@@ -0,0 +1,107 @@
+package com.mycompany.dataminingproject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.Random;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Attribute;
+import weka.core.CellDictionary;
+import weka.core.FastVector;
+import weka.core.FeatureMatrix;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Unit test for MatrixClusterer.
+ */
+public class MatrixClustererTest
+    extends TestCase
+{
+    private static final int NUM_CELLS = 150;
+
+    private final CellDictionary dictionary = new CellDictionary( 40.12, 116.13, 39.75, 116.65, 100, 100 );
+
+    public MatrixClustererTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( MatrixClustererTest.class );
+    }
+
+    /**
+     * The columnar file of a run: three blobs of cells, one every 3 cells.
+     */
+    private File columnarFile() throws Exception
+    {
+        FastVector clusters = new FastVector();
+        clusters.addElement( "0" );
+        FastVector attributes = new FastVector();
+        attributes.addElement( new Attribute( "kMeansEuclidean", clusters ) );
+        attributes.addElement( new Attribute( "cellId" ) );
+        attributes.addElement( new Attribute( "up1" ) );
+        attributes.addElement( new Attribute( "dn1" ) );
+        attributes.addElement( new Attribute( "up2" ) );
+        Instances dataSet = new Instances( "grid", attributes, NUM_CELLS );
+        Random random = new Random( 5 );
+        for ( int i = 0; i < NUM_CELLS; i++ )
+        {
+            double[] values = new double[5];
+            values[1] = dictionary.code( i / 10, i % 10 );
+            for ( int j = 2; j < 5; j++ )
+            {
+                values[j] = ( i % 3 ) * 10 + random.nextDouble();
+            }
+            dataSet.add( new Instance( 1.0, values ) );
+        }
+        File file = File.createTempFile( "grid", ".col" );
+        file.deleteOnExit();
+        ColumnarFile.write( file.getPath(), dataSet, dictionary );
+        return file;
+    }
+
+    public void testClusterMapped() throws Exception
+    {
+        File dir = File.createTempFile( "matrix", "" );
+        dir.delete();
+        dir.mkdirs();
+        File out = File.createTempFile( "clusters", ".csv" );
+        out.deleteOnExit();
+        MatrixClusterer clusterer = new MatrixClusterer( 3, FeatureMatrix.Storage.MAPPED, dir );
+        assertEquals( NUM_CELLS, clusterer.cluster( columnarFile(), out ) );
+        assertTrue( clusterer.getSilhouette() > 0.9 );
+        // the mapped matrix is deleted once clustered
+        assertEquals( 0, dir.listFiles().length );
+        dir.delete();
+
+        BufferedReader reader = new BufferedReader( new FileReader( out ) );
+        try
+        {
+            assertEquals( "cellId,kMeansEuclidean", reader.readLine() );
+            int[] blobs = new int[3];
+            for ( int i = 0; i < NUM_CELLS; i++ )
+            {
+                String[] fields = reader.readLine().split( "," );
+                assertEquals( "(" + ( i / 10 ) + ";" + ( i % 10 ) + ")", fields[0] );
+                int cluster = Integer.parseInt( fields[1] );
+                if ( i < 3 )
+                {
+                    blobs[i] = cluster;
+                }
+                // every blob is a cluster of its own
+                assertEquals( blobs[i % 3], cluster );
+            }
+            assertTrue( blobs[0] != blobs[1] && blobs[1] != blobs[2] && blobs[0] != blobs[2] );
+            assertNull( reader.readLine() );
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.mycompany.dataminingproject;
+
+import java.lang.management.ManagementFactory;
+import javax.management.ObjectName;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for MetricsRegistry.
+ */
+public class MetricsRegistryTest
+    extends TestCase
+{
+    public MetricsRegistryTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( MetricsRegistryTest.class );
+    }
+
+    public void testStageMetrics() throws Exception
+    {
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        registry.start( "test", "a \"quoted\" stage" ).stop( 100, 80, 20 );
+        registry.start( "test", "a \"quoted\" stage" ).stop( 50, 50, 0 );
+
+        StageMetrics metrics = registry.get( "test", "a \"quoted\" stage" );
+        assertEquals( 2, metrics.getCalls() );
+        assertEquals( 150, metrics.getInstancesIn() );
+        assertEquals( 130, metrics.getInstancesOut() );
+        assertEquals( 20, metrics.getDropped() );
+
+        ObjectName name = new ObjectName( "com.mycompany.dataminingproject:type=StageMetrics,run="
+            + ObjectName.quote( "test" ) + ",stage=" + ObjectName.quote( "a \"quoted\" stage" ) );
+        assertEquals( 150L, ManagementFactory.getPlatformMBeanServer().getAttribute( name, "InstancesIn" ) );
+
+        String json = registry.toJson();
+        assertTrue( json, json.contains( "\"stage\": \"a \\\"quoted\\\" stage\", \"calls\": 2, " ) );
+    }
+}
@@ -0,0 +1,152 @@
+package com.mycompany.dataminingproject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Unit test for StageCache.
+ */
+public class StageCacheTest
+    extends TestCase
+{
+    private File dir;
+
+    public StageCacheTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( StageCacheTest.class );
+    }
+
+    protected void setUp() throws Exception
+    {
+        dir = File.createTempFile( "cache", "" );
+        dir.delete();
+    }
+
+    protected void tearDown()
+    {
+        File[] files = dir.listFiles();
+        for ( int i = 0; files != null && i < files.length; i++ )
+        {
+            files[i].delete();
+        }
+        dir.delete();
+    }
+
+    private File input( String name, String content ) throws IOException
+    {
+        dir.mkdirs();
+        File file = new File( dir, name );
+        OutputStream out = new FileOutputStream( file );
+        out.write( content.getBytes( "UTF-8" ) );
+        out.close();
+        return file;
+    }
+
+    /**
+     * A data set with a column of every type, each with a missing value.
+     */
+    private static Instances dataSet() throws Exception
+    {
+        FastVector days = new FastVector();
+        days.addElement( "weekday" );
+        days.addElement( "weekend" );
+        FastVector attributes = new FastVector();
+        attributes.addElement( new Attribute( "cellId", (FastVector) null ) );
+        attributes.addElement( new Attribute( "day", days ) );
+        attributes.addElement( new Attribute( "count" ) );
+        attributes.addElement( new Attribute( "gpsdate", "yyyy-MM-dd" ) );
+        Instances dataSet = new Instances( "traces", attributes, 4 );
+        for ( int i = 0; i < 4; i++ )
+        {
+            Instance instance = new Instance( 4 );
+            instance.setDataset( dataSet );
+            instance.setValue( 0, "(" + i + ";" + ( 10 - i ) + ")" );
+            instance.setValue( 1, i % 2 );
+            instance.setValue( 2, i * 1.5 - 2 );
+            instance.setValue( 3, dataSet.attribute( 3 ).parseDate( "2008-05-0" + ( i + 1 ) ) );
+            dataSet.add( instance );
+        }
+        for ( int j = 0; j < 4; j++ )
+        {
+            dataSet.instance( j ).setMissing( 3 - j );
+        }
+        return dataSet;
+    }
+
+    public void testRoundTrip() throws Exception
+    {
+        StageCache cache = new StageCache( dir );
+        String key = cache.key( input( "in.csv", "a,b\n1,2\n" ).getPath(), "clean", "p=1" );
+        assertNull( cache.load( key ) );
+        Instances dataSet = dataSet();
+        cache.store( key, dataSet );
+
+        Instances loaded = new StageCache( dir ).load( key );
+        assertEquals( "traces", loaded.relationName() );
+        assertTrue( loaded.attribute( 0 ).isString() );
+        assertTrue( loaded.attribute( 1 ).isNominal() );
+        assertEquals( "weekend", loaded.attribute( 1 ).value( 1 ) );
+        assertTrue( loaded.attribute( 2 ).isNumeric() );
+        assertTrue( loaded.attribute( 3 ).isDate() );
+        assertEquals( "yyyy-MM-dd", loaded.attribute( 3 ).getDateFormat() );
+        assertEquals( dataSet.numInstances(), loaded.numInstances() );
+        for ( int i = 0; i < dataSet.numInstances(); i++ )
+        {
+            assertEquals( dataSet.instance( i ).toString(), loaded.instance( i ).toString() );
+            assertTrue( loaded.instance( i ).isMissing( 3 - i ) );
+        }
+        assertEquals( "(1;9)", loaded.instance( 1 ).stringValue( 0 ) );
+        // no entry left aside
+        assertEquals( 2, dir.listFiles().length );
+    }
+
+    public void testKeys() throws Exception
+    {
+        StageCache cache = new StageCache( dir );
+        String in = input( "in.csv", "a,b\n1,2\n" ).getPath();
+        String key = cache.key( in, "clean", "p=1" );
+        cache.store( key, dataSet() );
+        // the same content under another name
+        assertEquals( key, cache.key( input( "copy.csv", "a,b\n1,2\n" ).getPath(), "clean", "p=1" ) );
+        // other settings, stage or content
+        String otherParams = cache.key( in, "clean", "p=2" );
+        String otherStage = cache.key( in, "extract", "p=1" );
+        String otherContent = new StageCache( dir ).key( input( "other.csv", "a,b\n1,3\n" ).getPath(), "clean", "p=1" );
+        assertFalse( key.equals( otherParams ) );
+        assertFalse( key.equals( otherStage ) );
+        assertFalse( key.equals( otherContent ) );
+        assertNull( cache.load( otherParams ) );
+        assertNull( cache.load( otherStage ) );
+        assertNull( cache.load( otherContent ) );
+        assertNotNull( cache.load( key ) );
+    }
+
+    public void testCorruptEntry() throws Exception
+    {
+        StageCache cache = new StageCache( dir );
+        String key = cache.key( input( "in.csv", "a\n" ).getPath(), "clean", "" );
+        input( key + ".bin", "not an entry" );
+        try
+        {
+            cache.load( key );
+            fail( "Loaded a corrupt entry" );
+        }
+        catch ( IOException e )
+        {
+        }
+    }
+}
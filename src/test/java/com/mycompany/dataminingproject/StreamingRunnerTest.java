@@ -0,0 +1,198 @@
+package com.mycompany.dataminingproject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for StreamingRunner.
+ */
+public class StreamingRunnerTest
+    extends TestCase
+{
+    public StreamingRunnerTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( StreamingRunnerTest.class );
+    }
+
+    private static Properties config( File out, String pickUps, String dropOffs )
+    {
+        Properties config = new Properties();
+        config.setProperty( "gridGpsArea.nwLat", "40.120" );
+        config.setProperty( "gridGpsArea.seLat", "39.750" );
+        config.setProperty( "gridGpsArea.nwLng", "116.130" );
+        config.setProperty( "gridGpsArea.seLng", "116.650" );
+        config.setProperty( "gridGpsArea.cellXSizeInMeters", "100" );
+        config.setProperty( "gridGpsArea.cellYSizeInMeters", "100" );
+        config.setProperty( "makeBins.minDate", "2008-05-01" );
+        config.setProperty( "makeBins.maxDate", "2008-12-01" );
+        config.setProperty( "makeBins.binsInADay", "4" );
+        config.setProperty( "makeBins.period", "BY_HOURS_IN_A_DAY" );
+        config.setProperty( "gridJoin.missingCells", "FILL_ZERO" );
+        config.setProperty( "stream.outFileName", out.getPath() );
+        config.setProperty( "stream.publishMillis", "50" );
+        if ( pickUps != null )
+        {
+            config.setProperty( "stream.pickups", pickUps );
+            config.setProperty( "stream.dropoffs", dropOffs );
+        }
+        return config;
+    }
+
+    private static List<String> lines( File file ) throws Exception
+    {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader in = new BufferedReader( new FileReader( file ) );
+        try
+        {
+            String line;
+            while ( ( line = in.readLine() ) != null )
+                lines.add( line );
+        }
+        finally
+        {
+            in.close();
+        }
+        return lines;
+    }
+
+    public void testOfferAndPublish() throws Exception
+    {
+        File out = File.createTempFile( "stream", ".csv" );
+        out.deleteOnExit();
+        StreamingRunner runner = new StreamingRunner( new RunContext( "test", config( out, null, null ) ) );
+        assertFalse( runner.offer( true, "directory,latitude,longitude,gpstime,gpsdate,starttime" ) );
+        assertFalse( runner.offer( true, "001,41.0,116.3,21:55:34,2008-06-01,21:55:34" ) );
+        assertTrue( runner.offer( true, "001,39.97,116.33,21:55:34,2008-06-01,21:55:34" ) );
+        assertFalse( runner.publish() );
+        assertTrue( runner.offer( false, "001,39.90,116.40,08:00:00,2008-06-02,08:00:00" ) );
+        assertTrue( runner.publish() );
+        assertFalse( runner.publish() );
+
+        List<String> lines = lines( out );
+        assertEquals( "cellId,latitude,longitude,up1,dn1,up2,dn2,up3,dn3,up4,dn4", lines.get( 0 ) );
+        assertEquals( 3, lines.size() );
+    }
+
+    private static int[] freePorts() throws Exception
+    {
+        int[] ports = new int[2];
+        for ( int i = 0; i < 2; i++ )
+        {
+            ServerSocket free = new ServerSocket( 0, 1, InetAddress.getLoopbackAddress() );
+            ports[i] = free.getLocalPort();
+            free.close();
+        }
+        return ports;
+    }
+
+    public void testTcpSources() throws Exception
+    {
+        int[] ports = freePorts();
+        File out = File.createTempFile( "stream", ".csv" );
+        out.delete();
+        out.deleteOnExit();
+        StreamingRunner runner = new StreamingRunner( new RunContext( "test",
+            config( out, "tcp:" + ports[0], "tcp:" + ports[1] ) ) );
+        runner.start();
+        try
+        {
+            for ( int i = 0; i < 2; i++ )
+            {
+                Socket socket = new Socket( InetAddress.getLoopbackAddress(), ports[i] );
+                Writer writer = new OutputStreamWriter( socket.getOutputStream(), "UTF-8" );
+                writer.write( "001,39.97,116.33,21:55:34,2008-06-01,21:55:34\n" );
+                writer.write( "001,39.90,116.40,08:00:00,2008-06-02,08:00:00\n" );
+                writer.close();
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while ( ( !out.exists() || lines( out ).size() < 3 ) && System.currentTimeMillis() < deadline )
+                Thread.sleep( 20 );
+            assertEquals( 3, lines( out ).size() );
+        }
+        finally
+        {
+            runner.stop();
+        }
+    }
+
+    public void testShutdown() throws Exception
+    {
+        int[] ports = freePorts();
+        File out = File.createTempFile( "stream", ".csv" );
+        out.delete();
+        out.deleteOnExit();
+        Properties config = config( out, "tcp:" + ports[0], "tcp:" + ports[1] );
+        // no publication but the last one
+        config.setProperty( "stream.publishMillis", "600000" );
+        final StreamingRunner runner = new StreamingRunner( new RunContext( "test", config ) );
+        final Exception[] failure = new Exception[1];
+        Thread main = new Thread( new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    runner.run();
+                }
+                catch ( Exception e )
+                {
+                    failure[0] = e;
+                }
+            }
+        } );
+        main.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while ( runner.getShutdownHook() == null && System.currentTimeMillis() < deadline )
+            Thread.sleep( 20 );
+        Thread hook = runner.getShutdownHook();
+        assertNotNull( hook );
+        try
+        {
+            assertTrue( runner.offer( true, "001,39.97,116.33,21:55:34,2008-06-01,21:55:34" ) );
+            assertTrue( runner.offer( false, "001,39.90,116.40,08:00:00,2008-06-02,08:00:00" ) );
+            assertFalse( out.exists() );
+
+            // as the JVM does at shutdown
+            hook.start();
+            hook.join( 15000 );
+            assertFalse( hook.isAlive() );
+            main.join( 5000 );
+            assertFalse( main.isAlive() );
+            assertNull( failure[0] );
+            assertEquals( 3, lines( out ).size() );
+            for ( int port : ports )
+            {
+                try
+                {
+                    new Socket( InetAddress.getLoopbackAddress(), port ).close();
+                    fail( "Source on port " + port + " still open" );
+                }
+                catch ( ConnectException e )
+                {
+                }
+            }
+        }
+        finally
+        {
+            Runtime.getRuntime().removeShutdownHook( hook );
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.mycompany.dataminingproject;
+
+import java.io.StringWriter;
+import java.util.HashSet;
+import java.util.Set;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for TraceGenerator.
+ */
+public class TraceGeneratorTest
+    extends TestCase
+{
+    public TraceGeneratorTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( TraceGeneratorTest.class );
+    }
+
+    private static String generate( long seed, double duplicates ) throws Exception
+    {
+        TraceGenerator generator = new TraceGenerator();
+        generator.setNumRows( 5000 );
+        generator.setSeed( seed );
+        generator.setDuplicates( duplicates );
+        generator.setOutside( 0 );
+        StringWriter out = new StringWriter();
+        generator.generate( out );
+        return out.toString();
+    }
+
+    public void testDeterministic() throws Exception
+    {
+        assertEquals( generate( 3, 0.02 ), generate( 3, 0.02 ) );
+        assertFalse( generate( 3, 0.02 ).equals( generate( 4, 0.02 ) ) );
+    }
+
+    public void testSchemaAndDuplicates() throws Exception
+    {
+        String[] lines = generate( 5, 0.1 ).split( "\n" );
+        assertEquals( "directory,latitude,longitude,gpstime,gpsdate,starttime", lines[0] );
+        assertEquals( 5001, lines.length );
+        Set<String> distinct = new HashSet<String>();
+        for ( int i = 1; i < lines.length; i++ )
+        {
+            String[] fields = lines[i].split( "," );
+            assertEquals( 6, fields.length );
+            assertEquals( 3, fields[0].length() );
+            double lat = Double.parseDouble( fields[1] );
+            double lng = Double.parseDouble( fields[2] );
+            assertTrue( lat <= 40.120 && lat >= 39.750 );
+            assertTrue( lng >= 116.130 && lng <= 116.650 );
+            assertTrue( fields[3].matches( "\\d\\d:\\d\\d:\\d\\d" ) );
+            assertTrue( fields[4].matches( "\\d\\d\\d\\d-\\d\\d-\\d\\d" ) );
+            assertEquals( fields[3], fields[5] );
+            distinct.add( lines[i] );
+        }
+        int duplicates = 5000 - distinct.size();
+        assertTrue( "duplicates: " + duplicates, duplicates > 400 && duplicates < 600 );
+    }
+}
@@ -0,0 +1,97 @@
+package weka.clusterers;
+
+import java.util.Random;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.FeatureMatrix;
+
+/**
+ * Unit test for MatrixKMeans.
+ */
+public class MatrixKMeansTest
+    extends TestCase
+{
+    private static final int NUM_ROWS = 300;
+
+    public MatrixKMeansTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( MatrixKMeansTest.class );
+    }
+
+    /**
+     * Three blobs far apart, the blob of row i being i % 3.
+     */
+    private static FeatureMatrix blobs( FeatureMatrix.Storage storage ) throws Exception
+    {
+        FeatureMatrix.Builder builder = FeatureMatrix.builder( new String[] { "x", "y", "z" }, NUM_ROWS, storage, null );
+        Random random = new Random( 5 );
+        double[][] centers = { { 0, 0, 0 }, { 10, 0, 5 }, { 0, 10, 10 } };
+        for ( int i = 0; i < NUM_ROWS; i++ )
+        {
+            double[] values = new double[3];
+            for ( int j = 0; j < 3; j++ )
+            {
+                values[j] = centers[i % 3][j] + random.nextGaussian() * 0.5;
+            }
+            builder.add( i, values );
+        }
+        return builder.build();
+    }
+
+    public void testBlobs() throws Exception
+    {
+        final FeatureMatrix matrix = blobs( FeatureMatrix.Storage.HEAP );
+        MatrixKMeans kMeans = new MatrixKMeans();
+        kMeans.setNumClusters( 3 );
+        kMeans.buildClusterer( matrix );
+        for ( int i = 3; i < NUM_ROWS; i++ )
+        {
+            assertEquals( kMeans.clusterRow( i % 3 ), kMeans.clusterRow( i ) );
+        }
+        assertEquals( 100, kMeans.getClusterSizes()[kMeans.clusterRow( 1 )] );
+        assertEquals( 10, kMeans.getClusterCentroids()[kMeans.clusterRow( 1 )][0], 0.2 );
+        assertTrue( kMeans.getNumIterations() < 10 );
+
+        double silhouette = ClusterEvaluationEx.silhouetteCoefficient( NUM_ROWS, new FeatureMatrix.RowDistance()
+        {
+            public double distance( int first, int second )
+            {
+                double sum = 0;
+                for ( int j = 0; j < 3; j++ )
+                {
+                    double diff = matrix.get( first, j ) - matrix.get( second, j );
+                    sum += diff * diff;
+                }
+                return Math.sqrt( sum );
+            }
+        }, kMeans.getClusters(), 3 );
+        assertTrue( silhouette > 0.8 );
+    }
+
+    public void testOffHeap() throws Exception
+    {
+        MatrixKMeans heap = new MatrixKMeans();
+        heap.setNumClusters( 4 );
+        heap.buildClusterer( blobs( FeatureMatrix.Storage.HEAP ) );
+        for ( FeatureMatrix.Storage storage : new FeatureMatrix.Storage[] { FeatureMatrix.Storage.DIRECT,
+            FeatureMatrix.Storage.MAPPED } )
+        {
+            FeatureMatrix matrix = blobs( storage );
+            MatrixKMeans kMeans = new MatrixKMeans();
+            kMeans.setNumClusters( 4 );
+            kMeans.buildClusterer( matrix );
+            matrix.close();
+            assertEquals( heap.getSquaredError(), kMeans.getSquaredError(), 0 );
+            for ( int i = 0; i < NUM_ROWS; i++ )
+            {
+                assertEquals( heap.clusterRow( i ), kMeans.clusterRow( i ) );
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package weka.clusterers;
+
+import java.util.Random;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Attribute;
+import weka.core.EuclideanDistance;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Unit test for OnlineKMeans.
+ */
+public class OnlineKMeansTest
+    extends TestCase
+{
+    public OnlineKMeansTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( OnlineKMeansTest.class );
+    }
+
+    private static Instances points( double[][] values )
+    {
+        FastVector attributes = new FastVector();
+        attributes.addElement( new Attribute( "x" ) );
+        attributes.addElement( new Attribute( "y" ) );
+        Instances points = new Instances( "points", attributes, values.length );
+        for ( double[] value : values )
+            points.add( new Instance( 1.0, value ) );
+        return points;
+    }
+
+    private static OnlineKMeans warm( double decay ) throws Exception
+    {
+        OnlineKMeans clusterer = new OnlineKMeans();
+        clusterer.setNumClusters( 2 );
+        clusterer.setDecay( decay );
+        EuclideanDistance distance = new EuclideanDistance();
+        distance.setDontNormalize( true );
+        clusterer.setDistanceFunction( distance );
+        clusterer.setInitialCentroids( points( new double[][] { { 0, 0 }, { 10, 10 } } ), new double[] { 4, 6 } );
+        return clusterer;
+    }
+
+    public void testNoChangesKeepCentroids() throws Exception
+    {
+        OnlineKMeans clusterer = warm( 0.5 );
+        clusterer.buildClusterer( points( new double[0][] ) );
+        assertEquals( 0, clusterer.getNumUpdates() );
+        assertEquals( 0.0, clusterer.getDrift()[0], 0.0 );
+        assertEquals( 0.0, clusterer.getDrift()[1], 0.0 );
+        assertEquals( 0, clusterer.clusterInstance( points( new double[][] { { 4, 5 } } ).instance( 0 ) ) );
+        assertEquals( 1, clusterer.clusterInstance( points( new double[][] { { 6, 5 } } ).instance( 0 ) ) );
+        // ties go to the first cluster
+        assertEquals( 0, clusterer.clusterInstance( points( new double[][] { { 5, 5 } } ).instance( 0 ) ) );
+    }
+
+    public void testDecayingRates() throws Exception
+    {
+        OnlineKMeans clusterer = warm( 0.5 );
+        clusterer.buildClusterer( points( new double[][] { { 3, 0 }, { 1, 4 } } ) );
+        // size 4 * 0.5 = 2, so the first update moves the centroid by 1/3, the second by 1/4
+        Instance centroid = clusterer.getClusterCentroids().instance( 0 );
+        assertEquals( 1.0, centroid.value( 0 ), 1e-12 );
+        assertEquals( 1.0, centroid.value( 1 ), 1e-12 );
+        assertEquals( 4.0, clusterer.getClusterSizes()[0], 0.0 );
+        assertEquals( Math.sqrt( 2 ), clusterer.getDrift()[0], 1e-12 );
+        assertEquals( 0.0, clusterer.getDrift()[1], 0.0 );
+        assertEquals( 2, clusterer.getNumUpdates() );
+
+        // without decay the starting clusters weigh as much as their sizes
+        clusterer = warm( 1.0 );
+        clusterer.buildClusterer( points( new double[][] { { 5, 0 } } ) );
+        assertEquals( 1.0, clusterer.getClusterCentroids().instance( 0 ).value( 0 ), 1e-12 );
+    }
+
+    public void testManyClusters() throws Exception
+    {
+        Random random = new Random( 29 );
+        double[][] values = new double[40][];
+        for ( int c = 0; c < values.length; c++ )
+            values[c] = new double[] { random.nextInt( 6 ), random.nextInt( 6 ) * 10 };
+        Instances centroids = points( values );
+        OnlineKMeans clusterer = new OnlineKMeans();
+        clusterer.setNumClusters( centroids.numInstances() );
+        EuclideanDistance distance = new EuclideanDistance();
+        distance.setInstances( centroids );
+        clusterer.setDistanceFunction( distance );
+        clusterer.setInitialCentroids( centroids, new double[centroids.numInstances()] );
+        clusterer.buildClusterer( points( new double[0][] ) );
+        for ( int i = 0; i < 1000; i++ )
+        {
+            Instance point = points( new double[][] { { random.nextInt( 11 ) / 2.0, random.nextInt( 11 ) * 5.0 } } ).instance( 0 );
+            int best = 0;
+            for ( int c = 1; c < centroids.numInstances(); c++ )
+                if ( distance.distance( point, centroids.instance( c ) ) < distance.distance( point, centroids.instance( best ) ) )
+                    best = c;
+            assertEquals( best, clusterer.clusterInstance( point ) );
+        }
+    }
+
+    public void testColdStart() throws Exception
+    {
+        OnlineKMeans clusterer = new OnlineKMeans();
+        clusterer.setNumClusters( 2 );
+        Instances points = points( new double[][] { { 0, 0 }, { 0, 1 }, { 10, 10 }, { 10, 11 } } );
+        clusterer.buildClusterer( points );
+        assertNull( clusterer.getDrift() );
+        assertEquals( 2, clusterer.numberOfClusters() );
+        assertEquals( clusterer.clusterInstance( points.instance( 0 ) ), clusterer.clusterInstance( points.instance( 1 ) ) );
+        assertFalse( clusterer.clusterInstance( points.instance( 1 ) ) == clusterer.clusterInstance( points.instance( 2 ) ) );
+    }
+}
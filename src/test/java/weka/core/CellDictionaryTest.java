@@ -0,0 +1,87 @@
+package weka.core;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for CellDictionary.
+ */
+public class CellDictionaryTest
+    extends TestCase
+{
+    private static final double NW_LAT = 40.0;
+    private static final double NW_LNG = 116.0;
+    private static final double SE_LAT = 39.97;
+    private static final double SE_LNG = 116.04;
+
+    public CellDictionaryTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( CellDictionaryTest.class );
+    }
+
+    /**
+     * A grid of 4 rows by 6 columns of 1 km cells.
+     */
+    private static CellDictionary dictionary()
+    {
+        return new CellDictionary( NW_LAT, NW_LNG, SE_LAT, SE_LNG, 1000, 1000 );
+    }
+
+    public void testGeometry()
+    {
+        CellDictionary dictionary = dictionary();
+        assertEquals( 4, dictionary.getNumRows() );
+        assertEquals( 6, dictionary.getNumCols() );
+        assertEquals( 24, dictionary.size() );
+    }
+
+    public void testNameRoundTrip()
+    {
+        CellDictionary dictionary = dictionary();
+        for ( int code = 0; code < dictionary.size(); code++ )
+        {
+            int row = dictionary.row( code );
+            int col = dictionary.col( code );
+            assertEquals( code, dictionary.code( row, col ) );
+            assertEquals( "(" + row + ";" + col + ")", dictionary.name( code ) );
+            assertEquals( code, dictionary.code( dictionary.name( code ) ) );
+        }
+        assertEquals( "(3;5)", dictionary.name( 23 ) );
+        assertEquals( 7, dictionary.code( "(1;1)" ) );
+    }
+
+    public void testEdges()
+    {
+        CellDictionary dictionary = dictionary();
+        // the corners of the area are in the corner cells
+        assertEquals( 0, dictionary.code( NW_LAT, NW_LNG ) );
+        assertEquals( dictionary.code( 0, 5 ), dictionary.code( NW_LAT, SE_LNG ) );
+        assertEquals( dictionary.code( 3, 0 ), dictionary.code( SE_LAT, NW_LNG ) );
+        assertEquals( dictionary.size() - 1, dictionary.code( SE_LAT, SE_LNG ) );
+        // either side of the border between the first two cells
+        double cellDegrees = 1000 / CellDictionary.distanceInMeters( 0, 0, 0, 1 );
+        assertEquals( 0, dictionary.col( dictionary.code( NW_LAT, NW_LNG + 0.99 * cellDegrees ) ) );
+        assertEquals( 1, dictionary.col( dictionary.code( NW_LAT, NW_LNG + 1.01 * cellDegrees ) ) );
+        assertEquals( 0, dictionary.row( dictionary.code( NW_LAT - 0.99 * cellDegrees, NW_LNG ) ) );
+        assertEquals( 1, dictionary.row( dictionary.code( NW_LAT - 1.01 * cellDegrees, NW_LNG ) ) );
+    }
+
+    public void testOutOfArea()
+    {
+        CellDictionary dictionary = dictionary();
+        double[][] outside = { { NW_LAT + 1e-6, NW_LNG }, { SE_LAT - 1e-6, SE_LNG },
+            { NW_LAT, NW_LNG - 1e-6 }, { SE_LAT, SE_LNG + 1e-6 }, { 0, 0 } };
+        for ( double[] location : outside )
+        {
+            assertFalse( dictionary.contains( location[0], location[1] ) );
+            assertEquals( -1, dictionary.code( location[0], location[1] ) );
+        }
+        assertTrue( dictionary.contains( 39.985, 116.02 ) );
+    }
+}
@@ -0,0 +1,114 @@
+package weka.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.filters.Filter;
+import weka.filters.unsupervised.instance.GridGpsArea;
+
+/**
+ * Unit test for CellTree.
+ */
+public class CellTreeTest
+    extends TestCase
+{
+    public CellTreeTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( CellTreeTest.class );
+    }
+
+    private static CellDictionary dictionary()
+    {
+        return new CellDictionary( 40.120, 116.130, 39.750, 116.650, 100, 100 );
+    }
+
+    public void testLeavesAreBounded() throws Exception
+    {
+        CellDictionary dictionary = dictionary();
+        int[] counts = new int[dictionary.size()];
+        Random random = new Random( 3 );
+        // a dense centre and a sparse background
+        for ( int i = 0; i < 20000; i++ )
+        {
+            int row = random.nextInt( 10 ) < 8 ? 200 + random.nextInt( 8 ) : random.nextInt( dictionary.getNumRows() );
+            int col = random.nextInt( 10 ) < 8 ? 220 + random.nextInt( 8 ) : random.nextInt( dictionary.getNumCols() );
+            counts[dictionary.code( row, col )]++;
+        }
+        CellTree tree = CellTree.build( dictionary, 0, 200, counts );
+        CellDictionary top = dictionary.coarser( tree.getNumLevels() - 1 );
+        assertEquals( 1, top.size() );
+        assertTrue( dictionary.coarser( tree.getNumLevels() - 2 ).size() > 1 );
+
+        Map<Integer, Integer> leaves = new HashMap<Integer, Integer>();
+        for ( int code = 0; code < counts.length; code++ )
+        {
+            if ( counts[code] == 0 )
+                continue;
+            int leaf = tree.leaf( code );
+            int level = tree.level( code );
+            assertEquals( level, tree.level( leaf ) );
+            assertEquals( dictionary.row( code ) >> level << level, dictionary.row( leaf ) );
+            assertEquals( dictionary.col( code ) >> level << level, dictionary.col( leaf ) );
+            Integer count = leaves.get( leaf );
+            leaves.put( leaf, ( count == null ? 0 : count ) + counts[code] );
+        }
+        assertEquals( tree.getNumLeaves(), leaves.size() );
+        for ( Map.Entry<Integer, Integer> leaf : leaves.entrySet() )
+        {
+            assertTrue( leaf.getValue() <= 200 || tree.level( leaf.getKey() ) == 0 );
+        }
+        // far fewer cells than the non-empty grid cells
+        int nonEmpty = 0;
+        for ( int count : counts )
+            if ( count > 0 )
+                nonEmpty++;
+        assertTrue( leaves.size() + " of " + nonEmpty, leaves.size() * 4 < nonEmpty );
+    }
+
+    public void testGridGpsAreaSharesTree() throws Exception
+    {
+        FastVector attributes = new FastVector();
+        attributes.addElement( new Attribute( "latitude" ) );
+        attributes.addElement( new Attribute( "longitude" ) );
+        Instances pickUps = new Instances( "traces", attributes, 0 );
+        Instances dropOffs = new Instances( "traces", attributes, 0 );
+        Random random = new Random( 5 );
+        for ( int i = 0; i < 3000; i++ )
+        {
+            Instances traces = i % 2 == 0 ? pickUps : dropOffs;
+            traces.add( new Instance( 1.0, new double[] {
+                39.75 + random.nextDouble() * random.nextDouble() * 0.4,
+                116.13 + random.nextDouble() * random.nextDouble() * 0.55 } ) );
+        }
+        GridGpsArea pickUpArea = new GridGpsArea();
+        pickUpArea.setArea( 40.120, 116.130, 39.750, 116.650 );
+        pickUpArea.setMaxCellCount( 50 );
+        pickUpArea.setInputFormat( pickUps );
+        Instances pickUpCells = Filter.useFilter( pickUps, pickUpArea );
+        CellTree tree = pickUpArea.getCellTree();
+        assertNotNull( tree );
+        assertEquals( pickUps.numInstances() - pickUpArea.getNumDropped(), pickUpCells.numInstances() );
+
+        GridGpsArea dropOffArea = new GridGpsArea();
+        dropOffArea.setArea( 40.120, 116.130, 39.750, 116.650 );
+        dropOffArea.setMaxCellCount( 50 );
+        dropOffArea.setCellTree( tree );
+        dropOffArea.setInputFormat( dropOffs );
+        Instances dropOffCells = Filter.useFilter( dropOffs, dropOffArea );
+        CellDictionary dictionary = dictionary();
+        for ( int i = 0; i < dropOffCells.numInstances(); i++ )
+        {
+            Instance instance = dropOffCells.instance( i );
+            int code = dictionary.code( instance.value( 0 ), instance.value( 1 ) );
+            assertEquals( tree.leaf( code ), (int) instance.value( 2 ) );
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package weka.core;
+
+import java.util.Random;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for CentroidTree.
+ */
+public class CentroidTreeTest
+    extends TestCase
+{
+    public CentroidTreeTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( CentroidTreeTest.class );
+    }
+
+    private static double distance( CentroidTree.Metric metric, double[] a, double[] b )
+    {
+        double sum = 0;
+        double dot = 0;
+        for ( int j = 0; j < a.length; j++ )
+        {
+            sum += ( a[j] - b[j] ) * ( a[j] - b[j] );
+            dot += a[j] * b[j];
+        }
+        switch ( metric )
+        {
+            case EUCLIDEAN:
+                return Math.sqrt( sum );
+            case SQUARED_EUCLIDEAN:
+                return sum;
+            default:
+                return 1 - dot;
+        }
+    }
+
+    private static double[] point( Random random, int d, boolean unit )
+    {
+        double[] point = new double[d];
+        double length = 0;
+        for ( int j = 0; j < d; j++ )
+        {
+            // few distinct values, so that ties are frequent
+            point[j] = random.nextInt( 4 ) - 1;
+            length += point[j] * point[j];
+        }
+        for ( int j = 0; unit && j < d; j++ )
+            point[j] = length > 0 ? point[j] / Math.sqrt( length ) : 1 / Math.sqrt( d );
+        return point;
+    }
+
+    public void testMatchesLinearScan()
+    {
+        Random random = new Random( 19 );
+        for ( CentroidTree.Metric metric : CentroidTree.Metric.values() )
+        {
+            for ( int k : new int[] { 1, 7, 50, 300 } )
+            {
+                boolean unit = metric == CentroidTree.Metric.COSINE_OF_UNIT;
+                final double[][] centroids = new double[k][];
+                for ( int c = 0; c < k; c++ )
+                    centroids[c] = point( random, 5, unit );
+                CentroidTree tree = new CentroidTree( centroids );
+                assertEquals( k, tree.size() );
+                for ( int i = 0; i < 500; i++ )
+                {
+                    final double[] query = point( random, 5, unit );
+                    final CentroidTree.Metric m = metric;
+                    int best = 0;
+                    for ( int c = 1; c < k; c++ )
+                        if ( distance( metric, query, centroids[c] ) < distance( metric, query, centroids[best] ) )
+                            best = c;
+                    assertEquals( metric + " " + k, best, tree.nearest( query, metric, new CentroidTree.Distance()
+                    {
+                        public double distance( int centroid )
+                        {
+                            return CentroidTreeTest.distance( m, query, centroids[centroid] );
+                        }
+                    } ) );
+                }
+            }
+        }
+    }
+}
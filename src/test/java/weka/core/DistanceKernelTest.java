@@ -0,0 +1,210 @@
+package weka.core;
+
+import java.util.Random;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.clusterers.ClusterEvaluationEx;
+
+/**
+ * Unit test for DistanceKernel.
+ */
+public class DistanceKernelTest
+    extends TestCase
+{
+    /** rows of the matrices, over several chunks of 64 rows */
+    private static final int NUM_ROWS = 300;
+    private static final int NUM_COLS = 6;
+
+    public DistanceKernelTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( DistanceKernelTest.class );
+    }
+
+    private static String[] columnNames()
+    {
+        String[] columnNames = new String[NUM_COLS];
+        for ( int j = 0; j < NUM_COLS; j++ )
+        {
+            columnNames[j] = ( j % 2 == 0 ? "up" : "dn" ) + j;
+        }
+        return columnNames;
+    }
+
+    /**
+     * Random rows in chunks of a page, the first one null.
+     */
+    private static FeatureMatrix matrix( FeatureMatrix.Storage storage ) throws Exception
+    {
+        FeatureMatrix.Builder builder = FeatureMatrix.builder( columnNames(), NUM_ROWS, storage, null, 4096 );
+        Random random = new Random( 11 );
+        for ( int i = 0; i < NUM_ROWS; i++ )
+        {
+            double[] values = new double[NUM_COLS];
+            for ( int j = 0; i > 0 && j < NUM_COLS; j++ )
+            {
+                values[j] = random.nextInt( 3 ) == 0 ? 0 : random.nextDouble() * 100;
+            }
+            builder.add( i, values );
+        }
+        return builder.build();
+    }
+
+    private static DistanceKernel[] kernels( FeatureMatrix matrix )
+    {
+        double[] scales = { 1, 0.5, 2, 0, 1, 0.1 };
+        CosineDistance splitMax = new CosineDistance();
+        splitMax.setSplitMax( true );
+        FastVector attributes = new FastVector();
+        for ( String name : columnNames() )
+        {
+            attributes.addElement( new Attribute( name ) );
+        }
+        splitMax.setInstances( new Instances( "header", attributes, 0 ) );
+        return new DistanceKernel[] {
+            DistanceKernel.of( matrix, DistanceKernel.Type.EUCLIDEAN, scales ),
+            DistanceKernel.of( matrix, DistanceKernel.Type.SQUARED_EUCLIDEAN, null ),
+            DistanceKernel.of( matrix, DistanceKernel.Type.MANHATTAN, scales ),
+            DistanceKernel.of( matrix, DistanceKernel.Type.COSINE, null ),
+            DistanceKernel.of( matrix, splitMax ) };
+    }
+
+    private static void assertSame( double expected, double actual )
+    {
+        // NaN for the null row
+        assertEquals( Double.doubleToLongBits( expected ), Double.doubleToLongBits( actual ) );
+    }
+
+    public void testBatchesAsPairs() throws Exception
+    {
+        for ( FeatureMatrix.Storage storage : FeatureMatrix.Storage.values() )
+        {
+            FeatureMatrix matrix = matrix( storage );
+            DistanceKernel[] kernels = kernels( matrix );
+            DistanceKernel[] pairs = kernels( matrix );
+            for ( int k = 0; k < kernels.length; k++ )
+            {
+                double[] distances = new double[NUM_ROWS];
+                kernels[k].oneToMany( 5, 10, NUM_ROWS, distances );
+                for ( int y = 10; y < NUM_ROWS; y++ )
+                {
+                    assertSame( pairs[k].distance( 5, y ), distances[y - 10] );
+                }
+                double[] tile = new double[40 * 150];
+                kernels[k].tile( 0, 40, 60, 210, tile );
+                for ( int x = 0; x < 40; x++ )
+                {
+                    for ( int y = 60; y < 210; y++ )
+                    {
+                        assertSame( pairs[k].distance( x, y ), tile[x * 150 + y - 60] );
+                    }
+                }
+                double[] points = new double[3 * NUM_COLS];
+                for ( int p = 0; p < 3; p++ )
+                {
+                    for ( int j = 0; j < NUM_COLS; j++ )
+                    {
+                        points[p * NUM_COLS + j] = matrix.get( 100 + p, j );
+                    }
+                }
+                kernels[k].toPoints( 7, points, 3, distances );
+                for ( int p = 0; p < 3; p++ )
+                {
+                    assertSame( pairs[k].distance( 7, 100 + p ), distances[p] );
+                }
+            }
+            matrix.close();
+        }
+    }
+
+    public void testPointsAlone() throws Exception
+    {
+        FeatureMatrix matrix = matrix( FeatureMatrix.Storage.HEAP );
+        DistanceKernel[] pairs = kernels( matrix );
+        // rows 0 to 9 as points, the null row among them
+        double[] values = new double[10 * NUM_COLS];
+        for ( int p = 0; p < 10; p++ )
+        {
+            for ( int j = 0; j < NUM_COLS; j++ )
+            {
+                values[p * NUM_COLS + j] = matrix.get( p, j );
+            }
+        }
+        double[] scales = { 1, 0.5, 2, 0, 1, 0.1 };
+        boolean[][] subsets = new boolean[2][NUM_COLS];
+        for ( int j = 0; j < NUM_COLS; j++ )
+        {
+            subsets[j % 2][j] = true;
+        }
+        DistanceKernel[] points = {
+            DistanceKernel.ofPoints( values, NUM_COLS, DistanceKernel.Type.EUCLIDEAN, scales, false, null ),
+            DistanceKernel.ofPoints( values, NUM_COLS, DistanceKernel.Type.SQUARED_EUCLIDEAN, null, false, null ),
+            DistanceKernel.ofPoints( values, NUM_COLS, DistanceKernel.Type.MANHATTAN, scales, false, null ),
+            DistanceKernel.ofPoints( values, NUM_COLS, DistanceKernel.Type.COSINE, null, false, null ),
+            DistanceKernel.ofPoints( values, NUM_COLS, DistanceKernel.Type.COSINE, null, false, subsets ) };
+        double[] query = new double[NUM_COLS];
+        double[] distances = new double[10];
+        for ( int k = 0; k < points.length; k++ )
+        {
+            for ( int i = 0; i < NUM_ROWS; i += 7 )
+            {
+                matrix.row( i, query );
+                points[k].toPoints( query, distances );
+                for ( int p = 0; p < 10; p++ )
+                {
+                    assertSame( pairs[k].distance( i, p ), distances[p] );
+                }
+            }
+        }
+    }
+
+    public void testDistances() throws Exception
+    {
+        FeatureMatrix matrix = matrix( FeatureMatrix.Storage.HEAP );
+        DistanceKernel[] kernels = kernels( matrix );
+        double[] x = new double[NUM_COLS];
+        double[] y = new double[NUM_COLS];
+        matrix.row( 1, x );
+        matrix.row( 2, y );
+        double squares = 0, dot = 0, lengthX = 0, lengthY = 0;
+        for ( int j = 0; j < NUM_COLS; j++ )
+        {
+            squares += ( x[j] - y[j] ) * ( x[j] - y[j] );
+            dot += x[j] * y[j];
+            lengthX += x[j] * x[j];
+            lengthY += y[j] * y[j];
+        }
+        assertEquals( squares, kernels[1].distance( 1, 2 ), 1e-9 );
+        assertEquals( 1 - dot / Math.sqrt( lengthX * lengthY ), kernels[3].distance( 1, 2 ), 1e-12 );
+        assertTrue( Double.isNaN( kernels[3].distance( 0, 2 ) ) );
+        assertEquals( 0, kernels[0].distance( 2, 2 ), 0 );
+    }
+
+    public void testTiledSilhouette() throws Exception
+    {
+        FeatureMatrix matrix = matrix( FeatureMatrix.Storage.DIRECT );
+        final DistanceKernel pairs = DistanceKernel.of( matrix, DistanceKernel.Type.MANHATTAN, null );
+        int[] clusters = new int[NUM_ROWS];
+        for ( int i = 0; i < NUM_ROWS; i++ )
+        {
+            clusters[i] = matrix.get( i, 0 ) < 50 ? 0 : 1;
+        }
+        // A plain RowDistance is summed pair by pair, a kernel tile by tile
+        double expected = ClusterEvaluationEx.silhouetteCoefficient( NUM_ROWS, new FeatureMatrix.RowDistance()
+        {
+            public double distance( int first, int second )
+            {
+                return pairs.distance( first, second );
+            }
+        }, clusters, 2 );
+        double actual = ClusterEvaluationEx.silhouetteCoefficient( NUM_ROWS,
+            DistanceKernel.of( matrix, DistanceKernel.Type.MANHATTAN, null ), clusters, 2 );
+        assertSame( expected, actual );
+        assertTrue( actual > 0 );
+    }
+}
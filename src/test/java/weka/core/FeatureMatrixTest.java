@@ -0,0 +1,205 @@
+package weka.core;
+
+import java.io.File;
+import java.util.Random;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for FeatureMatrix.
+ */
+public class FeatureMatrixTest
+    extends TestCase
+{
+    private static final int NUM_CELLS = 50;
+
+    public FeatureMatrixTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( FeatureMatrixTest.class );
+    }
+
+    /**
+     * Cells with a cellId, their coordinates and up and dn features.
+     */
+    private static Instances grid()
+    {
+        FastVector attributes = new FastVector();
+        attributes.addElement( new Attribute( "cellId" ) );
+        attributes.addElement( new Attribute( "latitude" ) );
+        attributes.addElement( new Attribute( "longitude" ) );
+        for ( int b = 0; b < 4; b++ )
+        {
+            attributes.addElement( new Attribute( "up" + b ) );
+            attributes.addElement( new Attribute( "dn" + b ) );
+        }
+        Instances dataset = new Instances( "grid", attributes, NUM_CELLS );
+        Random random = new Random( 3 );
+        for ( int j = 0; j < NUM_CELLS; j++ )
+        {
+            double[] values = new double[dataset.numAttributes()];
+            values[0] = 1000 + j;
+            values[1] = 41 + random.nextDouble();
+            values[2] = 12 + random.nextDouble();
+            for ( int a = 3; a < values.length; a++ )
+            {
+                values[a] = random.nextInt( 20 ) + 1;
+            }
+            dataset.add( new Instance( 1.0, values ) );
+        }
+        return dataset;
+    }
+
+    /**
+     * The features alone, as clustered by App.
+     */
+    private static Instances features( Instances grid )
+    {
+        Instances features = new Instances( grid );
+        for ( int a = 0; a < 3; a++ )
+        {
+            features.deleteAttributeAt( 0 );
+        }
+        return features;
+    }
+
+    private static void assertSameDistances( DistanceFunction df, Instances features,
+        FeatureMatrix matrix, double delta )
+    {
+        df.setInstances( features );
+        FeatureMatrix.RowDistance rowDistance = matrix.distance( df );
+        assertNotNull( rowDistance );
+        for ( int x = 0; x < NUM_CELLS; x++ )
+        {
+            for ( int y = 0; y < NUM_CELLS; y++ )
+            {
+                assertEquals( df.distance( features.instance( x ), features.instance( y ) ),
+                    rowDistance.distance( x, y ), delta );
+            }
+        }
+    }
+
+    public void testColumns()
+    {
+        Instances grid = grid();
+        FeatureMatrix matrix = FeatureMatrix.of( grid );
+        assertEquals( NUM_CELLS, matrix.numRows() );
+        assertEquals( 8, matrix.numCols() );
+        assertEquals( "up0", matrix.columnName( 0 ) );
+        assertEquals( 1007, matrix.cellId( 7 ) );
+        assertEquals( (float) grid.instance( 7 ).value( 4 ), matrix.get( 7, 1 ) );
+        assertFalse( matrix.hasMissing() );
+    }
+
+    public void testEuclideanAndManhattan()
+    {
+        Instances grid = grid();
+        FeatureMatrix matrix = FeatureMatrix.of( grid );
+        assertSameDistances( new EuclideanDistance(), features( grid ), matrix, 1e-6 );
+        assertSameDistances( new ManhattanDistance(), features( grid ), matrix, 1e-6 );
+        EuclideanDistance raw = new EuclideanDistance();
+        raw.setDontNormalize( true );
+        assertSameDistances( raw, features( grid ), matrix, 1e-4 );
+    }
+
+    public void testCosine()
+    {
+        Instances grid = grid();
+        FeatureMatrix matrix = FeatureMatrix.of( grid );
+        assertSameDistances( new CosineDistance(), features( grid ), matrix, 1e-6 );
+        CosineDistance splitMax = new CosineDistance();
+        splitMax.setSplitMax( true );
+        assertSameDistances( splitMax, features( grid ), matrix, 1e-6 );
+    }
+
+    public void testUnsupported()
+    {
+        Instances grid = grid();
+        FeatureMatrix matrix = FeatureMatrix.of( grid );
+        // Set up on other attributes than the features
+        EuclideanDistance euclidean = new EuclideanDistance();
+        euclidean.setInstances( grid );
+        assertNull( matrix.distance( euclidean ) );
+        euclidean = new EuclideanDistance();
+        euclidean.setAttributeIndices( "1-4" );
+        euclidean.setInstances( features( grid ) );
+        assertNull( matrix.distance( euclidean ) );
+
+        grid.instance( 3 ).setMissing( 5 );
+        matrix = FeatureMatrix.of( grid );
+        assertTrue( matrix.hasMissing() );
+        euclidean = new EuclideanDistance();
+        euclidean.setInstances( features( grid ) );
+        assertNull( matrix.distance( euclidean ) );
+    }
+
+    public void testStorages() throws Exception
+    {
+        Instances grid = grid();
+        Instances features = features( grid );
+        EuclideanDistance euclidean = new EuclideanDistance();
+        euclidean.setInstances( features );
+        FeatureMatrix.RowDistance heap = FeatureMatrix.of( grid ).distance( euclidean );
+        File dir = new File( System.getProperty( "java.io.tmpdir" ) );
+        for ( FeatureMatrix.Storage storage : FeatureMatrix.Storage.values() )
+        {
+            // Chunks of a page, 64 rows of 8 features padded to 16
+            String[] columnNames = new String[8];
+            for ( int j = 0; j < 8; j++ )
+            {
+                columnNames[j] = features.attribute( j ).name();
+            }
+            FeatureMatrix.Builder builder = FeatureMatrix.builder( columnNames, NUM_CELLS * 3, storage, dir, 4096 );
+            for ( int i = 0; i < NUM_CELLS * 3; i++ )
+            {
+                builder.add( 1000 + i, features.instance( i % NUM_CELLS ).toDoubleArray() );
+            }
+            FeatureMatrix matrix = builder.build();
+            assertEquals( 1149, matrix.cellId( 149 ) );
+            assertEquals( matrix.get( 10, 3 ), matrix.get( 10 + 2 * NUM_CELLS, 3 ) );
+            double[] row = new double[8];
+            matrix.row( 130, row );
+            assertEquals( (double) (float) features.instance( 30 ).value( 7 ), row[7] );
+            FeatureMatrix.RowDistance rowDistance = matrix.distance( euclidean );
+            for ( int x = 0; x < NUM_CELLS * 3; x += 7 )
+            {
+                for ( int y = 0; y < NUM_CELLS * 3; y++ )
+                {
+                    assertEquals( heap.distance( x % NUM_CELLS, y % NUM_CELLS ), rowDistance.distance( x, y ), 0 );
+                }
+            }
+            matrix.close();
+        }
+    }
+
+    public void testBuilder() throws Exception
+    {
+        FeatureMatrix.Builder builder = FeatureMatrix.builder( new String[] { "a", "b" }, 1,
+            FeatureMatrix.Storage.HEAP, null );
+        try
+        {
+            builder.build();
+            fail( "Built with a missing row" );
+        }
+        catch ( IllegalStateException e )
+        {
+        }
+        builder.add( 5, new double[] { 1, Double.NaN } );
+        try
+        {
+            builder.add( 6, new double[] { 1, 2 } );
+            fail( "Added a row too many" );
+        }
+        catch ( IllegalStateException e )
+        {
+        }
+        FeatureMatrix matrix = builder.build();
+        assertTrue( matrix.hasMissing() );
+        assertEquals( 5, matrix.cellId( 0 ) );
+    }
+}
@@ -0,0 +1,73 @@
+package weka.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for SlidingBins.
+ */
+public class SlidingBinsTest
+    extends TestCase
+{
+    public SlidingBinsTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( SlidingBinsTest.class );
+    }
+
+    public void testMatchesBruteForce()
+    {
+        int numBins = 12;
+        int numCells = 50;
+        SlidingBins window = new SlidingBins( numBins );
+        List<long[]> events = new ArrayList<long[]>();
+        Random random = new Random( 9 );
+        long time = 0;
+        for ( int i = 0; i < 20000; i++ )
+        {
+            // mostly forward, with late events and some long gaps
+            time += random.nextInt( 100 ) == 0 ? 30 : random.nextInt( 3 ) == 0 ? 1 : 0;
+            long bin = time - random.nextInt( 15 );
+            long key = random.nextInt( numCells );
+            if ( window.add( key, bin ) )
+                events.add( new long[] { key, bin } );
+            else
+                assertTrue( bin <= window.getHead() - numBins );
+
+            if ( i % 997 == 0 || i == 19999 )
+            {
+                long head = window.getHead();
+                for ( int slot = 0; slot < window.size(); slot++ )
+                {
+                    double[] expected = new double[numBins];
+                    int total = 0;
+                    for ( long[] event : events )
+                    {
+                        if ( event[0] == window.getKey( slot ) && event[1] > head - numBins )
+                        {
+                            expected[(int) ( event[1] - ( head - numBins + 1 ) )]++;
+                            total++;
+                        }
+                    }
+                    double[] actual = new double[numBins + 1];
+                    window.getCounts( slot, actual, 1 );
+                    for ( int b = 0; b < numBins; b++ )
+                        assertEquals( expected[b], actual[b + 1], 0.0 );
+                    assertEquals( total, window.getTotal( slot ) );
+                }
+            }
+        }
+        int inWindow = 0;
+        for ( int slot = 0; slot < window.size(); slot++ )
+            inWindow += window.getTotal( slot );
+        assertEquals( events.size(), inWindow + window.getNumExpired() );
+    }
+}
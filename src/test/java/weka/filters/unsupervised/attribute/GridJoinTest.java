@@ -0,0 +1,116 @@
+package weka.filters.unsupervised.attribute;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.filters.Filter;
+
+/**
+ * Unit test for GridJoin.
+ */
+public class GridJoinTest
+    extends TestCase
+{
+    public GridJoinTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( GridJoinTest.class );
+    }
+
+    private static Instances grid( String[] cells, double[][] bins )
+    {
+        FastVector attributes = new FastVector();
+        attributes.addElement( new Attribute( "cellId", (FastVector) null ) );
+        for ( int i = 0; i < bins[0].length; i++ )
+            attributes.addElement( new Attribute( "bin" + i ) );
+        Instances dataset = new Instances( "grid", attributes, cells.length );
+        for ( int j = 0; j < cells.length; j++ )
+        {
+            Instance instance = new Instance( 1 + bins[j].length );
+            instance.setDataset( dataset );
+            instance.setValue( 0, cells[j] );
+            for ( int i = 0; i < bins[j].length; i++ )
+                instance.setValue( i + 1, bins[j][i] );
+            dataset.add( instance );
+        }
+        return dataset;
+    }
+
+    private static Instances join( boolean additive ) throws Exception
+    {
+        Instances pickUps = grid( new String[] { "(0;0)", "(1;2)", "(3;4)" },
+            new double[][] { { 1, 2 }, { 3, 4 }, { 5, 6 } } );
+        Instances dropOffs = grid( new String[] { "(3;4)", "(7;7)", "(0;0)" },
+            new double[][] { { 10, 20 }, { 30, 40 }, { 50, 60 } } );
+        GridJoin join = new GridJoin();
+        join.setComplementaryDataSet( dropOffs );
+        join.setAdditive( additive );
+        join.setInputFormat( pickUps );
+        return Filter.useFilter( pickUps, join );
+    }
+
+    public void testAdditive() throws Exception
+    {
+        Instances joined = join( true );
+        assertEquals( 5, joined.numAttributes() );
+        assertEquals( "up1", joined.attribute( 1 ).name() );
+        assertEquals( "dn1", joined.attribute( 2 ).name() );
+        assertEquals( 4, joined.numInstances() );
+        assertEquals( "(0;0)", joined.instance( 0 ).stringValue( 0 ) );
+        assertEquals( 50.0, joined.instance( 0 ).value( 2 ), 0.0 );
+        assertEquals( "(1;2)", joined.instance( 1 ).stringValue( 0 ) );
+        assertEquals( 4.0, joined.instance( 1 ).value( 3 ), 0.0 );
+        assertEquals( 0.0, joined.instance( 1 ).value( 4 ), 0.0 );
+        assertEquals( "(7;7)", joined.instance( 3 ).stringValue( 0 ) );
+        assertEquals( 0.0, joined.instance( 3 ).value( 1 ), 0.0 );
+        assertEquals( 40.0, joined.instance( 3 ).value( 4 ), 0.0 );
+    }
+
+    public void testSubtractive() throws Exception
+    {
+        Instances joined = join( false );
+        assertEquals( 2, joined.numInstances() );
+        assertEquals( "(0;0)", joined.instance( 0 ).stringValue( 0 ) );
+        assertEquals( "(3;4)", joined.instance( 1 ).stringValue( 0 ) );
+        assertEquals( 6.0, joined.instance( 1 ).value( 3 ), 0.0 );
+        assertEquals( 20.0, joined.instance( 1 ).value( 4 ), 0.0 );
+    }
+
+    public void testThreeWayFillMissing() throws Exception
+    {
+        Instances pickUps = grid( new String[] { "(0;0)", "(1;2)" },
+            new double[][] { { 1, 2 }, { 3, 4 } } );
+        Instances dropOffs = grid( new String[] { "(1;2)" },
+            new double[][] { { 10, 20 } } );
+        Instances buses = grid( new String[] { "(5;5)", "(0;0)" },
+            new double[][] { { 100, 200 }, { 300, 400 } } );
+        GridJoin join = new GridJoin();
+        join.setComplementaryDataSet( dropOffs );
+        join.addDataSet( "bus", buses );
+        join.setMissingCells( GridJoin.MissingCells.FILL_MISSING );
+        join.setInputFormat( pickUps );
+        Instances joined = Filter.useFilter( pickUps, join );
+        assertEquals( 7, joined.numAttributes() );
+        assertEquals( "bus1", joined.attribute( 3 ).name() );
+        assertEquals( "up2", joined.attribute( 4 ).name() );
+        assertEquals( 3, joined.numInstances() );
+        assertTrue( joined.instance( 0 ).isMissing( 2 ) );
+        assertEquals( 300.0, joined.instance( 0 ).value( 3 ), 0.0 );
+        assertEquals( 400.0, joined.instance( 0 ).value( 6 ), 0.0 );
+        assertEquals( "(5;5)", joined.instance( 2 ).stringValue( 0 ) );
+        assertTrue( joined.instance( 2 ).isMissing( 1 ) );
+        assertEquals( 200.0, joined.instance( 2 ).value( 6 ), 0.0 );
+
+        join.setMissingCells( GridJoin.MissingCells.DROP );
+        join.setInputFormat( pickUps );
+        assertEquals( 0, Filter.useFilter( pickUps, join ).numInstances() );
+    }
+}
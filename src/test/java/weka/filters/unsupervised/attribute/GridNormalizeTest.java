@@ -0,0 +1,129 @@
+package weka.filters.unsupervised.attribute;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.filters.Filter;
+
+/**
+ * Unit test for GridNormalize.
+ */
+public class GridNormalizeTest
+    extends TestCase
+{
+    public GridNormalizeTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( GridNormalizeTest.class );
+    }
+
+    private static Instances grid()
+    {
+        FastVector attributes = new FastVector();
+        attributes.addElement( new Attribute( "cellId", (FastVector) null ) );
+        attributes.addElement( new Attribute( "bin0" ) );
+        attributes.addElement( new Attribute( "bin1" ) );
+        Instances dataset = new Instances( "grid", attributes, 2 );
+        double[][] bins = { { 3, 4 }, { 1, 0 }, { 5, 2 } };
+        for ( int j = 0; j < bins.length; j++ )
+        {
+            Instance instance = new Instance( 3 );
+            instance.setDataset( dataset );
+            instance.setValue( 0, "(" + j + ";0)" );
+            instance.setValue( 1, bins[j][0] );
+            instance.setValue( 2, bins[j][1] );
+            dataset.add( instance );
+        }
+        return dataset;
+    }
+
+    private static Instances normalize( GridNormalize.Mode mode ) throws Exception
+    {
+        Instances dataset = grid();
+        GridNormalize normalizer = new GridNormalize();
+        normalizer.setMode( mode );
+        normalizer.setInputFormat( dataset );
+        return Filter.useFilter( dataset, normalizer );
+    }
+
+    public void testMeanCenter() throws Exception
+    {
+        Instances normalized = normalize( GridNormalize.Mode.MEAN_CENTER );
+        assertEquals( "(0;0)", normalized.instance( 0 ).stringValue( 0 ) );
+        assertEquals( -0.5, normalized.instance( 0 ).value( 1 ), 1e-12 );
+        assertEquals( 0.5, normalized.instance( 0 ).value( 2 ), 1e-12 );
+    }
+
+    public void testL2Unit() throws Exception
+    {
+        Instances normalized = normalize( GridNormalize.Mode.L2_UNIT );
+        assertEquals( 0.6, normalized.instance( 0 ).value( 1 ), 1e-12 );
+        assertEquals( 0.8, normalized.instance( 0 ).value( 2 ), 1e-12 );
+        assertEquals( 1.0, normalized.instance( 1 ).value( 1 ), 1e-12 );
+    }
+
+    public void testZScore() throws Exception
+    {
+        Instances normalized = normalize( GridNormalize.Mode.Z_SCORE );
+        assertEquals( 3, normalized.numInstances() );
+        double sum = 0, squares = 0;
+        for ( int j = 0; j < normalized.numInstances(); j++ )
+        {
+            sum += normalized.instance( j ).value( 2 );
+            squares += normalized.instance( j ).value( 2 ) * normalized.instance( j ).value( 2 );
+        }
+        assertEquals( 0.0, sum, 1e-12 );
+        assertEquals( 3.0, squares, 1e-12 );
+        assertEquals( "(2;0)", normalized.instance( 2 ).stringValue( 0 ) );
+    }
+
+    public void testInputUnchanged() throws Exception
+    {
+        for ( GridNormalize.Mode mode : GridNormalize.Mode.values() )
+        {
+            Instances dataset = grid();
+            // A shallow copy shares the value arrays of the rows
+            Instances shared = new Instances( dataset );
+            GridNormalize normalizer = new GridNormalize();
+            normalizer.setMode( mode );
+            normalizer.setInputFormat( dataset );
+            Instances normalized = Filter.useFilter( dataset, normalizer );
+            assertEquals( grid().toString(), dataset.toString() );
+            assertEquals( grid().toString(), shared.toString() );
+            assertNotSame( dataset.instance( 0 ), normalized.instance( 0 ) );
+            assertEquals( "(1;0)", normalized.instance( 1 ).stringValue( 0 ) );
+        }
+    }
+
+    public void testSparseInput() throws Exception
+    {
+        for ( GridNormalize.Mode mode : GridNormalize.Mode.values() )
+        {
+            Instances dense = grid();
+            Instances sparse = new Instances( dense, dense.numInstances() );
+            for ( int j = 0; j < dense.numInstances(); j++ )
+            {
+                sparse.add( new SparseInstance( dense.instance( j ) ) );
+            }
+            GridNormalize normalizer = new GridNormalize();
+            normalizer.setMode( mode );
+            normalizer.setInputFormat( sparse );
+            Instances normalized = Filter.useFilter( sparse, normalizer );
+            Instances expected = normalize( mode );
+            for ( int j = 0; j < expected.numInstances(); j++ )
+            {
+                assertEquals( expected.instance( j ).value( 1 ), normalized.instance( j ).value( 1 ), 1e-12 );
+                assertEquals( expected.instance( j ).value( 2 ), normalized.instance( j ).value( 2 ), 1e-12 );
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package weka.filters.unsupervised.attribute;
+
+import java.util.Random;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.filters.Filter;
+
+/**
+ * Unit test for GridReduce.
+ */
+public class GridReduceTest
+    extends TestCase
+{
+    private static final int NUM_CELLS = 200;
+    private static final int NUM_BINS = 20;
+
+    public GridReduceTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( GridReduceTest.class );
+    }
+
+    /**
+     * Cells whose bins mix three hidden profiles, plus a little noise.
+     */
+    private static Instances grid()
+    {
+        FastVector attributes = new FastVector();
+        attributes.addElement( new Attribute( "cellId", (FastVector) null ) );
+        for ( int b = 0; b < NUM_BINS; b++ )
+        {
+            attributes.addElement( new Attribute( "bin" + b ) );
+        }
+        Instances dataset = new Instances( "grid", attributes, NUM_CELLS );
+        Random random = new Random( 7 );
+        double[][] profiles = new double[3][NUM_BINS];
+        for ( double[] profile : profiles )
+        {
+            for ( int b = 0; b < NUM_BINS; b++ )
+            {
+                profile[b] = random.nextDouble() * 10;
+            }
+        }
+        for ( int j = 0; j < NUM_CELLS; j++ )
+        {
+            Instance instance = new Instance( NUM_BINS + 1 );
+            instance.setDataset( dataset );
+            instance.setValue( 0, "(" + j + ";0)" );
+            double[] weights = { random.nextDouble(), random.nextDouble(), random.nextDouble() };
+            for ( int b = 0; b < NUM_BINS; b++ )
+            {
+                double value = random.nextGaussian() * 0.01;
+                for ( int p = 0; p < profiles.length; p++ )
+                {
+                    value += weights[p] * profiles[p][b];
+                }
+                instance.setValue( b + 1, value );
+            }
+            dataset.add( instance );
+        }
+        return dataset;
+    }
+
+    private static double distance( Instance x, Instance y, int from )
+    {
+        double sum = 0;
+        for ( int a = from; a < x.numAttributes(); a++ )
+        {
+            sum += ( x.value( a ) - y.value( a ) ) * ( x.value( a ) - y.value( a ) );
+        }
+        return Math.sqrt( sum );
+    }
+
+    public void testPcaByVariance() throws Exception
+    {
+        Instances dataset = grid();
+        GridReduce reducer = new GridReduce();
+        reducer.setMode( GridReduce.Mode.PCA );
+        reducer.setVariance( 0.999 );
+        reducer.setInputFormat( dataset );
+        Instances reduced = Filter.useFilter( dataset, reducer );
+        assertEquals( NUM_CELLS, reduced.numInstances() );
+        assertEquals( 1 + 3, reduced.numAttributes() );
+        assertEquals( "pc1", reduced.attribute( 1 ).name() );
+        assertEquals( "(5;0)", reduced.instance( 5 ).stringValue( 0 ) );
+        assertTrue( reducer.getError() < 0.001 );
+        // Three profiles: distances are kept
+        for ( int j = 1; j < NUM_CELLS; j++ )
+        {
+            assertEquals( distance( dataset.instance( 0 ), dataset.instance( j ), 1 ),
+                distance( reduced.instance( 0 ), reduced.instance( j ), 1 ), 0.1 );
+        }
+    }
+
+    public void testPcaByDimension() throws Exception
+    {
+        Instances dataset = grid();
+        GridReduce reducer = new GridReduce();
+        reducer.setMode( GridReduce.Mode.PCA );
+        reducer.setDimension( 1 );
+        reducer.setInputFormat( dataset );
+        Instances reduced = Filter.useFilter( dataset, reducer );
+        assertEquals( 2, reduced.numAttributes() );
+        assertTrue( reducer.getError() > 0.001 );
+        assertTrue( reducer.getError() < 1 );
+    }
+
+    public void testRandomProjection() throws Exception
+    {
+        Instances dataset = grid();
+        GridReduce reducer = new GridReduce();
+        reducer.setDimension( 10 );
+        reducer.setInputFormat( dataset );
+        Instances reduced = Filter.useFilter( dataset, reducer );
+        assertEquals( 1 + 10, reduced.numAttributes() );
+        assertEquals( "rp10", reduced.attribute( 10 ).name() );
+        assertTrue( reducer.getError() > 0 );
+        assertTrue( reducer.getError() < 0.5 );
+    }
+
+    public void testLaterBatches() throws Exception
+    {
+        Instances dataset = grid();
+        GridReduce reducer = new GridReduce();
+        reducer.setMode( GridReduce.Mode.PCA );
+        reducer.setDimension( 2 );
+        reducer.setInputFormat( dataset );
+        Instances reduced = Filter.useFilter( dataset, reducer );
+        // Reduced at once, the same way as the first batch
+        assertTrue( reducer.input( dataset.instance( 3 ) ) );
+        Instance again = reducer.output();
+        assertEquals( reduced.instance( 3 ).value( 1 ), again.value( 1 ), 1e-9 );
+        assertEquals( reduced.instance( 3 ).value( 2 ), again.value( 2 ), 1e-9 );
+        assertEquals( "(3;0)", again.stringValue( 0 ) );
+    }
+}
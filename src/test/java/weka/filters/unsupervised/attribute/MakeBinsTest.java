@@ -0,0 +1,272 @@
+package weka.filters.unsupervised.attribute;
+
+import java.text.SimpleDateFormat;
+import java.util.Random;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Attribute;
+import weka.core.CellDictionary;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.filters.Filter;
+import weka.filters.unsupervised.instance.GridGpsArea;
+
+/**
+ * Unit test for MakeBins.
+ */
+public class MakeBinsTest
+    extends TestCase
+{
+    public MakeBinsTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( MakeBinsTest.class );
+    }
+
+    private static Instances traces( int size, long seed, int shift )
+    {
+        FastVector attributes = new FastVector();
+        attributes.addElement( new Attribute( "cellId", (FastVector) null ) );
+        attributes.addElement( new Attribute( "gpstime", (FastVector) null ) );
+        attributes.addElement( new Attribute( "gpsdate", (FastVector) null ) );
+        Instances dataset = new Instances( "traces", attributes, size );
+        Random random = new Random( seed );
+        for ( int j = 0; j < size; j++ )
+        {
+            Instance instance = new Instance( 3 );
+            instance.setDataset( dataset );
+            instance.setValue( 0, "(" + ( random.nextInt( 20 ) >> shift ) + ";" + ( random.nextInt( 20 ) >> shift ) + ")" );
+            instance.setValue( 1, String.format( "%02d:%02d:00", random.nextInt( 24 ), random.nextInt( 60 ) ) );
+            instance.setValue( 2, String.format( "2008-05-%02d", 1 + random.nextInt( 31 ) ) );
+            dataset.add( instance );
+        }
+        return dataset;
+    }
+
+    private static MakeBins binMaker( long memoryBudget ) throws Exception
+    {
+        SimpleDateFormat format = new SimpleDateFormat( "yyyy-MM-dd" );
+        MakeBins binMaker = new MakeBins();
+        binMaker.setMinDate( format.parse( "2008-05-01" ) );
+        binMaker.setMaxDate( format.parse( "2008-05-31" ) );
+        binMaker.setBinsInADay( 4 );
+        binMaker.setPeriod( MakeBins.Period.BY_DAY_OF_WEEK );
+        binMaker.setMemoryBudget( memoryBudget );
+        return binMaker;
+    }
+
+    private static Instances bin( Instances traces, long memoryBudget ) throws Exception
+    {
+        MakeBins binMaker = binMaker( memoryBudget );
+        binMaker.setInputFormat( traces );
+        return Filter.useFilter( traces, binMaker );
+    }
+
+    private static void assertSameInstances( Instances expected, Instances actual )
+    {
+        assertEquals( expected.numInstances(), actual.numInstances() );
+        for ( int j = 0; j < expected.numInstances(); j++ )
+        {
+            assertEquals( expected.instance( j ).toString(), actual.instance( j ).toString() );
+        }
+    }
+
+    public void testSpillMatchesInMemory() throws Exception
+    {
+        Instances traces = traces( 5000, 7, 0 );
+        Instances inMemory = bin( traces, 0 );
+        // about 200 bytes a cell: spills every few cells
+        Instances spilled = bin( traces, 1000 );
+        assertEquals( 29, inMemory.numAttributes() );
+        assertSameInstances( inMemory, spilled );
+        double total = 0;
+        for ( int j = 0; j < spilled.numInstances(); j++ )
+        {
+            for ( int i = 1; i < spilled.numAttributes(); i++ )
+                total += spilled.instance( j ).value( i );
+        }
+        assertEquals( 5000.0, total, 0.0 );
+    }
+
+    public void testPyramidMatchesCoarserGrid() throws Exception
+    {
+        // the same traces on cells twice and four times as large
+        Instances traces = traces( 5000, 11, 0 );
+        Instances traces1 = traces( 5000, 11, 1 );
+        Instances traces2 = traces( 5000, 11, 2 );
+
+        MakeBins binMaker = binMaker( 2000 );
+        binMaker.setLevels( 3 );
+        binMaker.setLevel( 1 );
+        binMaker.setInputFormat( traces );
+        Instances level1 = Filter.useFilter( traces, binMaker );
+        assertEquals( 3, binMaker.getPyramid().size() );
+        assertSameInstances( bin( traces, 0 ), binMaker.getPyramid().get( 0 ) );
+        assertSameInstances( bin( traces1, 0 ), level1 );
+        assertSameInstances( level1, binMaker.getPyramid().get( 1 ) );
+        assertSameInstances( bin( traces2, 0 ), binMaker.getPyramid().get( 2 ) );
+    }
+
+    public void testCoarserCodes() throws Exception
+    {
+        CellDictionary dictionary = new CellDictionary( 40.120, 116.130, 39.750, 116.650, 100, 100 );
+        CellDictionary coarser = dictionary.coarser( 2 );
+        assertEquals( 400.0, coarser.getCellXSizeInMeters(), 0.0 );
+        assertEquals( ( dictionary.getNumCols() + 3 ) / 4, coarser.getNumCols() );
+        int code = dictionary.code( 39.9, 116.4 );
+        int coarserCode = dictionary.coarserCode( code, 2 );
+        assertEquals( dictionary.row( code ) / 4, coarser.row( coarserCode ) );
+        assertEquals( dictionary.col( code ) / 4, coarser.col( coarserCode ) );
+        assertEquals( coarser.code( 39.9, 116.4 ), coarserCode );
+    }
+
+    public void testSlidingWindowIgnoresOrder() throws Exception
+    {
+        Instances traces = traces( 5000, 13, 0 );
+        Instances reversed = new Instances( traces, traces.numInstances() );
+        for ( int j = traces.numInstances() - 1; j >= 0; j-- )
+            reversed.add( traces.instance( j ) );
+
+        MakeBins binMaker = binMaker( 0 );
+        binMaker.setPeriod( MakeBins.Period.SLIDING_WINDOW );
+        binMaker.setWindowDays( 3 );
+        binMaker.setInputFormat( traces );
+        Instances window = Filter.useFilter( traces, binMaker );
+        assertEquals( 13, window.numAttributes() );
+        int dropped = binMaker.getNumDropped();
+
+        binMaker.setInputFormat( reversed );
+        Instances reversedWindow = Filter.useFilter( reversed, binMaker );
+        assertEquals( dropped, binMaker.getNumDropped() );
+        // the same cells, whatever the order they were first seen in
+        assertEquals( window.numInstances(), reversedWindow.numInstances() );
+        double total = 0;
+        for ( int j = 0; j < window.numInstances(); j++ )
+        {
+            String cell = window.instance( j ).stringValue( 0 );
+            boolean found = false;
+            for ( int k = 0; k < reversedWindow.numInstances(); k++ )
+            {
+                if ( reversedWindow.instance( k ).stringValue( 0 ).equals( cell ) )
+                {
+                    assertEquals( window.instance( j ).toString(), reversedWindow.instance( k ).toString() );
+                    found = true;
+                }
+            }
+            assertTrue( cell, found );
+            for ( int i = 1; i < window.numAttributes(); i++ )
+                total += window.instance( j ).value( i );
+        }
+        // about 3 of the 31 days of traces
+        assertEquals( 5000.0, total + dropped, 0.0 );
+        assertTrue( "" + total, total > 300 && total < 700 );
+    }
+
+    /**
+     * GPS samples over a grid of 4 by 6 cells of 1 km and a margin around
+     * it, with the (row;col) name of their cell as computed before cell
+     * codes, or null if out of the area. Times and dates are nominal, as
+     * loaded from CSV.
+     */
+    private static Instances gpsTraces( int size, String[] names )
+    {
+        FastVector times = new FastVector();
+        for ( int h = 0; h < 24; h++ )
+        {
+            times.addElement( String.format( "%02d:30:00", h ) );
+        }
+        FastVector dates = new FastVector();
+        for ( int d = 1; d <= 31; d++ )
+        {
+            dates.addElement( String.format( "2008-05-%02d", d ) );
+        }
+        FastVector attributes = new FastVector();
+        attributes.addElement( new Attribute( "latitude" ) );
+        attributes.addElement( new Attribute( "longitude" ) );
+        attributes.addElement( new Attribute( "gpstime", times ) );
+        attributes.addElement( new Attribute( "gpsdate", dates ) );
+        Instances dataset = new Instances( "traces", attributes, size );
+        Random random = new Random( 17 );
+        for ( int j = 0; j < size; j++ )
+        {
+            // the corners of the area first
+            double lat = j < 2 ? 40.0 - 0.03 * j : 39.965 + 0.04 * random.nextDouble();
+            double lng = j < 2 ? 116.0 + 0.04 * j : 115.995 + 0.05 * random.nextDouble();
+            Instance instance = new Instance( 4 );
+            instance.setDataset( dataset );
+            instance.setValue( 0, lat );
+            instance.setValue( 1, lng );
+            instance.setValue( 2, random.nextInt( 24 ) );
+            instance.setValue( 3, random.nextInt( 31 ) );
+            dataset.add( instance );
+            if ( lat <= 40.0 && lat >= 39.97 && lng >= 116.0 && lng <= 116.04 )
+            {
+                int x = (int) Math.floor( CellDictionary.distanceInMeters( 0, 116.0, 0, lng ) / 1000 );
+                int y = (int) Math.floor( CellDictionary.distanceInMeters( 40.0, 0, lat, 0 ) / 1000 );
+                names[j] = "(" + y + ";" + x + ")";
+            }
+        }
+        return dataset;
+    }
+
+    public void testCodesMatchNames() throws Exception
+    {
+        String[] names = new String[2000];
+        Instances traces = gpsTraces( names.length, names );
+        GridGpsArea area = new GridGpsArea();
+        area.setArea( 40.0, 116.0, 39.97, 116.04 );
+        area.setCell( 1000, 1000 );
+        area.setInputFormat( traces );
+        Instances coded = Filter.useFilter( traces, area );
+        CellDictionary dictionary = area.getCellDictionary();
+
+        // the same samples keyed by (row;col) names, as MakeBins got them
+        FastVector attributes = new FastVector();
+        attributes.addElement( new Attribute( "cellId", (FastVector) null ) );
+        attributes.addElement( new Attribute( "gpstime", (FastVector) null ) );
+        attributes.addElement( new Attribute( "gpsdate", (FastVector) null ) );
+        Instances named = new Instances( "traces", attributes, names.length );
+        int dropped = 0;
+        for ( int j = 0; j < names.length; j++ )
+        {
+            if ( names[j] == null )
+            {
+                dropped++;
+                continue;
+            }
+            Instance instance = new Instance( 3 );
+            instance.setDataset( named );
+            instance.setValue( 0, names[j] );
+            instance.setValue( 1, traces.instance( j ).stringValue( 2 ) );
+            instance.setValue( 2, traces.instance( j ).stringValue( 3 ) );
+            named.add( instance );
+        }
+        assertEquals( dropped, area.getNumDropped() );
+        assertTrue( dropped > 0 );
+        assertEquals( named.numInstances(), coded.numInstances() );
+        assertEquals( 0, (int) coded.instance( 0 ).value( 4 ) );
+        assertEquals( dictionary.size() - 1, (int) coded.instance( 1 ).value( 4 ) );
+
+        Instances codeBins = bin( coded, 0 );
+        Instances nameBins = bin( named, 0 );
+        assertTrue( codeBins.attribute( 0 ).isNumeric() );
+        assertEquals( dictionary.size(), codeBins.numInstances() );
+        assertEquals( nameBins.numInstances(), codeBins.numInstances() );
+        for ( int j = 0; j < codeBins.numInstances(); j++ )
+        {
+            Instance codeRow = codeBins.instance( j );
+            Instance nameRow = nameBins.instance( j );
+            assertEquals( nameRow.stringValue( 0 ), dictionary.name( (int) codeRow.value( 0 ) ) );
+            for ( int i = 1; i < codeBins.numAttributes(); i++ )
+            {
+                assertEquals( nameRow.value( i ), codeRow.value( i ), 0.0 );
+            }
+        }
+    }
+}